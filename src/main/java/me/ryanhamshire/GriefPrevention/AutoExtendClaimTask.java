@@ -14,12 +14,14 @@ class AutoExtendClaimTask implements Runnable
     private Claim claim;
     private ArrayList<ChunkSnapshot> chunks;
     private Environment worldType;
+    private MaterialCategories materialCategories;
 
     public AutoExtendClaimTask(Claim claim, ArrayList<ChunkSnapshot> chunks, Environment worldType)
     {
         this.claim = claim;
         this.chunks = chunks;
         this.worldType = worldType;
+        this.materialCategories = GriefPrevention.instance.materialCategories;
     }
 
     @Override
@@ -43,7 +45,7 @@ class AutoExtendClaimTask implements Runnable
             for(ChunkSnapshot chunk : this.chunks)
             {
                 Biome biome = chunk.getBiome(0,  0);
-                ArrayList<Material> playerBlockIDs = RestoreNatureProcessingTask.getPlayerBlocks(this.worldType, biome);
+                int playerBlocks = MaterialCategories.playerPlacedCategories(this.worldType, biome, false, false);
 
                 boolean ychanged = true;
                 while(!this.yTooSmall(y) && ychanged)
@@ -54,7 +56,7 @@ class AutoExtendClaimTask implements Runnable
                         for(int z = 0; z < 16; z++)
                         {
                             Material blockType = chunk.getBlockType(x, y, z);
-                            while(!this.yTooSmall(y) && playerBlockIDs.contains(blockType))
+                            while(!this.yTooSmall(y) && this.materialCategories.is(blockType, playerBlocks))
                             {
                                 ychanged = true;
                                 blockType = chunk.getBlockType(x, --y, z);
@@ -74,7 +76,7 @@ class AutoExtendClaimTask implements Runnable
             for(ChunkSnapshot chunk : this.chunks)
             {
                 Biome biome = chunk.getBiome(0,  0);
-                ArrayList<Material> playerBlockIDs = RestoreNatureProcessingTask.getPlayerBlocks(this.worldType, biome);
+                int playerBlocks = MaterialCategories.playerPlacedCategories(this.worldType, biome, false, false);
 
                 boolean ychanged = true;
                 while(!this.yTooSmall(y) && ychanged)
@@ -85,7 +87,7 @@ class AutoExtendClaimTask implements Runnable
                         for(int z = 0; z < 16; z++)
                         {
                             	Material blockType = chunk.getBlockType(x, y, z);
-				while(!this.yTooSmall(y) && playerBlockIDs.contains(blockType))
+				while(!this.yTooSmall(y) && this.materialCategories.is(blockType, playerBlocks))
 				{
 				    ychanged = true;
 				    blockType = chunk.getBlockType(x, --y, z);
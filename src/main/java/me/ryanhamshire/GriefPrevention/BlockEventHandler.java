@@ -38,7 +38,6 @@ import org.bukkit.event.world.StructureGrowEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.material.Dispenser;
 
-import java.util.ArrayList;
 import java.util.List;
 
 //event handlers related to blocks
@@ -47,28 +46,10 @@ public class BlockEventHandler implements Listener
 	//convenience reference to singleton datastore
 	private DataStore dataStore;
 	
-	private ArrayList<Material> trashBlocks;
-	
 	//constructor
 	public BlockEventHandler(DataStore dataStore)
 	{
 		this.dataStore = dataStore;
-		
-		//create the list of blocks which will not trigger a warning when they're placed outside of land claims
-		this.trashBlocks = new ArrayList<Material>();
-		this.trashBlocks.add(Material.COBBLESTONE);
-		this.trashBlocks.add(Material.TORCH);
-		this.trashBlocks.add(Material.DIRT);
-		this.trashBlocks.add(Material.OAK_SAPLING);
-		this.trashBlocks.add(Material.SPRUCE_SAPLING);
-		this.trashBlocks.add(Material.BIRCH_SAPLING);
-		this.trashBlocks.add(Material.JUNGLE_SAPLING);
-		this.trashBlocks.add(Material.ACACIA_SAPLING);
-		this.trashBlocks.add(Material.DARK_OAK_SAPLING);
-		this.trashBlocks.add(Material.GRAVEL);
-		this.trashBlocks.add(Material.SAND);
-		this.trashBlocks.add(Material.TNT);
-		this.trashBlocks.add(Material.CRAFTING_TABLE);
 	}
 	
 	//when a player breaks a block...
@@ -127,7 +108,7 @@ public class BlockEventHandler implements Listener
 		{
 			// Allow players with container trust to place books in lecterns
 			PlayerData playerData = this.dataStore.getPlayerData(player.getUniqueId());
-			Claim claim = this.dataStore.getClaimAt(block.getLocation(), true, playerData.lastClaim);
+			Claim claim = this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), true, playerData.lastClaim);
 			if (block.getType() == Material.LECTERN && placeEvent.getBlockReplacedState().getType() == Material.LECTERN)
 			{
 				if (claim != null)
@@ -149,7 +130,7 @@ public class BlockEventHandler implements Listener
 		
 		//if the block is being placed within or under an existing claim
 		PlayerData playerData = this.dataStore.getPlayerData(player.getUniqueId());
-		Claim claim = this.dataStore.getClaimAt(block.getLocation(), true, playerData.lastClaim);
+		Claim claim = this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), true, playerData.lastClaim);
 		if(claim != null)
 		{
 		    playerData.lastClaim = claim;
@@ -162,7 +143,7 @@ public class BlockEventHandler implements Listener
             }
 			
 			//if the player has permission for the claim and he's placing UNDER the claim
-			if(block.getY() <= claim.lesserBoundaryCorner.getBlockY() && claim.allowBuild(player, block.getType()) == null)
+			if(block.getY() <= claim.lesserY && claim.checkBuild(player, block.getType()) == null)
 			{
 				//extend the claim downward
 				this.dataStore.extendClaim(claim, block.getY() - GriefPrevention.instance.config_claims_claimsExtendIntoGroundDistance);
@@ -223,7 +204,7 @@ public class BlockEventHandler implements Listener
 	                            null, null,
 	                            player);
 			                
-			                if(result.succeeded) break;
+			                if(result.succeeded || result.claimsLoading) break;
 				        }
 				        
 				        radius--;
@@ -244,7 +225,7 @@ public class BlockEventHandler implements Listener
 			}
 			
 			//check to see if this chest is in a claim, and warn when it isn't
-			if(GriefPrevention.instance.config_claims_preventTheft && this.dataStore.getClaimAt(block.getLocation(), false, playerData.lastClaim) == null)
+			if(GriefPrevention.instance.config_claims_preventTheft && this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), false, playerData.lastClaim) == null)
 			{
 				GriefPrevention.sendMessage(player, TextMode.Warn, Messages.UnprotectedChestWarning);				
 			}
@@ -265,7 +246,7 @@ public class BlockEventHandler implements Listener
 		}	
 		
 		//FEATURE: warn players when they're placing non-trash blocks outside of their claimed areas
-		else if(!this.trashBlocks.contains(block.getType()) && GriefPrevention.instance.claimsEnabledForWorld(block.getWorld()))
+		else if(!GriefPrevention.instance.materialCategories.is(block.getType(), MaterialCategories.TRASH) && GriefPrevention.instance.claimsEnabledForWorld(block.getWorld()))
 		{
 			if(!playerData.warnedAboutBuildingOutsideClaims && !player.hasPermission("griefprevention.adminclaims")
 				&& player.hasPermission("griefprevention.createclaims") && ((playerData.lastClaim == null
@@ -354,8 +335,8 @@ public class BlockEventHandler implements Listener
 			//pushing "air" is harmless
 			if(invadedBlock.getType() == Material.AIR) return;
 			
-			if(	this.dataStore.getClaimAt(pistonBlock.getLocation(), false, null) == null && 
-				this.dataStore.getClaimAt(invadedBlock.getLocation(), false, null) != null)
+			if(	this.dataStore.getClaimAt(pistonBlock.getWorld(), pistonBlock.getX(), pistonBlock.getY(), pistonBlock.getZ(), false, null) == null && 
+				this.dataStore.getClaimAt(invadedBlock.getWorld(), invadedBlock.getX(), invadedBlock.getY(), invadedBlock.getZ(), false, null) != null)
 			{
 				event.setCancelled(true);				
 			}
@@ -364,9 +345,8 @@ public class BlockEventHandler implements Listener
 		}
 		
 		//who owns the piston, if anyone?
-		String pistonClaimOwnerName = "_";
-		Claim claim = this.dataStore.getClaimAt(event.getBlock().getLocation(), false, null);
-		if(claim != null) pistonClaimOwnerName = claim.getOwnerName();
+		Claim claim = this.dataStore.getClaimAt(pistonBlock.getWorld(), pistonBlock.getX(), pistonBlock.getY(), pistonBlock.getZ(), false, null);
+		Claim pistonClaim = claim;
 		
 		//if pistons are limited to same-claim block movement
 		if(GriefPrevention.instance.config_pistonsInClaimsOnly)
@@ -407,11 +387,11 @@ public class BlockEventHandler implements Listener
     		{
     			//if ANY of the pushed blocks are owned by someone other than the piston owner, cancel the event
     			Block block = blocks.get(i);
-    			claim = this.dataStore.getClaimAt(block.getLocation(), false, cachedClaim);
+    			claim = this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), false, cachedClaim);
     			if(claim != null)
     			{
     			    cachedClaim = claim;
-    			    if(!claim.getOwnerName().equals(pistonClaimOwnerName))
+    			    if(!claim.isSameOwner(pistonClaim))
     			    {
         				event.setCancelled(true);
         				pistonBlock.getWorld().createExplosion(pistonBlock.getLocation(), 0);
@@ -426,23 +406,17 @@ public class BlockEventHandler implements Listener
     		for(int i = 0; i < blocks.size(); i++)
 			{
 				Block block = blocks.get(i);
-				Claim originalClaim = this.dataStore.getClaimAt(block.getLocation(), false, cachedClaim);
-				String originalOwnerName = "";
+				Claim originalClaim = this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), false, cachedClaim);
 				if(originalClaim != null)
 				{
 					cachedClaim = originalClaim;
-				    originalOwnerName = originalClaim.getOwnerName();
 				}
 				
-				Claim newClaim = this.dataStore.getClaimAt(block.getRelative(event.getDirection()).getLocation(), false, cachedClaim);
-				String newOwnerName = "";
-				if(newClaim != null)
-				{
-				    newOwnerName = newClaim.getOwnerName();
-				}
+				Block destination = block.getRelative(event.getDirection());
+				Claim newClaim = this.dataStore.getClaimAt(destination.getWorld(), destination.getX(), destination.getY(), destination.getZ(), false, cachedClaim);
 				
 				//if pushing this block will change ownership, cancel the event and take away the piston (for performance reasons)
-				if(!newOwnerName.equals(originalOwnerName) && !newOwnerName.isEmpty())
+				if(newClaim != null && !newClaim.isSameOwner(originalClaim))
 				{
 					event.setCancelled(true);
 					pistonBlock.getWorld().createExplosion(pistonBlock.getLocation(), 0);
@@ -473,7 +447,8 @@ public class BlockEventHandler implements Listener
     		if(GriefPrevention.instance.config_pistonsInClaimsOnly)
     		{
     		    //if piston not in a land claim, cancel event
-    		    Claim pistonClaim = this.dataStore.getClaimAt(event.getBlock().getLocation(), false, null);
+    		    Block pistonBlock = event.getBlock();
+    		    Claim pistonClaim = this.dataStore.getClaimAt(pistonBlock.getWorld(), pistonBlock.getX(), pistonBlock.getY(), pistonBlock.getZ(), false, null);
     		    if(pistonClaim == null && !event.getBlocks().isEmpty())
     		    {
     		        event.setCancelled(true);
@@ -495,22 +470,21 @@ public class BlockEventHandler implements Listener
     		else
     		{
     		    //who owns the piston, if anyone?
-                String pistonOwnerName = "_";
                 Block block = event.getBlock();
                 Location pistonLocation = block.getLocation();       
                 Claim pistonClaim = this.dataStore.getClaimAt(pistonLocation, false, null);
-                if(pistonClaim != null) pistonOwnerName = pistonClaim.getOwnerName();
     		    
-    		    String movingBlockOwnerName = "_";
+    		    Claim movingBlockOwnerClaim = null;
         		for(Block movedBlock : event.getBlocks())
         		{
         		    //who owns the moving block, if anyone?
-                    Claim movingBlockClaim = this.dataStore.getClaimAt(movedBlock.getLocation(), false, pistonClaim);
-            		if(movingBlockClaim != null) movingBlockOwnerName = movingBlockClaim.getOwnerName();
+                    Claim movingBlockClaim = this.dataStore.getClaimAt(movedBlock.getWorld(), movedBlock.getX(), movedBlock.getY(), movedBlock.getZ(), false, pistonClaim);
+            		if(movingBlockClaim != null) movingBlockOwnerClaim = movingBlockClaim;
             		
             		//if there are owners for the blocks, they must be the same player
             		//otherwise cancel the event
-            		if(!pistonOwnerName.equals(movingBlockOwnerName))
+            		boolean sameOwner = pistonClaim == null ? movingBlockOwnerClaim == null : pistonClaim.isSameOwner(movingBlockOwnerClaim);
+            		if(!sameOwner)
             		{
             			event.setCancelled(true);
             			block.getWorld().createExplosion(block.getLocation(), 0);
@@ -569,7 +543,8 @@ public class BlockEventHandler implements Listener
 		}
 		
 		//never spread into a claimed area, regardless of settings
-		if(this.dataStore.getClaimAt(spreadEvent.getBlock().getLocation(), false, null) != null)
+		Block spreadBlock = spreadEvent.getBlock();
+		if(this.dataStore.getClaimAt(spreadBlock.getWorld(), spreadBlock.getX(), spreadBlock.getY(), spreadBlock.getZ(), false, null) != null)
 		{
 			if(GriefPrevention.instance.config_claims_firespreads) return;
 			spreadEvent.setCancelled(true);
@@ -623,7 +598,8 @@ public class BlockEventHandler implements Listener
 		}
 		
 		//never burn claimed blocks, regardless of settings
-		if(this.dataStore.getClaimAt(burnEvent.getBlock().getLocation(), false, null) != null)
+		Block burningBlock = burnEvent.getBlock();
+		if(this.dataStore.getClaimAt(burningBlock.getWorld(), burningBlock.getX(), burningBlock.getY(), burningBlock.getZ(), false, null) != null)
 		{
 			if(GriefPrevention.instance.config_claims_firedamages) return;
 			burnEvent.setCancelled(true);
@@ -675,7 +651,7 @@ public class BlockEventHandler implements Listener
 
 		Block block = event.getHitBlock();
 
-		Claim claim = dataStore.getClaimAt(block.getLocation(), false, null);
+		Claim claim = dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), false, null);
 		if (claim == null)
 			return;
 
@@ -717,8 +693,8 @@ public class BlockEventHandler implements Listener
 		
 		//to where?
 		Block toBlock = fromBlock.getRelative(dispenser.getFacing());
-		Claim fromClaim = this.dataStore.getClaimAt(fromBlock.getLocation(), false, null);
-		Claim toClaim = this.dataStore.getClaimAt(toBlock.getLocation(), false, fromClaim);
+		Claim fromClaim = this.dataStore.getClaimAt(fromBlock.getWorld(), fromBlock.getX(), fromBlock.getY(), fromBlock.getZ(), false, null);
+		Claim toClaim = this.dataStore.getClaimAt(toBlock.getWorld(), toBlock.getX(), toBlock.getY(), toBlock.getZ(), false, fromClaim);
 
 		//wilderness to wilderness is OK
 		if(fromClaim == null && toClaim == null) return;
@@ -741,7 +717,6 @@ public class BlockEventHandler implements Listener
 	    
 	    Location rootLocation = growEvent.getLocation();
         Claim rootClaim = this.dataStore.getClaimAt(rootLocation, false, null);
-        String rootOwnerName = null;
         
         //who owns the spreading block, if anyone?
         if(rootClaim != null)
@@ -751,22 +726,19 @@ public class BlockEventHandler implements Listener
             
             //if an administrative claim, just let the tree grow where it wants
             if(rootClaim.isAdminClaim()) return;
-            
-            //otherwise, note the owner of the claim
-            rootOwnerName = rootClaim.getOwnerName();
         }
         
         //for each block growing
         for(int i = 0; i < growEvent.getBlocks().size(); i++)
         {
             BlockState block = growEvent.getBlocks().get(i);
-            Claim blockClaim = this.dataStore.getClaimAt(block.getLocation(), false, rootClaim);
+            Claim blockClaim = this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), false, rootClaim);
             
             //if it's growing into a claim
             if(blockClaim != null)
             {
                 //if there's no owner for the new tree, or the owner for the new tree is different from the owner of the claim
-                if(rootOwnerName == null  || !rootOwnerName.equals(blockClaim.getOwnerName()))
+                if(rootClaim == null || !rootClaim.isSameOwner(blockClaim))
                 {
                     growEvent.getBlocks().remove(i--);
                 }
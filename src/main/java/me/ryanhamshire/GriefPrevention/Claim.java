@@ -32,10 +32,13 @@ import org.bukkit.entity.Player;
 //only claims which have been added to the datastore have any effect
 public class Claim
 {
-	//two locations, which together define the boundaries of the claim
+	//the world and two corners, which together define the boundaries of the claim
+	//kept as block coordinates so that protection checks don't need to build or compare Location objects
 	//note that the upper Y value is always ignored, because claims ALWAYS extend up to the sky
-	Location lesserBoundaryCorner;
-	Location greaterBoundaryCorner;
+	World world;
+	UUID worldID;
+	int lesserX, lesserY, lesserZ;
+	int greaterX, greaterY, greaterZ;
 	
 	//modification date.  this comes from the file timestamp during load, and is updated with runtime changes
 	public Date modifiedDate;
@@ -53,12 +56,19 @@ public class Claim
 	//permissions for this claim, see ClaimPermission class
 	private HashMap<String, ClaimPermission> playerIDToClaimPermissionMap = new HashMap<String, ClaimPermission>();
 	
+	//the same permissions, compiled for checking.  rebuilt whenever the map above changes
+	private volatile ClaimPermissionTable permissionTable = ClaimPermissionTable.EMPTY;
+	
 	//whether or not this claim is in the data store
 	//if a claim instance isn't in the data store, it isn't "active" - players can't interract with it 
 	//why keep this?  so that claims which have been removed from the data store can be correctly 
 	//ignored even though they may have references floating around
 	public boolean inDataStore = false;
 	
+	//position of this claim in the data store's list of top level claims, so it can be removed without a search
+	//-1 when not in that list (subdivisions, and claims not in the data store)
+	int claimListIndex = -1;
+	
 	public boolean areExplosivesAllowed = false;
 	
 	//parent claim
@@ -71,6 +81,11 @@ public class Claim
 	//children (subdivisions)
 	//note subdivisions themselves never have children
 	public ArrayList<Claim> children = new ArrayList<Claim>();
+	
+	//subdivisions by chunk, only kept once a claim has lots of subdivisions (towns, big admin claims)
+	//kept up to date by the data store whenever it adds, removes or resizes a subdivision, under its claim write lock
+	volatile ClaimChunkIndex childIndex = null;
+	static final int CHILD_INDEX_THRESHOLD = 16;
 
 	//whether or not this is an administrative claim
 	//administrative claims are created and maintained by players with the griefprevention.adminclaims permission.
@@ -150,8 +165,7 @@ public class Claim
 		this.id = id;
 		
 		//store corners
-		this.lesserBoundaryCorner = lesserBoundaryCorner;
-		this.greaterBoundaryCorner = greaterBoundaryCorner;
+		this.setBoundaries(lesserBoundaryCorner, greaterBoundaryCorner);
 		
 		//owner
 		this.ownerID = ownerID;
@@ -188,6 +202,8 @@ public class Claim
 				this.managers.add(managerID);
 			}
 		}
+		
+		this.permissionTable = new ClaimPermissionTable(this.playerIDToClaimPermissionMap);
 
 		this.inheritNothing = inheritNothing;
 	}
@@ -197,23 +213,49 @@ public class Claim
 		this(lesserBoundaryCorner, greaterBoundaryCorner, ownerID, builderIDs, containerIDs, accessorIDs, managerIDs, false, id);
 	}
 	
+	//sets the boundaries from two corner locations, which must be in the same world
+	void setBoundaries(Location lesserBoundaryCorner, Location greaterBoundaryCorner)
+	{
+		this.world = lesserBoundaryCorner.getWorld();
+		this.worldID = this.world.getUID();
+		this.lesserX = lesserBoundaryCorner.getBlockX();
+		this.lesserY = lesserBoundaryCorner.getBlockY();
+		this.lesserZ = lesserBoundaryCorner.getBlockZ();
+		this.greaterX = greaterBoundaryCorner.getBlockX();
+		this.greaterY = greaterBoundaryCorner.getBlockY();
+		this.greaterZ = greaterBoundaryCorner.getBlockZ();
+	}
+	
+	//copies another claim's boundaries into this one
+	void setBoundaries(Claim other)
+	{
+		this.world = other.world;
+		this.worldID = other.worldID;
+		this.lesserX = other.lesserX;
+		this.lesserY = other.lesserY;
+		this.lesserZ = other.lesserZ;
+		this.greaterX = other.greaterX;
+		this.greaterY = other.greaterY;
+		this.greaterZ = other.greaterZ;
+	}
+	
 	//measurements.  all measurements are in blocks
 	public int getArea()
 	{
-		int claimWidth = this.greaterBoundaryCorner.getBlockX() - this.lesserBoundaryCorner.getBlockX() + 1;
-		int claimHeight = this.greaterBoundaryCorner.getBlockZ() - this.lesserBoundaryCorner.getBlockZ() + 1;
+		int claimWidth = this.greaterX - this.lesserX + 1;
+		int claimHeight = this.greaterZ - this.lesserZ + 1;
 		
 		return claimWidth * claimHeight;		
 	}
 	
 	public int getWidth()
 	{
-		return this.greaterBoundaryCorner.getBlockX() - this.lesserBoundaryCorner.getBlockX() + 1;		
+		return this.greaterX - this.lesserX + 1;		
 	}
 	
 	public int getHeight()
 	{
-		return this.greaterBoundaryCorner.getBlockZ() - this.lesserBoundaryCorner.getBlockZ() + 1;		
+		return this.greaterZ - this.lesserZ + 1;		
 	}
 
 	public boolean getSubclaimRestrictions()
@@ -224,25 +266,43 @@ public class Claim
 	public void setSubclaimRestrictions(boolean inheritNothing)
 	{
 		this.inheritNothing = inheritNothing;
+		permissionsChanged();
+	}
+	
+	//forgets cached permission check results, see ClaimPermissionCache
+	//claims are loaded before the data store is ready, but nothing has been cached then anyway
+	private static void permissionsChanged()
+	{
+		GriefPrevention plugin = GriefPrevention.instance;
+		if(plugin != null && plugin.dataStore != null)
+		{
+			plugin.dataStore.permissionCache.invalidateAll();
+		}
 	}
 
 	//distance check for claims, distance in this case is a band around the outside of the claim rather then euclidean distance
 	public boolean isNear(Location location, int howNear)
 	{
-		Claim claim = new Claim
-			(new Location(this.lesserBoundaryCorner.getWorld(), this.lesserBoundaryCorner.getBlockX() - howNear, this.lesserBoundaryCorner.getBlockY(), this.lesserBoundaryCorner.getBlockZ() - howNear),
-			 new Location(this.greaterBoundaryCorner.getWorld(), this.greaterBoundaryCorner.getBlockX() + howNear, this.greaterBoundaryCorner.getBlockY(), this.greaterBoundaryCorner.getBlockZ() + howNear),
-			 null, new ArrayList<String>(), new ArrayList<String>(), new ArrayList<String>(), new ArrayList<String>(), null);
-		
-		return claim.contains(location, false, true);
+		return location.getWorld().getUID().equals(this.worldID) &&
+				location.getBlockY() >= this.lesserY &&
+				location.getBlockX() >= this.lesserX - howNear &&
+				location.getBlockX() <= this.greaterX + howNear &&
+				location.getBlockZ() >= this.lesserZ - howNear &&
+				location.getBlockZ() <= this.greaterZ + howNear;
 	}
 	
 	//permissions.  note administrative "public" claims have different rules than other claims
-	//all of these return NULL when a player has permission, or a String error message when the player doesn't have permission
+	//the check methods return NULL when a player has permission, or a DenialReason when the player doesn't have permission
+	//the allow methods do the same, with the denial's error message instead
 	public String allowEdit(Player player)
+	{
+		return DenialReason.getMessage(this.checkEdit(player));
+	}
+	
+	public DenialReason checkEdit(Player player)
 	{
 		//if we don't know who's asking, always say no (i've been told some mods can make this happen somehow)
-		if(player == null) return "";
+		if(player == null) return DenialReason.UNKNOWN_PLAYER;
 		
 		//special cases...
 		
@@ -270,33 +330,35 @@ public class Claim
 			if (player.getUniqueId().equals(this.parent.ownerID))
 				return null;
 			if (!inheritNothing)
-				return this.parent.allowEdit(player);
+				return this.parent.checkEdit(player);
 		}
 		
 		//error message if all else fails
-		return GriefPrevention.instance.dataStore.getMessage(Messages.OnlyOwnersModifyClaims, this.getOwnerName());
+		return new DenialReason(Messages.OnlyOwnersModifyClaims, this, player);
 	}
 	
-	private List<Material> placeableFarmingBlocksList = Arrays.asList(
-	        Material.PUMPKIN_STEM,
-	        Material.WHEAT,
-	        Material.MELON_STEM,
-	        Material.CARROTS,
-	        Material.POTATOES,
-	        Material.NETHER_WART,
-	        Material.BEETROOTS);
-	    
     private boolean placeableForFarming(Material material)
     {
-        return this.placeableFarmingBlocksList.contains(material);
+        return GriefPrevention.instance.materialCategories.is(material, MaterialCategories.FARMING);
     }
 	
 	//build permission check
 	public String allowBuild(Player player, Material material)
+	{
+		return DenialReason.getMessage(this.checkBuild(player, material));
+	}
+	
+	public DenialReason checkBuild(Player player, Material material)
 	{
 		//if we don't know who's asking, always say no (i've been told some mods can make this happen somehow)
-		if(player == null) return "";
-
+		if(player == null) return DenialReason.UNKNOWN_PLAYER;
+		
+		int kind = this.placeableForFarming(material) ? ClaimPermissionCache.BUILD_FARMING : ClaimPermissionCache.BUILD;
+		return GriefPrevention.instance.dataStore.permissionCache.get(player, this, kind, () -> this.computeBuild(player, material));
+	}
+	
+	private DenialReason computeBuild(Player player, Material material)
+	{
 		//admin claims can always be modified by admins, no exceptions
 		if(this.isAdminClaim())
 		{
@@ -307,14 +369,14 @@ public class Claim
 		if(player.getUniqueId().equals(this.ownerID) || GriefPrevention.instance.dataStore.getPlayerData(player.getUniqueId()).ignoreClaims) return null;
 		
 		//anyone with explicit build permission can make changes
-		if(this.hasExplicitPermission(player, ClaimPermission.Build)) return null;
+		ClaimPermissionTable permissions = this.permissionTable;
+		if(permissions.hasExplicitPermission(player, ClaimPermission.Build)) return null;
 		
 		//also everyone is a member of the "public", so check for public permission
-		ClaimPermission permissionLevel = this.playerIDToClaimPermissionMap.get("public");
-		if(ClaimPermission.Build == permissionLevel) return null;
+		if(permissions.hasPublicPermission(ClaimPermission.Build)) return null;
 		
 		//allow for farming with /containertrust permission
-		if(this.allowContainers(player) == null)
+		if(this.checkContainers(player) == null)
 		{
 			//do allow for farming, if player has /containertrust permission
 			if(this.placeableForFarming(material))
@@ -329,41 +391,11 @@ public class Claim
 			if (player.getUniqueId().equals(this.parent.ownerID))
 				return null;
 			if (!inheritNothing)
-				return this.parent.allowBuild(player, material);
+				return this.parent.checkBuild(player, material);
 		}
 		
 		//failure message for all other cases
-		String reason = GriefPrevention.instance.dataStore.getMessage(Messages.NoBuildPermission, this.getOwnerName());
-		if(player.hasPermission("griefprevention.ignoreclaims"))
-				reason += "  " + GriefPrevention.instance.dataStore.getMessage(Messages.IgnoreClaimsAdvertisement);
-		
-		return reason;
-	}
-	
-	private boolean hasExplicitPermission(Player player, ClaimPermission level)
-	{
-		String playerID = player.getUniqueId().toString();
-		Set<String> keys = this.playerIDToClaimPermissionMap.keySet();
-		Iterator<String> iterator = keys.iterator();
-		while(iterator.hasNext())
-		{
-			String identifier = iterator.next();
-			if(playerID.equalsIgnoreCase(identifier) && this.playerIDToClaimPermissionMap.get(identifier) == level) return true;
-			
-			else if(identifier.startsWith("[") && identifier.endsWith("]"))
-			{
-				//drop the brackets
-				String permissionIdentifier = identifier.substring(1, identifier.length() - 1);
-				
-				//defensive coding
-				if(permissionIdentifier == null || permissionIdentifier.isEmpty()) continue;
-				
-				//check permission
-				if(player.hasPermission(permissionIdentifier) && this.playerIDToClaimPermissionMap.get(identifier) == level) return true;
-			}
-		}
-		
-		return false;			
+		return new DenialReason(Messages.NoBuildPermission, this, player);
 	}
 	
 	//break permission check
@@ -372,8 +404,23 @@ public class Claim
 		return this.allowBuild(player, material);
 	}
 	
+	public DenialReason checkBreak(Player player, Material material)
+	{
+		return this.checkBuild(player, material);
+	}
+	
 	//access permission check
 	public String allowAccess(Player player)
+	{
+		return DenialReason.getMessage(this.checkAccess(player));
+	}
+	
+	public DenialReason checkAccess(Player player)
+	{
+		return GriefPrevention.instance.dataStore.permissionCache.get(player, this, ClaimPermissionCache.ACCESS, () -> this.computeAccess(player));
+	}
+	
+	private DenialReason computeAccess(Player player)
 	{
 		//admin claims need adminclaims permission only.
 		if(this.isAdminClaim())
@@ -385,13 +432,11 @@ public class Claim
 		if(player.getUniqueId().equals(this.ownerID) || GriefPrevention.instance.dataStore.getPlayerData(player.getUniqueId()).ignoreClaims) return null;
 		
 		//look for explicit individual access, inventory, or build permission
-		if(this.hasExplicitPermission(player, ClaimPermission.Access)) return null;
-		if(this.hasExplicitPermission(player, ClaimPermission.Inventory)) return null;
-		if(this.hasExplicitPermission(player, ClaimPermission.Build)) return null;
+		ClaimPermissionTable permissions = this.permissionTable;
+		if(permissions.hasExplicitPermission(player, ClaimPermission.Access)) return null;
 		
 		//also check for public permission
-		ClaimPermission permissionLevel = this.playerIDToClaimPermissionMap.get("public");
-		if(ClaimPermission.Build == permissionLevel || ClaimPermission.Inventory == permissionLevel || ClaimPermission.Access == permissionLevel) return null;		
+		if(permissions.hasPublicPermission(ClaimPermission.Access)) return null;
 		
 		//permission inheritance for subdivisions
 		if(this.parent != null)
@@ -399,22 +444,29 @@ public class Claim
 			if (player.getUniqueId().equals(this.parent.ownerID))
 				return null;
 			if (!inheritNothing)
-				return this.parent.allowAccess(player);
+				return this.parent.checkAccess(player);
 		}
 		
 		//catch-all error message for all other cases
-		String reason = GriefPrevention.instance.dataStore.getMessage(Messages.NoAccessPermission, this.getOwnerName());
-		if(player.hasPermission("griefprevention.ignoreclaims"))
-			reason += "  " + GriefPrevention.instance.dataStore.getMessage(Messages.IgnoreClaimsAdvertisement);
-		return reason;
+		return new DenialReason(Messages.NoAccessPermission, this, player);
 	}
 	
 	//inventory permission check
 	public String allowContainers(Player player)
+	{
+		return DenialReason.getMessage(this.checkContainers(player));
+	}
+	
+	public DenialReason checkContainers(Player player)
 	{		
 		//if we don't know who's asking, always say no (i've been told some mods can make this happen somehow)
-		if(player == null) return "";
+		if(player == null) return DenialReason.UNKNOWN_PLAYER;
 		
+		return GriefPrevention.instance.dataStore.permissionCache.get(player, this, ClaimPermissionCache.CONTAINERS, () -> this.computeContainers(player));
+	}
+	
+	private DenialReason computeContainers(Player player)
+	{
 		//owner and administrators in ignoreclaims mode have access
 		if(player.getUniqueId().equals(this.ownerID) || GriefPrevention.instance.dataStore.getPlayerData(player.getUniqueId()).ignoreClaims) return null;
 		
@@ -425,12 +477,11 @@ public class Claim
 		}
 		
 		//check for explicit individual container or build permission 
-		if(this.hasExplicitPermission(player, ClaimPermission.Inventory)) return null;
-		if(this.hasExplicitPermission(player, ClaimPermission.Build)) return null;
+		ClaimPermissionTable permissions = this.permissionTable;
+		if(permissions.hasExplicitPermission(player, ClaimPermission.Inventory)) return null;
 		
 		//check for public container or build permission
-		ClaimPermission permissionLevel = this.playerIDToClaimPermissionMap.get("public");
-		if(ClaimPermission.Build == permissionLevel || ClaimPermission.Inventory == permissionLevel) return null;
+		if(permissions.hasPublicPermission(ClaimPermission.Inventory)) return null;
 		
 		//permission inheritance for subdivisions
 		if(this.parent != null)
@@ -438,14 +489,11 @@ public class Claim
 			if (player.getUniqueId().equals(this.parent.ownerID))
 				return null;
 			if (!inheritNothing)
-				return this.parent.allowContainers(player);
+				return this.parent.checkContainers(player);
 		}
 		
 		//error message for all other cases
-		String reason = GriefPrevention.instance.dataStore.getMessage(Messages.NoContainersPermission, this.getOwnerName());
-		if(player.hasPermission("griefprevention.ignoreclaims"))
-			reason += "  " + GriefPrevention.instance.dataStore.getMessage(Messages.IgnoreClaimsAdvertisement);
-		return reason;
+		return new DenialReason(Messages.NoContainersPermission, this, player);
 	}
 	
 	//grant permission check, relatively simple
@@ -455,7 +503,7 @@ public class Claim
 		if(player == null) return "";
 		
 		//anyone who can modify the claim can do this
-		if(this.allowEdit(player) == null) return null;
+		if(this.checkEdit(player) == null) return null;
 		
 		//anyone who's in the managers (/PermissionTrust) list can do this
 		for(int i = 0; i < this.managers.size(); i++)
@@ -491,12 +539,16 @@ public class Claim
 	public void setPermission(String playerID, ClaimPermission permissionLevel)
 	{
 		this.playerIDToClaimPermissionMap.put(playerID.toLowerCase(),  permissionLevel);
+		this.permissionTable = new ClaimPermissionTable(this.playerIDToClaimPermissionMap);
+		permissionsChanged();
 	}
 	
 	//revokes a permission for a player or the public
 	public void dropPermission(String playerID)
 	{
 		this.playerIDToClaimPermissionMap.remove(playerID.toLowerCase());
+		this.permissionTable = new ClaimPermissionTable(this.playerIDToClaimPermissionMap);
+		permissionsChanged();
 		
 		for(Claim child : this.children)
 		{
@@ -508,7 +560,9 @@ public class Claim
 	public void clearPermissions()
 	{
 		this.playerIDToClaimPermissionMap.clear();
+		this.permissionTable = ClaimPermissionTable.EMPTY;
 		this.managers.clear();
+		permissionsChanged();
 		
 		for(Claim child : this.children)
         {
@@ -548,17 +602,40 @@ public class Claim
 		}
 	}
 	
-	//returns a copy of the location representing lower x, y, z limits
+	//returns a new location representing lower x, y, z limits
 	public Location getLesserBoundaryCorner()
 	{
-		return this.lesserBoundaryCorner.clone();
+		return new Location(this.world, this.lesserX, this.lesserY, this.lesserZ);
 	}
 	
-	//returns a copy of the location representing upper x, y, z limits
+	//returns a new location representing upper x, y, z limits
 	//NOTE: remember upper Y will always be ignored, all claims always extend to the sky
 	public Location getGreaterBoundaryCorner()
 	{
-		return this.greaterBoundaryCorner.clone();
+		return new Location(this.world, this.greaterX, this.greaterY, this.greaterZ);
+	}
+	
+	//the world this claim is in
+	public World getWorld()
+	{
+		return this.world;
+	}
+	
+	//who really owns this claim, which for subdivisions is the owner of the top level claim
+	//null for administrative claims
+	public UUID getTopLevelOwnerID()
+	{
+		return this.parent != null ? this.parent.ownerID : this.ownerID;
+	}
+	
+	//whether another claim has the same owner as this one.  all administrative claims count as having the same owner
+	//compares UUIDs, so prefer this to comparing owner names
+	public boolean isSameOwner(Claim other)
+	{
+		if(other == null) return false;
+		
+		UUID ownerID = this.getTopLevelOwnerID();
+		return ownerID == null ? other.getTopLevelOwnerID() == null : ownerID.equals(other.getTopLevelOwnerID());
 	}
 	
 	//returns a friendly owner name (for admin claims, returns "an administrator" as the owner)
@@ -577,20 +654,27 @@ public class Claim
 	//ignoreHeight = true means location UNDER the claim will return TRUE
 	//excludeSubdivisions = true means that locations inside subdivisions of the claim will return FALSE
 	public boolean contains(Location location, boolean ignoreHeight, boolean excludeSubdivisions)
+	{
+		return this.contains(location.getWorld().getUID(), location.getBlockX(), location.getBlockY(), location.getBlockZ(), ignoreHeight, excludeSubdivisions);
+	}
+	
+	//same as above, for block coordinates
+	public boolean contains(World world, int x, int y, int z, boolean ignoreHeight, boolean excludeSubdivisions)
+	{
+		return this.contains(world.getUID(), x, y, z, ignoreHeight, excludeSubdivisions);
+	}
+	
+	boolean contains(UUID worldID, int x, int y, int z, boolean ignoreHeight, boolean excludeSubdivisions)
 	{
 	    //not in the same world implies false
-		if(!location.getWorld().equals(this.lesserBoundaryCorner.getWorld())) return false;
-		
-		double x = location.getX();
-		double y = location.getY();
-		double z = location.getZ();
+		if(!worldID.equals(this.worldID)) return false;
 		
 		//main check
-		boolean inClaim = (ignoreHeight || y >= this.lesserBoundaryCorner.getY()) &&
-				x >= this.lesserBoundaryCorner.getX() &&
-				x < this.greaterBoundaryCorner.getX() + 1 &&
-				z >= this.lesserBoundaryCorner.getZ() &&
-				z < this.greaterBoundaryCorner.getZ() + 1;
+		boolean inClaim = (ignoreHeight || y >= this.lesserY) &&
+				x >= this.lesserX &&
+				x <= this.greaterX &&
+				z >= this.lesserZ &&
+				z <= this.greaterZ;
 				
 		if(!inClaim) return false;
 				
@@ -600,20 +684,16 @@ public class Claim
 		//a subdivision can reach outside of its parent's boundaries.  so this check is important!
 		if(this.parent != null)
 	    {
-	    	return this.parent.contains(location, ignoreHeight, false);
+	    	return this.parent.contains(worldID, x, y, z, ignoreHeight, false);
 	    }
 		
 		//code to exclude subdivisions in this check
 		else if(excludeSubdivisions)
 		{
-			//search all subdivisions to see if the location is in any of them
-			for(int i = 0; i < this.children.size(); i++)
+			//if the location is in any subdivision, return false
+			if(this.getChildAt(worldID, x, y, z, ignoreHeight) != null)
 			{
-				//if we find such a subdivision, return false
-				if(this.children.get(i).contains(location, ignoreHeight, true))
-				{
-					return false;
-				}
+				return false;
 			}
 		}
 		
@@ -621,6 +701,68 @@ public class Claim
 		return true;				
 	}
 	
+	//finds the first subdivision containing a location, or null
+	//with lots of subdivisions only those in the location's chunk are checked, see childIndex
+	Claim getChildAt(UUID worldID, int x, int y, int z, boolean ignoreHeight)
+	{
+	    ClaimChunkIndex index = this.childIndex;
+	    if(index == null)
+	    {
+	        for(int i = 0; i < this.children.size(); i++)
+	        {
+	            Claim child = this.children.get(i);
+	            if(child.contains(worldID, x, y, z, ignoreHeight, false)) return child;
+	        }
+	        
+	        return null;
+	    }
+	    
+	    Claim [] candidates = index.get(x >> 4, z >> 4);
+	    if(candidates == null) return null;
+	    for(Claim child : candidates)
+	    {
+	        if(child.contains(worldID, x, y, z, ignoreHeight, false)) return child;
+	    }
+	    
+	    return null;
+	}
+	
+	//call after adding a subdivision to this claim's children
+	void childAdded(Claim child)
+	{
+	    ClaimChunkIndex index = this.childIndex;
+	    if(index != null)
+	    {
+	        index.add(child);
+	    }
+	    else if(this.children.size() >= CHILD_INDEX_THRESHOLD)
+	    {
+	        index = new ClaimChunkIndex();
+	        for(Claim existing : this.children)
+	        {
+	            index.add(existing);
+	        }
+	        this.childIndex = index;
+	    }
+	}
+	
+	//call after removing a subdivision from this claim's children, or before changing a subdivision's boundaries
+	void childRemoved(Claim child)
+	{
+	    ClaimChunkIndex index = this.childIndex;
+	    if(index == null) return;
+	    
+	    //drop the index once it's no longer worth keeping.  not right at the threshold, so it isn't rebuilt over and over
+	    if(this.children.size() < CHILD_INDEX_THRESHOLD / 2)
+	    {
+	        this.childIndex = null;
+	    }
+	    else
+	    {
+	        index.remove(child);
+	    }
+	}
+	
 	//whether or not two claims overlap
 	//used internally to prevent overlaps when creating claims
 	boolean overlaps(Claim otherClaim)
@@ -628,40 +770,40 @@ public class Claim
 		//NOTE:  if trying to understand this makes your head hurt, don't feel bad - it hurts mine too.  
 		//try drawing pictures to visualize test cases.
 		
-		if(!this.lesserBoundaryCorner.getWorld().equals(otherClaim.getLesserBoundaryCorner().getWorld())) return false;
+		if(!this.worldID.equals(otherClaim.worldID)) return false;
 		
 		//first, check the corners of this claim aren't inside any existing claims
-		if(otherClaim.contains(this.lesserBoundaryCorner, true, false)) return true;
-		if(otherClaim.contains(this.greaterBoundaryCorner, true, false)) return true;
-		if(otherClaim.contains(new Location(this.lesserBoundaryCorner.getWorld(), this.lesserBoundaryCorner.getBlockX(), 0, this.greaterBoundaryCorner.getBlockZ()), true, false)) return true;
-		if(otherClaim.contains(new Location(this.lesserBoundaryCorner.getWorld(), this.greaterBoundaryCorner.getBlockX(), 0, this.lesserBoundaryCorner.getBlockZ()), true, false)) return true;
+		if(otherClaim.contains(this.worldID, this.lesserX, this.lesserY, this.lesserZ, true, false)) return true;
+		if(otherClaim.contains(this.worldID, this.greaterX, this.greaterY, this.greaterZ, true, false)) return true;
+		if(otherClaim.contains(this.worldID, this.lesserX, 0, this.greaterZ, true, false)) return true;
+		if(otherClaim.contains(this.worldID, this.greaterX, 0, this.lesserZ, true, false)) return true;
 		
 		//verify that no claim's lesser boundary point is inside this new claim, to cover the "existing claim is entirely inside new claim" case
-		if(this.contains(otherClaim.getLesserBoundaryCorner(), true, false)) return true;
+		if(this.contains(otherClaim.worldID, otherClaim.lesserX, otherClaim.lesserY, otherClaim.lesserZ, true, false)) return true;
 		
 		//verify this claim doesn't band across an existing claim, either horizontally or vertically		
-		if(	this.getLesserBoundaryCorner().getBlockZ() <= otherClaim.getGreaterBoundaryCorner().getBlockZ() && 
-			this.getLesserBoundaryCorner().getBlockZ() >= otherClaim.getLesserBoundaryCorner().getBlockZ() && 
-			this.getLesserBoundaryCorner().getBlockX() < otherClaim.getLesserBoundaryCorner().getBlockX() &&
-			this.getGreaterBoundaryCorner().getBlockX() > otherClaim.getGreaterBoundaryCorner().getBlockX() )
+		if(	this.lesserZ <= otherClaim.greaterZ && 
+			this.lesserZ >= otherClaim.lesserZ && 
+			this.lesserX < otherClaim.lesserX &&
+			this.greaterX > otherClaim.greaterX )
 			return true;
 		
-		if(	this.getGreaterBoundaryCorner().getBlockZ() <= otherClaim.getGreaterBoundaryCorner().getBlockZ() && 
-			this.getGreaterBoundaryCorner().getBlockZ() >= otherClaim.getLesserBoundaryCorner().getBlockZ() && 
-			this.getLesserBoundaryCorner().getBlockX() < otherClaim.getLesserBoundaryCorner().getBlockX() &&
-			this.getGreaterBoundaryCorner().getBlockX() > otherClaim.getGreaterBoundaryCorner().getBlockX() )
+		if(	this.greaterZ <= otherClaim.greaterZ && 
+			this.greaterZ >= otherClaim.lesserZ && 
+			this.lesserX < otherClaim.lesserX &&
+			this.greaterX > otherClaim.greaterX )
 			return true;
 		
-		if(	this.getLesserBoundaryCorner().getBlockX() <= otherClaim.getGreaterBoundaryCorner().getBlockX() && 
-			this.getLesserBoundaryCorner().getBlockX() >= otherClaim.getLesserBoundaryCorner().getBlockX() && 
-			this.getLesserBoundaryCorner().getBlockZ() < otherClaim.getLesserBoundaryCorner().getBlockZ() &&
-			this.getGreaterBoundaryCorner().getBlockZ() > otherClaim.getGreaterBoundaryCorner().getBlockZ() )
+		if(	this.lesserX <= otherClaim.greaterX && 
+			this.lesserX >= otherClaim.lesserX && 
+			this.lesserZ < otherClaim.lesserZ &&
+			this.greaterZ > otherClaim.greaterZ )
 			return true;
 			
-		if(	this.getGreaterBoundaryCorner().getBlockX() <= otherClaim.getGreaterBoundaryCorner().getBlockX() && 
-			this.getGreaterBoundaryCorner().getBlockX() >= otherClaim.getLesserBoundaryCorner().getBlockX() && 
-			this.getLesserBoundaryCorner().getBlockZ() < otherClaim.getLesserBoundaryCorner().getBlockZ() &&
-			this.getGreaterBoundaryCorner().getBlockZ() > otherClaim.getGreaterBoundaryCorner().getBlockZ() )
+		if(	this.greaterX <= otherClaim.greaterX && 
+			this.greaterX >= otherClaim.lesserX && 
+			this.lesserZ < otherClaim.lesserZ &&
+			this.greaterZ > otherClaim.greaterZ )
 			return true;
 		
 		return false;
@@ -671,13 +813,11 @@ public class Claim
     {
         ArrayList<Chunk> chunks = new ArrayList<Chunk>();
         
-        World world = this.getLesserBoundaryCorner().getWorld();
-        Chunk lesserChunk = this.getLesserBoundaryCorner().getChunk();
-        Chunk greaterChunk = this.getGreaterBoundaryCorner().getChunk();
+        World world = this.world;
         
-        for(int x = lesserChunk.getX(); x <= greaterChunk.getX(); x++)
+        for(int x = this.lesserX >> 4; x <= this.greaterX >> 4; x++)
         {
-            for(int z = lesserChunk.getZ(); z <= greaterChunk.getZ(); z++)
+            for(int z = this.lesserZ >> 4; z <= this.greaterZ >> 4; z++)
             {
                 chunks.add(world.getChunkAt(x, z));
             }
@@ -685,23 +825,4 @@ public class Claim
         
         return chunks;
     }
-
-    ArrayList<Long> getChunkHashes()
-    {
-        ArrayList<Long> hashes = new ArrayList<Long>();
-        int smallX = this.getLesserBoundaryCorner().getBlockX() >> 4;
-        int smallZ = this.getLesserBoundaryCorner().getBlockZ() >> 4;
-		int largeX = this.getGreaterBoundaryCorner().getBlockX() >> 4;
-		int largeZ = this.getGreaterBoundaryCorner().getBlockZ() >> 4;
-		
-		for(int x = smallX; x <= largeX; x++)
-		{
-		    for(int z = smallZ; z <= largeZ; z++)
-		    {
-		        hashes.add(DataStore.getChunkHash(x, z));
-		    }
-		}
-		
-		return hashes;
-    }
 }
@@ -0,0 +1,255 @@
+package me.ryanhamshire.GriefPrevention;
+
+//maps chunk coordinates to the claims which touch that chunk, for a single world
+//keys are packed into a primitive long and stored in an open addressing table (linear probing),
+//so lookups never box a key or allocate anything
+//each chunk's entry is never modified in place - it's replaced on every change,
+//so a caller may safely hold on to an entry or claim array it got from here
+//keys and values live together in one table object which is swapped as a unit on resize, so a reader
+//racing a writer (see the optimistic reads in DataStore) never pairs keys and values from different tables
+class ClaimChunkIndex
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    //the claims touching one chunk, plus the chunk's coverage class:
+    //chunks with no entry are unclaimed, chunks with a fullClaim are entirely inside that one claim,
+    //and everything else is a boundary chunk which needs a full lookup
+    static class ChunkClaims
+    {
+        final Claim[] claims;
+        final Claim fullClaim;  //the only claim here, when it covers the whole chunk.  otherwise null
+
+        ChunkClaims(Claim[] claims, int chunkX, int chunkZ)
+        {
+            this.claims = claims;
+
+            Claim claim = claims[0];
+            boolean covered = claims.length == 1 &&
+                    claim.lesserX <= chunkX << 4 && claim.greaterX >= (chunkX << 4) + 15 &&
+                    claim.lesserZ <= chunkZ << 4 && claim.greaterZ >= (chunkZ << 4) + 15;
+            this.fullClaim = covered ? claim : null;
+        }
+    }
+
+    private static class Table
+    {
+        final long[] keys;
+        final ChunkClaims[] values;  //null marks an empty slot
+
+        Table(int capacity)
+        {
+            this.keys = new long[capacity];
+            this.values = new ChunkClaims[capacity];
+        }
+    }
+
+    private Table table = new Table(INITIAL_CAPACITY);
+    private int size = 0;
+
+    //packs chunk coordinates into a single unique long
+    static long chunkKey(int chunkX, int chunkZ)
+    {
+        return ((long)chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    //spreads packed keys across the table, so that neighboring chunks don't cluster
+    private static int mix(long key)
+    {
+        key ^= (key >>> 33);
+        key *= 0xff51afd7ed558ccdL;
+        key ^= (key >>> 33);
+        return (int)key;
+    }
+
+    //number of chunks with at least one claim in them
+    int size()
+    {
+        return this.size;
+    }
+
+    //returns the claims touching a chunk and its coverage, or null when the chunk is unclaimed
+    ChunkClaims getChunk(int chunkX, int chunkZ)
+    {
+        long key = chunkKey(chunkX, chunkZ);
+        Table table = this.table;
+        long[] keys = table.keys;
+        ChunkClaims[] values = table.values;
+        int mask = values.length - 1;
+        for(int i = mix(key) & mask; ; i = (i + 1) & mask)
+        {
+            ChunkClaims value = values[i];
+            if(value == null) return null;
+            if(keys[i] == key) return value;
+        }
+    }
+
+    //returns the claims touching a chunk, or null when there are none
+    //the returned array must not be modified
+    Claim[] get(int chunkX, int chunkZ)
+    {
+        ChunkClaims chunk = this.getChunk(chunkX, chunkZ);
+        return chunk == null ? null : chunk.claims;
+    }
+
+    //adds a top level claim to every chunk it touches
+    void add(Claim claim)
+    {
+        int smallX = claim.lesserX >> 4;
+        int smallZ = claim.lesserZ >> 4;
+        int largeX = claim.greaterX >> 4;
+        int largeZ = claim.greaterZ >> 4;
+
+        for(int x = smallX; x <= largeX; x++)
+        {
+            for(int z = smallZ; z <= largeZ; z++)
+            {
+                this.add(x, z, claim);
+            }
+        }
+    }
+
+    //removes a claim from every chunk it touches
+    //the chunks left behind are reclassified, so a neighbor may become the only (covering) claim of a chunk
+    void remove(Claim claim)
+    {
+        int smallX = claim.lesserX >> 4;
+        int smallZ = claim.lesserZ >> 4;
+        int largeX = claim.greaterX >> 4;
+        int largeZ = claim.greaterZ >> 4;
+
+        for(int x = smallX; x <= largeX; x++)
+        {
+            for(int z = smallZ; z <= largeZ; z++)
+            {
+                this.remove(x, z, claim);
+            }
+        }
+    }
+
+    private void add(int chunkX, int chunkZ, Claim claim)
+    {
+        long key = chunkKey(chunkX, chunkZ);
+        long[] keys = this.table.keys;
+        ChunkClaims[] values = this.table.values;
+        int mask = values.length - 1;
+        int i = mix(key) & mask;
+        while(values[i] != null)
+        {
+            if(keys[i] == key)
+            {
+                Claim[] current = values[i].claims;
+                for(Claim existing : current)
+                {
+                    if(existing == claim) return;
+                }
+
+                Claim[] updated = new Claim[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, current.length);
+                updated[current.length] = claim;
+                values[i] = new ChunkClaims(updated, chunkX, chunkZ);
+                return;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        //new chunk.  grow first if that would make the table more than half full
+        if((this.size + 1) * 2 > values.length)
+        {
+            this.resize(values.length * 2);
+            this.add(chunkX, chunkZ, claim);
+            return;
+        }
+
+        keys[i] = key;
+        values[i] = new ChunkClaims(new Claim[] { claim }, chunkX, chunkZ);
+        this.size++;
+    }
+
+    private void remove(int chunkX, int chunkZ, Claim claim)
+    {
+        long key = chunkKey(chunkX, chunkZ);
+        long[] keys = this.table.keys;
+        ChunkClaims[] values = this.table.values;
+        int mask = values.length - 1;
+        for(int i = mix(key) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            if(keys[i] != key) continue;
+
+            Claim[] current = values[i].claims;
+            int position = -1;
+            for(int j = 0; j < current.length; j++)
+            {
+                //match by ID as well as by reference, so stale copies of a claim can be cleaned up
+                if(current[j] == claim || (claim.id != null && claim.id.equals(current[j].id)))
+                {
+                    position = j;
+                    break;
+                }
+            }
+
+            if(position == -1) return;
+
+            //if nothing's left, remove this chunk entirely
+            if(current.length == 1)
+            {
+                this.deleteSlot(i);
+                return;
+            }
+
+            Claim[] updated = new Claim[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, position);
+            System.arraycopy(current, position + 1, updated, position, current.length - position - 1);
+            values[i] = new ChunkClaims(updated, chunkX, chunkZ);
+            return;
+        }
+    }
+
+    //empties a slot and shifts back any entries which probed past it, so no tombstones are needed
+    private void deleteSlot(int slot)
+    {
+        long[] keys = this.table.keys;
+        ChunkClaims[] values = this.table.values;
+        int mask = values.length - 1;
+        int gap = slot;
+        for(int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            int home = mix(keys[i]) & mask;
+
+            //move the entry into the gap unless its home slot lies cyclically within (gap, i]
+            boolean homeBetween = gap <= i ? (gap < home && home <= i) : (gap < home || home <= i);
+            if(!homeBetween)
+            {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+
+        values[gap] = null;
+        keys[gap] = 0;
+        this.size--;
+    }
+
+    private void resize(int newCapacity)
+    {
+        long[] oldKeys = this.table.keys;
+        ChunkClaims[] oldValues = this.table.values;
+
+        Table newTable = new Table(newCapacity);
+        long[] newKeys = newTable.keys;
+        ChunkClaims[] newValues = newTable.values;
+        int mask = newCapacity - 1;
+        for(int j = 0; j < oldValues.length; j++)
+        {
+            if(oldValues[j] == null) continue;
+
+            int i = mix(oldKeys[j]) & mask;
+            while(newValues[i] != null) i = (i + 1) & mask;
+            newKeys[i] = oldKeys[j];
+            newValues[i] = oldValues[j];
+        }
+
+        this.table = newTable;
+    }
+}
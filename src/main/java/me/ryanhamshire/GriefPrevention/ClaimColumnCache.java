@@ -0,0 +1,59 @@
+package me.ryanhamshire.GriefPrevention;
+
+//remembers which claims contain recently looked up block columns (x, z) in one world
+//entries are stamped with the data store's claim generation, which changes whenever any claim is added, removed or reshaped,
+//so a stale entry is simply ignored rather than having to be found and removed
+//fixed size and direct mapped: a new entry overwrites whatever was in its slot
+class ClaimColumnCache
+{
+    private static final int SIZE = 8192;  //must be a power of two
+
+    //what's in a block column, regardless of height.  entries are immutable, so they can be shared between threads freely
+    static class Entry
+    {
+        final int x;
+        final int z;
+        final long generation;
+        final Claim topLevelClaim;  //null for unclaimed columns
+        final Claim subdivision;    //subdivision of topLevelClaim containing this column, if any
+
+        Entry(int x, int z, long generation, Claim topLevelClaim, Claim subdivision)
+        {
+            this.x = x;
+            this.z = z;
+            this.generation = generation;
+            this.topLevelClaim = topLevelClaim;
+            this.subdivision = subdivision;
+        }
+
+        //the claim at a particular height in this column, with the same rules as DataStore.getClaimAt()
+        Claim getClaim(int y, boolean ignoreHeight)
+        {
+            if(this.topLevelClaim == null) return null;
+            if(!ignoreHeight && y < this.topLevelClaim.lesserY) return null;
+            if(this.subdivision != null && (ignoreHeight || y >= this.subdivision.lesserY)) return this.subdivision;
+            return this.topLevelClaim;
+        }
+    }
+
+    private final Entry[] entries = new Entry[SIZE];
+
+    private static int slot(int x, int z)
+    {
+        int hash = x * 0x9E3779B1 + z * 0x85EBCA77;
+        return (hash ^ (hash >>> 16)) & (SIZE - 1);
+    }
+
+    //returns the cached entry for a column, or null if there isn't a current one
+    Entry get(int x, int z, long generation)
+    {
+        Entry entry = this.entries[slot(x, z)];
+        if(entry != null && entry.x == x && entry.z == z && entry.generation == generation) return entry;
+        return null;
+    }
+
+    void put(Entry entry)
+    {
+        this.entries[slot(entry.x, entry.z)] = entry;
+    }
+}
@@ -0,0 +1,649 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import com.google.common.io.Files;
+
+//writes claim files in the background, for FlatFileDataStore
+//saving a claim only takes a snapshot of it (on the calling thread, usually the main thread) and queues that up
+//rendering the YAML and touching the disk happen on the writer thread
+//saves of a claim which is still waiting to be written replace the waiting snapshot, so saving the same claim
+//many times in a row (for example trusting someone in all of a player's claims, or dragging a corner around) costs one write
+//optionally also keeps the binary snapshot of all claims (see ClaimSnapshotFile) up to date, once saves settle down
+//in journal mode, claim files aren't written at all.  instead, what changed about a claim since it was last written is appended to the
+//journal (see ClaimJournal), which is synced in batches and compacted into the snapshot in the background
+class ClaimFileWriter
+{
+    //everything which goes into a claim's file, captured at save time so the writer never looks at a live claim
+    static class Snapshot
+    {
+        final Long id;
+        final boolean delete;
+        final String lesserBoundaryCorner;
+        final String greaterBoundaryCorner;
+        final String ownerID;
+        final ArrayList<String> builders = new ArrayList<String>();
+        final ArrayList<String> containers = new ArrayList<String>();
+        final ArrayList<String> accessors = new ArrayList<String>();
+        final ArrayList<String> managers = new ArrayList<String>();
+        final Long parentID;
+        final boolean inheritNothing;
+        final long modifiedDate;
+        final long queuedAt = System.nanoTime();
+
+        Snapshot(DataStore dataStore, Claim claim, long modifiedDate)
+        {
+            this.id = claim.id;
+            this.delete = false;
+            this.lesserBoundaryCorner = dataStore.locationToString(claim.getLesserBoundaryCorner());
+            this.greaterBoundaryCorner = dataStore.locationToString(claim.getGreaterBoundaryCorner());
+            this.ownerID = claim.ownerID == null ? "" : claim.ownerID.toString();
+            claim.getPermissions(this.builders, this.containers, this.accessors, this.managers);
+            this.parentID = claim.parent == null ? -1L : claim.parent.id;
+            this.inheritNothing = claim.getSubclaimRestrictions();
+            this.modifiedDate = modifiedDate;
+        }
+
+        //a claim as it was read from storage, say because it isn't in memory since its world isn't loaded
+        Snapshot(Long id, FlatFileDataStore.ClaimFileContents contents)
+        {
+            this.id = id;
+            this.delete = false;
+            this.lesserBoundaryCorner = contents.lesserBoundaryCorner;
+            this.greaterBoundaryCorner = contents.greaterBoundaryCorner;
+            this.ownerID = contents.ownerIdentifier;
+            this.builders.addAll(contents.builders);
+            this.containers.addAll(contents.containers);
+            this.accessors.addAll(contents.accessors);
+            this.managers.addAll(contents.managers);
+            this.parentID = contents.parentID;
+            this.inheritNothing = contents.inheritNothing;
+            this.modifiedDate = contents.lastModifiedDate;
+        }
+
+        //a request to delete a claim's file (or database row, see DatabaseWriter)
+        Snapshot(Long id)
+        {
+            this.id = id;
+            this.delete = true;
+            this.lesserBoundaryCorner = null;
+            this.greaterBoundaryCorner = null;
+            this.ownerID = null;
+            this.parentID = null;
+            this.inheritNothing = false;
+            this.modifiedDate = 0;
+        }
+
+        String toYaml()
+        {
+            YamlConfiguration yaml = new YamlConfiguration();
+
+            //boundaries
+            yaml.set("Lesser Boundary Corner", this.lesserBoundaryCorner);
+            yaml.set("Greater Boundary Corner", this.greaterBoundaryCorner);
+
+            //owner
+            yaml.set("Owner", this.ownerID);
+
+            yaml.set("Builders", this.builders);
+            yaml.set("Containers", this.containers);
+            yaml.set("Accessors", this.accessors);
+            yaml.set("Managers", this.managers);
+
+            yaml.set("Parent Claim ID", this.parentID);
+
+            yaml.set("inheritNothing", this.inheritNothing);
+
+            return yaml.saveToString();
+        }
+
+        FlatFileDataStore.ClaimFileContents toContents()
+        {
+            FlatFileDataStore.ClaimFileContents contents = new FlatFileDataStore.ClaimFileContents();
+            contents.lesserBoundaryCorner = this.lesserBoundaryCorner;
+            contents.greaterBoundaryCorner = this.greaterBoundaryCorner;
+            contents.ownerIdentifier = this.ownerID;
+            contents.builders = new ArrayList<String>(this.builders);
+            contents.containers = new ArrayList<String>(this.containers);
+            contents.accessors = new ArrayList<String>(this.accessors);
+            contents.managers = new ArrayList<String>(this.managers);
+            contents.parentID = this.parentID;
+            contents.inheritNothing = this.inheritNothing;
+            contents.lastModifiedDate = this.modifiedDate;
+            return contents;
+        }
+    }
+
+    private final File folder;
+
+    //the latest snapshot of each claim waiting to be written, and the order claims were first queued in
+    private final ConcurrentHashMap<Long, Snapshot> pending = new ConcurrentHashMap<Long, Snapshot>();
+    private final LinkedBlockingQueue<Long> queue = new LinkedBlockingQueue<Long>();
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    //for the binary snapshot: the latest written state of every claim, and whether the snapshot on disk still matches the claim files
+    //only changed while holding this object's lock (the volatile ones are read without it, for /gpstats)
+    //nothing is snapshotted until the data store says which claims it has, see track()
+    private static final long SNAPSHOT_SETTLE_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private final File snapshotFile;  //null when the snapshot is disabled
+    private final HashMap<Long, Snapshot> claims = new HashMap<Long, Snapshot>();
+    private boolean tracking = false;
+    private volatile boolean snapshotOnDisk = false;
+    private boolean snapshotDirty = false;
+    private long lastChange = 0;
+    private volatile long snapshotsWritten = 0;
+    private volatile long lastSnapshotNanos = 0;
+
+    //journal mode.  compacts once the journal has grown this much and saves have settled, or regardless once it's grown a lot more
+    private static final long COMPACT_BYTES = 1024 * 1024;
+    private static final long FORCE_COMPACT_BYTES = 16 * COMPACT_BYTES;
+    private static final int MAX_UNSYNCED_RECORDS = 256;
+    private final ClaimJournal journal;  //null when not in journal mode
+    private boolean compactNeeded = false;  //set when a change couldn't be appended, so only a new snapshot has it.  only compact() clears it
+
+    //metrics, for /gpstats
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder queuedNanos = new LongAdder();
+    private final LongAccumulator maxWriteNanos = new LongAccumulator(Long::max, 0);
+
+    ClaimFileWriter(File folder, File snapshotFile, File journalFile)
+    {
+        this(folder, snapshotFile, journalFile == null ? null : new ClaimJournal(journalFile));
+    }
+
+    ClaimFileWriter(File folder, File snapshotFile, ClaimJournal journal)
+    {
+        this.folder = folder;
+        this.snapshotFile = snapshotFile;
+        this.journal = journal;
+        this.thread = new Thread(this::run, "GriefPrevention Claim Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    //queues a claim to be written.  the claim must already have an ID
+    void save(Snapshot snapshot)
+    {
+        this.saves.increment();
+        if(this.pending.put(snapshot.id, snapshot) == null)
+        {
+            this.queue.add(snapshot.id);
+        }
+
+        //after close(), there's nobody left to write in the background
+        if(this.closed) this.flush();
+    }
+
+    //queues a claim's file to be deleted, after any writes of that claim which are still waiting
+    void delete(Long claimID)
+    {
+        this.save(new Snapshot(claimID));
+    }
+
+    private void run()
+    {
+        while(!this.closed)
+        {
+            try
+            {
+                Long claimID = this.queue.poll(1, TimeUnit.SECONDS);
+                if(claimID != null)
+                {
+                    this.writePending(claimID);
+                }
+                else
+                {
+                    this.writeSnapshotIfSettled();
+                }
+            }
+            catch(InterruptedException e)
+            {
+                //close() interrupts to wake us up, it will write whatever's left
+            }
+        }
+    }
+
+    //synchronized so that a flush on another thread can't write an older snapshot of the same claim after a newer one
+    private synchronized void writePending(Long claimID)
+    {
+        //whichever snapshot is latest at this point is the one which counts
+        Snapshot snapshot = this.pending.remove(claimID);
+        if(snapshot != null) this.write(snapshot);
+    }
+
+    private void write(Snapshot snapshot)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            //in journal mode, only what changed is written.  until the data store is done loading there's no journal yet, so claim files
+            //are written as usual (the journal gets started with a snapshot of everything as soon as loading is done, see track())
+            if(this.journal != null && this.tracking)
+            {
+                this.appendToJournal(snapshot, start);
+            }
+            else
+            {
+                if(this.snapshotFile != null) this.claimChanged(snapshot, start);
+                this.writeClaimFile(snapshot);
+            }
+        }
+
+        //if any problem, log it
+        catch(Exception e)
+        {
+            StringWriter errors = new StringWriter();
+            e.printStackTrace(new PrintWriter(errors));
+            GriefPrevention.AddLogEntry(snapshot.id + " " + errors.toString(), CustomLogEntryTypes.Exception);
+        }
+
+        long end = System.nanoTime();
+        this.writes.increment();
+        this.writeNanos.add(end - start);
+        this.queuedNanos.add(end - snapshot.queuedAt);
+        this.maxWriteNanos.accumulate(end - start);
+    }
+
+    private void writeClaimFile(Snapshot snapshot) throws IOException
+    {
+        File claimFile = new File(this.folder, snapshot.id + ".yml");
+        if(snapshot.delete)
+        {
+            if(claimFile.exists() && !claimFile.delete())
+            {
+                GriefPrevention.AddLogEntry("Error: Unable to delete claim file \"" + claimFile.getAbsolutePath() + "\".");
+            }
+        }
+        else
+        {
+            Files.write(snapshot.toYaml().getBytes("UTF-8"), claimFile);
+        }
+    }
+
+    //writes these claims' files and deletes every other claim file, on the calling thread.  for leaving journal mode, when the snapshot
+    //and journal have claims the claim files don't (and claims deleted in journal mode still have their old files)
+    //throws if any claim file can't be written, in which case the snapshot and journal must be kept
+    synchronized void rewriteClaimFiles(Collection<Snapshot> claims) throws IOException
+    {
+        this.flush();
+
+        HashSet<Long> claimIDs = new HashSet<Long>();
+        for(Snapshot claim : claims)
+        {
+            claimIDs.add(claim.id);
+            this.writeClaimFile(claim);
+        }
+
+        for(File file : this.folder.listFiles())
+        {
+            String name = file.getName();
+            if(!name.endsWith(".yml")) continue;
+            try
+            {
+                if(!claimIDs.contains(Long.parseLong(name.substring(0, name.length() - 4)))) file.delete();
+            }
+            catch(NumberFormatException e) { }
+        }
+    }
+
+    //appends whatever changed about a claim since it was last written
+    private void appendToJournal(Snapshot snapshot, long now) throws IOException
+    {
+        Snapshot previous = this.claims.get(snapshot.id);
+
+        //whether or not the records make it to disk, the claim is remembered as it is now.  if they don't, compact as soon as possible
+        //(later appends which do make it don't have this change, so they don't make that unnecessary)
+        if(snapshot.delete)
+        {
+            this.claims.remove(snapshot.id);
+        }
+        else
+        {
+            this.claims.put(snapshot.id, snapshot);
+        }
+        this.snapshotDirty = true;
+        this.lastChange = now;
+
+        //a journal which can't be appended to anymore has to be replaced before anything else can go in it
+        if(this.journal.isBroken())
+        {
+            this.compactNeeded = true;
+            this.compact(this.journal.getGeneration() + 1);
+            return;
+        }
+
+        try
+        {
+            this.appendChanges(previous, snapshot);
+        }
+        catch(IOException | RuntimeException e)
+        {
+            this.compactNeeded = true;
+            if(this.journal.isBroken()) this.compact(this.journal.getGeneration() + 1);
+            throw e;
+        }
+
+        //sync in batches: when there's nothing else waiting to be written, or after enough records
+        if(this.queue.isEmpty() || this.journal.getUnsyncedRecords() >= MAX_UNSYNCED_RECORDS)
+        {
+            this.journal.sync();
+        }
+
+        //don't let the journal grow without limit while saves never settle down
+        if(this.journal.getRecordBytes() >= FORCE_COMPACT_BYTES)
+        {
+            this.compact(this.journal.getGeneration() + 1);
+        }
+    }
+
+    private void appendChanges(Snapshot previous, Snapshot snapshot) throws IOException
+    {
+        if(snapshot.delete)
+        {
+            if(previous != null)
+            {
+                this.journal.begin(ClaimJournal.DELETED, snapshot.id);
+                this.journal.end();
+            }
+        }
+        else if(previous == null || !previous.parentID.equals(snapshot.parentID))
+        {
+            ClaimSnapshotFile.writeClaim(this.journal.begin(ClaimJournal.CLAIM, snapshot.id), snapshot);
+            this.journal.end();
+        }
+        else
+        {
+            if(!previous.lesserBoundaryCorner.equals(snapshot.lesserBoundaryCorner) || !previous.greaterBoundaryCorner.equals(snapshot.greaterBoundaryCorner))
+            {
+                DataOutputStream record = this.journal.begin(ClaimJournal.BOUNDS, snapshot.id);
+                ClaimSnapshotFile.writeString(record, snapshot.lesserBoundaryCorner);
+                ClaimSnapshotFile.writeString(record, snapshot.greaterBoundaryCorner);
+                this.journal.end();
+            }
+
+            if(!previous.ownerID.equals(snapshot.ownerID))
+            {
+                ClaimSnapshotFile.writeString(this.journal.begin(ClaimJournal.OWNER, snapshot.id), snapshot.ownerID);
+                this.journal.end();
+            }
+
+            if(previous.inheritNothing != snapshot.inheritNothing)
+            {
+                this.journal.begin(ClaimJournal.RESTRICTIONS, snapshot.id).writeBoolean(snapshot.inheritNothing);
+                this.journal.end();
+            }
+
+            this.appendPermissionChanges(snapshot.id, ClaimJournal.BUILDERS, previous.builders, snapshot.builders);
+            this.appendPermissionChanges(snapshot.id, ClaimJournal.CONTAINERS, previous.containers, snapshot.containers);
+            this.appendPermissionChanges(snapshot.id, ClaimJournal.ACCESSORS, previous.accessors, snapshot.accessors);
+            this.appendPermissionChanges(snapshot.id, ClaimJournal.MANAGERS, previous.managers, snapshot.managers);
+        }
+    }
+
+    private void appendPermissionChanges(Long claimID, byte list, List<String> previous, List<String> current) throws IOException
+    {
+        HashSet<String> before = new HashSet<String>(previous);
+        HashSet<String> after = new HashSet<String>(current);
+        for(String identifier : before)
+        {
+            if(after.contains(identifier)) continue;
+
+            DataOutputStream record = this.journal.begin(ClaimJournal.PERMISSION_REMOVED, claimID);
+            record.writeByte(list);
+            ClaimSnapshotFile.writeString(record, identifier);
+            this.journal.end();
+        }
+
+        for(String identifier : after)
+        {
+            if(before.contains(identifier)) continue;
+
+            DataOutputStream record = this.journal.begin(ClaimJournal.PERMISSION_ADDED, claimID);
+            record.writeByte(list);
+            ClaimSnapshotFile.writeString(record, identifier);
+            this.journal.end();
+        }
+    }
+
+    //folds the journal into a new snapshot and starts an empty journal on top of it
+    private boolean compact(long generation)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            if(!this.journal.isBroken()) this.journal.sync();
+            ClaimSnapshotFile.write(this.snapshotFile, generation, this.claims.values());
+            this.journal.start(generation);
+            this.snapshotOnDisk = true;
+            this.snapshotDirty = false;
+            this.compactNeeded = false;
+            this.snapshotsWritten = this.snapshotsWritten + 1;
+            this.lastSnapshotNanos = System.nanoTime() - start;
+            return true;
+        }
+        catch(Exception e)
+        {
+            //no harm done, the journal is still there and still being appended to.  try again later
+            StringWriter errors = new StringWriter();
+            e.printStackTrace(new PrintWriter(errors));
+            GriefPrevention.AddLogEntry("Unable to compact the claim journal: " + errors.toString(), CustomLogEntryTypes.Exception);
+            return false;
+        }
+    }
+
+    //writes everything which is waiting, on the calling thread, and waits for a write in progress to finish
+    //goes by the pending snapshots rather than the queue, since the writer thread may have taken an ID off the queue without writing it yet
+    //the queue may be left with IDs which have nothing waiting anymore, the writer skips those
+    synchronized void flush()
+    {
+        for(Long claimID : this.pending.keySet())
+        {
+            this.writePending(claimID);
+        }
+    }
+
+    //stops the writer thread and writes everything which is waiting.  saves after this are written immediately
+    void close()
+    {
+        this.closed = true;
+        this.thread.interrupt();
+        try
+        {
+            this.thread.join(10000);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        this.flush();
+        synchronized(this)
+        {
+            if(this.journal != null && this.tracking)
+            {
+                if(this.compactNeeded) this.compact(this.journal.getGeneration() + 1);
+                try
+                {
+                    this.journal.close();
+                }
+                catch(IOException e)
+                {
+                    GriefPrevention.AddLogEntry("Unable to close the claim journal: " + e.getMessage(), CustomLogEntryTypes.Exception);
+                }
+            }
+            else if(this.snapshotDirty)
+            {
+                this.writeSnapshot();
+            }
+        }
+    }
+
+    //tells the writer which claims the data store has, once it's done loading.  from then on, the snapshot is kept up to date
+    //snapshotUpToDate is whether the snapshot on disk (if any) has exactly these claims, in which case there's nothing to write yet
+    //in journal mode, generation is the loaded snapshot's and journalLength is how much of its journal is good (0 if there's no journal
+    //for that snapshot).  the journal is carried on if the claims came from it, otherwise a new snapshot and journal are started (a snapshot
+    //and journal which couldn't be loaded were already moved aside by then, see FlatFileDataStore.loadClaimData(), so nothing is lost)
+    synchronized void track(Collection<Snapshot> claims, boolean snapshotUpToDate, long generation, long journalLength)
+    {
+        if(this.snapshotFile == null) return;
+
+        this.claims.clear();
+        for(Snapshot claim : claims)
+        {
+            this.claims.put(claim.id, claim);
+        }
+
+        this.snapshotOnDisk = snapshotUpToDate;
+        this.snapshotDirty = !snapshotUpToDate;
+        this.lastChange = System.nanoTime();
+
+        if(this.journal == null)
+        {
+            this.tracking = true;
+            return;
+        }
+
+        if(snapshotUpToDate && journalLength > 0)
+        {
+            try
+            {
+                this.journal.resume(generation, journalLength);
+                this.tracking = true;
+                return;
+            }
+            catch(IOException e)
+            {
+                GriefPrevention.AddLogEntry("Unable to reopen the claim journal, starting a new one: " + e.getMessage(), CustomLogEntryTypes.Exception);
+            }
+        }
+
+        //until the journal is started, changes keep going to claim files
+        this.tracking = this.compact(generation + 1);
+        if(!this.tracking)
+        {
+            GriefPrevention.AddLogEntry("Unable to start the claim journal, claim changes will be written to claim files instead.");
+        }
+    }
+
+    //the latest written state of a claim, when the snapshot or journal is on.  null if there's no such claim
+    //waits for any saves of the claim which haven't been written yet
+    synchronized Snapshot getTrackedClaim(Long claimID)
+    {
+        this.writePending(claimID);
+        return this.claims.get(claimID);
+    }
+
+    private void claimChanged(Snapshot snapshot, long now) throws IOException
+    {
+        //once any claim file changes, the snapshot on disk is out of date.  it must go before the claim file changes,
+        //or a crash in between would leave a snapshot which is believed on the next startup.  if it can't be deleted or at least
+        //moved out of the way, the claim file isn't written, so the snapshot still matches the claim files
+        if(this.snapshotOnDisk)
+        {
+            if(!this.snapshotFile.delete() && this.snapshotFile.exists())
+            {
+                File staleFile = new File(this.snapshotFile.getPath() + ".stale-" + System.currentTimeMillis());
+                if(!this.snapshotFile.renameTo(staleFile))
+                {
+                    throw new IOException("Unable to delete the claim snapshot \"" + this.snapshotFile.getAbsolutePath() + "\", so claim " + snapshot.id + " wasn't written.");
+                }
+                GriefPrevention.AddLogEntry("Unable to delete the claim snapshot, moved it to \"" + staleFile.getAbsolutePath() + "\" instead.");
+            }
+            this.snapshotOnDisk = false;
+        }
+
+        if(snapshot.delete)
+        {
+            this.claims.remove(snapshot.id);
+        }
+        else
+        {
+            this.claims.put(snapshot.id, snapshot);
+        }
+
+        this.snapshotDirty = true;
+        this.lastChange = now;
+    }
+
+    private synchronized void writeSnapshotIfSettled()
+    {
+        if(!this.snapshotDirty || System.nanoTime() - this.lastChange < SNAPSHOT_SETTLE_NANOS) return;
+
+        if(this.journal == null || !this.tracking)
+        {
+            this.writeSnapshot();
+        }
+        else if(this.compactNeeded || this.journal.getRecordBytes() >= COMPACT_BYTES)
+        {
+            this.compact(this.journal.getGeneration() + 1);
+        }
+    }
+
+    private void writeSnapshot()
+    {
+        if(!this.tracking) return;
+
+        long start = System.nanoTime();
+        try
+        {
+            ClaimSnapshotFile.write(this.snapshotFile, 0, this.claims.values());
+            this.snapshotOnDisk = true;
+            this.snapshotDirty = false;
+            this.snapshotsWritten = this.snapshotsWritten + 1;
+            this.lastSnapshotNanos = System.nanoTime() - start;
+        }
+        catch(Exception e)
+        {
+            //no harm done, the claim files are still there.  try again after the next change
+            StringWriter errors = new StringWriter();
+            e.printStackTrace(new PrintWriter(errors));
+            GriefPrevention.AddLogEntry("Unable to write the claim snapshot: " + errors.toString(), CustomLogEntryTypes.Exception);
+            this.snapshotDirty = false;
+        }
+    }
+
+    List<String> getStats()
+    {
+        List<String> stats = new ArrayList<String>();
+        long saves = this.saves.sum();
+        long writes = this.writes.sum();
+        stats.add("Claim saves: " + saves + " (" + writes + " files written, " + this.pending.size() + " waiting)");
+        if(writes > 0)
+        {
+            stats.add(String.format("Claim file writes: %.2fms average, %.2fms worst, %.2fms average from save to disk",
+                    this.writeNanos.sum() / 1000000.0 / writes, this.maxWriteNanos.get() / 1000000.0, this.queuedNanos.sum() / 1000000.0 / writes));
+        }
+
+        if(this.journal != null && this.tracking)
+        {
+            stats.addAll(this.journal.getStats());
+            stats.add(String.format("Claim journal compactions: %d (last took %.2fms)", this.snapshotsWritten, this.lastSnapshotNanos / 1000000.0));
+        }
+        else if(this.snapshotFile != null)
+        {
+            stats.add(String.format("Claim snapshot: %s, written %d times (last took %.2fms)",
+                    this.snapshotOnDisk ? "up to date" : "waiting for saves to settle", this.snapshotsWritten, this.lastSnapshotNanos / 1000000.0));
+        }
+
+        return stats;
+    }
+}
@@ -0,0 +1,155 @@
+package me.ryanhamshire.GriefPrevention;
+
+//maps claim IDs to claims, for top level claims and subdivisions alike
+//same layout as ClaimChunkIndex: primitive long keys in an open addressing table (linear probing),
+//swapped as a unit on resize so that optimistic readers never see keys and values from different tables
+class ClaimIdIndex
+{
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static class Table
+    {
+        final long[] keys;
+        final Claim[] values;  //null marks an empty slot
+
+        Table(int capacity)
+        {
+            this.keys = new long[capacity];
+            this.values = new Claim[capacity];
+        }
+    }
+
+    private Table table = new Table(INITIAL_CAPACITY);
+    private int size = 0;
+
+    //spreads IDs across the table, since they're usually sequential
+    private static int mix(long key)
+    {
+        key ^= (key >>> 33);
+        key *= 0xff51afd7ed558ccdL;
+        key ^= (key >>> 33);
+        return (int)key;
+    }
+
+    //number of claims in the index
+    int size()
+    {
+        return this.size;
+    }
+
+    //returns the claim with an ID, or null if there isn't one
+    Claim get(long id)
+    {
+        Table table = this.table;
+        long[] keys = table.keys;
+        Claim[] values = table.values;
+        int mask = values.length - 1;
+        for(int i = mix(id) & mask; ; i = (i + 1) & mask)
+        {
+            Claim value = values[i];
+            if(value == null) return null;
+            if(keys[i] == id) return value;
+        }
+    }
+
+    //adds a claim under its ID, replacing any claim already there
+    //claims without an ID yet are ignored
+    void put(Claim claim)
+    {
+        if(claim.id == null) return;
+
+        long id = claim.id;
+        long[] keys = this.table.keys;
+        Claim[] values = this.table.values;
+        int mask = values.length - 1;
+        int i = mix(id) & mask;
+        while(values[i] != null)
+        {
+            if(keys[i] == id)
+            {
+                values[i] = claim;
+                return;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        //new ID.  grow first if that would make the table more than half full
+        if((this.size + 1) * 2 > values.length)
+        {
+            this.resize(values.length * 2);
+            this.put(claim);
+            return;
+        }
+
+        keys[i] = id;
+        values[i] = claim;
+        this.size++;
+    }
+
+    //removes a claim, if it's the one indexed under its ID
+    void remove(Claim claim)
+    {
+        if(claim.id == null) return;
+
+        long id = claim.id;
+        long[] keys = this.table.keys;
+        Claim[] values = this.table.values;
+        int mask = values.length - 1;
+        for(int i = mix(id) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            if(keys[i] != id) continue;
+
+            if(values[i] == claim) this.deleteSlot(i);
+            return;
+        }
+    }
+
+    //empties a slot and shifts back any entries which probed past it, so no tombstones are needed
+    private void deleteSlot(int slot)
+    {
+        long[] keys = this.table.keys;
+        Claim[] values = this.table.values;
+        int mask = values.length - 1;
+        int gap = slot;
+        for(int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            int home = mix(keys[i]) & mask;
+
+            //move the entry into the gap unless its home slot lies cyclically within (gap, i]
+            boolean homeBetween = gap <= i ? (gap < home && home <= i) : (gap < home || home <= i);
+            if(!homeBetween)
+            {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+
+        values[gap] = null;
+        keys[gap] = 0;
+        this.size--;
+    }
+
+    private void resize(int newCapacity)
+    {
+        long[] oldKeys = this.table.keys;
+        Claim[] oldValues = this.table.values;
+
+        Table newTable = new Table(newCapacity);
+        long[] newKeys = newTable.keys;
+        Claim[] newValues = newTable.values;
+        int mask = newCapacity - 1;
+        for(int j = 0; j < oldValues.length; j++)
+        {
+            if(oldValues[j] == null) continue;
+
+            int i = mix(oldKeys[j]) & mask;
+            while(newValues[i] != null) i = (i + 1) & mask;
+            newKeys[i] = oldKeys[j];
+            newValues[i] = oldValues[j];
+        }
+
+        this.table = newTable;
+    }
+}
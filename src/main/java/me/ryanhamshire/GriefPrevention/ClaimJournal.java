@@ -0,0 +1,347 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+//an append-only log of changes to claims, for the file system data store's journal mode (see GriefPrevention.Advanced.ClaimJournal)
+//instead of rewriting a whole claim file when one thing about a claim changes, ClaimFileWriter appends a small record saying what changed
+//the journal sits on top of a base snapshot (see ClaimSnapshotFile) with the same generation.  loading reads the snapshot and replays the
+//journal over it, and compacting writes a new snapshot with the next generation and starts an empty journal for it
+//every record says what something is now rather than how it changed, so replaying a journal over a snapshot it was already folded
+//into (say, compaction wrote the snapshot but didn't get to start a new journal) ends up in the same place
+//layout: magic, format version, base generation, then records.  each record is its length, type, time, claim ID, what changed and a CRC32
+//a record which is cut off or fails its checksum (say, the server died mid-write) ends the journal, since nothing after it can be trusted
+class ClaimJournal
+{
+    private static final int MAGIC = 0x4750434A;  //"GPCJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    //record types
+    static final byte CLAIM = 1;                //a whole claim, for new claims and ones which changed parents
+    static final byte BOUNDS = 2;
+    static final byte OWNER = 3;
+    static final byte RESTRICTIONS = 4;         //subclaim permission inheritance
+    static final byte PERMISSION_ADDED = 5;
+    static final byte PERMISSION_REMOVED = 6;
+    static final byte DELETED = 7;
+
+    //which trust list a permission record is about
+    static final byte BUILDERS = 0;
+    static final byte CONTAINERS = 1;
+    static final byte ACCESSORS = 2;
+    static final byte MANAGERS = 3;
+
+    private final File file;
+    private FileChannel channel = null;
+    private volatile long generation;
+    private volatile long size = 0;  //where the last record which was appended in full ends
+    private int unsyncedRecords = 0;
+    private boolean broken = false;  //a record was cut off and couldn't be removed, so nothing more can be appended, see end()
+
+    //the record being put together, see begin() and end()
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(this.recordBytes);
+
+    //metrics, for /gpstats.  only changed by the writer thread
+    private volatile long records = 0;
+    private volatile long bytes = 0;
+    private volatile long syncs = 0;
+
+    ClaimJournal(File file)
+    {
+        this.file = file;
+    }
+
+    //starts a new, empty journal on top of the snapshot with this generation, replacing any journal there was
+    void start(long generation) throws IOException
+    {
+        File tempFile = new File(this.file.getPath() + ".tmp");
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(generation);
+        header.flip();
+        try(FileChannel tempChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while(header.hasRemaining()) tempChannel.write(header);
+            tempChannel.force(true);
+        }
+
+        //if the new journal can't replace the old one, carry on with the old one.  replaying it over the newer snapshot is harmless
+        long oldGeneration = this.generation;
+        long oldSize = this.size;
+        boolean wasOpen = this.channel != null;
+        this.close();
+        try
+        {
+            Files.move(tempFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch(IOException e)
+        {
+            if(wasOpen) this.open(oldGeneration, oldSize);
+            throw e;
+        }
+
+        this.open(generation, HEADER_SIZE);
+    }
+
+    //carries on appending to a journal which was just replayed, dropping anything after its last good record
+    void resume(long generation, long validLength) throws IOException
+    {
+        this.close();
+        this.open(generation, validLength);
+    }
+
+    private void open(long generation, long length) throws IOException
+    {
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.WRITE);
+        this.channel.truncate(length);
+        this.channel.position(length);
+        this.generation = generation;
+        this.size = length;
+        this.broken = false;
+    }
+
+    //whether the journal needs replacing (by a compaction) before anything more can be appended
+    boolean isBroken()
+    {
+        return this.broken;
+    }
+
+    long getGeneration()
+    {
+        return this.generation;
+    }
+
+    //bytes of records since the last compaction
+    long getRecordBytes()
+    {
+        return this.size - HEADER_SIZE;
+    }
+
+    //starts a record.  write what changed to the returned stream, then call end()
+    DataOutputStream begin(byte type, long claimID) throws IOException
+    {
+        this.recordBytes.reset();
+        this.record.writeByte(type);
+        this.record.writeLong(System.currentTimeMillis());
+        this.record.writeLong(claimID);
+        return this.record;
+    }
+
+    //appends the record started with begin().  it's only durable after the next sync()
+    //if it can't be appended in full (say, the disk is full), whatever part of it was written is cut off again, since replaying stops at a
+    //damaged record and would drop everything appended after it.  if even that fails, the journal is broken until it's replaced
+    void end() throws IOException
+    {
+        if(this.broken) throw new IOException("The claim journal has a damaged record at its end, it can't be appended to until it's compacted.");
+
+        this.record.flush();
+        byte [] recordBytes = this.recordBytes.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update(recordBytes);
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + recordBytes.length + 4);
+        buffer.putInt(recordBytes.length);
+        buffer.put(recordBytes);
+        buffer.putInt((int)checksum.getValue());
+        buffer.flip();
+        try
+        {
+            while(buffer.hasRemaining()) this.channel.write(buffer);
+        }
+        catch(IOException e)
+        {
+            try
+            {
+                this.channel.truncate(this.size);
+                this.channel.position(this.size);
+            }
+            catch(IOException truncateException)
+            {
+                this.broken = true;
+                e.addSuppressed(truncateException);
+            }
+            throw e;
+        }
+        this.size = this.size + buffer.limit();
+
+        this.unsyncedRecords++;
+        this.records = this.records + 1;
+        this.bytes = this.bytes + buffer.limit();
+    }
+
+    int getUnsyncedRecords()
+    {
+        return this.unsyncedRecords;
+    }
+
+    //makes everything appended so far durable.  called for batches of records rather than each one
+    void sync() throws IOException
+    {
+        if(this.unsyncedRecords == 0 || this.channel == null) return;
+
+        this.channel.force(false);
+        this.unsyncedRecords = 0;
+        this.syncs = this.syncs + 1;
+    }
+
+    void close() throws IOException
+    {
+        if(this.channel == null) return;
+
+        try
+        {
+            //a broken journal is about to be replaced, there's nothing in it worth syncing
+            if(!this.broken) this.sync();
+        }
+        finally
+        {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    List<String> getStats()
+    {
+        List<String> stats = new ArrayList<String>();
+        long records = this.records;
+        long syncs = this.syncs;
+        stats.add("Claim journal: " + records + " records (" + this.bytes + " bytes) in " + syncs + " syncs, " + this.getRecordBytes() + " bytes since the last compaction (generation " + this.generation + ")");
+        return stats;
+    }
+
+    //how a replay went
+    static class Replay
+    {
+        long generation;
+        long validLength;   //where the last good record ends
+        int records;        //how many records were applied
+        boolean damaged;    //whether there was anything after the last good record
+    }
+
+    //applies a journal to the claims from its base snapshot (or a later one)
+    //throws if the journal is newer than the snapshot (or isn't a journal), in which case the claims shouldn't be used
+    static Replay replay(File file, long snapshotGeneration, LinkedHashMap<Long, FlatFileDataStore.ClaimFileContents> claims) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if(size < HEADER_SIZE || size > Integer.MAX_VALUE) throw new IOException("Unexpected claim journal size: " + size);
+
+            //read into memory rather than mapped, so nothing keeps the file open afterward (on Windows, that would keep it from being
+            //replaced or moved aside)
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while(buffer.hasRemaining())
+            {
+                if(channel.read(buffer) < 0) break;
+            }
+            buffer.flip();
+            if(buffer.getInt() != MAGIC) throw new IOException("Not a claim journal.");
+            int version = buffer.getInt();
+            if(version != VERSION) throw new IOException("Unknown claim journal version " + version + ".");
+
+            Replay replay = new Replay();
+            replay.generation = buffer.getLong();
+
+            if(replay.generation > snapshotGeneration)
+            {
+                throw new IOException("The claim journal (generation " + replay.generation + ") is newer than its snapshot (generation " + snapshotGeneration + ").");
+            }
+
+            replay.validLength = HEADER_SIZE;
+            while(buffer.remaining() >= 4)
+            {
+                int length = buffer.getInt();
+                if(length < 17 || length + 4 > buffer.remaining()) break;
+
+                ByteBuffer recordBuffer = buffer.slice();
+                recordBuffer.limit(length);
+                CRC32 checksum = new CRC32();
+                checksum.update(recordBuffer.duplicate());
+                buffer.position(buffer.position() + length);
+                if((int)checksum.getValue() != buffer.getInt()) break;
+
+                apply(recordBuffer, claims);
+                replay.records++;
+                replay.validLength = buffer.position();
+            }
+
+            replay.damaged = replay.validLength != size;
+            return replay;
+        }
+    }
+
+    private static void apply(ByteBuffer record, LinkedHashMap<Long, FlatFileDataStore.ClaimFileContents> claims) throws IOException
+    {
+        byte type = record.get();
+        long time = record.getLong();
+        long claimID = record.getLong();
+
+        if(type == CLAIM)
+        {
+            claims.put(claimID, ClaimSnapshotFile.readClaim(record));
+            return;
+        }
+
+        if(type == DELETED)
+        {
+            claims.remove(claimID);
+            return;
+        }
+
+        //any other change is to an existing claim.  if it's not there, it was deleted later in a journal being replayed over a newer snapshot
+        FlatFileDataStore.ClaimFileContents claim = claims.get(claimID);
+        if(claim == null) return;
+        claim.lastModifiedDate = time;
+
+        if(type == BOUNDS)
+        {
+            claim.lesserBoundaryCorner = ClaimSnapshotFile.readString(record);
+            claim.greaterBoundaryCorner = ClaimSnapshotFile.readString(record);
+        }
+        else if(type == OWNER)
+        {
+            claim.ownerIdentifier = ClaimSnapshotFile.readString(record);
+        }
+        else if(type == RESTRICTIONS)
+        {
+            claim.inheritNothing = record.get() != 0;
+        }
+        else if(type == PERMISSION_ADDED || type == PERMISSION_REMOVED)
+        {
+            List<String> list = getList(claim, record.get());
+            String identifier = ClaimSnapshotFile.readString(record);
+            list.remove(identifier);
+            if(type == PERMISSION_ADDED) list.add(identifier);
+        }
+        else
+        {
+            throw new IOException("Unknown claim journal record type " + type + ".");
+        }
+    }
+
+    private static List<String> getList(FlatFileDataStore.ClaimFileContents claim, byte list) throws IOException
+    {
+        switch(list)
+        {
+            case BUILDERS: return claim.builders;
+            case CONTAINERS: return claim.containers;
+            case ACCESSORS: return claim.accessors;
+            case MANAGERS: return claim.managers;
+            default: throw new IOException("Unknown trust list " + list + " in the claim journal.");
+        }
+    }
+}
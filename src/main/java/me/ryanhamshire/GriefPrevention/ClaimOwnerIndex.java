@@ -0,0 +1,95 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.util.UUID;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+//top level claims grouped by owner, along with the total area each owner has claimed
+//admin claims (no owner) are grouped together under their own entry
+//the claim lists handed out here are live, so only this index may change them.  an owner's entry exists only while they own claims,
+//so looking up players who don't (say, everyone who logs in) doesn't grow the index
+class ClaimOwnerIndex
+{
+    private static class OwnedClaims
+    {
+        final Vector<Claim> claims = new Vector<Claim>();
+        volatile int totalArea = 0;
+    }
+
+    private final ConcurrentHashMap<UUID, OwnedClaims> claimsByOwner = new ConcurrentHashMap<UUID, OwnedClaims>();
+    private final OwnedClaims adminClaims = new OwnedClaims();
+
+    //null if the owner has no claims
+    private OwnedClaims getEntry(UUID ownerID)
+    {
+        if(ownerID == null) return this.adminClaims;
+        return this.claimsByOwner.get(ownerID);
+    }
+
+    //live list of an owner's top level claims, or an empty list if they have none.  null gets the admin claims
+    Vector<Claim> getClaims(UUID ownerID)
+    {
+        OwnedClaims entry = this.getEntry(ownerID);
+        return entry == null ? new Vector<Claim>() : entry.claims;
+    }
+
+    //total area of an owner's top level claims
+    int getTotalArea(UUID ownerID)
+    {
+        if(ownerID == null) return this.adminClaims.totalArea;
+
+        OwnedClaims entry = this.claimsByOwner.get(ownerID);
+        return entry == null ? 0 : entry.totalArea;
+    }
+
+    //adds a top level claim under its current owner
+    void add(Claim claim)
+    {
+        OwnedClaims entry = this.getEntry(claim.ownerID);
+        if(entry == null)
+        {
+            entry = new OwnedClaims();
+            OwnedClaims existing = this.claimsByOwner.putIfAbsent(claim.ownerID, entry);
+            if(existing != null) entry = existing;
+        }
+        if(entry.claims.contains(claim)) return;
+
+        entry.claims.add(claim);
+        entry.totalArea += claim.getArea();
+    }
+
+    //removes a top level claim from under its current owner
+    void remove(Claim claim)
+    {
+        OwnedClaims entry = this.getEntry(claim.ownerID);
+        if(entry == null) return;
+
+        for(int i = 0; i < entry.claims.size(); i++)
+        {
+            //match by ID as well as by reference, so stale copies of a claim can be cleaned up
+            Claim listed = entry.claims.get(i);
+            if(listed == claim || (claim.id != null && claim.id.equals(listed.id)))
+            {
+                entry.claims.remove(i);
+                entry.totalArea -= listed.getArea();
+                break;
+            }
+        }
+
+        //the owner's last claim is gone
+        if(claim.ownerID != null && entry.claims.isEmpty())
+        {
+            this.claimsByOwner.remove(claim.ownerID, entry);
+        }
+    }
+
+    //call after a listed claim's boundaries change, with its area from before the change
+    void updateArea(Claim claim, int oldArea)
+    {
+        OwnedClaims entry = this.getEntry(claim.ownerID);
+        if(entry != null && entry.claims.contains(claim))
+        {
+            entry.totalArea += claim.getArea() - oldArea;
+        }
+    }
+}
@@ -23,5 +23,12 @@ public enum ClaimPermission
 {
 	Build,
 	Inventory,
-	Access
+	Access;
+	
+	//whether this level also allows everything the other level does
+	//build trust includes container trust, which includes access trust
+	public boolean includes(ClaimPermission other)
+	{
+		return this.ordinal() <= other.ordinal();
+	}
 }
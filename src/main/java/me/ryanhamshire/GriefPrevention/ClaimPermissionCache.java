@@ -0,0 +1,109 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bukkit.entity.Player;
+
+//remembers recent permission check results (see Claim.allowBuild() and friends) per player, claim and kind of check
+//any change to a claim's trust, owner or inheritance invalidates everything through a generation counter, and
+//player specific changes (ignoreclaims, changing worlds, logging out) drop that player's results
+//Bukkit has no event for permission recalculation, so results also expire after a few seconds
+//a cached result is exactly what the check returned: null for allowed, otherwise the reason for the denial
+class ClaimPermissionCache
+{
+    //kinds of checks.  build checks for farmable materials get their own kind, since container trust is enough for those
+    static final int BUILD = 0;
+    static final int BUILD_FARMING = 1;
+    static final int CONTAINERS = 2;
+    static final int ACCESS = 3;
+
+    private static final long EXPIRATION_MILLISECONDS = 5000;
+    private static final int MAX_RESULTS_PER_PLAYER = 1024;
+
+    //computes a check's result on a cache miss
+    interface Check
+    {
+        DenialReason run();
+    }
+
+    private static class Result
+    {
+        final DenialReason reason;
+        final long generation;
+        final long expires;
+
+        Result(DenialReason reason, long generation, long expires)
+        {
+            this.reason = reason;
+            this.generation = generation;
+            this.expires = expires;
+        }
+    }
+
+    private final ConcurrentHashMap<UUID, ConcurrentHashMap<Long, Result>> resultsByPlayer = new ConcurrentHashMap<UUID, ConcurrentHashMap<Long, Result>>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    //returns the cached result of a check, or runs it and caches what it returns
+    DenialReason get(Player player, Claim claim, int kind, Check check)
+    {
+        //claims which aren't saved yet don't have an ID to cache under
+        if(!GriefPrevention.instance.config_claims_cachePermissionChecks || claim.id == null)
+        {
+            return check.run();
+        }
+
+        UUID playerID = player.getUniqueId();
+        ConcurrentHashMap<Long, Result> results = this.resultsByPlayer.get(playerID);
+        if(results == null)
+        {
+            results = new ConcurrentHashMap<Long, Result>();
+            ConcurrentHashMap<Long, Result> existing = this.resultsByPlayer.putIfAbsent(playerID, results);
+            if(existing != null) results = existing;
+        }
+
+        Long key = (claim.id << 2) | kind;
+        long now = System.currentTimeMillis();
+        long generation = this.generation.get();
+        Result result = results.get(key);
+        if(result != null && result.generation == generation && result.expires > now)
+        {
+            this.hits.increment();
+            return result.reason;
+        }
+
+        this.misses.increment();
+        DenialReason reason = check.run();
+
+        //don't let one player's results grow without limit, for example while flying over lots of claims
+        if(results.size() >= MAX_RESULTS_PER_PLAYER) results.clear();
+        results.put(key, new Result(reason, generation, now + EXPIRATION_MILLISECONDS));
+        return reason;
+    }
+
+    //call whenever anything about any claim's permissions changes
+    void invalidateAll()
+    {
+        this.generation.incrementAndGet();
+    }
+
+    //call whenever anything about a player's standing in claims changes (but not their trust, see above)
+    void invalidatePlayer(UUID playerID)
+    {
+        this.resultsByPlayer.remove(playerID);
+    }
+
+    long getHits()
+    {
+        return this.hits.sum();
+    }
+
+    long getMisses()
+    {
+        return this.misses.sum();
+    }
+}
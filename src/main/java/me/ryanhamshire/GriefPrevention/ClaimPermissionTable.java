@@ -0,0 +1,87 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.entity.Player;
+
+//a claim's trust list, compiled for fast permission checks
+//players are looked up by UUID, permission groups ("[some.node]" entries) are kept in a short list of their own,
+//and the public's level is pulled out up front.  the string keyed map in Claim stays the source of truth (it's what gets saved)
+//immutable - Claim builds a new table whenever its permissions change, so checks never see a half updated table
+class ClaimPermissionTable
+{
+    static final ClaimPermissionTable EMPTY = new ClaimPermissionTable(new HashMap<String, ClaimPermission>());
+
+    private final HashMap<UUID, ClaimPermission> playerLevels = new HashMap<UUID, ClaimPermission>();
+    private final String [] groupNodes;
+    private final ClaimPermission [] groupLevels;
+    final ClaimPermission publicLevel;  //null when the public has no trust here
+
+    ClaimPermissionTable(Map<String, ClaimPermission> permissions)
+    {
+        ArrayList<String> nodes = new ArrayList<String>();
+        ArrayList<ClaimPermission> levels = new ArrayList<ClaimPermission>();
+        ClaimPermission publicLevel = null;
+
+        for(Map.Entry<String, ClaimPermission> entry : permissions.entrySet())
+        {
+            String identifier = entry.getKey();
+            ClaimPermission level = entry.getValue();
+            if(identifier.equals("public"))
+            {
+                publicLevel = level;
+            }
+            else if(identifier.startsWith("[") && identifier.endsWith("]"))
+            {
+                //drop the brackets
+                String node = identifier.substring(1, identifier.length() - 1);
+                if(node.isEmpty()) continue;
+
+                nodes.add(node);
+                levels.add(level);
+            }
+            else
+            {
+                //anything else which isn't a UUID (very old, name based data) can never match a player
+                String playerID = identifier.toLowerCase();
+                if(!DataStore.uuidpattern.matcher(playerID).matches()) continue;
+
+                //the same player may be listed twice with different capitalization.  either entry grants permission
+                UUID uuid = UUID.fromString(playerID);
+                ClaimPermission existing = this.playerLevels.get(uuid);
+                if(existing == null || level.includes(existing))
+                {
+                    this.playerLevels.put(uuid, level);
+                }
+            }
+        }
+
+        this.groupNodes = nodes.toArray(new String[nodes.size()]);
+        this.groupLevels = levels.toArray(new ClaimPermission[levels.size()]);
+        this.publicLevel = publicLevel;
+    }
+
+    //whether a player has been explicitly trusted (by UUID or through a permission group) with at least a certain level
+    boolean hasExplicitPermission(Player player, ClaimPermission level)
+    {
+        ClaimPermission playerLevel = this.playerLevels.get(player.getUniqueId());
+        if(playerLevel != null && playerLevel.includes(level)) return true;
+
+        //only ask about permission nodes which would actually grant enough
+        for(int i = 0; i < this.groupNodes.length; i++)
+        {
+            if(this.groupLevels[i].includes(level) && player.hasPermission(this.groupNodes[i])) return true;
+        }
+
+        return false;
+    }
+
+    //whether everyone has been trusted with at least a certain level
+    boolean hasPublicPermission(ClaimPermission level)
+    {
+        return this.publicLevel != null && this.publicLevel.includes(level);
+    }
+}
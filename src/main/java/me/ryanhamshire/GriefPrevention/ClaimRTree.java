@@ -0,0 +1,401 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+//R-tree over the (x, z) rectangles of the top level claims in a single world
+//used to answer "which claims touch this area" without looking at every claim on the server
+//claim bounds are read when a claim is inserted, so a claim must be removed BEFORE its boundaries change
+//and inserted again afterwards
+class ClaimRTree
+{
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = 6;
+
+    //a node holds up to MAX_ENTRIES rectangles, plus one spare slot used while splitting
+    //entries are child nodes for branches, and claims for leaves
+    private static class Node
+    {
+        final boolean leaf;
+        Node parent = null;
+        int count = 0;
+        final int[] minX = new int[MAX_ENTRIES + 1];
+        final int[] minZ = new int[MAX_ENTRIES + 1];
+        final int[] maxX = new int[MAX_ENTRIES + 1];
+        final int[] maxZ = new int[MAX_ENTRIES + 1];
+        final Object[] entries = new Object[MAX_ENTRIES + 1];
+
+        Node(boolean leaf)
+        {
+            this.leaf = leaf;
+        }
+
+        void add(Object entry, int minX, int minZ, int maxX, int maxZ)
+        {
+            this.minX[this.count] = minX;
+            this.minZ[this.count] = minZ;
+            this.maxX[this.count] = maxX;
+            this.maxZ[this.count] = maxZ;
+            this.entries[this.count] = entry;
+            if(entry instanceof Node) ((Node)entry).parent = this;
+            this.count++;
+        }
+
+        void removeAt(int i)
+        {
+            int last = this.count - 1;
+            this.minX[i] = this.minX[last];
+            this.minZ[i] = this.minZ[last];
+            this.maxX[i] = this.maxX[last];
+            this.maxZ[i] = this.maxZ[last];
+            this.entries[i] = this.entries[last];
+            this.entries[last] = null;
+            this.count--;
+        }
+
+        int indexOf(Object entry)
+        {
+            for(int i = 0; i < this.count; i++)
+            {
+                if(this.entries[i] == entry) return i;
+            }
+
+            return -1;
+        }
+    }
+
+    private Node root = new Node(true);
+    private int size = 0;
+
+    //number of claims in the tree
+    int size()
+    {
+        return this.size;
+    }
+
+    void insert(Claim claim)
+    {
+        int minX = claim.lesserX;
+        int minZ = claim.lesserZ;
+        int maxX = claim.greaterX;
+        int maxZ = claim.greaterZ;
+
+        Node leaf = this.chooseLeaf(minX, minZ, maxX, maxZ);
+        leaf.add(claim, minX, minZ, maxX, maxZ);
+        this.size++;
+        this.adjustTree(leaf);
+    }
+
+    //removes a claim, using the boundaries it had when it was inserted
+    //returns false if the claim wasn't found
+    boolean remove(Claim claim)
+    {
+        int minX = claim.lesserX;
+        int minZ = claim.lesserZ;
+        int maxX = claim.greaterX;
+        int maxZ = claim.greaterZ;
+
+        Node leaf = this.findLeaf(this.root, claim, minX, minZ, maxX, maxZ);
+
+        //defensive coding: if the claim was changed without being removed first, look everywhere
+        if(leaf == null) leaf = this.findLeaf(this.root, claim, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        if(leaf == null) return false;
+
+        leaf.removeAt(leaf.indexOf(claim));
+        this.size--;
+        this.condenseTree(leaf);
+        return true;
+    }
+
+    //adds every claim whose rectangle intersects the given area (bounds inclusive) to the results
+    void search(int minX, int minZ, int maxX, int maxZ, Collection<Claim> results)
+    {
+        ArrayList<Node> pending = new ArrayList<Node>();
+        pending.add(this.root);
+        while(!pending.isEmpty())
+        {
+            Node node = pending.remove(pending.size() - 1);
+            for(int i = 0; i < node.count; i++)
+            {
+                if(node.minX[i] > maxX || node.maxX[i] < minX || node.minZ[i] > maxZ || node.maxZ[i] < minZ) continue;
+
+                if(node.leaf)
+                {
+                    results.add((Claim)node.entries[i]);
+                }
+                else
+                {
+                    pending.add((Node)node.entries[i]);
+                }
+            }
+        }
+    }
+
+    //adds every claim in the tree to the results
+    void getAll(Collection<Claim> results)
+    {
+        this.search(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, results);
+    }
+
+    private static long area(int minX, int minZ, int maxX, int maxZ)
+    {
+        return ((long)maxX - minX + 1) * ((long)maxZ - minZ + 1);
+    }
+
+    //how much a node entry's rectangle would grow to also cover another rectangle
+    private static long enlargement(Node node, int i, int minX, int minZ, int maxX, int maxZ)
+    {
+        long combined = area(Math.min(node.minX[i], minX), Math.min(node.minZ[i], minZ), Math.max(node.maxX[i], maxX), Math.max(node.maxZ[i], maxZ));
+        return combined - area(node.minX[i], node.minZ[i], node.maxX[i], node.maxZ[i]);
+    }
+
+    private Node chooseLeaf(int minX, int minZ, int maxX, int maxZ)
+    {
+        Node node = this.root;
+        while(!node.leaf)
+        {
+            int best = 0;
+            long bestEnlargement = Long.MAX_VALUE;
+            long bestArea = Long.MAX_VALUE;
+            for(int i = 0; i < node.count; i++)
+            {
+                long enlargement = enlargement(node, i, minX, minZ, maxX, maxZ);
+                long area = area(node.minX[i], node.minZ[i], node.maxX[i], node.maxZ[i]);
+                if(enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea))
+                {
+                    best = i;
+                    bestEnlargement = enlargement;
+                    bestArea = area;
+                }
+            }
+
+            node = (Node)node.entries[best];
+        }
+
+        return node;
+    }
+
+    private Node findLeaf(Node node, Claim claim, int minX, int minZ, int maxX, int maxZ)
+    {
+        for(int i = 0; i < node.count; i++)
+        {
+            if(node.leaf)
+            {
+                if(node.entries[i] == claim) return node;
+            }
+            else if(node.minX[i] <= minX && node.minZ[i] <= minZ && node.maxX[i] >= maxX && node.maxZ[i] >= maxZ
+                    || minX == Integer.MIN_VALUE)
+            {
+                Node leaf = this.findLeaf((Node)node.entries[i], claim, minX, minZ, maxX, maxZ);
+                if(leaf != null) return leaf;
+            }
+        }
+
+        return null;
+    }
+
+    //after adding to a node, split it if it's overfull and refresh bounding rectangles all the way to the root
+    private void adjustTree(Node node)
+    {
+        while(node != null)
+        {
+            Node sibling = null;
+            if(node.count > MAX_ENTRIES)
+            {
+                sibling = this.split(node);
+            }
+
+            Node parent = node.parent;
+            if(parent == null)
+            {
+                //splitting the root grows the tree by one level
+                if(sibling != null)
+                {
+                    Node newRoot = new Node(false);
+                    this.addChild(newRoot, node);
+                    this.addChild(newRoot, sibling);
+                    this.root = newRoot;
+                }
+
+                return;
+            }
+
+            this.refreshBounds(parent, parent.indexOf(node));
+            if(sibling != null)
+            {
+                this.addChild(parent, sibling);
+            }
+
+            node = parent;
+        }
+    }
+
+    //after removing from a node, dissolve any underfull nodes on the way up, then reinsert their claims
+    private void condenseTree(Node node)
+    {
+        ArrayList<Claim> orphans = new ArrayList<Claim>();
+        while(node != this.root)
+        {
+            Node parent = node.parent;
+            int index = parent.indexOf(node);
+            if(node.count < MIN_ENTRIES)
+            {
+                parent.removeAt(index);
+                this.collectClaims(node, orphans);
+            }
+            else
+            {
+                this.refreshBounds(parent, index);
+            }
+
+            node = parent;
+        }
+
+        //a branch root with only one child is pointless, so shorten the tree
+        while(!this.root.leaf && this.root.count == 1)
+        {
+            this.root = (Node)this.root.entries[0];
+            this.root.parent = null;
+        }
+
+        if(!this.root.leaf && this.root.count == 0)
+        {
+            this.root = new Node(true);
+        }
+
+        for(Claim orphan : orphans)
+        {
+            this.size--;
+            this.insert(orphan);
+        }
+    }
+
+    private void collectClaims(Node node, ArrayList<Claim> results)
+    {
+        for(int i = 0; i < node.count; i++)
+        {
+            if(node.leaf)
+            {
+                results.add((Claim)node.entries[i]);
+            }
+            else
+            {
+                this.collectClaims((Node)node.entries[i], results);
+            }
+        }
+    }
+
+    private void addChild(Node parent, Node child)
+    {
+        int[] bounds = this.bounds(child);
+        parent.add(child, bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    //recomputes the rectangle stored in a parent for one of its children
+    private void refreshBounds(Node parent, int index)
+    {
+        int[] bounds = this.bounds((Node)parent.entries[index]);
+        parent.minX[index] = bounds[0];
+        parent.minZ[index] = bounds[1];
+        parent.maxX[index] = bounds[2];
+        parent.maxZ[index] = bounds[3];
+    }
+
+    private int[] bounds(Node node)
+    {
+        int[] bounds = new int[] { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+        for(int i = 0; i < node.count; i++)
+        {
+            bounds[0] = Math.min(bounds[0], node.minX[i]);
+            bounds[1] = Math.min(bounds[1], node.minZ[i]);
+            bounds[2] = Math.max(bounds[2], node.maxX[i]);
+            bounds[3] = Math.max(bounds[3], node.maxZ[i]);
+        }
+
+        return bounds;
+    }
+
+    //quadratic split.  moves roughly half of an overfull node's entries into a new sibling node, which is returned
+    private Node split(Node node)
+    {
+        int total = node.count;
+        int[] minX = node.minX.clone();
+        int[] minZ = node.minZ.clone();
+        int[] maxX = node.maxX.clone();
+        int[] maxZ = node.maxZ.clone();
+        Object[] entries = node.entries.clone();
+
+        //pick the two entries which would waste the most space if grouped together
+        int seedA = 0, seedB = 1;
+        long worstWaste = Long.MIN_VALUE;
+        for(int i = 0; i < total; i++)
+        {
+            for(int j = i + 1; j < total; j++)
+            {
+                long waste = area(Math.min(minX[i], minX[j]), Math.min(minZ[i], minZ[j]), Math.max(maxX[i], maxX[j]), Math.max(maxZ[i], maxZ[j]))
+                        - area(minX[i], minZ[i], maxX[i], maxZ[i]) - area(minX[j], minZ[j], maxX[j], maxZ[j]);
+                if(waste > worstWaste)
+                {
+                    worstWaste = waste;
+                    seedA = i;
+                    seedB = j;
+                }
+            }
+        }
+
+        //reset the original node, which becomes group A
+        for(int i = 0; i < total; i++) node.entries[i] = null;
+        node.count = 0;
+        Node sibling = new Node(node.leaf);
+        node.add(entries[seedA], minX[seedA], minZ[seedA], maxX[seedA], maxZ[seedA]);
+        sibling.add(entries[seedB], minX[seedB], minZ[seedB], maxX[seedB], maxZ[seedB]);
+
+        boolean[] assigned = new boolean[total];
+        assigned[seedA] = true;
+        assigned[seedB] = true;
+        int remaining = total - 2;
+
+        while(remaining > 0)
+        {
+            //if one group needs every remaining entry to reach the minimum, give them all to it
+            Node forced = null;
+            if(node.count + remaining == MIN_ENTRIES) forced = node;
+            else if(sibling.count + remaining == MIN_ENTRIES) forced = sibling;
+
+            int[] boundsA = this.bounds(node);
+            int[] boundsB = this.bounds(sibling);
+
+            //otherwise pick the entry with the strongest preference for one group
+            int next = -1;
+            long bestDifference = -1;
+            long nextGrowthA = 0, nextGrowthB = 0;
+            for(int i = 0; i < total; i++)
+            {
+                if(assigned[i]) continue;
+                long growthA = area(Math.min(boundsA[0], minX[i]), Math.min(boundsA[1], minZ[i]), Math.max(boundsA[2], maxX[i]), Math.max(boundsA[3], maxZ[i])) - area(boundsA[0], boundsA[1], boundsA[2], boundsA[3]);
+                long growthB = area(Math.min(boundsB[0], minX[i]), Math.min(boundsB[1], minZ[i]), Math.max(boundsB[2], maxX[i]), Math.max(boundsB[3], maxZ[i])) - area(boundsB[0], boundsB[1], boundsB[2], boundsB[3]);
+                long difference = Math.abs(growthA - growthB);
+                if(difference > bestDifference)
+                {
+                    bestDifference = difference;
+                    next = i;
+                    nextGrowthA = growthA;
+                    nextGrowthB = growthB;
+                }
+            }
+
+            Node target = forced;
+            if(target == null)
+            {
+                if(nextGrowthA != nextGrowthB) target = nextGrowthA < nextGrowthB ? node : sibling;
+                else target = node.count <= sibling.count ? node : sibling;
+            }
+
+            target.add(entries[next], minX[next], minZ[next], maxX[next], maxZ[next]);
+            assigned[next] = true;
+            remaining--;
+        }
+
+        return sibling;
+    }
+}
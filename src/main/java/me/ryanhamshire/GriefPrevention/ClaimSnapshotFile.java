@@ -0,0 +1,196 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+//every claim in one binary file, so the file system data store can start up without parsing a YAML file per claim
+//optional (see GriefPrevention.Advanced.BinaryClaimSnapshot).  the per claim YAML files are always written and stay the real data -
+//ClaimFileWriter deletes this file before the first claim file it writes after it, and writes a new one once saves settle down
+//so if this file exists, it matches the claim files.  if it's unreadable or its checksum is wrong, the claim files are loaded instead
+//(so anyone editing claim files by hand while the server is down needs to delete it)
+//in journal mode (see ClaimJournal), this file is the journal's base instead, and the claim files aren't kept up to date
+//layout: magic, format version, generation, claim count, one length-prefixed record per claim, then a CRC32 of everything before it
+//the generation counts compactions of the journal into the snapshot, so the journal can tell whether it's been folded in already
+class ClaimSnapshotFile
+{
+    private static final int MAGIC = 0x47504353;  //"GPCS"
+    private static final int VERSION = 2;  //version 1 had no generation
+
+    //what's in a snapshot
+    static class Contents
+    {
+        long generation;
+        LinkedHashMap<Long, FlatFileDataStore.ClaimFileContents> claims;
+    }
+
+    //writes a new snapshot next to the old one, then swaps it in, so a crash while writing leaves no half written snapshot
+    static void write(File file, long generation, Collection<ClaimFileWriter.Snapshot> claims) throws IOException
+    {
+        File tempFile = new File(file.getPath() + ".tmp");
+        CRC32 checksum = new CRC32();
+        try(FileOutputStream fileStream = new FileOutputStream(tempFile))
+        {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileStream, 65536), checksum));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.writeInt(claims.size());
+
+            //each record is put together on the side, so its length can be written before it
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+            DataOutputStream record = new DataOutputStream(recordBytes);
+            for(ClaimFileWriter.Snapshot claim : claims)
+            {
+                recordBytes.reset();
+                record.writeLong(claim.id);
+                writeClaim(record, claim);
+                record.flush();
+
+                out.writeInt(recordBytes.size());
+                recordBytes.writeTo(out);
+            }
+
+            //the checksum covers everything written so far, so it's written around the checked stream
+            out.flush();
+            DataOutputStream trailer = new DataOutputStream(fileStream);
+            trailer.writeLong(checksum.getValue());
+            trailer.flush();
+            fileStream.getFD().sync();
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //reads every claim in a snapshot, by claim ID in the order they were written
+    //throws if the file is damaged in any way, in which case nothing read from it should be used
+    //read into memory rather than mapped, since a mapping keeps the file from being deleted or renamed on Windows until it's garbage collected
+    static Contents read(File file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if(size < 20 || size > Integer.MAX_VALUE) throw new IOException("Unexpected claim snapshot size: " + size);
+
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while(buffer.hasRemaining())
+            {
+                if(channel.read(buffer) < 0) throw new IOException("The claim snapshot got shorter while reading it.");
+            }
+            buffer.flip();
+
+            //check the whole file before believing any of it
+            ByteBuffer checked = buffer.duplicate();
+            checked.limit((int)size - 8);
+            CRC32 checksum = new CRC32();
+            checksum.update(checked);
+            if(checksum.getValue() != buffer.getLong((int)size - 8)) throw new IOException("Claim snapshot checksum mismatch.");
+
+            if(buffer.getInt() != MAGIC) throw new IOException("Not a claim snapshot.");
+            int version = buffer.getInt();
+            if(version != 1 && version != VERSION) throw new IOException("Unknown claim snapshot version " + version + ".");
+
+            Contents contents = new Contents();
+            contents.generation = version == 1 ? 0 : buffer.getLong();
+            int count = buffer.getInt();
+            LinkedHashMap<Long, FlatFileDataStore.ClaimFileContents> claims = new LinkedHashMap<Long, FlatFileDataStore.ClaimFileContents>(count * 2);
+            for(int i = 0; i < count; i++)
+            {
+                int length = buffer.getInt();
+                int end = buffer.position() + length;
+
+                long claimID = buffer.getLong();
+                FlatFileDataStore.ClaimFileContents claim = readClaim(buffer);
+
+                if(buffer.position() != end) throw new IOException("Claim snapshot record " + claimID + " has the wrong length.");
+                claims.put(claimID, claim);
+            }
+
+            if(buffer.position() != size - 8) throw new IOException("Unexpected data at the end of the claim snapshot.");
+
+            contents.claims = claims;
+            return contents;
+        }
+    }
+
+    //everything about a claim except its ID.  shared with ClaimJournal
+    static void writeClaim(DataOutputStream out, ClaimFileWriter.Snapshot claim) throws IOException
+    {
+        out.writeLong(claim.parentID);
+        out.writeLong(claim.modifiedDate);
+        out.writeBoolean(claim.inheritNothing);
+        writeString(out, claim.lesserBoundaryCorner);
+        writeString(out, claim.greaterBoundaryCorner);
+        writeString(out, claim.ownerID);
+        writeStrings(out, claim.builders);
+        writeStrings(out, claim.containers);
+        writeStrings(out, claim.accessors);
+        writeStrings(out, claim.managers);
+    }
+
+    static FlatFileDataStore.ClaimFileContents readClaim(ByteBuffer buffer)
+    {
+        FlatFileDataStore.ClaimFileContents claim = new FlatFileDataStore.ClaimFileContents();
+        claim.parentID = buffer.getLong();
+        claim.lastModifiedDate = buffer.getLong();
+        claim.inheritNothing = buffer.get() != 0;
+        claim.lesserBoundaryCorner = readString(buffer);
+        claim.greaterBoundaryCorner = readString(buffer);
+        claim.ownerIdentifier = readString(buffer);
+        claim.builders = readStrings(buffer);
+        claim.containers = readStrings(buffer);
+        claim.accessors = readStrings(buffer);
+        claim.managers = readStrings(buffer);
+        return claim;
+    }
+
+    static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        byte [] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException
+    {
+        out.writeInt(strings.size());
+        for(String string : strings)
+        {
+            writeString(out, string);
+        }
+    }
+
+    static String readString(ByteBuffer buffer)
+    {
+        byte [] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer)
+    {
+        int count = buffer.getInt();
+        List<String> strings = new ArrayList<String>(count);
+        for(int i = 0; i < count; i++)
+        {
+            strings.add(readString(buffer));
+        }
+
+        return strings;
+    }
+}
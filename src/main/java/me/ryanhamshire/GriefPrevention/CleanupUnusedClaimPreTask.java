@@ -21,6 +21,7 @@
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 
+import java.util.ArrayList;
 import java.util.UUID;
 
 //asynchronously loads player data without caching it in the datastore, then
@@ -59,13 +60,10 @@ class CleanupUnusedClaimPreTask implements Runnable
 
         Claim claimToExpire = null;
 
-	    for (Claim claim : GriefPrevention.instance.dataStore.getClaims())
+	    for (Claim claim : new ArrayList<Claim>(GriefPrevention.instance.dataStore.getClaimsOwnedBy(ownerID)))
 		{
-			if (ownerID.equals(claim.ownerID))
-			{
-				claimToExpire = claim;
-				break;
-			}
+			claimToExpire = claim;
+			break;
 		}
 
 		if (claimToExpire == null)
@@ -26,4 +26,7 @@ public class CreateClaimResult
 	//when succeeded, this is a reference to the new claim
 	//when failed, this is a reference to the pre-existing, conflicting claim
 	public Claim claim;
+	
+	//when failed, whether it's because the world's claims are still being loaded, so overlaps couldn't be checked.  claim is null then
+	public boolean claimsLoading;
 }
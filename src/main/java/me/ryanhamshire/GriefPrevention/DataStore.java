@@ -44,8 +44,11 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
@@ -56,10 +59,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
 import java.util.regex.Pattern;
 
 //singleton class which manages all GriefPrevention data (except for config options)
+//threading: claim lookups (getClaimAt, getClaim, getClaims by chunk, getClaimsIntersecting, getClaimsSnapshot),
+//getPlayerData and getMessage take no monitor and are safe to call from any thread.
+//point lookups (getClaimAt, getClaim) first try an optimistic read stamp, and only wait on the read lock if a claim changed meanwhile.
+//everything else, including all claim changes (addClaim, deleteClaim, resizeClaim, changeClaimOwner, extendClaim,
+//createClaim) and the live getClaims() view, must be used from the main server thread.
+//claim changes take the write lock only while updating the in-memory indexes, never around storage or events
 public abstract class DataStore 
 {
 
@@ -71,7 +83,51 @@ public abstract class DataStore
 	
 	//in-memory cache for claim data
 	ArrayList<Claim> claims = new ArrayList<Claim>();
-	ConcurrentHashMap<Long, ArrayList<Claim>> chunksToClaimsMap = new ConcurrentHashMap<Long, ArrayList<Claim>>();
+	
+	//top level claims by chunk, one index per world (keyed by world UID)
+	private final ConcurrentHashMap<UUID, ClaimChunkIndex> chunkIndexes = new ConcurrentHashMap<UUID, ClaimChunkIndex>();
+	
+	//top level claims and subdivisions by claim ID
+	private final ClaimIdIndex claimIdIndex = new ClaimIdIndex();
+	
+	//top level claims by owner, with each owner's total claimed area
+	private final ClaimOwnerIndex ownerIndex = new ClaimOwnerIndex();
+	
+	//top level claims by area, one R-tree per world (keyed by world UID)
+	private final ConcurrentHashMap<UUID, ClaimRTree> claimTrees = new ConcurrentHashMap<UUID, ClaimRTree>();
+	
+	//how many claim lookups were answered by each chunk coverage class, see ClaimChunkIndex.ChunkClaims
+	private final LongAdder unclaimedChunkLookups = new LongAdder();
+	private final LongAdder fullChunkLookups = new LongAdder();
+	private final LongAdder boundaryChunkLookups = new LongAdder();
+	
+	//recently looked up block columns, one cache per world (keyed by world UID), see ClaimColumnCache
+	private final ConcurrentHashMap<UUID, ClaimColumnCache> columnCaches = new ConcurrentHashMap<UUID, ClaimColumnCache>();
+	private final LongAdder columnCacheHits = new LongAdder();
+	
+	//changes whenever any claim is added, removed or reshaped, which invalidates every column cache entry at once
+	//only changed at the END of a write locked section (see claimsChanged()), so an entry stamped with the current
+	//generation can't have been worked out from a half finished change
+	private volatile long claimGeneration = 0;
+	
+	//recent permission check results, see Claim.allowBuild() etc.
+	final ClaimPermissionCache permissionCache = new ClaimPermissionCache();
+	
+	//names (lower case) of the worlds whose claims are in memory.  claims in any other world stay in secondary storage until
+	//that world loads, see loadClaimsInWorld() and WorldEventHandler
+	private final Set<String> worldsWithClaims = ConcurrentHashMap.newKeySet();
+	
+	//worlds whose claims are being read from secondary storage.  no claims can be created in them until that's done, since they could
+	//overlap claims which aren't in memory yet
+	private final Set<String> worldsLoadingClaims = ConcurrentHashMap.newKeySet();
+	
+	//how many top level claims each player has in worlds which aren't loaded, and their total area, by world name (lower case) and then
+	//owner.  those claims still count toward their owners' claim limits and claim blocks, see getClaimedArea() and getClaimCount()
+	private final ConcurrentHashMap<String, ConcurrentHashMap<UUID, int []>> unloadedClaimTotals = new ConcurrentHashMap<String, ConcurrentHashMap<UUID, int []>>();
+	
+	//guards the in-memory claim collections above, plus claim boundaries, owners and parent/child links
+	//not reentrant - never look up claims while holding the write lock
+	private final StampedLock claimLock = new StampedLock();
 	
 	//in-memory cache for messages
 	private String [] messages;
@@ -82,6 +138,11 @@ public abstract class DataStore
 	//next claim ID
 	Long nextClaimID = (long)0;
 	
+	//claim IDs are handed out from memory, out of a block reserved in storage with one write.  storage holds the end of the block
+	//after a crash, whatever was left of the block is skipped, which is harmless
+	static final long CLAIM_ID_BLOCK_SIZE = 1000;
+	long reservedClaimIDs = 0;  //what storage says the next claim ID is
+	
 	//path information, for where stuff stored on disk is well...  stored
 	protected final static String dataLayerFolderPath = "plugins" + File.separator + "GriefPreventionData";
 	final static String playerDataFolderPath = dataLayerFolderPath + File.separator + "PlayerData";
@@ -91,7 +152,7 @@ public abstract class DataStore
 	final static String bannedWordsFilePath = dataLayerFolderPath + File.separator + "bannedWords.txt";
 
     //the latest version of the data schema implemented here
-	protected static final int latestSchemaVersion = 3;
+	protected static final int latestSchemaVersion = 4;
 	
 	//reading and writing the schema version to the data store
 	abstract int getSchemaVersionFromStorage();
@@ -134,16 +195,28 @@ public abstract class DataStore
 	void initialize() throws Exception
 	{
 		GriefPrevention.AddLogEntry(this.claims.size() + " total claims loaded.");
+		
+		//the data store loaded the claims in every world which is loaded now
+		for(World world : Bukkit.getServer().getWorlds())
+		{
+			this.worldsWithClaims.add(world.getName().toLowerCase());
+		}
 
 		//RoboMWM: ensure the nextClaimID is greater than any other claim ID. If not, data corruption occurred (out of storage space, usually).
+		//that includes claims in worlds which aren't loaded, which are still in secondary storage
+		ArrayList<Long> claimIDs = new ArrayList<Long>(this.getUnloadedClaimIDs());
 		for (Claim claim : this.claims)
 		{
-			if (claim.id >= nextClaimID)
+			claimIDs.add(claim.id);
+		}
+		for (Long claimID : claimIDs)
+		{
+			if (claimID >= nextClaimID)
 			{
 				GriefPrevention.instance.getLogger().severe("nextClaimID was lesser or equal to an already-existing claim ID!\n" +
 						"This usually happens if you ran out of storage space.");
-				GriefPrevention.AddLogEntry("Changing nextClaimID from " + nextClaimID + " to " + claim.id, CustomLogEntryTypes.Debug, false);
-				nextClaimID = claim.id + 1;
+				GriefPrevention.AddLogEntry("Changing nextClaimID from " + nextClaimID + " to " + claimID, CustomLogEntryTypes.Debug, false);
+				nextClaimID = claimID + 1;
 			}
 		}
 		
@@ -159,6 +232,8 @@ public abstract class DataStore
 		GriefPrevention.AddLogEntry("Customizable messages loaded.");
 		
 		//if converting up from an earlier schema version, write all claims back to storage using the latest format
+		//the new version is only recorded once they've all been written, or the update is done again at the next startup
+		boolean updated = true;
         if(this.getSchemaVersion() < latestSchemaVersion)
         {
             GriefPrevention.AddLogEntry("Please wait.  Updating data format.");
@@ -180,14 +255,15 @@ public abstract class DataStore
                 UUIDFetcher.correctedNames.clear();
             }
             
-            GriefPrevention.AddLogEntry("Update finished.");
+            updated = this.flushClaimWrites();
+            GriefPrevention.AddLogEntry(updated ? "Update finished." : "Some claims couldn't be written in the updated format.  The update will be done again at the next startup.");
         }
 		
 		//load list of soft mutes
         this.loadSoftMutes();
         
         //make a note of the data store schema version
-		this.setSchemaVersion(latestSchemaVersion);
+		if(updated) this.setSchemaVersion(latestSchemaVersion);
 		
 		//try to hook into world guard
 		try
@@ -252,9 +328,10 @@ public abstract class DataStore
     }
 
     //removes cached player data from memory
-	synchronized void clearCachedPlayerData(UUID playerID)
+	void clearCachedPlayerData(UUID playerID)
 	{
 		this.playerNameToPlayerDataMap.remove(playerID);
+		this.permissionCache.invalidatePlayer(playerID);
 	}
 	
 	//gets the number of bonus blocks a player has from his permissions
@@ -314,35 +391,20 @@ public abstract class DataStore
 		
 		//otherwise update information
 		
-		//determine current claim owner
-		PlayerData ownerData = null;
-		if(!claim.isAdminClaim())
-		{
-			ownerData = this.getPlayerData(claim.ownerID);
-		}
-		
-		//determine new owner
-		PlayerData newOwnerData = null;
-		
-		if(newOwnerID != null)
-	    {
-		    newOwnerData = this.getPlayerData(newOwnerID);
-	    }
-		
-		//transfer
-		claim.ownerID = newOwnerID;
-		this.saveClaim(claim);
-		
-		//adjust blocks and other records
-		if(ownerData != null)
+		//transfer, moving the claim between owners' claim lists (which adjusts blocks used)
+		long stamp = this.claimLock.writeLock();
+		try
 		{
-			ownerData.getClaims().remove(claim);
+		    this.ownerIndex.remove(claim);
+		    claim.ownerID = newOwnerID;
+		    if(claim.inDataStore) this.ownerIndex.add(claim);
 		}
-		
-		if(newOwnerData != null)
+		finally
 		{
-		    newOwnerData.getClaims().add(claim);
+		    this.claimLock.unlockWrite(stamp);
 		}
+		this.permissionCache.invalidateAll();
+		this.saveClaim(claim);
 	}
 
 	//adds a claim to the datastore, making it an effective claim
@@ -351,11 +413,22 @@ public abstract class DataStore
 		//subdivisions are added under their parent, not directly to the hash map for direct search
 		if(newClaim.parent != null)
 		{
-			if(!newClaim.parent.children.contains(newClaim))
+			long stamp = this.claimLock.writeLock();
+			try
 			{
-			    newClaim.parent.children.add(newClaim);
+    			if(!newClaim.parent.children.contains(newClaim))
+    			{
+    			    newClaim.parent.children.add(newClaim);
+    			    newClaim.parent.childAdded(newClaim);
+    			}
+    			newClaim.inDataStore = true;
+    			this.claimIdIndex.put(newClaim);
+    			this.claimsChanged();
+			}
+			finally
+			{
+			    this.claimLock.unlockWrite(stamp);
 			}
-			newClaim.inDataStore = true;
 			if(writeToStorage)
 			{
 			    this.saveClaim(newClaim);
@@ -364,16 +437,21 @@ public abstract class DataStore
 		}
 		
 		//add it and mark it as added
-		this.claims.add(newClaim);
-		addToChunkClaimMap(newClaim);
-		
-		newClaim.inDataStore = true;
-		
-		//except for administrative claims (which have no owner), update the owner's playerData with the new claim
-		if(!newClaim.isAdminClaim() && writeToStorage)
+		long stamp = this.claimLock.writeLock();
+		try
 		{
-			PlayerData ownerData = this.getPlayerData(newClaim.ownerID);
-			ownerData.getClaims().add(newClaim);
+    		newClaim.claimListIndex = this.claims.size();
+    		this.claims.add(newClaim);
+    		this.claimIdIndex.put(newClaim);
+    		this.ownerIndex.add(newClaim);
+    		addToChunkClaimMap(newClaim);
+    		
+    		newClaim.inDataStore = true;
+    		this.claimsChanged();
+		}
+		finally
+		{
+		    this.claimLock.unlockWrite(stamp);
 		}
 		
 		//make sure the claim is saved to disk
@@ -383,41 +461,73 @@ public abstract class DataStore
 		}
 	}
 	
-	private void addToChunkClaimMap(Claim claim){
-		ArrayList<Long> chunkHashes = claim.getChunkHashes();
-		for(Long chunkHash : chunkHashes)
+	//removes a top level claim from the claims list by moving the last claim into its place, so no search is needed
+	private void removeFromClaimList(Claim claim)
+	{
+	    int index = claim.claimListIndex;
+	    
+	    //defensive coding: if the position is stale (or this is a copy of the listed claim), fall back to finding it by ID
+	    if(index < 0 || index >= this.claims.size() || this.claims.get(index) != claim)
+	    {
+	        index = -1;
+	        for(int i = 0; i < this.claims.size(); i++)
+	        {
+	            if(this.claims.get(i).id.equals(claim.id))
+	            {
+	                index = i;
+	                break;
+	            }
+	        }
+	        
+	        if(index == -1) return;
+	    }
+	    
+	    Claim removed = this.claims.get(index);
+	    Claim last = this.claims.remove(this.claims.size() - 1);
+	    if(last != removed)
+	    {
+	        this.claims.set(index, last);
+	        last.claimListIndex = index;
+	    }
+	    
+	    removed.claimListIndex = -1;
+	    claim.claimListIndex = -1;
+	}
+	
+	private void addToChunkClaimMap(Claim claim)
+	{
+		UUID worldID = claim.worldID;
+		ClaimChunkIndex index = this.chunkIndexes.get(worldID);
+		if(index == null)
 		{
-		    ArrayList<Claim> claimsInChunk = this.chunksToClaimsMap.get(chunkHash);
-		    if(claimsInChunk == null)
-		    {
-		        this.chunksToClaimsMap.put(chunkHash, claimsInChunk = new ArrayList<>());
-		    }
-		    
-		    claimsInChunk.add(claim);
+		    this.chunkIndexes.put(worldID, index = new ClaimChunkIndex());
+		}
+		
+		index.add(claim);
+		
+		ClaimRTree tree = this.claimTrees.get(worldID);
+		if(tree == null)
+		{
+		    this.claimTrees.put(worldID, tree = new ClaimRTree());
 		}
+		
+		tree.insert(claim);
 	}
 	
-	private void removeFromChunkClaimMap(Claim claim) {
-		ArrayList<Long> chunkHashes = claim.getChunkHashes();
-        for(Long chunkHash : chunkHashes)
-        {
-            ArrayList<Claim> claimsInChunk = this.chunksToClaimsMap.get(chunkHash);
-            if(claimsInChunk != null)
-            {
-                for(Iterator<Claim> it = claimsInChunk.iterator(); it.hasNext();)
-                {
-                    Claim c = it.next();
-                    if(c.id.equals(claim.id))
-                    {
-                        it.remove();
-                        break;
-                    }
-                }
-                if (claimsInChunk.isEmpty()) { // if nothing's left, remove this chunk's cache
-                    this.chunksToClaimsMap.remove(chunkHash);
-                }
-            }
-        }
+	private void removeFromChunkClaimMap(Claim claim)
+	{
+		UUID worldID = claim.worldID;
+		ClaimChunkIndex index = this.chunkIndexes.get(worldID);
+		if(index != null)
+		{
+		    index.remove(claim);
+		}
+		
+		ClaimRTree tree = this.claimTrees.get(worldID);
+		if(tree != null)
+		{
+		    tree.remove(claim);
+		}
 	}
 	
 	//turns a location into a string, useful in data storage
@@ -488,19 +598,40 @@ public abstract class DataStore
 		//ensure a unique identifier for the claim which will be used to name the file on disk
 		if(claim.id == null || claim.id == -1)
 		{
-			claim.id = this.nextClaimID;
+			long stamp = this.claimLock.writeLock();
+			try
+			{
+			    claim.id = this.nextClaimID;
+			    if(claim.inDataStore) this.claimIdIndex.put(claim);
+			}
+			finally
+			{
+			    this.claimLock.unlockWrite(stamp);
+			}
 			this.incrementNextClaimID();
 		}
 	}
 	
 	abstract void writeClaimToStorage(Claim claim);
 	
-	//increments the claim ID and updates secondary storage to be sure it's saved
-	abstract void incrementNextClaimID();
+	//increments the claim ID.  secondary storage is only updated when the reserved block of IDs runs out
+	synchronized void incrementNextClaimID()
+	{
+		this.nextClaimID++;
+		if(this.nextClaimID >= this.reservedClaimIDs)
+		{
+			this.reservedClaimIDs = this.nextClaimID + CLAIM_ID_BLOCK_SIZE;
+			this.saveNextClaimID(this.reservedClaimIDs);
+		}
+	}
+	
+	//updates secondary storage with the next claim ID to hand out after a restart
+	abstract void saveNextClaimID(long nextID);
 	
 	//retrieves player data from memory or secondary storage, as necessary
 	//if the player has never been on the server before, this will return a fresh player data with default values
-	synchronized public PlayerData getPlayerData(UUID playerID)
+	//safe to call from any thread
+	public PlayerData getPlayerData(UUID playerID)
 	{
 		//first, look in memory
 		PlayerData playerData = this.playerNameToPlayerDataMap.get(playerID);
@@ -511,8 +642,9 @@ public abstract class DataStore
 			playerData = new PlayerData();
 			playerData.playerID = playerID;
 			
-			//shove that new player data into the hash map cache
-			this.playerNameToPlayerDataMap.put(playerID, playerData);
+			//shove that new player data into the hash map cache, unless another thread beat us to it
+			PlayerData existingData = this.playerNameToPlayerDataMap.putIfAbsent(playerID, playerData);
+			if(existingData != null) playerData = existingData;
 		}
 		
 		return playerData;
@@ -540,27 +672,37 @@ public abstract class DataStore
             this.deleteClaim(claim.children.get(j-1), true);
         }
         
-	    //subdivisions must also be removed from the parent claim child list
-		if(claim.parent != null)
-		{
-			Claim parentClaim = claim.parent;
-			parentClaim.children.remove(claim);
-		}
-		
-		//mark as deleted so any references elsewhere can be ignored
-        claim.inDataStore = false;
-		
-		//remove from memory
-		for(int i = 0; i < this.claims.size(); i++)
-		{
-			if(claims.get(i).id.equals(claim.id))
-			{
-				this.claims.remove(i);
-				break;
-			}
-		}
-		
-		removeFromChunkClaimMap(claim);
+	    long stamp = this.claimLock.writeLock();
+	    try
+	    {
+    	    //subdivisions must also be removed from the parent claim child list
+    		if(claim.parent != null)
+    		{
+    			Claim parentClaim = claim.parent;
+    			if(parentClaim.children.remove(claim))
+    			{
+    			    parentClaim.childRemoved(claim);
+    			}
+    		}
+    		
+    		//mark as deleted so any references elsewhere can be ignored
+            claim.inDataStore = false;
+    		
+    		//remove from memory
+    		if(claim.parent == null)
+    		{
+    		    this.removeFromClaimList(claim);
+    		    this.ownerIndex.remove(claim);
+    		}
+    		this.claimIdIndex.remove(claim);
+    		
+    		removeFromChunkClaimMap(claim);
+    		this.claimsChanged();
+	    }
+	    finally
+	    {
+	        this.claimLock.unlockWrite(stamp);
+	    }
 		
 		//remove from secondary storage
 		this.deleteClaimFromSecondaryStorage(claim);
@@ -569,14 +711,6 @@ public abstract class DataStore
 		if(claim.ownerID != null)
 		{
 			PlayerData ownerData = this.getPlayerData(claim.ownerID);
-			for(int i = 0; i < ownerData.getClaims().size(); i++)
-			{
-				if(ownerData.getClaims().get(i).id.equals(claim.id))
-				{
-					ownerData.getClaims().remove(i);
-					break;
-				}
-			}
 			this.savePlayerData(claim.ownerID, ownerData);
 		}
 		
@@ -626,82 +760,463 @@ public abstract class DataStore
 	
 	abstract void deleteClaimFromSecondaryStorage(Claim claim);
 	
+	//loads a world's claims when the world loads after startup.  they're read from secondary storage in the background, then added here
+	//on the main thread.  does nothing if the world's claims are already in memory
+	void loadClaimsInWorld(World world)
+	{
+		this.loadClaimsInWorld(world, 0);
+	}
+	
+	//if reading them fails, it's tried again later (sooner after the first failures) for as long as the world is loaded, since no claims
+	//can be created in the world until its claims are in memory
+	private static final long CLAIM_LOAD_RETRY_TICKS = 20L * 60;
+	private static final long MAX_CLAIM_LOAD_RETRY_TICKS = 20L * 60 * 30;
+	
+	private void loadClaimsInWorld(World world, int failures)
+	{
+		String worldName = world.getName().toLowerCase();
+		if(!this.worldsWithClaims.add(worldName)) return;
+		this.worldsLoadingClaims.add(worldName);
+		
+		long start = System.nanoTime();
+		Bukkit.getScheduler().runTaskAsynchronously(GriefPrevention.instance, () ->
+		{
+			List<Claim> loadedClaims;
+			try
+			{
+				loadedClaims = this.loadClaimsInWorldFromStorage(world);
+			}
+			catch(Exception e)
+			{
+				long retryTicks = Math.min(CLAIM_LOAD_RETRY_TICKS << Math.min(failures, 5), MAX_CLAIM_LOAD_RETRY_TICKS);
+				StringWriter errors = new StringWriter();
+				e.printStackTrace(new PrintWriter(errors));
+				GriefPrevention.AddLogEntry("ERROR: Unable to load the claims in world " + world.getName() + ", so no claims can be created there.  Trying again in " +
+						retryTicks / 20 / 60 + " minutes.  Details: " + errors.toString(), CustomLogEntryTypes.Exception);
+				this.worldsWithClaims.remove(worldName);
+				this.worldsLoadingClaims.remove(worldName);
+				
+				//unless the world was unloaded meanwhile (when it loads again, that loads its claims)
+				Bukkit.getScheduler().runTaskLater(GriefPrevention.instance, () ->
+				{
+					World current = Bukkit.getWorld(world.getUID());
+					if(current != null) this.loadClaimsInWorld(current, failures + 1);
+				}, retryTicks);
+				return;
+			}
+			
+			long read = System.nanoTime();
+			Bukkit.getScheduler().runTask(GriefPrevention.instance, () -> this.addClaimsInWorld(world, loadedClaims, start, read));
+		});
+	}
+	
+	private void addClaimsInWorld(World world, List<Claim> loadedClaims, long start, long read)
+	{
+		//if the world unloaded again meanwhile, these claims go back to waiting for it
+		String worldName = world.getName().toLowerCase();
+		this.worldsLoadingClaims.remove(worldName);
+		if(Bukkit.getWorld(world.getUID()) != world || !this.worldsWithClaims.contains(worldName))
+		{
+			this.claimsUnloaded(world, loadedClaims);
+			
+			//and if it's already back, they're loaded for the new one
+			World current = Bukkit.getWorld(world.getUID());
+			if(current != null && current != world)
+			{
+				this.worldsWithClaims.remove(worldName);
+				this.loadClaimsInWorld(current);
+			}
+			return;
+		}
+		
+		//top level claims come first, so subdivisions have their parents in place.  from now on they're counted by the owner index instead
+		this.unloadedClaimTotals.remove(worldName);
+		for(Claim claim : loadedClaims)
+		{
+			this.addClaim(claim, false);
+		}
+		
+		long added = System.nanoTime();
+		GriefPrevention.AddLogEntry("Loaded " + loadedClaims.size() + " claims in world " + world.getName() + " in " + (added - start) / 1000000 +
+				"ms (reading from storage " + (read - start) / 1000000 + "ms, adding " + (added - read) / 1000000 + "ms).");
+	}
+	
+	//takes a world's claims out of memory when the world unloads.  they stay in secondary storage, and come back when the world loads again
+	//must be called from the main server thread
+	synchronized void unloadClaimsInWorld(World world)
+	{
+		String worldName = world.getName().toLowerCase();
+		this.worldsWithClaims.remove(worldName);
+		
+		UUID worldID = world.getUID();
+		ArrayList<Claim> unloadedClaims = new ArrayList<Claim>();
+		ArrayList<Claim> unloadedSubdivisions = new ArrayList<Claim>();
+		long stamp = this.claimLock.writeLock();
+		try
+		{
+			for(Claim claim : new ArrayList<Claim>(this.claims))
+			{
+				if(!claim.worldID.equals(worldID)) continue;
+				
+				//like a deleted claim, any references elsewhere are ignored from now on
+				claim.inDataStore = false;
+				this.removeFromClaimList(claim);
+				this.ownerIndex.remove(claim);
+				this.claimIdIndex.remove(claim);
+				unloadedClaims.add(claim);
+				if(claim.ownerID != null) this.countUnloadedClaim(worldName, claim.ownerID, claim.getArea());
+				
+				for(Claim child : claim.children)
+				{
+					child.inDataStore = false;
+					this.claimIdIndex.remove(child);
+					unloadedSubdivisions.add(child);
+				}
+			}
+			
+			this.chunkIndexes.remove(worldID);
+			this.claimTrees.remove(worldID);
+			this.columnCaches.remove(worldID);
+			this.claimsChanged();
+		}
+		finally
+		{
+			this.claimLock.unlockWrite(stamp);
+		}
+		
+		unloadedClaims.addAll(unloadedSubdivisions);
+		this.claimsUnloaded(world, unloadedClaims);
+		if(!unloadedClaims.isEmpty())
+		{
+			GriefPrevention.AddLogEntry("Unloaded " + unloadedClaims.size() + " claims in world " + world.getName() + ".");
+		}
+	}
+	
+	//reads the claims in a world from secondary storage: top level claims first, then subdivisions with their parents set
+	//called off the main server thread, see loadClaimsInWorld()
+	abstract List<Claim> loadClaimsInWorldFromStorage(World world) throws Exception;
+	
+	//called when claims leave memory because their world unloaded, for a data store which needs to remember where they are
+	void claimsUnloaded(World world, List<Claim> claims) { }
+	
+	//writes claim saves which are still waiting, for a data store which saves in the background.  returns whether they were all written
+	boolean flushClaimWrites()
+	{
+	    return true;
+	}
+	
+	//counts a top level claim toward its owner's totals while its world isn't loaded
+	private void countUnloadedClaim(String worldName, UUID ownerID, int area)
+	{
+		ConcurrentHashMap<UUID, int []> totals = this.unloadedClaimTotals.computeIfAbsent(worldName, name -> new ConcurrentHashMap<UUID, int []>());
+		totals.compute(ownerID, (owner, counted) ->
+		{
+			if(counted == null) counted = new int [2];
+			counted[0]++;
+			counted[1] += area;
+			return counted;
+		});
+	}
+	
+	//same, for a data store leaving a claim in secondary storage at startup, from how it's stored
+	void countUnloadedClaim(String lesserBoundaryCorner, String greaterBoundaryCorner, String ownerID, long parentID)
+	{
+		//subdivisions and admin claims don't count toward anyone's totals
+		if(parentID != -1 || ownerID == null || ownerID.isEmpty()) return;
+		
+		try
+		{
+			String [] lesser = lesserBoundaryCorner.split(locationStringDelimiter);
+			String [] greater = greaterBoundaryCorner.split(locationStringDelimiter);
+			int width = (int)Double.parseDouble(greater[1]) - (int)Double.parseDouble(lesser[1]) + 1;
+			int height = (int)Double.parseDouble(greater[3]) - (int)Double.parseDouble(lesser[3]) + 1;
+			this.countUnloadedClaim(lesser[0].toLowerCase(), UUID.fromString(ownerID), width * height);
+		}
+		catch(Exception e)
+		{
+			//not a UUID (from before UUIDs, converted when the claim loads) or not a location.  it's counted once its world loads
+		}
+	}
+	
+	//IDs of the claims which were left in secondary storage at startup because their world wasn't loaded
+	Collection<Long> getUnloadedClaimIDs()
+	{
+		return Collections.emptyList();
+	}
+	
 	//gets the claim at a specific location
 	//ignoreHeight = TRUE means that a location UNDER an existing claim will return the claim
 	//cachedClaim can be NULL, but will help performance if you have a reasonable guess about which claim the location is in
-	synchronized public Claim getClaimAt(Location location, boolean ignoreHeight, Claim cachedClaim)
+	//safe to call from any thread
+	public Claim getClaimAt(Location location, boolean ignoreHeight, Claim cachedClaim)
+	{
+	    return this.getClaimAt(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ(), ignoreHeight, cachedClaim);
+	}
+	
+	//same as above, for block coordinates.  this doesn't allocate anything, so prefer it in event handlers
+	//safe to call from any thread
+	public Claim getClaimAt(World world, int x, int y, int z, boolean ignoreHeight, Claim cachedClaim)
+	{
+	    UUID worldID = world.getUID();
+	    
+	    //optimistic read: no lock is taken, and the answer is only trusted if no claim changed while it was worked out
+	    long stamp = this.claimLock.tryOptimisticRead();
+	    if(stamp != 0)
+	    {
+	        try
+	        {
+	            Claim claim = this.findClaimAt(worldID, x, y, z, ignoreHeight, cachedClaim);
+	            if(this.claimLock.validate(stamp)) return claim;
+	        }
+	        catch(RuntimeException e)
+	        {
+	            //a concurrent change can leave the structures briefly inconsistent.  retry under the read lock below
+	        }
+	    }
+	    
+	    stamp = this.claimLock.readLock();
+	    try
+	    {
+	        return this.findClaimAt(worldID, x, y, z, ignoreHeight, cachedClaim);
+	    }
+	    finally
+	    {
+	        this.claimLock.unlockRead(stamp);
+	    }
+	}
+	
+	private Claim findClaimAt(UUID worldID, int x, int y, int z, boolean ignoreHeight, Claim cachedClaim)
 	{
 		//check cachedClaim guess first.  if it's in the datastore and the location is inside it, we're done
-		if(cachedClaim != null && cachedClaim.inDataStore && cachedClaim.contains(location, ignoreHeight, true)) return cachedClaim;
+		if(cachedClaim != null && cachedClaim.inDataStore && cachedClaim.contains(worldID, x, y, z, ignoreHeight, true)) return cachedClaim;
+		
+		//then check whether this column was looked up recently, and no claim has changed since
+		ClaimColumnCache cache = this.columnCaches.get(worldID);
+		if(cache == null)
+		{
+		    cache = new ClaimColumnCache();
+		    ClaimColumnCache existing = this.columnCaches.putIfAbsent(worldID, cache);
+		    if(existing != null) cache = existing;
+		}
 		
+		long generation = this.claimGeneration;
+		ClaimColumnCache.Entry entry = cache.get(x, z, generation);
+		if(entry == null)
+		{
+		    entry = this.findClaimsInColumn(worldID, x, z, generation);
+		    cache.put(entry);
+		}
+		else
+		{
+		    this.columnCacheHits.increment();
+		}
+		
+		return entry.getClaim(y, ignoreHeight);
+	}
+	
+	//finds the top level claim and subdivision containing a block column, ignoring height
+	//top level claims can't overlap each other, and neither can subdivisions of the same claim, so there's at most one of each
+	private ClaimColumnCache.Entry findClaimsInColumn(UUID worldID, int x, int z, long generation)
+	{
 		//find a top level claim
-		Long chunkID = getChunkHash(location);
-		ArrayList<Claim> claimsInChunk = this.chunksToClaimsMap.get(chunkID);
-		if(claimsInChunk == null) return null;
+		ClaimChunkIndex index = this.chunkIndexes.get(worldID);
+		ClaimChunkIndex.ChunkClaims chunk = index == null ? null : index.getChunk(x >> 4, z >> 4);
 		
-		for(Claim claim : claimsInChunk)
+		//unclaimed chunk, so nothing to check
+		if(chunk == null)
 		{
-		    if(claim.inDataStore && claim.contains(location, ignoreHeight, false))
+		    this.unclaimedChunkLookups.increment();
+		    return new ClaimColumnCache.Entry(x, z, generation, null, null);
+		}
+		
+		//chunk entirely inside one claim without subdivisions, so that's the claim
+		Claim fullClaim = chunk.fullClaim;
+		if(fullClaim != null && fullClaim.inDataStore && fullClaim.children.isEmpty())
+		{
+		    this.fullChunkLookups.increment();
+		    return new ClaimColumnCache.Entry(x, z, generation, fullClaim, null);
+		}
+		
+		//otherwise it's a boundary chunk (or has subdivisions), so check each claim
+		this.boundaryChunkLookups.increment();
+		for(Claim claim : chunk.claims)
+		{
+		    if(claim.inDataStore && claim.contains(worldID, x, 0, z, true, false))
 		    {
-		        //when we find a top level claim, if the location is in one of its subdivisions,
-                //return the SUBDIVISION, not the top level claim
-                for(int j = 0; j < claim.children.size(); j++)
-                {
-                    Claim subdivision = claim.children.get(j);
-                    if(subdivision.inDataStore && subdivision.contains(location, ignoreHeight, false)) return subdivision;
-                }                       
+		        //when we find a top level claim, note which of its subdivisions (if any) the column is in
+                Claim subdivision = claim.getChildAt(worldID, x, 0, z, true);
+                if(subdivision != null && !subdivision.inDataStore) subdivision = null;
                     
-                return claim;
+                return new ClaimColumnCache.Entry(x, z, generation, claim, subdivision);
 		    }
 		}
 		
-		//if no claim found, return null
-		return null;
+		//if no claim found, the column is unclaimed
+		return new ClaimColumnCache.Entry(x, z, generation, null, null);
+	}
+	
+	//call at the end of every write locked section which adds, removes or reshapes a claim
+	private void claimsChanged()
+	{
+	    this.claimGeneration++;
 	}
 	
 	//finds a claim by ID
-	public synchronized Claim getClaim(long id)
+	//safe to call from any thread
+	public Claim getClaim(long id)
 	{
-	    for(Claim claim : this.claims)
+	    long stamp = this.claimLock.tryOptimisticRead();
+	    if(stamp != 0)
 	    {
-	        if(claim.inDataStore && claim.getID() == id) return claim;
+	        try
+	        {
+	            Claim claim = this.findClaim(id);
+	            if(this.claimLock.validate(stamp)) return claim;
+	        }
+	        catch(RuntimeException e)
+	        {
+	            //a concurrent change can leave the structures briefly inconsistent.  retry under the read lock below
+	        }
 	    }
 	    
+	    stamp = this.claimLock.readLock();
+	    try
+	    {
+	        return this.findClaim(id);
+	    }
+	    finally
+	    {
+	        this.claimLock.unlockRead(stamp);
+	    }
+	}
+	
+	private Claim findClaim(long id)
+	{
+	    Claim claim = this.claimIdIndex.get(id);
+	    if(claim != null && claim.inDataStore) return claim;
+	    
 	    return null;
 	}
 	
 	//returns a read-only access point for the list of all land claims
 	//if you need to make changes, use provided methods like .deleteClaim() and .createClaim().
 	//this will ensure primary memory (RAM) and secondary memory (disk, database) stay in sync
+	//this is a live view, so only use it from the main server thread.  other threads should use getClaimsSnapshot()
 	public Collection<Claim> getClaims()
 	{
 	    return Collections.unmodifiableCollection(this.claims);
 	}
 	
-	public Collection<Claim> getClaims(int chunkx, int chunkz)
+	//live list of the top level claims owned by a player (NULL for admin claims), kept up to date by the data store
+	//empty (and not live) if they don't own any.  don't change it directly, use methods like .createClaim() and .deleteClaim()
+	Vector<Claim> getClaimsOwnedBy(UUID ownerID)
+	{
+	    return this.ownerIndex.getClaims(ownerID);
+	}
+	
+	//total area of the top level claims owned by a player (NULL for admin claims)
+	//safe to call from any thread
+	//includes claims in worlds which aren't loaded
+	public int getClaimedArea(UUID ownerID)
 	{
-	    ArrayList<Claim> chunkClaims = this.chunksToClaimsMap.get(getChunkHash(chunkx, chunkz));
-	    if(chunkClaims != null)
+	    int area = this.ownerIndex.getTotalArea(ownerID);
+	    if(ownerID == null) return area;
+	    
+	    for(ConcurrentHashMap<UUID, int []> totals : this.unloadedClaimTotals.values())
 	    {
-	        return Collections.unmodifiableCollection(chunkClaims);
+	        int [] counted = totals.get(ownerID);
+	        if(counted != null) area += counted[1];
 	    }
-	    else
+	    return area;
+	}
+	
+	//how many top level claims a player has, including claims in worlds which aren't loaded
+	//safe to call from any thread
+	public int getClaimCount(UUID ownerID)
+	{
+	    int count = this.ownerIndex.getClaims(ownerID).size();
+	    if(ownerID == null) return count;
+	    
+	    for(ConcurrentHashMap<UUID, int []> totals : this.unloadedClaimTotals.values())
 	    {
-	        return Collections.unmodifiableCollection(new ArrayList<Claim>());
+	        int [] counted = totals.get(ownerID);
+	        if(counted != null) count += counted[0];
 	    }
+	    return count;
 	}
 	
-	//gets an almost-unique, persistent identifier for a chunk
-    static Long getChunkHash(long chunkx, long chunkz)
-    {
-        return (chunkz ^ (chunkx << 32));
-    }
+	//returns a copy of the list of administrative claims
+	//safe to call from any thread
+	public List<Claim> getAdminClaims()
+	{
+	    return new ArrayList<Claim>(this.ownerIndex.getClaims(null));
+	}
 	
-	//gets an almost-unique, persistent identifier for a chunk
-	static Long getChunkHash(Location location)
+	//returns a copy of the list of all top level land claims
+	//safe to call from any thread
+	public List<Claim> getClaimsSnapshot()
 	{
-        return getChunkHash(location.getBlockX() >> 4, location.getBlockZ() >> 4);
-    }
+	    long stamp = this.claimLock.readLock();
+	    try
+	    {
+	        return new ArrayList<Claim>(this.claims);
+	    }
+	    finally
+	    {
+	        this.claimLock.unlockRead(stamp);
+	    }
+	}
+	
+	//gets the top level claims touching a chunk, in every world
+	//safe to call from any thread
+	public Collection<Claim> getClaims(int chunkx, int chunkz)
+	{
+	    ArrayList<Claim> chunkClaims = new ArrayList<Claim>();
+	    long stamp = this.claimLock.readLock();
+	    try
+	    {
+    	    for(ClaimChunkIndex index : this.chunkIndexes.values())
+    	    {
+    	        Claim [] claimsInChunk = index.get(chunkx, chunkz);
+    	        if(claimsInChunk != null)
+    	        {
+    	            Collections.addAll(chunkClaims, claimsInChunk);
+    	        }
+    	    }
+	    }
+	    finally
+	    {
+	        this.claimLock.unlockRead(stamp);
+	    }
+	    
+	    return Collections.unmodifiableCollection(chunkClaims);
+	}
+	
+	//gets the top level claims touching a chunk in a specific world
+	//safe to call from any thread
+	public Collection<Claim> getClaims(World world, int chunkx, int chunkz)
+	{
+	    Claim [] claimsInChunk;
+	    long stamp = this.claimLock.readLock();
+	    try
+	    {
+	        ClaimChunkIndex index = this.chunkIndexes.get(world.getUID());
+	        claimsInChunk = index == null ? null : index.get(chunkx, chunkz);
+	    }
+	    finally
+	    {
+	        this.claimLock.unlockRead(stamp);
+	    }
+	    
+	    if(claimsInChunk != null)
+	    {
+	        return Collections.unmodifiableList(Arrays.asList(claimsInChunk));
+	    }
+	    else
+	    {
+	        return Collections.emptyList();
+	    }
+	}
 
     /*
     * Creates a claim and flags it as being new....throwing a create claim event;
@@ -713,6 +1228,7 @@ public abstract class DataStore
     //creates a claim.
 	//if the new claim would overlap an existing claim, returns a failure along with a reference to the existing claim
 	//if the new claim would overlap a WorldGuard region where the player doesn't have permission to build, returns a failure with NULL for claim
+	//if the world's claims aren't in memory yet (so overlaps can't be checked), returns a failure with claimsLoading set and NULL for claim
 	//otherwise, returns a success along with a reference to the new claim
 	//use ownerName == "" for administrative claims
 	//for top level claims, pass parent == NULL
@@ -766,9 +1282,7 @@ public abstract class DataStore
 
 		if(parent != null)
 		{
-			Location lesser = parent.getLesserBoundaryCorner();
-			Location greater = parent.getGreaterBoundaryCorner();
-			if(smallx < lesser.getX() || smallz < lesser.getZ() || bigx > greater.getX() || bigz > greater.getZ())
+			if(smallx < parent.lesserX || smallz < parent.lesserZ || bigx > parent.greaterX || bigz > parent.greaterZ)
 			{
 				result.succeeded = false;
 				result.claim = parent;
@@ -776,6 +1290,16 @@ public abstract class DataStore
 			}
 		}
 		
+		//claims in this world which aren't in memory yet could be in the way
+		String worldName = world.getName().toLowerCase();
+		if(this.worldsLoadingClaims.contains(worldName) || !this.worldsWithClaims.contains(worldName))
+		{
+			result.succeeded = false;
+			result.claim = null;
+			result.claimsLoading = true;
+			return result;
+		}
+		
 		//create a new claim instance (but don't save it, yet)
 		Claim newClaim = new Claim(
 			new Location(world, smallx, smally, smallz),
@@ -790,14 +1314,15 @@ public abstract class DataStore
 		newClaim.parent = parent;
 		
 		//ensure this new claim won't overlap any existing claims
-		ArrayList<Claim> claimsToCheck;
+		//for top level claims, only those in the same area need to be checked
+		List<Claim> claimsToCheck;
 		if(newClaim.parent != null)
 		{
 		    claimsToCheck = newClaim.parent.children;
 		}
 		else
 		{
-			claimsToCheck = this.claims;
+			claimsToCheck = this.getClaimsIntersecting(world, smallx, smallz, bigx, bigz);
 		}
 
 		for(int i = 0; i < claimsToCheck.size(); i++)
@@ -817,7 +1342,7 @@ public abstract class DataStore
 		//if worldguard is installed, also prevent claims from overlapping any worldguard regions
 		if(GriefPrevention.instance.config_claims_respectWorldGuard && this.worldGuard != null && creatingPlayer != null)
 		{
-		    if(!this.worldGuard.canBuild(newClaim.lesserBoundaryCorner, newClaim.greaterBoundaryCorner, creatingPlayer))
+		    if(!this.worldGuard.canBuild(newClaim.getLesserBoundaryCorner(), newClaim.getGreaterBoundaryCorner(), creatingPlayer))
 		    {
                 result.succeeded = false;
                 result.claim = null;
@@ -881,12 +1406,25 @@ public abstract class DataStore
 		if(claim.parent != null) claim = claim.parent;
 		
 		//adjust to new depth
-		claim.lesserBoundaryCorner.setY(newDepth);
-		claim.greaterBoundaryCorner.setY(newDepth);
+		long stamp = this.claimLock.writeLock();
+		try
+		{
+    		claim.lesserY = newDepth;
+    		claim.greaterY = newDepth;
+    		for(Claim subdivision : claim.children)
+    		{
+    		    subdivision.lesserY = newDepth;
+                subdivision.greaterY = newDepth;
+    		}
+    		this.claimsChanged();
+		}
+		finally
+		{
+		    this.claimLock.unlockWrite(stamp);
+		}
+		
 		for(Claim subdivision : claim.children)
 		{
-		    subdivision.lesserBoundaryCorner.setY(newDepth);
-            subdivision.greaterBoundaryCorner.setY(newDepth);
 		    this.saveClaim(subdivision);
 		}
 		
@@ -950,13 +1488,7 @@ public abstract class DataStore
 	synchronized public void deleteClaimsForPlayer(UUID playerID, boolean releasePets)
 	{
 		//make a list of the player's claims
-		ArrayList<Claim> claimsToDelete = new ArrayList<Claim>();
-		for(int i = 0; i < this.claims.size(); i++)
-		{
-			Claim claim = this.claims.get(i);
-			if((playerID == claim.ownerID || (playerID != null && playerID.equals(claim.ownerID))))
-				claimsToDelete.add(claim);
-		}
+		ArrayList<Claim> claimsToDelete = new ArrayList<Claim>(this.ownerIndex.getClaims(playerID));
 
 		//delete them one by one
 		for(int i = 0; i < claimsToDelete.size(); i++)
@@ -971,17 +1503,45 @@ public abstract class DataStore
 	synchronized public CreateClaimResult resizeClaim(Claim claim, int newx1, int newx2, int newy1, int newy2, int newz1, int newz2, Player resizingPlayer)
 	{
 		//try to create this new claim, ignoring the original when checking for overlap
-		CreateClaimResult result = this.createClaim(claim.getLesserBoundaryCorner().getWorld(), newx1, newx2, newy1, newy2, newz1, newz2, claim.ownerID, claim.parent, claim.id, resizingPlayer, true);
+		CreateClaimResult result = this.createClaim(claim.world, newx1, newx2, newy1, newy2, newz1, newz2, claim.ownerID, claim.parent, claim.id, resizingPlayer, true);
 		
 		//if succeeded
 		if(result.succeeded)
 		{
-			removeFromChunkClaimMap(claim); // remove the old boundary from the chunk cache
-			// copy the boundary from the claim created in the dry run of createClaim() to our existing claim
-			claim.lesserBoundaryCorner = result.claim.lesserBoundaryCorner;
-			claim.greaterBoundaryCorner = result.claim.greaterBoundaryCorner;
+			long stamp = this.claimLock.writeLock();
+			try
+			{
+			    int oldArea = claim.getArea();
+			    
+			    //top level claims are indexed by the data store, subdivisions by their parent claim
+			    if(claim.parent == null)
+			    {
+			        removeFromChunkClaimMap(claim); // remove the old boundary from the chunk cache
+			    }
+			    else
+			    {
+			        claim.parent.childRemoved(claim);
+			    }
+			    
+    			// copy the boundary from the claim created in the dry run of createClaim() to our existing claim
+    			claim.setBoundaries(result.claim);
+    			
+    			if(claim.parent == null)
+    			{
+    			    addToChunkClaimMap(claim); // add the new boundary to the chunk cache
+    			    this.ownerIndex.updateArea(claim, oldArea);
+    			}
+    			else
+    			{
+    			    claim.parent.childAdded(claim);
+    			}
+    			this.claimsChanged();
+			}
+			finally
+			{
+			    this.claimLock.unlockWrite(stamp);
+			}
 			result.claim = claim;
-			addToChunkClaimMap(claim); // add the new boundary to the chunk cache
 			
 			//save those changes
 			this.saveClaim(result.claim);
@@ -1075,7 +1635,7 @@ public abstract class DataStore
             //if resizing someone else's claim, make a log entry
             if(!player.getUniqueId().equals(playerData.claimResizing.ownerID) && playerData.claimResizing.parent == null)
             {
-                GriefPrevention.AddLogEntry(player.getName() + " resized " + playerData.claimResizing.getOwnerName() + "'s claim at " + GriefPrevention.getfriendlyLocationString(playerData.claimResizing.lesserBoundaryCorner) + ".");
+                GriefPrevention.AddLogEntry(player.getName() + " resized " + playerData.claimResizing.getOwnerName() + "'s claim at " + GriefPrevention.getfriendlyLocationString(playerData.claimResizing.getLesserBoundaryCorner()) + ".");
             }
             
             //if increased to a sufficiently large size and no subdivisions yet, send subdivision instructions
@@ -1091,7 +1651,11 @@ public abstract class DataStore
         }
         else
         {
-            if(result.claim != null)
+            if(result.claimsLoading)
+            {
+                GriefPrevention.sendMessage(player, TextMode.Err, Messages.ClaimsStillLoading);
+            }
+            else if(result.claim != null)
             {
                 //inform player
                 GriefPrevention.sendMessage(player, TextMode.Err, Messages.ResizeFailOverlap);
@@ -1367,6 +1931,7 @@ public abstract class DataStore
 		this.addDefault(defaults, Messages.SubclaimUnrestricted, "This subclaim's permissions will now inherit from the parent claim", null);
 
 		this.addDefault(defaults, Messages.NetherPortalTrapDetectionMessage, "It seems you might be stuck inside a nether portal. We will rescue you in a few seconds if that is the case!", "Sent to player on join, if they left while inside a nether portal.");
+		this.addDefault(defaults, Messages.ClaimsStillLoading, "Claims in this world are still loading.  Try again in a moment.", "When creating or resizing a claim in a world whose claims aren't loaded yet.");
 
 		//load the config file
 		FileConfiguration config = YamlConfiguration.loadConfiguration(new File(messagesFilePath));
@@ -1424,7 +1989,8 @@ public abstract class DataStore
 		defaults.put(id.name(), message);		
 	}
 
-	synchronized public String getMessage(Messages messageID, String... args)
+	//safe to call from any thread, since messages are only loaded during initialization
+	public String getMessage(Messages messageID, String... args)
 	{
 		String message = messages[messageID.ordinal()];
 		
@@ -1496,31 +2062,86 @@ public abstract class DataStore
 	    }
 	}
 
+    //performance information for administrators, see /gpstats
+    //data store implementations may add their own lines
+    List<String> getPerformanceStats()
+    {
+        List<String> stats = new ArrayList<String>();
+        
+        long unclaimed = this.unclaimedChunkLookups.sum();
+        long full = this.fullChunkLookups.sum();
+        long boundary = this.boundaryChunkLookups.sum();
+        long total = unclaimed + full + boundary;
+        long hits = this.columnCacheHits.sum();
+        stats.add("Claim lookups: " + (total + hits) + " (" + percent(hits, total + hits) + " answered from the column cache)");
+        stats.add("Uncached claim lookups: " + total + " (unclaimed chunks " + percent(unclaimed, total) + ", fully claimed chunks " + percent(full, total) + ", boundary chunks " + percent(boundary, total) + ")");
+        
+        int chunks = 0;
+        for(ClaimChunkIndex index : this.chunkIndexes.values())
+        {
+            chunks += index.size();
+        }
+        long permissionHits = this.permissionCache.getHits();
+        long permissionChecks = permissionHits + this.permissionCache.getMisses();
+        if(GriefPrevention.instance.config_claims_cachePermissionChecks)
+        {
+            stats.add("Permission checks: " + permissionChecks + " (" + percent(permissionHits, permissionChecks) + " answered from the cache)");
+        }
+        else
+        {
+            stats.add("Permission checks: cache disabled in config");
+        }
+        
+        stats.add("Claims: " + this.claims.size() + " top level, in " + chunks + " chunks");
+        
+        return stats;
+    }
+    
+    static String percent(long part, long total)
+    {
+        if(total == 0) return "0%";
+        return String.format("%.1f%%", part * 100.0 / total);
+    }
+    
+    //gets all the top level claims which intersect an area of a world (bounds inclusive, any height)
+    //the returned list is a snapshot, so it's safe to delete claims while iterating over it
+    //safe to call from any thread.  the tree is walked under the read lock, since a search can't cheaply detect a concurrent split
+    public List<Claim> getClaimsIntersecting(World world, int minX, int minZ, int maxX, int maxZ)
+    {
+        ArrayList<Claim> claims = new ArrayList<Claim>();
+        long stamp = this.claimLock.readLock();
+        try
+        {
+            ClaimRTree tree = this.claimTrees.get(world.getUID());
+            if(tree != null)
+            {
+                tree.search(minX, minZ, maxX, maxZ, claims);
+            }
+        }
+        finally
+        {
+            this.claimLock.unlockRead(stamp);
+        }
+        
+        return claims;
+    }
+    
     //gets all the claims "near" a location
 	Set<Claim> getNearbyClaims(Location location)
     {
         Set<Claim> claims = new HashSet<Claim>();
         
-        Chunk lesserChunk = location.getWorld().getChunkAt(location.subtract(150, 0, 150));
-        Chunk greaterChunk = location.getWorld().getChunkAt(location.add(300, 0, 300));
+        //search the same chunk-aligned area as before, so the same claims are found
+        int lesserX = ((location.getBlockX() - 150) >> 4) << 4;
+        int lesserZ = ((location.getBlockZ() - 150) >> 4) << 4;
+        int greaterX = (((location.getBlockX() + 150) >> 4) << 4) + 15;
+        int greaterZ = (((location.getBlockZ() + 150) >> 4) << 4) + 15;
         
-        for(int chunk_x = lesserChunk.getX(); chunk_x <= greaterChunk.getX(); chunk_x++)
+        for(Claim claim : this.getClaimsIntersecting(location.getWorld(), lesserX, lesserZ, greaterX, greaterZ))
         {
-            for(int chunk_z = lesserChunk.getZ(); chunk_z <= greaterChunk.getZ(); chunk_z++)
+            if(claim.inDataStore)
             {
-                Chunk chunk = location.getWorld().getChunkAt(chunk_x, chunk_z);
-                Long chunkID = getChunkHash(chunk.getBlock(0,  0,  0).getLocation());
-                ArrayList<Claim> claimsInChunk = this.chunksToClaimsMap.get(chunkID);
-                if(claimsInChunk != null)
-                {
-                    for(Claim claim : claimsInChunk)
-                    {
-                        if(claim.inDataStore && claim.getLesserBoundaryCorner().getWorld().equals(location.getWorld()))
-                        {
-                            claims.add(claim);
-                        }
-                    }
-                }
+                claims.add(claim);
             }
         }
         
@@ -1530,15 +2151,11 @@ public abstract class DataStore
 	//deletes all the land claims in a specified world
 	void deleteClaimsInWorld(World world, boolean deleteAdminClaims)
 	{
-	    for(int i = 0; i < claims.size(); i++)
+	    List<Claim> claimsInWorld = this.getClaimsIntersecting(world, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	    for(Claim claim : claimsInWorld)
 	    {
-	        Claim claim = claims.get(i);
-	        if(claim.getLesserBoundaryCorner().getWorld().equals(world))
-	        {
-	            if(!deleteAdminClaims && claim.isAdminClaim()) continue;
-	            this.deleteClaim(claim, false, false);
-	            i--;
-	        }
+	        if(!deleteAdminClaims && claim.isAdminClaim()) continue;
+	        this.deleteClaim(claim, false, false);
 	    }
     }
 }
@@ -0,0 +1,315 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//a small, bounded pool of JDBC connections for the database data store, so player saves, claim saves and lookups from different
+//threads each get their own connection instead of queueing up on one
+//borrow with getConnection() and close() the connection to give it back (try-with-resources does both).  what's handed out is a
+//wrapper, so closing it returns the real connection here instead of closing it
+//a connection which sat idle for a while is checked with isValid() before it's handed out, and ones idle for a long time are closed
+//a connection borrowed for far longer than any statement should take is logged, with where it was borrowed, since it's likely never coming back
+class DatabaseConnectionPool
+{
+    private static final long VALIDATE_AFTER_MILLIS = 500;
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long LEAK_THRESHOLD_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long BORROW_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int MIN_IDLE = 1;
+
+    private final String url;
+    private final Properties properties;
+    private final int maxConnections;
+    private final Semaphore permits;
+
+    //most recently returned last, so the busiest connections stay warm and the rest go idle and get evicted
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+    private final Set<Lease> borrowed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    //metrics, for /gpstats
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder failedValidations = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+
+    DatabaseConnectionPool(String url, Properties properties, int maxConnections)
+    {
+        this.url = url;
+        this.properties = properties;
+        this.maxConnections = Math.max(2, maxConnections);  //startup holds one while it looks up the schema version with another
+        this.permits = new Semaphore(this.maxConnections, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "GriefPrevention Database Pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeeping, 30, 30, TimeUnit.SECONDS);
+    }
+
+    //borrows a connection, waiting for one if they're all in use.  close it when done
+    Connection getConnection() throws SQLException
+    {
+        if(this.closed) throw new SQLException("The database connection pool is closed.");
+
+        this.borrows.increment();
+        if(!this.permits.tryAcquire())
+        {
+            this.waits.increment();
+            long start = System.nanoTime();
+            try
+            {
+                if(!this.permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                {
+                    throw new SQLException("Timed out waiting for a database connection (all " + this.maxConnections + " are in use).");
+                }
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection.", e);
+            }
+            finally
+            {
+                this.waitNanos.add(System.nanoTime() - start);
+            }
+        }
+
+        try
+        {
+            PooledConnection connection = this.takeIdle();
+            if(connection == null)
+            {
+                connection = new PooledConnection(DriverManager.getConnection(this.url, this.properties));
+                this.created.increment();
+            }
+
+            Lease lease = new Lease(connection);
+            this.borrowed.add(lease);
+            return lease.proxy;
+        }
+        catch(SQLException | RuntimeException e)
+        {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    //the most recently used idle connection which still works, or null if there isn't one
+    private PooledConnection takeIdle()
+    {
+        while(true)
+        {
+            PooledConnection connection;
+            synchronized(this.idle)
+            {
+                connection = this.idle.pollLast();
+            }
+            if(connection == null) return null;
+
+            //recently used connections are trusted, to save a round trip
+            if(System.currentTimeMillis() - connection.returnedAt < VALIDATE_AFTER_MILLIS) return connection;
+
+            try
+            {
+                if(connection.connection.isValid(3)) return connection;
+            }
+            catch(SQLException e) { }
+
+            this.failedValidations.increment();
+            closeQuietly(connection);
+        }
+    }
+
+    //called when a borrowed connection is closed
+    private void giveBack(Lease lease)
+    {
+        if(!this.borrowed.remove(lease)) return;  //closed twice
+        PooledConnection connection = lease.connection;
+
+        boolean reusable = !this.closed;
+        try
+        {
+            //whoever borrowed it may have left a transaction open
+            if(reusable && !connection.connection.getAutoCommit())
+            {
+                connection.connection.rollback();
+                connection.connection.setAutoCommit(true);
+            }
+            if(connection.connection.isClosed()) reusable = false;
+        }
+        catch(SQLException e)
+        {
+            reusable = false;
+        }
+
+        if(reusable)
+        {
+            connection.returnedAt = System.currentTimeMillis();
+            synchronized(this.idle)
+            {
+                this.idle.addLast(connection);
+            }
+        }
+        else
+        {
+            closeQuietly(connection);
+        }
+
+        this.permits.release();
+    }
+
+    //closes connections which have been idle too long, and reports connections which have been borrowed too long
+    private void housekeeping()
+    {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> expired = new ArrayList<PooledConnection>();
+        synchronized(this.idle)
+        {
+            //the least recently used ones are at the front
+            while(this.idle.size() > MIN_IDLE && now - this.idle.peekFirst().returnedAt > IDLE_TIMEOUT_MILLIS)
+            {
+                expired.add(this.idle.pollFirst());
+            }
+        }
+        for(PooledConnection connection : expired)
+        {
+            this.evicted.increment();
+            closeQuietly(connection);
+        }
+
+        for(Lease lease : this.borrowed)
+        {
+            if(lease.leakReported || now - lease.borrowedAt < LEAK_THRESHOLD_MILLIS) continue;
+
+            lease.leakReported = true;
+            this.leaks.increment();
+            StringWriter trace = new StringWriter();
+            lease.borrowedFrom.printStackTrace(new PrintWriter(trace));
+            GriefPrevention.AddLogEntry("A database connection has been in use for " + (now - lease.borrowedAt) / 1000 + " seconds, and may have been leaked.  " + trace.toString());
+        }
+    }
+
+    //closes idle connections now, and borrowed ones when they're given back
+    void close()
+    {
+        this.closed = true;
+        this.housekeeper.shutdownNow();
+        synchronized(this.idle)
+        {
+            for(PooledConnection connection : this.idle)
+            {
+                closeQuietly(connection);
+            }
+            this.idle.clear();
+        }
+    }
+
+    List<String> getStats()
+    {
+        List<String> stats = new ArrayList<String>();
+        int idle;
+        synchronized(this.idle)
+        {
+            idle = this.idle.size();
+        }
+        long borrows = this.borrows.sum();
+        long waits = this.waits.sum();
+        stats.add(String.format("Database connections: %d in use, %d idle, %d max, %d opened, %d closed idle, %d failed validation, %d possible leaks",
+                this.borrowed.size(), idle, this.maxConnections, this.created.sum(), this.evicted.sum(), this.failedValidations.sum(), this.leaks.sum()));
+        stats.add(String.format("Database connection borrows: %d (%d waited, %.1fms average wait)",
+                borrows, waits, waits == 0 ? 0.0 : this.waitNanos.sum() / 1000000.0 / waits));
+        return stats;
+    }
+
+    private static void closeQuietly(PooledConnection connection)
+    {
+        try
+        {
+            connection.connection.close();
+        }
+        catch(SQLException e) { }
+    }
+
+    //a real connection, and when it was last given back
+    private static class PooledConnection
+    {
+        final Connection connection;
+        volatile long returnedAt;
+
+        PooledConnection(Connection connection)
+        {
+            this.connection = connection;
+        }
+    }
+
+    //one borrowing of a connection.  the wrapper handed out stops working once it's given back, so a stale reference can't
+    //use the connection while someone else has it
+    private class Lease implements InvocationHandler
+    {
+        final PooledConnection connection;
+        final Connection proxy;
+        final long borrowedAt = System.currentTimeMillis();
+        final Throwable borrowedFrom = new Throwable("Borrowed here");
+        volatile boolean leakReported = false;
+
+        Lease(PooledConnection connection)
+        {
+            this.connection = connection;
+            this.proxy = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            if(name.equals("close") && method.getParameterCount() == 0)
+            {
+                giveBack(this);
+                return null;
+            }
+            if(name.equals("isClosed") && method.getParameterCount() == 0)
+            {
+                return !borrowed.contains(this) || this.connection.connection.isClosed();
+            }
+            if(name.equals("equals") && method.getParameterCount() == 1) return proxy == args[0];
+            if(name.equals("hashCode") && method.getParameterCount() == 0) return System.identityHashCode(proxy);
+            if(name.equals("toString") && method.getParameterCount() == 0) return "Pooled " + this.connection.connection;
+
+            //anything else goes to the real connection, as long as it's still borrowed
+            if(!borrowed.contains(this)) throw new SQLException("This database connection was already given back to the pool.");
+            try
+            {
+                return method.invoke(this.connection.connection, args);
+            }
+            catch(InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -24,17 +24,20 @@ import java.sql.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.*;
 
 //manages data stored in the file system
 public class DatabaseDataStore extends DataStore
 {
-	private Connection databaseConnection = null;
+	private DatabaseConnectionPool connectionPool = null;
+	private DatabaseWriter writer = null;
 
 	private String databaseUrl;
 	private String userName;
 	private String password;
+	private int maxConnections;
 
 	private String updateNameSQL;
 	private String insertClaimSQL;
@@ -48,12 +51,24 @@ public class DatabaseDataStore extends DataStore
 	private String deleteNextClaimIdSQL;
 	private String deleteSchemaVersionSQL;
 	private String selectSchemaVersionSQL;
+	private String upsertClaimSQL;
+	private String upsertPlayerDataSQL;
+	private String insertClaimPermissionSQL;
+	private String deleteClaimPermissionSQL;
+	private String deleteClaimPermissionsSQL;
 
-	DatabaseDataStore(String url, String userName, String password) throws Exception
+	//trust levels in griefprevention_claimpermissions, in the order Claim.getPermissions() lists them
+	static final String [] PERMISSION_LEVELS = { "builder", "container", "accessor", "manager" };
+
+	//IDs of claims in worlds which aren't loaded, see loadClaimsInWorldFromStorage()
+	private final Set<Long> unloadedClaimIDs = ConcurrentHashMap.newKeySet();
+
+	DatabaseDataStore(String url, String userName, String password, int maxConnections) throws Exception
 	{
 		this.databaseUrl = url;
 		this.userName = userName;
 		this.password = password;
+		this.maxConnections = maxConnections;
 
 		this.initialize();
 	}
@@ -72,9 +87,20 @@ public class DatabaseDataStore extends DataStore
 			throw e;
 		}
 
+		//set username/pass properties
+		Properties connectionProps = new Properties();
+		connectionProps.put("user", this.userName);
+		connectionProps.put("password", this.password);
+		connectionProps.put("autoReconnect", "true");
+		connectionProps.put("maxReconnects", String.valueOf(Integer.MAX_VALUE));
+		this.connectionPool = new DatabaseConnectionPool(this.databaseUrl, connectionProps, this.maxConnections);
+		this.writer = new DatabaseWriter(this);
+
+		//startup works on one connection, borrowed from the pool
+		Connection databaseConnection;
 		try
 		{
-			this.refreshDataConnection();
+			databaseConnection = this.connectionPool.getConnection();
 		}
 		catch(Exception e2)
 		{
@@ -82,24 +108,29 @@ public class DatabaseDataStore extends DataStore
 			throw e2;
 		}
 
+		try
+		{
+			this.initialize(databaseConnection);
+		}
+		finally
+		{
+			databaseConnection.close();
+		}
+
+		super.initialize();
+	}
+
+	private void initialize(Connection databaseConnection) throws Exception
+	{
 		try
 		{
 			//ensure the data tables exist
 			Statement statement = databaseConnection.createStatement();
 
 			statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_nextclaimid (nextid INT(15));");
-			
-			statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_claimdata (id INT(15), owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner VARCHAR(100), builders TEXT, containers TEXT, accessors TEXT, managers TEXT, inheritnothing BOOLEAN, parentid INT(15));");
-
-			statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_playerdata (name VARCHAR(50), lastlogin DATETIME, accruedblocks INT(15), bonusblocks INT(15));");
 
 			statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_schemaversion (version INT(15));");
 
-			statement.execute("ALTER TABLE griefprevention_claimdata MODIFY builders TEXT;");
-			statement.execute("ALTER TABLE griefprevention_claimdata MODIFY containers TEXT;");
-			statement.execute("ALTER TABLE griefprevention_claimdata MODIFY accessors TEXT;");
-			statement.execute("ALTER TABLE griefprevention_claimdata MODIFY managers TEXT;");
-
 			//if the next claim id table is empty, this is a brand new database which will write using the latest schema
 			//otherwise, schema version is determined by schemaversion table (or =0 if table is empty, see getSchemaVersion())
 			ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_nextclaimid;");
@@ -107,6 +138,24 @@ public class DatabaseDataStore extends DataStore
 			{
 				this.setSchemaVersion(latestSchemaVersion);
 			}
+
+			//older databases have the old tables, which are upgraded below (see migrateToSchema4()).  if an interrupted upgrade
+			//already moved them aside, the new ones are what's needed
+			if(this.getSchemaVersion() >= 4 || tableExists(databaseConnection, "griefprevention_claimdata_v3"))
+			{
+				this.createTables(statement);
+			}
+			else
+			{
+				statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_claimdata (id INT(15), owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner VARCHAR(100), builders TEXT, containers TEXT, accessors TEXT, managers TEXT, inheritnothing BOOLEAN, parentid INT(15));");
+
+				statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_playerdata (name VARCHAR(50), lastlogin DATETIME, accruedblocks INT(15), bonusblocks INT(15));");
+
+				statement.execute("ALTER TABLE griefprevention_claimdata MODIFY builders TEXT;");
+				statement.execute("ALTER TABLE griefprevention_claimdata MODIFY containers TEXT;");
+				statement.execute("ALTER TABLE griefprevention_claimdata MODIFY accessors TEXT;");
+				statement.execute("ALTER TABLE griefprevention_claimdata MODIFY managers TEXT;");
+			}
 		}
 		catch(Exception e3)
 		{
@@ -117,7 +166,7 @@ public class DatabaseDataStore extends DataStore
 		}
 
 		this.updateNameSQL = "UPDATE griefprevention_playerdata SET name = ? WHERE name = ?;";
-		this.insertClaimSQL = "INSERT INTO griefprevention_claimdata (id, owner, lessercorner, greatercorner, builders, containers, accessors, managers, inheritnothing, parentid) VALUES(?,?,?,?,?,?,?,?,?,?);";
+		this.insertClaimSQL = "INSERT INTO griefprevention_claimdata (id, owner, lessercorner, greatercorner, inheritnothing, parentid) VALUES(?,?,?,?,?,?);";
 		this.deleteClaimSQL = "DELETE FROM griefprevention_claimdata WHERE id=?;";
 		this.getPlayerDataSQL = "SELECT * FROM griefprevention_playerdata WHERE name=?;";
 		this.deletePlayerDataSQL = "DELETE FROM griefprevention_playerdata WHERE name=?;";
@@ -129,6 +178,14 @@ public class DatabaseDataStore extends DataStore
 		this.deleteSchemaVersionSQL = "DELETE FROM griefprevention_schemaversion;";
 		this.selectSchemaVersionSQL = "SELECT * FROM griefprevention_schemaversion;";
 
+		//claims and players are upserted on their primary keys, and trust entries are added or removed one at a time
+		//like the tables above, these are MySQL (and MariaDB) SQL
+		this.upsertClaimSQL = upsertSQL(this.insertClaimSQL, "id", "owner", "lessercorner", "greatercorner", "inheritnothing", "parentid");
+		this.upsertPlayerDataSQL = upsertSQL(this.insertPlayerDataSQL, "name", "lastlogin", "accruedblocks", "bonusblocks");
+		this.insertClaimPermissionSQL = "INSERT IGNORE INTO griefprevention_claimpermissions (claimid, subject, level) VALUES (?,?,?);";
+		this.deleteClaimPermissionSQL = "DELETE FROM griefprevention_claimpermissions WHERE claimid=? AND subject=? AND level=?;";
+		this.deleteClaimPermissionsSQL = "DELETE FROM griefprevention_claimpermissions WHERE claimid=?;";
+
 		//load group data into memory
 		Statement statement = databaseConnection.createStatement();
 		ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_playerdata;");
@@ -163,15 +220,14 @@ public class DatabaseDataStore extends DataStore
 		{
 			this.nextClaimID = results.getLong("nextid");
 		}
+		this.reservedClaimIDs = this.nextClaimID;
 
 		if(this.getSchemaVersion() == 0)
 		{
 			try
 			{
-				this.refreshDataConnection();
-
 				//pull ALL player data from the database
-				statement = this.databaseConnection.createStatement();
+				statement = databaseConnection.createStatement();
 				results = statement.executeQuery("SELECT * FROM griefprevention_playerdata;");
 
 				//make a list of changes to be made
@@ -223,12 +279,9 @@ public class DatabaseDataStore extends DataStore
 					catch(Exception ex){ }
 				}
 
-				//refresh data connection in case data migration took a long time
-				this.refreshDataConnection();
-
 				for(String name : changes.keySet())
 				{
-					try (PreparedStatement updateStmnt = this.databaseConnection.prepareStatement(this.getUpdateNameSQL())) {
+					try (PreparedStatement updateStmnt = databaseConnection.prepareStatement(this.getUpdateNameSQL())) {
 						updateStmnt.setString(1, changes.get(name).toString());
 						updateStmnt.setString(2, name);
 						updateStmnt.executeUpdate();
@@ -248,15 +301,26 @@ public class DatabaseDataStore extends DataStore
 			}
 		}
 
-		if(this.getSchemaVersion() <= 2)
+		if(this.getSchemaVersion() <= 2 && !tableExists(databaseConnection, "griefprevention_claimdata_v3"))
 		{
-			statement = this.databaseConnection.createStatement();
+			statement = databaseConnection.createStatement();
 			statement.execute("ALTER TABLE griefprevention_claimdata ADD inheritNothing BOOLEAN DEFAULT 0 AFTER managers;");
 		}
 
-		//load claims data into memory
+		if(this.getSchemaVersion() < 4)
+		{
+			this.migrateToSchema4(databaseConnection);
+		}
 
-		results = statement.executeQuery("SELECT * FROM griefprevention_claimdata;");
+		//load claims data into memory
+		//the writer only writes what changed about a claim, so it needs to know what's in the database.  after an upgrade from
+		//before version 3, every claim is written again anyway (see DataStore.initialize()), and until then they come from the old table
+		boolean trackClaims = this.getSchemaVersion() >= latestSchemaVersion;
+		boolean fromOldTable = this.getSchemaVersion() <= 2;
+		statement = databaseConnection.createStatement();
+		HashMap<Long, TrustLists> permissions = fromOldTable ? new HashMap<Long, TrustLists>() :
+				loadClaimPermissions(statement.executeQuery("SELECT claimid, subject, level FROM griefprevention_claimpermissions;"));
+		results = statement.executeQuery(fromOldTable ? "SELECT * FROM griefprevention_claimdata_v3;" : "SELECT * FROM griefprevention_claimdata;");
 
 		ArrayList<Claim> claimsToRemove = new ArrayList<Claim>();
 		ArrayList<Claim> subdivisionsToLoad = new ArrayList<Claim>();
@@ -267,27 +331,22 @@ public class DatabaseDataStore extends DataStore
 		{
 			try
 			{
-				//problematic claims will be removed from secondary storage, and never added to in-memory data store
-				boolean removeClaim = false;
-
 				long parentId = results.getLong("parentid");
 				claimID = results.getLong("id");
-				boolean inheritNothing = results.getBoolean("inheritNothing");
-				Location lesserBoundaryCorner = null;
-				Location greaterBoundaryCorner = null;
-				String lesserCornerString = "(location not available)";
+				Claim claim;
+				TrustLists trust = fromOldTable ? loadTrustColumns(results) : permissions.remove(claimID);
 				try
 				{
-					lesserCornerString = results.getString("lessercorner");
-					lesserBoundaryCorner = this.locationFromString(lesserCornerString, validWorlds);
-					String greaterCornerString = results.getString("greatercorner");
-					greaterBoundaryCorner = this.locationFromString(greaterCornerString, validWorlds);
+					claim = this.loadClaim(results, trust, validWorlds);
+					if(trackClaims) this.writer.track(rowSnapshot(results, trust));
 				}
 				catch(Exception e)
 				{
+					//claims in worlds which aren't loaded (yet) wait for their world, see loadClaimsInWorldFromStorage()
 					if(e.getMessage() != null && e.getMessage().contains("World not found"))
 					{
-						GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + claimID.toString() + ") because its world isn't loaded (yet?).  Please delete the claim or contact the GriefPrevention developer with information about which plugin(s) you're using to load or create worlds.  " + lesserCornerString);
+						this.unloadedClaimIDs.add(claimID);
+						this.countUnloadedClaim(results.getString("lessercorner"), results.getString("greatercorner"), results.getString("owner"), parentId);
 						continue;
 					}
 					else
@@ -296,59 +355,7 @@ public class DatabaseDataStore extends DataStore
 					}
 				}
 
-				String ownerName = results.getString("owner");
-				UUID ownerID = null;
-				if(ownerName.isEmpty() || ownerName.startsWith("--"))
-				{
-					ownerID = null;  //administrative land claim or subdivision
-				}
-				else if(this.getSchemaVersion() < 1)
-				{
-					try
-					{
-						ownerID = UUIDFetcher.getUUIDOf(ownerName);
-					}
-					catch(Exception ex)
-					{
-						GriefPrevention.AddLogEntry("This owner name did not convert to a UUID: " + ownerName + ".");
-						GriefPrevention.AddLogEntry("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
-					}
-				}
-				else
-				{
-					try
-					{
-						ownerID = UUID.fromString(ownerName);
-					}
-					catch(Exception ex)
-					{
-						GriefPrevention.AddLogEntry("This owner entry is not a UUID: " + ownerName + ".");
-						GriefPrevention.AddLogEntry("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
-					}
-				}
-
-				String buildersString = results.getString("builders");
-				List<String> builderNames = Arrays.asList(buildersString.split(";"));
-				builderNames = this.convertNameListToUUIDList(builderNames);
-
-				String containersString = results.getString("containers");
-				List<String> containerNames = Arrays.asList(containersString.split(";"));
-				containerNames = this.convertNameListToUUIDList(containerNames);
-
-				String accessorsString = results.getString("accessors");
-				List<String> accessorNames = Arrays.asList(accessorsString.split(";"));
-				accessorNames = this.convertNameListToUUIDList(accessorNames);
-
-				String managersString = results.getString("managers");
-				List<String> managerNames = Arrays.asList(managersString.split(";"));
-				managerNames = this.convertNameListToUUIDList(managerNames);
-				Claim claim = new Claim(lesserBoundaryCorner, greaterBoundaryCorner, ownerID, builderNames, containerNames, accessorNames, managerNames, inheritNothing, claimID);
-
-				if(removeClaim)
-				{
-					claimsToRemove.add(claim);
-				}
-				else if(parentId == -1)
+				if(parentId == -1)
 				{
 					//top level claim
 					this.addClaim(claim, false);
@@ -366,6 +373,11 @@ public class DatabaseDataStore extends DataStore
 			}
 		}
 
+		if(!this.unloadedClaimIDs.isEmpty())
+		{
+			GriefPrevention.AddLogEntry(this.unloadedClaimIDs.size() + " claims are in worlds which aren't loaded yet.  They'll be loaded with their worlds.");
+		}
+
 		//add subdivisions to their parent claims
 		for(Claim childClaim : subdivisionsToLoad)
 		{
@@ -381,8 +393,7 @@ public class DatabaseDataStore extends DataStore
 
 			//add this claim to the list of children of the current top level claim
 			childClaim.parent = topLevelClaim;
-			topLevelClaim.children.add(childClaim);
-			childClaim.inDataStore = true;
+			this.addClaim(childClaim, false);
 		}
 
 		for(Claim claim : claimsToRemove)
@@ -392,91 +403,34 @@ public class DatabaseDataStore extends DataStore
 
 		if(this.getSchemaVersion() <= 2)
 		{
-			this.refreshDataConnection();
-			statement = this.databaseConnection.createStatement();
+			statement = databaseConnection.createStatement();
 			statement.execute("DELETE FROM griefprevention_claimdata WHERE id='-1';");
 		}
-
-		super.initialize();
 	}
 
 	@Override
-	synchronized void writeClaimToStorage(Claim claim)  //see datastore.cs.  this will ALWAYS be a top level claim
+	void writeClaimToStorage(Claim claim)  //see datastore.cs.  this will ALWAYS be a top level claim
 	{
-		try
-		{
-			this.refreshDataConnection();
-
-			//wipe out any existing data about this claim
-			this.deleteClaimFromSecondaryStorage(claim);
-
-			//write claim data to the database
-			this.writeClaimData(claim);
-		}
-		catch(SQLException e)
-		{
-			GriefPrevention.AddLogEntry("Unable to save data for claim at " + this.locationToString(claim.lesserBoundaryCorner) + ".  Details:");
-			GriefPrevention.AddLogEntry(e.getMessage());
-		}
+		//the writer replaces any existing data about this claim in the background
+		this.writer.save(new ClaimFileWriter.Snapshot(this, claim, claim.modifiedDate.getTime()));
 	}
 
-	//actually writes claim data to the database
-	synchronized private void writeClaimData(Claim claim) throws SQLException
+	//fills in the insert claim statement from a snapshot of the claim.  shared with DatabaseWriter and DatabaseMigration
+	void setClaimParameters(PreparedStatement insertStmt, ClaimFileWriter.Snapshot claim) throws SQLException
 	{
-		String lesserCornerString = this.locationToString(claim.getLesserBoundaryCorner());
-		String greaterCornerString = this.locationToString(claim.getGreaterBoundaryCorner());
-		String owner = "";
-		if(claim.ownerID != null) owner = claim.ownerID.toString();
-
-		ArrayList<String> builders = new ArrayList<String>();
-		ArrayList<String> containers = new ArrayList<String>();
-		ArrayList<String> accessors = new ArrayList<String>();
-		ArrayList<String> managers = new ArrayList<String>();
-
-		claim.getPermissions(builders, containers, accessors, managers);
-
-		String buildersString = this.storageStringBuilder(builders);
-		String containersString = this.storageStringBuilder(containers);
-		String accessorsString = this.storageStringBuilder(accessors);
-		String managersString = this.storageStringBuilder(managers);
-		boolean inheritNothing = claim.getSubclaimRestrictions();
-		long parentId = claim.parent == null ? -1 : claim.parent.id;
-
-		try (PreparedStatement insertStmt = this.databaseConnection.prepareStatement(this.getInsertClaimSQL())) {
-
-			insertStmt.setLong(1, claim.id);
-			insertStmt.setString(2, owner);
-			insertStmt.setString(3, lesserCornerString);
-			insertStmt.setString(4, greaterCornerString);
-			insertStmt.setString(5, buildersString);
-			insertStmt.setString(6, containersString);
-			insertStmt.setString(7, accessorsString);
-			insertStmt.setString(8, managersString);
-			insertStmt.setBoolean(9, inheritNothing);
-			insertStmt.setLong(10, parentId);
-			insertStmt.executeUpdate();
-		}
-		catch(SQLException e)
-		{
-			GriefPrevention.AddLogEntry("Unable to save data for claim at " + this.locationToString(claim.lesserBoundaryCorner) + ".  Details:");
-			GriefPrevention.AddLogEntry(e.getMessage());
-		}
+		insertStmt.setLong(1, claim.id);
+		insertStmt.setString(2, claim.ownerID);
+		insertStmt.setString(3, claim.lesserBoundaryCorner);
+		insertStmt.setString(4, claim.greaterBoundaryCorner);
+		insertStmt.setBoolean(5, claim.inheritNothing);
+		insertStmt.setLong(6, claim.parentID);
 	}
 
 	//deletes a claim from the database
 	@Override
-	synchronized void deleteClaimFromSecondaryStorage(Claim claim)
+	void deleteClaimFromSecondaryStorage(Claim claim)
 	{
-		try(PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(this.getDeleteClaimSQL())) {
-			deleteStmnt.setLong(1, claim.id);
-			deleteStmnt.executeUpdate();
-		}
-		catch(SQLException e)
-		{
-			GriefPrevention.AddLogEntry("Unable to delete data for claim " + claim.id + ".  Details:");
-			GriefPrevention.AddLogEntry(e.getMessage());
-			e.printStackTrace();
-		}
+		this.writer.save(new ClaimFileWriter.Snapshot(claim.id));
 	}
 
 	@Override
@@ -485,7 +439,17 @@ public class DatabaseDataStore extends DataStore
 		PlayerData playerData = new PlayerData();
 		playerData.playerID = playerID;
 
-		try (PreparedStatement selectStmnt = this.databaseConnection.prepareStatement( this.getGetPlayerDataSQL()))
+		//a save which hasn't been written yet is newer than the database
+		DatabaseWriter.PlayerRow pending = this.writer.getPendingPlayer(playerID.toString());
+		if(pending != null)
+		{
+			playerData.setAccruedClaimBlocks(pending.accruedBlocks);
+			playerData.setBonusClaimBlocks(pending.bonusBlocks);
+			return playerData;
+		}
+
+		try (Connection connection = this.connectionPool.getConnection();
+			 PreparedStatement selectStmnt = connection.prepareStatement( this.getGetPlayerDataSQL()))
 		{
 			selectStmnt.setString(1, playerID.toString());
 			ResultSet results = selectStmnt.executeQuery();
@@ -519,45 +483,47 @@ public class DatabaseDataStore extends DataStore
 
 	private void savePlayerData(String playerID, PlayerData playerData)
 	{
-		try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(this.getDeletePlayerDataSQL());
-			 PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(this.getInsertPlayerDataSQL())) {
-			OfflinePlayer player = Bukkit.getOfflinePlayer(UUID.fromString(playerID));
-
-			SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-			String dateString = sqlFormat.format(new Date(player.getLastPlayed()));
-			deleteStmnt.setString(1, playerID);
-			deleteStmnt.executeUpdate();
+		this.writer.save(this.makePlayerRow(playerID, playerData.getAccruedClaimBlocks(), playerData.getBonusClaimBlocks()));
+	}
 
-			insertStmnt.setString(1, playerID);
-			insertStmnt.setString(2, dateString);
-			insertStmnt.setInt(3, playerData.getAccruedClaimBlocks());
-			insertStmnt.setInt(4, playerData.getBonusClaimBlocks());
-			insertStmnt.executeUpdate();
-		}
-		catch(SQLException e)
-		{
-			StringWriter errors = new StringWriter();
-			e.printStackTrace(new PrintWriter(errors));
-			GriefPrevention.AddLogEntry(playerID + " " + errors.toString(), CustomLogEntryTypes.Exception);
-		}
+	//fills in the insert player data statement.  shared with DatabaseWriter and DatabaseMigration
+	void setPlayerDataParameters(PreparedStatement insertStmnt, DatabaseWriter.PlayerRow player) throws SQLException
+	{
+		insertStmnt.setString(1, player.name);
+		insertStmnt.setString(2, player.lastLogin);
+		insertStmnt.setInt(3, player.accruedBlocks);
+		insertStmnt.setInt(4, player.bonusBlocks);
 	}
 
-	@Override
-	synchronized void incrementNextClaimID()
+	//looks up when the player last played now, since the server shouldn't be asked from the writer thread
+	DatabaseWriter.PlayerRow makePlayerRow(String playerID, int accruedBlocks, int bonusBlocks)
 	{
-		this.setNextClaimID(this.nextClaimID + 1);
+		OfflinePlayer player = Bukkit.getOfflinePlayer(UUID.fromString(playerID));
+
+		SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		String dateString = sqlFormat.format(new Date(player.getLastPlayed()));
+		return new DatabaseWriter.PlayerRow(playerID, dateString, accruedBlocks, bonusBlocks);
 	}
 
-	//sets the next claim ID.  used by incrementNextClaimID() above, and also while migrating data from a flat file data store
+	//sets the next claim ID.  used while migrating data from a flat file data store
 	synchronized void setNextClaimID(long nextID)
 	{
 		this.nextClaimID = nextID;
+		this.reservedClaimIDs = nextID;
+		this.saveNextClaimID(nextID);
+	}
 
-		try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(this.getDeleteNextClaimIdSQL());
-			 PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(this.getInsertNextClaimIdSQL())) {
+	@Override
+	synchronized void saveNextClaimID(long nextID)
+	{
+		try (Connection connection = this.connectionPool.getConnection();
+			 PreparedStatement deleteStmnt = connection.prepareStatement(this.getDeleteNextClaimIdSQL());
+			 PreparedStatement insertStmnt = connection.prepareStatement(this.getInsertNextClaimIdSQL())) {
+			connection.setAutoCommit(false);
 			deleteStmnt.execute();
 			insertStmnt.setLong(1, nextID);
 			insertStmnt.executeUpdate();
+			connection.commit();
 		}
 		catch(SQLException e)
 		{
@@ -568,72 +534,205 @@ public class DatabaseDataStore extends DataStore
 
 	//updates the database with a group's bonus blocks
 	@Override
-	synchronized void saveGroupBonusBlocks(String groupName, int currentValue)
+	void saveGroupBonusBlocks(String groupName, int currentValue)
 	{
 		//group bonus blocks are stored in the player data table, with player name = $groupName
-		try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(this.getDeleteGroupBonusSQL());
-			 PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(this.getInsertPlayerDataSQL())) {
-			SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-			String dateString = sqlFormat.format(new Date());
-			deleteStmnt.setString(1, '$' + groupName);
-			deleteStmnt.executeUpdate();
-
-			insertStmnt.setString(1, '$' + groupName);
-			insertStmnt.setString(2, dateString);
-			insertStmnt.setInt(3, 0);
-			insertStmnt.setInt(4, currentValue);
-			insertStmnt.executeUpdate();
+		SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		String dateString = sqlFormat.format(new Date());
+		this.writer.save(new DatabaseWriter.PlayerRow('$' + groupName, dateString, 0, currentValue));
+	}
+
+	@Override
+	void close()
+	{
+		if(this.writer != null)
+		{
+			this.writer.close();
 		}
-		catch(SQLException e)
+
+		if(this.connectionPool != null)
 		{
-			GriefPrevention.AddLogEntry("Unable to save data for group " + groupName + ".  Details:");
-			GriefPrevention.AddLogEntry(e.getMessage());
+			this.connectionPool.close();
 		}
 	}
 
-	@Override
-	synchronized void close()
+	//builds a claim from a claim row and its trust entries (null if it has none).  throws "World not found" if its world isn't loaded
+	private Claim loadClaim(ResultSet results, TrustLists trust, List<World> validWorlds) throws Exception
 	{
-		if(this.databaseConnection != null)
+		long claimID = results.getLong("id");
+		boolean inheritNothing = results.getBoolean("inheritNothing");
+		Location lesserBoundaryCorner = this.locationFromString(results.getString("lessercorner"), validWorlds);
+		Location greaterBoundaryCorner = this.locationFromString(results.getString("greatercorner"), validWorlds);
+
+		String ownerName = results.getString("owner");
+		UUID ownerID = null;
+		if(ownerName.isEmpty() || ownerName.startsWith("--"))
+		{
+			ownerID = null;  //administrative land claim or subdivision
+		}
+		else if(this.getSchemaVersion() < 1)
 		{
 			try
 			{
-				if(!this.databaseConnection.isClosed())
-				{
-					this.databaseConnection.close();
-				}
+				ownerID = UUIDFetcher.getUUIDOf(ownerName);
+			}
+			catch(Exception ex)
+			{
+				GriefPrevention.AddLogEntry("This owner name did not convert to a UUID: " + ownerName + ".");
+				GriefPrevention.AddLogEntry("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
+			}
+		}
+		else
+		{
+			try
+			{
+				ownerID = UUID.fromString(ownerName);
+			}
+			catch(Exception ex)
+			{
+				GriefPrevention.AddLogEntry("This owner entry is not a UUID: " + ownerName + ".");
+				GriefPrevention.AddLogEntry("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
 			}
-			catch(SQLException e){};
 		}
 
-		this.databaseConnection = null;
+		if(trust == null) trust = new TrustLists();
+		List<String> builderNames = this.convertNameListToUUIDList(trust.lists.get(0));
+		List<String> containerNames = this.convertNameListToUUIDList(trust.lists.get(1));
+		List<String> accessorNames = this.convertNameListToUUIDList(trust.lists.get(2));
+		List<String> managerNames = this.convertNameListToUUIDList(trust.lists.get(3));
+		return new Claim(lesserBoundaryCorner, greaterBoundaryCorner, ownerID, builderNames, containerNames, accessorNames, managerNames, inheritNothing, claimID);
 	}
 
-	private synchronized void refreshDataConnection() throws SQLException
+	//loads the claims in a world which just loaded.  claim rows don't say which world they're in except at the start of their corners,
+	//so this looks for those.  only claims in worlds which weren't loaded at startup (or were unloaded since) can be there
+	@Override
+	List<Claim> loadClaimsInWorldFromStorage(World world) throws Exception
 	{
-		if(this.databaseConnection == null || !this.databaseConnection.isValid(3))
+		String worldPrefix = world.getName().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + ";%";
+		List<World> validWorlds = Collections.singletonList(world);
+		HashMap<Long, Claim> topLevelClaims = new HashMap<Long, Claim>();
+		HashMap<Claim, Long> subdivisions = new HashMap<Claim, Long>();
+
+		//claims in this world may have saves (or deletes) waiting
+		this.writer.flush();
+
+		try(Connection connection = this.connectionPool.getConnection();
+			PreparedStatement permissionsStmnt = connection.prepareStatement("SELECT p.claimid, p.subject, p.level FROM griefprevention_claimpermissions p JOIN griefprevention_claimdata c ON c.id = p.claimid WHERE c.lessercorner LIKE ?;");
+			PreparedStatement selectStmnt = connection.prepareStatement("SELECT * FROM griefprevention_claimdata WHERE lessercorner LIKE ?;"))
 		{
-			if(this.databaseConnection != null && !this.databaseConnection.isClosed())
+			permissionsStmnt.setString(1, worldPrefix);
+			HashMap<Long, TrustLists> permissions = loadClaimPermissions(permissionsStmnt.executeQuery());
+
+			selectStmnt.setString(1, worldPrefix);
+			ResultSet results = selectStmnt.executeQuery();
+			while(results.next())
 			{
-				this.databaseConnection.close();
+				long parentId = results.getLong("parentid");
+				TrustLists trust = permissions.get(results.getLong("id"));
+				Claim claim = this.loadClaim(results, trust, validWorlds);
+				this.writer.track(rowSnapshot(results, trust));
+				if(parentId == -1)
+				{
+					topLevelClaims.put(claim.id, claim);
+				}
+				else
+				{
+					subdivisions.put(claim, parentId);
+				}
 			}
+		}
 
-			//set username/pass properties
-			Properties connectionProps = new Properties();
-			connectionProps.put("user", this.userName);
-			connectionProps.put("password", this.password);
-			connectionProps.put("autoReconnect", "true");
-			connectionProps.put("maxReconnects", String.valueOf(Integer.MAX_VALUE));
+		//parents first, then their subdivisions
+		List<Claim> claims = new ArrayList<Claim>(topLevelClaims.values());
+		for(Claim child : subdivisions.keySet())
+		{
+			Claim parent = topLevelClaims.get(subdivisions.get(child));
+			if(parent == null) continue;
+			child.parent = parent;
+			claims.add(child);
+		}
+
+		for(Claim claim : claims)
+		{
+			this.unloadedClaimIDs.remove(claim.id);
+		}
+		return claims;
+	}
+
+	@Override
+	boolean flushClaimWrites()
+	{
+		return this.writer.flush();
+	}
 
-			//establish connection
-			this.databaseConnection = DriverManager.getConnection(this.databaseUrl, connectionProps);
+	@Override
+	void claimsUnloaded(World world, List<Claim> claims)
+	{
+		for(Claim claim : claims)
+		{
+			this.unloadedClaimIDs.add(claim.id);
+			this.writer.forget(claim.id);
 		}
 	}
 
+	@Override
+	Collection<Long> getUnloadedClaimIDs()
+	{
+		return new ArrayList<Long>(this.unloadedClaimIDs);
+	}
+
+	//a claim in a world which isn't loaded, which was just written to the database without being loaded (see FlatFileDataStore.migrateData())
+	//it waits for its world like the ones found at startup, and counts toward its owner meanwhile
+	void addUnloadedClaim(ClaimFileWriter.Snapshot claim)
+	{
+		this.unloadedClaimIDs.add(claim.id);
+		this.countUnloadedClaim(claim.lesserBoundaryCorner, claim.greaterBoundaryCorner, claim.ownerID, claim.parentID);
+	}
+
+	//borrows a pooled connection, for bulk work like DatabaseMigration which manages its own transactions.  close it when done
+	Connection getConnection() throws SQLException
+	{
+		return this.connectionPool.getConnection();
+	}
+
+	//this database, for DatabaseMigration
+	DatabaseMigration.Target getMigrationTarget()
+	{
+		DatabaseMigration.Target target = new DatabaseMigration.Target();
+		target.url = this.databaseUrl;
+		target.connections = this::getConnection;
+		target.log = GriefPrevention::AddLogEntry;
+
+		target.deleteClaimSQL = this.getDeleteClaimSQL();
+		target.insertClaimSQL = this.getInsertClaimSQL();
+		target.selectClaimSQL = "SELECT id FROM griefprevention_claimdata WHERE id=?;";
+		target.claimBinder = (claim, statement) -> this.setClaimParameters(statement, claim);
+
+		target.deleteClaimPermissionSQL = this.getDeleteClaimPermissionSQL();
+		target.insertClaimPermissionSQL = this.getInsertClaimPermissionSQL();
+		target.permissionLevels = PERMISSION_LEVELS;
+
+		target.deletePlayerSQL = this.getDeletePlayerDataSQL();
+		target.insertPlayerSQL = this.getInsertPlayerDataSQL();
+		target.selectPlayerSQL = this.getGetPlayerDataSQL();
+		target.playerBinder = (player, statement) -> this.setPlayerDataParameters(statement, player);
+		return target;
+	}
+
+	@Override
+	List<String> getPerformanceStats()
+	{
+		List<String> stats = super.getPerformanceStats();
+		stats.addAll(this.connectionPool.getStats());
+		stats.addAll(this.writer.getStats());
+		return stats;
+	}
+
 	@Override
 	protected int getSchemaVersionFromStorage()
 	{
-		try (PreparedStatement selectStmnt = this.databaseConnection.prepareStatement(this.getSelectSchemaVersionSQL())) {
+		try (Connection connection = this.connectionPool.getConnection();
+			 PreparedStatement selectStmnt = connection.prepareStatement(this.getSelectSchemaVersionSQL())) {
 			ResultSet results = selectStmnt.executeQuery();
 
 			//if there's nothing yet, assume 0 and add it
@@ -660,12 +759,15 @@ public class DatabaseDataStore extends DataStore
 	@Override
 	protected void updateSchemaVersionInStorage(int versionToSet)
 	{
-		try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(this.getDeleteSchemaVersionSQL());
-			 PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(this.getInsertSchemaVerSQL())) {
+		try (Connection connection = this.connectionPool.getConnection();
+			 PreparedStatement deleteStmnt = connection.prepareStatement(this.getDeleteSchemaVersionSQL());
+			 PreparedStatement insertStmnt = connection.prepareStatement(this.getInsertSchemaVerSQL())) {
+			connection.setAutoCommit(false);
 			deleteStmnt.execute();
 
 			insertStmnt.setInt(1, versionToSet);
 			insertStmnt.executeUpdate();
+			connection.commit();
 		}
 		catch(SQLException e)
 		{
@@ -674,17 +776,197 @@ public class DatabaseDataStore extends DataStore
 		}
 	}
 
-	/**
-	 * Concats an array to a string divided with the ; sign
-	 * @param input Arraylist with strings to concat
-	 * @return String with all values from input array
-	 */
-	private String storageStringBuilder(ArrayList<String> input) {
-		String output = "";
-		for(String string : input) {
-			output += string + ";";
+	//the tables in the latest layout: primary keys on claim IDs and player names, an index on claim owners, and trust entries in
+	//their own table, one row each, so trusting or untrusting someone is one row instead of rewriting the claim
+	private void createTables(Statement statement) throws SQLException
+	{
+		statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_claimdata (id INT(15) NOT NULL, owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner VARCHAR(100), inheritnothing BOOLEAN, parentid INT(15), PRIMARY KEY (id), INDEX (owner));");
+
+		statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_claimpermissions (claimid INT(15) NOT NULL, subject VARCHAR(191) NOT NULL, level VARCHAR(10) NOT NULL, PRIMARY KEY (claimid, subject, level));");
+
+		statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_playerdata (name VARCHAR(50) NOT NULL, lastlogin DATETIME, accruedblocks INT(15), bonusblocks INT(15), PRIMARY KEY (name));");
+	}
+
+	//moves the old tables aside (as griefprevention_claimdata_v3 and griefprevention_playerdata_v3, kept as a backup), creates the
+	//new ones and copies everything over, splitting the trust lists into rows.  every step after the rename can be redone, so an
+	//interrupted upgrade just runs again at the next startup
+	private void migrateToSchema4(Connection databaseConnection) throws SQLException
+	{
+		GriefPrevention.AddLogEntry("Upgrading the database tables.  The old ones will be kept as griefprevention_claimdata_v3 and griefprevention_playerdata_v3.");
+		long start = System.nanoTime();
+
+		Statement statement = databaseConnection.createStatement();
+		if(!tableExists(databaseConnection, "griefprevention_claimdata_v3"))
+		{
+			statement.execute("RENAME TABLE griefprevention_claimdata TO griefprevention_claimdata_v3, griefprevention_playerdata TO griefprevention_playerdata_v3;");
 		}
-		return output;
+		this.createTables(statement);
+
+		//before version 3, subdivisions had no IDs of their own (they're all -1), so they can't go in the new table.  they're loaded from
+		//the old table instead, and get IDs when every claim is written again (see DataStore.initialize()).  until that's finished, this
+		//runs at every startup, so whatever an interrupted run wrote is cleared out first
+		if(this.getSchemaVersion() <= 2)
+		{
+			statement.execute("DELETE FROM griefprevention_claimdata;");
+			statement.execute("DELETE FROM griefprevention_claimpermissions;");
+		}
+
+		//duplicate rows (there was nothing to stop them before) collapse into one
+		int claimRows = statement.executeUpdate("INSERT IGNORE INTO griefprevention_claimdata (id, owner, lessercorner, greatercorner, inheritnothing, parentid) " +
+				"SELECT id, owner, lessercorner, greatercorner, inheritnothing, parentid FROM griefprevention_claimdata_v3 WHERE id IS NOT NULL AND id <> -1;");
+		int playerRows = statement.executeUpdate("INSERT IGNORE INTO griefprevention_playerdata (name, lastlogin, accruedblocks, bonusblocks) " +
+				"SELECT name, lastlogin, accruedblocks, bonusblocks FROM griefprevention_playerdata_v3 WHERE name IS NOT NULL;");
+
+		//trust lists were semicolon separated
+		int permissionRows = 0;
+		int skipped = 0;
+		databaseConnection.setAutoCommit(false);
+		try(Statement selectStmnt = databaseConnection.createStatement();
+			PreparedStatement deleteStmnt = databaseConnection.prepareStatement(this.deleteClaimPermissionsSQL);
+			PreparedStatement insertStmnt = databaseConnection.prepareStatement(this.insertClaimPermissionSQL))
+		{
+			ResultSet results = selectStmnt.executeQuery("SELECT id, builders, containers, accessors, managers FROM griefprevention_claimdata_v3 WHERE id IS NOT NULL AND id <> -1;");
+			int claims = 0;
+			while(results.next())
+			{
+				long claimID = results.getLong("id");
+				deleteStmnt.setLong(1, claimID);
+				deleteStmnt.addBatch();
+				for(int i = 0; i < TRUST_COLUMNS.length; i++)
+				{
+					String list = results.getString(TRUST_COLUMNS[i]);
+					if(list == null) continue;
+					for(String subject : list.split(";"))
+					{
+						if(subject.isEmpty()) continue;
+						if(subject.length() > 191)
+						{
+							skipped++;
+							continue;
+						}
+
+						insertStmnt.setLong(1, claimID);
+						insertStmnt.setString(2, subject);
+						insertStmnt.setString(3, PERMISSION_LEVELS[i]);
+						insertStmnt.addBatch();
+						permissionRows++;
+					}
+				}
+
+				if(++claims % 1000 == 0)
+				{
+					deleteStmnt.executeBatch();
+					insertStmnt.executeBatch();
+					databaseConnection.commit();
+				}
+			}
+			deleteStmnt.executeBatch();
+			insertStmnt.executeBatch();
+			databaseConnection.commit();
+		}
+		finally
+		{
+			databaseConnection.setAutoCommit(true);
+		}
+
+		if(skipped > 0)
+		{
+			GriefPrevention.AddLogEntry("Skipped " + skipped + " trust entries longer than 191 characters.");
+		}
+		GriefPrevention.AddLogEntry("Upgraded the database tables in " + (System.nanoTime() - start) / 1000000 + "ms (" + claimRows + " claims, " + permissionRows +
+				" trust entries, " + playerRows + " players).");
+
+		//claims from before version 3 still need converting as they load, and are all written again afterward (see DataStore.initialize())
+		if(this.getSchemaVersion() == 3)
+		{
+			this.setSchemaVersion(4);
+		}
+	}
+
+	private static boolean tableExists(Connection connection, String table) throws SQLException
+	{
+		try(ResultSet results = connection.getMetaData().getTables(connection.getCatalog(), null, table, null))
+		{
+			return results.next();
+		}
+	}
+
+	//a claim's trust entries, by level (see PERMISSION_LEVELS)
+	private static class TrustLists
+	{
+		final List<ArrayList<String>> lists = Arrays.asList(new ArrayList<String>(), new ArrayList<String>(), new ArrayList<String>(), new ArrayList<String>());
+	}
+
+	//before version 4, trust entries were semicolon separated lists in these columns of the claim row, in the order of PERMISSION_LEVELS
+	private static final String [] TRUST_COLUMNS = { "builders", "containers", "accessors", "managers" };
+
+	private static TrustLists loadTrustColumns(ResultSet results) throws SQLException
+	{
+		TrustLists trust = new TrustLists();
+		for(int i = 0; i < TRUST_COLUMNS.length; i++)
+		{
+			String list = results.getString(TRUST_COLUMNS[i]);
+			if(list == null) continue;
+			for(String subject : list.split(";"))
+			{
+				if(!subject.isEmpty()) trust.lists.get(i).add(subject);
+			}
+		}
+		return trust;
+	}
+
+	private static HashMap<Long, TrustLists> loadClaimPermissions(ResultSet results) throws SQLException
+	{
+		HashMap<Long, TrustLists> permissions = new HashMap<Long, TrustLists>();
+		List<String> levels = Arrays.asList(PERMISSION_LEVELS);
+		while(results.next())
+		{
+			int level = levels.indexOf(results.getString("level"));
+			if(level < 0) continue;
+
+			long claimID = results.getLong("claimid");
+			TrustLists trust = permissions.get(claimID);
+			if(trust == null)
+			{
+				trust = new TrustLists();
+				permissions.put(claimID, trust);
+			}
+			trust.lists.get(level).add(results.getString("subject"));
+		}
+		return permissions;
+	}
+
+	//what the database has for a claim, so the writer can tell what changes later
+	private static ClaimFileWriter.Snapshot rowSnapshot(ResultSet results, TrustLists trust) throws SQLException
+	{
+		if(trust == null) trust = new TrustLists();
+		FlatFileDataStore.ClaimFileContents contents = new FlatFileDataStore.ClaimFileContents();
+		contents.lesserBoundaryCorner = results.getString("lessercorner");
+		contents.greaterBoundaryCorner = results.getString("greatercorner");
+		contents.ownerIdentifier = results.getString("owner");
+		contents.builders = trust.lists.get(0);
+		contents.containers = trust.lists.get(1);
+		contents.accessors = trust.lists.get(2);
+		contents.managers = trust.lists.get(3);
+		contents.parentID = results.getLong("parentid");
+		contents.inheritNothing = results.getBoolean("inheritnothing");
+		return new ClaimFileWriter.Snapshot(results.getLong("id"), contents);
+	}
+
+	//turns an insert into a MySQL upsert on the given key
+	private static String upsertSQL(String insertSQL, String key, String... columns)
+	{
+		StringBuilder sql = new StringBuilder(insertSQL.substring(0, insertSQL.lastIndexOf(';')));
+		sql.append(" ON DUPLICATE KEY UPDATE ");
+		boolean first = true;
+		for(String column : columns)
+		{
+			if(column.equals(key)) continue;
+			if(!first) sql.append(", ");
+			sql.append(column).append(" = VALUES(").append(column).append(")");
+			first = false;
+		}
+		return sql.append(";").toString();
 	}
 
 	public String getUpdateNameSQL() {
@@ -734,4 +1016,24 @@ public class DatabaseDataStore extends DataStore
 	public String getSelectSchemaVersionSQL() {
 		return selectSchemaVersionSQL;
 	}
+
+	public String getUpsertClaimSQL() {
+		return upsertClaimSQL;
+	}
+
+	public String getUpsertPlayerDataSQL() {
+		return upsertPlayerDataSQL;
+	}
+
+	public String getInsertClaimPermissionSQL() {
+		return insertClaimPermissionSQL;
+	}
+
+	public String getDeleteClaimPermissionSQL() {
+		return deleteClaimPermissionSQL;
+	}
+
+	public String getDeleteClaimPermissionsSQL() {
+		return deleteClaimPermissionsSQL;
+	}
 }
@@ -0,0 +1,408 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+//moves a file system data store's claims and players into the database in bulk, see FlatFileDataStore.migrateData()
+//rows go in with JDBC batches, a few thousand per transaction, and player data is read on a worker pool while the database is busy
+//after each transaction, how far it got is written to a checkpoint file, so an interrupted migration picks up where it left off
+//each transaction deletes its rows before inserting them, so redoing part of one (say, it committed but the checkpoint wasn't written) is harmless
+//claims' trust entries go in right after their claims, as rows of their own
+//the checkpoint says which database it's for, and is only believed if that database has the rows it says were migrated, so pointing the
+//config at another (or an emptied) database starts over instead of skipping everything
+//everything about the database (connections, SQL, how rows are bound) comes in through a Target, so it can be pointed at any database for testing
+class DatabaseMigration
+{
+    private static final int BATCH_SIZE = 500;
+    private static final int TRANSACTION_SIZE = 5000;
+    private static final long PROGRESS_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    //reads one player's data, on a worker thread.  returns null if it can't be read (after logging why), so the player is skipped
+    interface PlayerReader<T>
+    {
+        T read(UUID playerID) throws Exception;
+    }
+
+    interface ConnectionSource
+    {
+        //a connection to use for one transaction.  it's closed afterward
+        Connection getConnection() throws SQLException;
+    }
+
+    //puts one row into a statement
+    interface RowBinder<T>
+    {
+        void bind(T row, PreparedStatement statement) throws SQLException;
+    }
+
+    //the database being migrated into, see DatabaseDataStore.getMigrationTarget()
+    //delete and select statements take the row's key: a claim's ID, a player's name, or a trust entry's claim ID, subject and level
+    static class Target
+    {
+        String url;
+        ConnectionSource connections;
+        Consumer<String> log;
+
+        String deleteClaimSQL;
+        String insertClaimSQL;
+        String selectClaimSQL;
+        RowBinder<ClaimFileWriter.Snapshot> claimBinder;
+
+        String deleteClaimPermissionSQL;
+        String insertClaimPermissionSQL;
+        String [] permissionLevels;  //names of the trust levels, in the order Claim.getPermissions() lists them
+
+        String deletePlayerSQL;
+        String insertPlayerSQL;
+        String selectPlayerSQL;
+        RowBinder<DatabaseWriter.PlayerRow> playerBinder;
+    }
+
+    //one trust entry
+    private static class PermissionRow
+    {
+        final long claimID;
+        final String subject;
+        final String level;
+
+        PermissionRow(long claimID, String subject, String level)
+        {
+            this.claimID = claimID;
+            this.subject = subject;
+            this.level = level;
+        }
+    }
+
+    private final Target target;
+    private final File checkpointFile;
+
+    //from the checkpoint: everything up to and including these is already in the database
+    private long lastClaimID = -1;
+    private String lastPlayerID = null;
+
+    DatabaseMigration(Target target, File checkpointFile)
+    {
+        this.target = target;
+        this.checkpointFile = checkpointFile;
+
+        if(!checkpointFile.exists()) return;
+        try
+        {
+            String url = null;
+            for(String line : Files.readAllLines(checkpointFile.toPath(), StandardCharsets.UTF_8))
+            {
+                String [] parts = line.split(" ", 2);
+                if(parts.length != 2) continue;
+                if(parts[0].equals("database")) url = parts[1];
+                if(parts[0].equals("claims")) this.lastClaimID = Long.parseLong(parts[1]);
+                if(parts[0].equals("players")) this.lastPlayerID = parts[1];
+            }
+
+            if(!target.url.equals(url))
+            {
+                target.log.accept("The migration checkpoint is for another database, starting from the beginning.");
+                this.startOver();
+                return;
+            }
+
+            if(!this.checkpointedRowsExist())
+            {
+                target.log.accept("The database doesn't have what the migration checkpoint says was migrated, starting from the beginning.");
+                this.startOver();
+                return;
+            }
+
+            target.log.accept("Resuming an interrupted migration (claims up to ID " + this.lastClaimID + " and " +
+                    (this.lastPlayerID == null ? "no players" : "players up to " + this.lastPlayerID) + " are already in the database).");
+        }
+        catch(Exception e)
+        {
+            //starting over is slower, but just as correct
+            target.log.accept("Unable to read the migration checkpoint, starting from the beginning: " + e.getMessage());
+            this.startOver();
+        }
+    }
+
+    private void startOver()
+    {
+        this.lastClaimID = -1;
+        this.lastPlayerID = null;
+    }
+
+    //whether the last claim and player the checkpoint mentions are in the database
+    private boolean checkpointedRowsExist() throws SQLException
+    {
+        try(Connection connection = this.target.connections.getConnection())
+        {
+            if(this.lastClaimID >= 0 && !rowExists(connection, this.target.selectClaimSQL, statement -> statement.setLong(1, this.lastClaimID))) return false;
+            if(this.lastPlayerID != null && !rowExists(connection, this.target.selectPlayerSQL, statement -> statement.setString(1, this.lastPlayerID))) return false;
+            return true;
+        }
+    }
+
+    private interface KeyBinder
+    {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    private static boolean rowExists(Connection connection, String selectSQL, KeyBinder key) throws SQLException
+    {
+        try(PreparedStatement statement = connection.prepareStatement(selectSQL))
+        {
+            key.bind(statement);
+            try(ResultSet results = statement.executeQuery())
+            {
+                return results.next();
+            }
+        }
+    }
+
+    //writes claims (top level claims and subdivisions alike) in claim ID order
+    void migrateClaims(List<ClaimFileWriter.Snapshot> claims) throws SQLException, IOException
+    {
+        ArrayList<ClaimFileWriter.Snapshot> remaining = new ArrayList<ClaimFileWriter.Snapshot>();
+        for(ClaimFileWriter.Snapshot claim : claims)
+        {
+            if(claim.id > this.lastClaimID) remaining.add(claim);
+        }
+        Collections.sort(remaining, Comparator.comparing(claim -> claim.id));
+
+        Progress progress = new Progress("claims", claims.size(), claims.size() - remaining.size());
+        for(int start = 0; start < remaining.size(); start += TRANSACTION_SIZE)
+        {
+            List<ClaimFileWriter.Snapshot> chunk = remaining.subList(start, Math.min(start + TRANSACTION_SIZE, remaining.size()));
+            this.writeChunk(chunk, claim -> "claim " + claim.id, this.target.deleteClaimSQL, this.target.insertClaimSQL, (claim, deleteStmnt, insertStmnt) ->
+            {
+                deleteStmnt.setLong(1, claim.id);
+                this.target.claimBinder.bind(claim, insertStmnt);
+            });
+            this.writeChunk(this.permissionRows(chunk), permission -> "claim " + permission.claimID + "'s trust entry for " + permission.subject,
+                    this.target.deleteClaimPermissionSQL, this.target.insertClaimPermissionSQL, (permission, deleteStmnt, insertStmnt) ->
+            {
+                for(PreparedStatement statement : new PreparedStatement [] { deleteStmnt, insertStmnt })
+                {
+                    statement.setLong(1, permission.claimID);
+                    statement.setString(2, permission.subject);
+                    statement.setString(3, permission.level);
+                }
+            });
+
+            this.lastClaimID = chunk.get(chunk.size() - 1).id;
+            this.writeCheckpoint();
+            progress.add(chunk.size());
+        }
+        progress.done();
+    }
+
+    private List<PermissionRow> permissionRows(List<ClaimFileWriter.Snapshot> claims)
+    {
+        List<PermissionRow> rows = new ArrayList<PermissionRow>();
+        for(ClaimFileWriter.Snapshot claim : claims)
+        {
+            List<List<String>> lists = Arrays.<List<String>>asList(claim.builders, claim.containers, claim.accessors, claim.managers);
+            for(int level = 0; level < lists.size(); level++)
+            {
+                for(String subject : lists.get(level))
+                {
+                    if(!subject.isEmpty()) rows.add(new PermissionRow(claim.id, subject, this.target.permissionLevels[level]));
+                }
+            }
+        }
+        return rows;
+    }
+
+    //writes players in UUID order.  the next transaction's players are read on the worker pool while the current one is written
+    //toRow runs on the calling thread, for anything which shouldn't be done from a worker
+    <T> void migratePlayers(List<UUID> playerIDs, PlayerReader<T> reader, Function<T, DatabaseWriter.PlayerRow> toRow) throws Exception
+    {
+        ArrayList<String> remaining = new ArrayList<String>();
+        for(UUID playerID : playerIDs)
+        {
+            String id = playerID.toString();
+            if(this.lastPlayerID == null || id.compareTo(this.lastPlayerID) > 0) remaining.add(id);
+        }
+        Collections.sort(remaining);
+
+        Progress progress = new Progress("players", playerIDs.size(), playerIDs.size() - remaining.size());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8)));
+        try
+        {
+            List<Future<T>> reads = this.readPlayers(pool, remaining, 0, reader);
+            for(int start = 0; start < remaining.size(); start += TRANSACTION_SIZE)
+            {
+                List<Future<T>> current = reads;
+                reads = this.readPlayers(pool, remaining, start + TRANSACTION_SIZE, reader);
+
+                List<DatabaseWriter.PlayerRow> chunk = new ArrayList<DatabaseWriter.PlayerRow>(current.size());
+                for(Future<T> read : current)
+                {
+                    T player = read.get();
+                    if(player != null) chunk.add(toRow.apply(player));
+                }
+
+                this.writeChunk(chunk, player -> "player " + player.name, this.target.deletePlayerSQL, this.target.insertPlayerSQL, (player, deleteStmnt, insertStmnt) ->
+                {
+                    deleteStmnt.setString(1, player.name);
+                    this.target.playerBinder.bind(player, insertStmnt);
+                });
+
+                this.lastPlayerID = remaining.get(Math.min(start + TRANSACTION_SIZE, remaining.size()) - 1);
+                this.writeCheckpoint();
+                progress.add(current.size());
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+        progress.done();
+    }
+
+    private <T> List<Future<T>> readPlayers(ExecutorService pool, List<String> playerIDs, int start, PlayerReader<T> reader)
+    {
+        List<Future<T>> reads = new ArrayList<Future<T>>();
+        for(int i = start; i < Math.min(start + TRANSACTION_SIZE, playerIDs.size()); i++)
+        {
+            UUID playerID = UUID.fromString(playerIDs.get(i));
+            reads.add(pool.submit(() -> reader.read(playerID)));
+        }
+        return reads;
+    }
+
+    //the migration is done, so there's nothing to resume
+    void finish()
+    {
+        if(this.checkpointFile.exists() && !this.checkpointFile.delete())
+        {
+            this.target.log.accept("Unable to delete the migration checkpoint \"" + this.checkpointFile.getAbsolutePath() + "\".");
+        }
+    }
+
+    //puts one row into the delete and insert statements
+    private interface RowPairBinder<T>
+    {
+        void bind(T row, PreparedStatement deleteStmnt, PreparedStatement insertStmnt) throws SQLException;
+    }
+
+    //writes rows in one transaction, in batches.  if a batch fails, the transaction is redone one row at a time so only the bad rows are lost
+    private <T> void writeChunk(List<T> rows, Function<T, String> describe, String deleteSQL, String insertSQL, RowPairBinder<T> binder) throws SQLException
+    {
+        try(Connection connection = this.target.connections.getConnection();
+            PreparedStatement deleteStmnt = connection.prepareStatement(deleteSQL);
+            PreparedStatement insertStmnt = connection.prepareStatement(insertSQL))
+        {
+            connection.setAutoCommit(false);
+            try
+            {
+                int batched = 0;
+                for(T row : rows)
+                {
+                    binder.bind(row, deleteStmnt, insertStmnt);
+                    deleteStmnt.addBatch();
+                    insertStmnt.addBatch();
+                    if(++batched % BATCH_SIZE == 0)
+                    {
+                        deleteStmnt.executeBatch();
+                        insertStmnt.executeBatch();
+                    }
+                }
+                deleteStmnt.executeBatch();
+                insertStmnt.executeBatch();
+                connection.commit();
+                return;
+            }
+            catch(SQLException e)
+            {
+                connection.rollback();
+                deleteStmnt.clearBatch();
+                insertStmnt.clearBatch();
+                this.target.log.accept("A migration batch failed, retrying it one row at a time: " + e.getMessage());
+            }
+
+            for(T row : rows)
+            {
+                try
+                {
+                    binder.bind(row, deleteStmnt, insertStmnt);
+                    deleteStmnt.executeUpdate();
+                    insertStmnt.executeUpdate();
+                }
+                catch(SQLException e)
+                {
+                    this.target.log.accept("Unable to migrate " + describe.apply(row) + ".  Details: " + e.getMessage());
+                }
+            }
+            connection.commit();
+        }
+    }
+
+    //written next to the old one and swapped in, so it's always one or the other
+    private void writeCheckpoint() throws IOException
+    {
+        File tempFile = new File(this.checkpointFile.getPath() + ".tmp");
+        String content = "database " + this.target.url + "\n" + "claims " + this.lastClaimID + "\n" + (this.lastPlayerID == null ? "" : "players " + this.lastPlayerID + "\n");
+        Files.write(tempFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile.toPath(), this.checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //logs how far along a phase is every few seconds, and how fast it's going
+    private class Progress
+    {
+        private final String what;
+        private final int total;
+        private final int skipped;
+        private int done;
+        private final long start = System.nanoTime();
+        private long lastReport = this.start;
+
+        Progress(String what, int total, int skipped)
+        {
+            this.what = what;
+            this.total = total;
+            this.skipped = skipped;
+            this.done = skipped;
+        }
+
+        void add(int rows)
+        {
+            this.done += rows;
+            long now = System.nanoTime();
+            if(now - this.lastReport < PROGRESS_NANOS) return;
+
+            this.lastReport = now;
+            target.log.accept(String.format("Migrated %d of %d %s (%.0f per second)...", this.done, this.total, this.what, this.rate(now)));
+        }
+
+        void done()
+        {
+            long now = System.nanoTime();
+            String resumed = this.skipped > 0 ? ", " + this.skipped + " were already done" : "";
+            target.log.accept(String.format("Migrated %d %s in %.1f seconds (%.0f per second%s).", this.total, this.what, (now - this.start) / 1000000000.0, this.rate(now), resumed));
+        }
+
+        private double rate(long now)
+        {
+            double seconds = Math.max((now - this.start) / 1000000000.0, 0.001);
+            return (this.done - this.skipped) / seconds;
+        }
+    }
+}
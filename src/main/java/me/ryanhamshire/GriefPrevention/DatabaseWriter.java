@@ -0,0 +1,477 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//writes claims and player data to the database in the background, for DatabaseDataStore
+//saving only takes a snapshot (on the calling thread, often the main thread) and queues it up.  once a second, or sooner when a lot is
+//waiting, everything queued is written in one transaction, as JDBC batches of upserts (or deletes, for deleted claims)
+//the writer remembers what's in the database for each claim, so only what changed is written: trusting someone is one permission row,
+//and the claim row is left alone.  a claim it knows nothing about has all its permission rows replaced
+//saves of a claim or player which is still waiting replace the waiting snapshot, like ClaimFileWriter, so repeated saves cost one row
+//transient failures (lost connections, deadlocks, lock timeouts) are retried with a growing delay.  if a transaction fails for any
+//other reason, its rows are written one at a time so only the bad ones are lost
+class DatabaseWriter
+{
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int BATCH_SIZE = 500;
+    private static final int EARLY_FLUSH_ROWS = 2000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    //a player data row.  groups' bonus blocks are rows too, named "$" + the group
+    static class PlayerRow
+    {
+        final String name;
+        final String lastLogin;
+        final int accruedBlocks;
+        final int bonusBlocks;
+
+        PlayerRow(String name, String lastLogin, int accruedBlocks, int bonusBlocks)
+        {
+            this.name = name;
+            this.lastLogin = lastLogin;
+            this.accruedBlocks = accruedBlocks;
+            this.bonusBlocks = bonusBlocks;
+        }
+    }
+
+    private final DatabaseDataStore dataStore;
+
+    //the latest snapshot of each claim and player waiting to be written
+    private final ConcurrentHashMap<Long, ClaimFileWriter.Snapshot> pendingClaims = new ConcurrentHashMap<Long, ClaimFileWriter.Snapshot>();
+    private final ConcurrentHashMap<String, PlayerRow> pendingPlayers = new ConcurrentHashMap<String, PlayerRow>();
+    private final ConcurrentHashMap<String, PlayerRow> writingPlayers = new ConcurrentHashMap<String, PlayerRow>();  //taken from pendingPlayers, not committed yet
+
+    //each claim as it is in the database, as of the last load or commit
+    private final ConcurrentHashMap<Long, ClaimFileWriter.Snapshot> written = new ConcurrentHashMap<Long, ClaimFileWriter.Snapshot>();
+    private final Object wakeUp = new Object();
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    //metrics, for /gpstats
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder transactionNanos = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failedRows = new LongAdder();
+
+    DatabaseWriter(DatabaseDataStore dataStore)
+    {
+        this.dataStore = dataStore;
+        this.thread = new Thread(this::run, "GriefPrevention Database Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    //queues a claim to be written (or deleted, for a delete snapshot)
+    void save(ClaimFileWriter.Snapshot claim)
+    {
+        this.pendingClaims.put(claim.id, claim);
+        this.queued();
+    }
+
+    void save(PlayerRow player)
+    {
+        this.pendingPlayers.put(player.name, player);
+        this.queued();
+    }
+
+    private void queued()
+    {
+        this.saves.increment();
+        if(this.closed)
+        {
+            //after close(), there's nobody left to write in the background
+            this.flush();
+        }
+        else if(this.pendingClaims.size() + this.pendingPlayers.size() >= EARLY_FLUSH_ROWS)
+        {
+            synchronized(this.wakeUp)
+            {
+                this.wakeUp.notify();
+            }
+        }
+    }
+
+    //a claim as it was read from the database
+    void track(ClaimFileWriter.Snapshot claim)
+    {
+        this.written.put(claim.id, claim);
+    }
+
+    //a claim which was unloaded, and could be changed by someone else before it's loaded again
+    void forget(Long claimID)
+    {
+        this.written.remove(claimID);
+    }
+
+    //a player's data if it's waiting to be written, so reads see it before it gets to the database
+    PlayerRow getPendingPlayer(String name)
+    {
+        PlayerRow player = this.pendingPlayers.get(name);
+        return player != null ? player : this.writingPlayers.get(name);
+    }
+
+    private void run()
+    {
+        while(!this.closed)
+        {
+            try
+            {
+                synchronized(this.wakeUp)
+                {
+                    this.wakeUp.wait(FLUSH_INTERVAL_MILLIS);
+                }
+            }
+            catch(InterruptedException e)
+            {
+                //close() interrupts to wake us up, it will write whatever's left
+                continue;
+            }
+
+            this.writePending();
+        }
+    }
+
+    //writes everything queued so far, on this thread.  returns whether all of it made it to the database
+    boolean flush()
+    {
+        long failed = this.failedRows.sum();
+        this.writePending();
+        return this.pendingClaims.isEmpty() && this.pendingPlayers.isEmpty() && this.failedRows.sum() == failed;
+    }
+
+    //synchronized so that an older snapshot of a claim or player is never written after a newer one
+    private synchronized void writePending()
+    {
+        List<ClaimFileWriter.Snapshot> claims = drain(this.pendingClaims);
+        List<PlayerRow> players = this.drainPlayers();
+        if(claims.isEmpty() && players.isEmpty()) return;
+
+        try
+        {
+            this.writeWithRetries(claims, players);
+        }
+        finally
+        {
+            this.writingPlayers.clear();
+        }
+    }
+
+    private void writeWithRetries(List<ClaimFileWriter.Snapshot> claims, List<PlayerRow> players)
+    {
+        for(int attempt = 1; ; attempt++)
+        {
+            try
+            {
+                this.write(claims, players);
+                return;
+            }
+            catch(SQLException e)
+            {
+                if(!isTransient(e))
+                {
+                    GriefPrevention.AddLogEntry("Unable to save " + claims.size() + " claims and " + players.size() + " players together, saving them one at a time.  Details: " + e.getMessage());
+                    this.writeOneAtATime(claims, players);
+                    return;
+                }
+
+                if(attempt >= MAX_ATTEMPTS)
+                {
+                    //they go back in the queue for next time, unless they've been saved again since
+                    GriefPrevention.AddLogEntry("Unable to save " + claims.size() + " claims and " + players.size() + " players after " + attempt + " attempts, will try again.  Details: " + e.getMessage());
+                    for(ClaimFileWriter.Snapshot claim : claims) this.pendingClaims.putIfAbsent(claim.id, claim);
+                    for(PlayerRow player : players) this.pendingPlayers.putIfAbsent(player.name, player);
+                    return;
+                }
+
+                this.retries.increment();
+                try
+                {
+                    Thread.sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+                }
+                catch(InterruptedException interrupted)
+                {
+                    //close() wants everything written, so keep going
+                }
+            }
+        }
+    }
+
+    //like drain(), but players stay where getPendingPlayer() can find them until they're committed
+    private List<PlayerRow> drainPlayers()
+    {
+        List<PlayerRow> drained = new ArrayList<PlayerRow>(this.pendingPlayers.size());
+        for(String name : this.pendingPlayers.keySet())
+        {
+            PlayerRow player = this.pendingPlayers.get(name);
+            if(player == null) continue;
+
+            //if they're saved again meanwhile, the newer save stays queued for next time
+            this.writingPlayers.put(name, player);
+            this.pendingPlayers.remove(name, player);
+            drained.add(player);
+        }
+        return drained;
+    }
+
+    private static <K, V> List<V> drain(ConcurrentHashMap<K, V> pending)
+    {
+        List<V> drained = new ArrayList<V>(pending.size());
+        for(K key : pending.keySet())
+        {
+            //whichever snapshot is latest at this point is the one which counts
+            V value = pending.remove(key);
+            if(value != null) drained.add(value);
+        }
+        return drained;
+    }
+
+    //writes rows in one transaction
+    private void write(List<ClaimFileWriter.Snapshot> claims, List<PlayerRow> players) throws SQLException
+    {
+        long start = System.nanoTime();
+        try(Connection connection = this.dataStore.getConnection())
+        {
+            connection.setAutoCommit(false);
+            try
+            {
+                this.writeClaims(connection, claims);
+                this.writePlayers(connection, players);
+                connection.commit();
+            }
+            catch(SQLException e)
+            {
+                connection.rollback();
+                throw e;
+            }
+        }
+
+        for(ClaimFileWriter.Snapshot claim : claims)
+        {
+            if(claim.delete) this.written.remove(claim.id);
+            else this.written.put(claim.id, claim);
+        }
+
+        this.transactions.increment();
+        this.transactionNanos.add(System.nanoTime() - start);
+        this.rows.add(claims.size() + players.size());
+    }
+
+    private void writeOneAtATime(List<ClaimFileWriter.Snapshot> claims, List<PlayerRow> players)
+    {
+        for(ClaimFileWriter.Snapshot claim : claims)
+        {
+            try
+            {
+                this.write(Collections.singletonList(claim), Collections.<PlayerRow>emptyList());
+            }
+            catch(SQLException e)
+            {
+                //like writeWithRetries(), a failure which might not happen again puts it back in the queue
+                if(isTransient(e))
+                {
+                    this.pendingClaims.putIfAbsent(claim.id, claim);
+                    continue;
+                }
+
+                this.failedRows.increment();
+                GriefPrevention.AddLogEntry("Unable to save data for claim " + claim.id + ".  Details: " + e.getMessage());
+            }
+        }
+
+        for(PlayerRow player : players)
+        {
+            try
+            {
+                this.write(Collections.<ClaimFileWriter.Snapshot>emptyList(), Collections.singletonList(player));
+            }
+            catch(SQLException e)
+            {
+                if(isTransient(e))
+                {
+                    this.pendingPlayers.putIfAbsent(player.name, player);
+                    continue;
+                }
+
+                this.failedRows.increment();
+                GriefPrevention.AddLogEntry("Unable to save data for " + player.name + ".  Details: " + e.getMessage());
+            }
+        }
+    }
+
+    private void writeClaims(Connection connection, List<ClaimFileWriter.Snapshot> claims) throws SQLException
+    {
+        if(claims.isEmpty()) return;
+
+        try(PreparedStatement deleteStmnt = connection.prepareStatement(this.dataStore.getDeleteClaimSQL());
+            PreparedStatement upsertStmnt = connection.prepareStatement(this.dataStore.getUpsertClaimSQL());
+            PreparedStatement deletePermissionsStmnt = connection.prepareStatement(this.dataStore.getDeleteClaimPermissionsSQL());
+            PreparedStatement deletePermissionStmnt = connection.prepareStatement(this.dataStore.getDeleteClaimPermissionSQL());
+            PreparedStatement insertPermissionStmnt = connection.prepareStatement(this.dataStore.getInsertClaimPermissionSQL()))
+        {
+            Batches batches = new Batches(deleteStmnt, upsertStmnt, deletePermissionsStmnt, deletePermissionStmnt, insertPermissionStmnt);
+            for(ClaimFileWriter.Snapshot claim : claims)
+            {
+                if(claim.delete)
+                {
+                    deleteStmnt.setLong(1, claim.id);
+                    batches.add(deleteStmnt);
+                    deletePermissionsStmnt.setLong(1, claim.id);
+                    batches.add(deletePermissionsStmnt);
+                    continue;
+                }
+
+                ClaimFileWriter.Snapshot old = this.written.get(claim.id);
+                if(old == null || !sameRow(old, claim))
+                {
+                    this.dataStore.setClaimParameters(upsertStmnt, claim);
+                    batches.add(upsertStmnt);
+                }
+
+                if(old == null)
+                {
+                    deletePermissionsStmnt.setLong(1, claim.id);
+                    batches.add(deletePermissionsStmnt);
+                }
+
+                List<List<String>> oldLists = old == null ? null : permissionLists(old);
+                List<List<String>> newLists = permissionLists(claim);
+                for(int level = 0; level < DatabaseDataStore.PERMISSION_LEVELS.length; level++)
+                {
+                    List<String> before = oldLists == null ? Collections.<String>emptyList() : oldLists.get(level);
+                    List<String> after = newLists.get(level);
+                    for(String subject : before)
+                    {
+                        if(after.contains(subject)) continue;
+                        bindPermission(deletePermissionStmnt, claim.id, subject, level);
+                        batches.add(deletePermissionStmnt);
+                    }
+                    for(String subject : after)
+                    {
+                        if(subject.isEmpty() || before.contains(subject)) continue;
+                        bindPermission(insertPermissionStmnt, claim.id, subject, level);
+                        batches.add(insertPermissionStmnt);
+                    }
+                }
+            }
+            batches.execute();
+        }
+    }
+
+    //whether the claim row itself would be written the same
+    private static boolean sameRow(ClaimFileWriter.Snapshot a, ClaimFileWriter.Snapshot b)
+    {
+        return a.lesserBoundaryCorner.equals(b.lesserBoundaryCorner) && a.greaterBoundaryCorner.equals(b.greaterBoundaryCorner) &&
+                a.ownerID.equals(b.ownerID) && a.parentID.equals(b.parentID) && a.inheritNothing == b.inheritNothing;
+    }
+
+    //in the order of DatabaseDataStore.PERMISSION_LEVELS
+    private static List<List<String>> permissionLists(ClaimFileWriter.Snapshot claim)
+    {
+        return Arrays.<List<String>>asList(claim.builders, claim.containers, claim.accessors, claim.managers);
+    }
+
+    private static void bindPermission(PreparedStatement statement, long claimID, String subject, int level) throws SQLException
+    {
+        statement.setLong(1, claimID);
+        statement.setString(2, subject);
+        statement.setString(3, DatabaseDataStore.PERMISSION_LEVELS[level]);
+    }
+
+    private void writePlayers(Connection connection, List<PlayerRow> players) throws SQLException
+    {
+        if(players.isEmpty()) return;
+
+        try(PreparedStatement upsertStmnt = connection.prepareStatement(this.dataStore.getUpsertPlayerDataSQL()))
+        {
+            int batched = 0;
+            for(PlayerRow player : players)
+            {
+                this.dataStore.setPlayerDataParameters(upsertStmnt, player);
+                upsertStmnt.addBatch();
+                if(++batched % BATCH_SIZE == 0) upsertStmnt.executeBatch();
+            }
+            upsertStmnt.executeBatch();
+        }
+    }
+
+    //several statements' batches, run in the order the statements were given whenever enough rows are waiting.  a claim's
+    //permission rows are all deleted (for a claim which is new to the writer) before any are inserted
+    private static class Batches
+    {
+        private final PreparedStatement [] statements;
+        private int batched = 0;
+
+        Batches(PreparedStatement... statements)
+        {
+            this.statements = statements;
+        }
+
+        void add(PreparedStatement statement) throws SQLException
+        {
+            statement.addBatch();
+            if(++this.batched % BATCH_SIZE == 0) this.execute();
+        }
+
+        void execute() throws SQLException
+        {
+            for(PreparedStatement statement : this.statements)
+            {
+                statement.executeBatch();
+            }
+        }
+    }
+
+    //failures which might not happen again: lost connections, deadlocks and lock wait timeouts
+    private static boolean isTransient(SQLException e)
+    {
+        if(e instanceof BatchUpdateException && e.getNextException() != null) e = e.getNextException();
+        if(e instanceof SQLTransientException || e instanceof SQLRecoverableException) return true;
+
+        String state = e.getSQLState();
+        if(state != null && (state.startsWith("08") || state.startsWith("40"))) return true;
+        return e.getErrorCode() == 1205 || e.getErrorCode() == 1213;  //MySQL lock wait timeout, deadlock
+    }
+
+    //writes whatever's left, and stops the writer thread
+    void close()
+    {
+        this.closed = true;
+        this.thread.interrupt();
+        try
+        {
+            this.thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        this.flush();
+    }
+
+    List<String> getStats()
+    {
+        List<String> stats = new ArrayList<String>();
+        long transactions = this.transactions.sum();
+        long rows = this.rows.sum();
+        stats.add(String.format("Database writer: %d saves, %d rows written in %d transactions (%.1f rows, %.1fms each), %d retries, %d failed rows, %d waiting",
+                this.saves.sum(), rows, transactions, transactions == 0 ? 0.0 : (double)rows / transactions,
+                transactions == 0 ? 0.0 : this.transactionNanos.sum() / 1000000.0 / transactions,
+                this.retries.sum(), this.failedRows.sum(), this.pendingClaims.size() + this.pendingPlayers.size()));
+        return stats;
+    }
+}
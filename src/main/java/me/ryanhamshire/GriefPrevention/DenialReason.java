@@ -0,0 +1,65 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.bukkit.entity.Player;
+
+//why a permission check failed, see Claim.checkBuild() and friends (which return null when permission is granted)
+//the message for the player is only put together when someone asks for it, since most callers only care whether
+//a check failed, and building it means looking up the claim owner's name
+public class DenialReason
+{
+    //for checks made on behalf of nobody in particular (some mods manage to do that), which come with an empty message
+    static final DenialReason UNKNOWN_PLAYER = new DenialReason(null, null, null);
+
+    private final Messages reason;
+    private final Claim claim;
+    private final Player player;
+    private volatile String message = null;
+
+    DenialReason(Messages reason, Claim claim, Player player)
+    {
+        this.reason = reason;
+        this.claim = claim;
+        this.player = player;
+    }
+
+    //which message explains the denial, or null for an unknown player
+    public Messages getReason()
+    {
+        return this.reason;
+    }
+
+    //the message to show the player
+    public String getMessage()
+    {
+        String message = this.message;
+        if(message == null)
+        {
+            message = this.buildMessage();
+            this.message = message;
+        }
+
+        return message;
+    }
+
+    private String buildMessage()
+    {
+        if(this.reason == null) return "";
+
+        DataStore dataStore = GriefPrevention.instance.dataStore;
+        String message = dataStore.getMessage(this.reason, this.claim.getOwnerName());
+
+        //only editing the claim (resizing, deleting, etc.) doesn't advertise ignoreclaims
+        if(this.reason != Messages.OnlyOwnersModifyClaims && this.player.hasPermission("griefprevention.ignoreclaims"))
+        {
+            message += "  " + dataStore.getMessage(Messages.IgnoreClaimsAdvertisement);
+        }
+
+        return message;
+    }
+
+    //for the String returning checks
+    static String getMessage(DenialReason reason)
+    {
+        return reason == null ? null : reason.getMessage();
+    }
+}
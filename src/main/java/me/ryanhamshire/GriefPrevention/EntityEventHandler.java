@@ -150,7 +150,8 @@ public class EntityEventHandler implements Listener
         {
             if (event.getEntityType() == EntityType.WITHER)
             {
-                Claim claim = this.dataStore.getClaimAt(event.getBlock().getLocation(), false, null);
+                Block block = event.getBlock();
+                Claim claim = this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), false, null);
                 if (claim == null || !claim.areExplosivesAllowed || !GriefPrevention.instance.config_blockClaimExplosions)
                 {
                     event.setCancelled(true);
@@ -321,7 +322,7 @@ public class EntityEventHandler implements Listener
             if(block.getType() == Material.AIR) continue;
             
             //is it in a land claim?
-            Claim claim = this.dataStore.getClaimAt(block.getLocation(), false, cachedClaim);
+            Claim claim = this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), false, cachedClaim);
             if(claim != null)
             {
                 cachedClaim = claim;
@@ -377,7 +378,8 @@ public class EntityEventHandler implements Listener
 		if(event.getEntity().getType() == EntityType.ENDERMAN)
 		{
 			//and the block is claimed
-			if(this.dataStore.getClaimAt(event.getBlock().getLocation(), false, null) != null)
+			Block block = event.getBlock();
+			if(this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), false, null) != null)
 			{
 				//he doesn't get to steal it
 				event.setCancelled(true);
@@ -830,7 +832,7 @@ public class EntityEventHandler implements Listener
 	                      if(claim != null)
 	                      {
 	                          cachedClaim = claim;
-	                          if(claim.allowContainers(thrower) != null)
+	                          if(claim.checkContainers(thrower) != null)
 	                          {
 								  event.setIntensity(effected, 0);
 	                              instance.sendMessage(thrower, TextMode.Err, Messages.NoDamageClaimedEntity, claim.getOwnerName());
@@ -28,6 +28,7 @@ import org.bukkit.configuration.file.YamlConfiguration;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -36,11 +37,18 @@ import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 
 //manages data stored in the file system
@@ -49,6 +57,28 @@ public class FlatFileDataStore extends DataStore
 	private final static String claimDataFolderPath = dataLayerFolderPath + File.separator + "ClaimData";
 	private final static String nextClaimIdFilePath = claimDataFolderPath + File.separator + "_nextClaimID";
 	private final static String schemaVersionFilePath = dataLayerFolderPath + File.separator + "_schemaVersion";
+	private final static String claimSnapshotFilePath = claimDataFolderPath + File.separator + "_claims.snapshot";
+	private final static String claimJournalFilePath = claimDataFolderPath + File.separator + "_claims.journal";
+	private final static String playerDataSegmentFilePath = playerDataFolderPath + File.separator + "_players.segment";
+	
+	//claim files are written in the background, see ClaimFileWriter.  so is the optional binary snapshot of all claims, see ClaimSnapshotFile
+	//in journal mode, claim changes are appended to a journal on top of the snapshot instead of written to claim files, see ClaimJournal
+	private final boolean claimJournalEnabled = GriefPrevention.instance.config_advanced_claimJournal;
+	private final File claimSnapshotFile = GriefPrevention.instance.config_advanced_binaryClaimSnapshot || this.claimJournalEnabled ? new File(claimSnapshotFilePath) : null;
+	private final File claimJournalFile = new File(claimJournalFilePath);
+	private final ClaimFileWriter claimWriter = new ClaimFileWriter(new File(claimDataFolderPath), this.claimSnapshotFile, this.claimJournalEnabled ? this.claimJournalFile : null);
+	private int claimsInSnapshot = -1;  //how many claims were loaded from the snapshot, if it was used
+	private long claimSnapshotGeneration = 0;
+	private boolean claimsFromJournal = false;  //whether the journal was replayed over the snapshot
+	private long claimJournalLength = 0;  //how much of the journal was good, if it was replayed over a snapshot of the same generation
+	
+	//claims in worlds which aren't loaded, by world name (lower case).  they're loaded when their world is, see DataStore.loadClaimsInWorld()
+	//with the snapshot or journal, the claim writer has them.  otherwise they're read from their claim files
+	private final HashMap<String, ArrayList<Long>> unloadedClaims = new HashMap<String, ArrayList<Long>>();
+	private HashMap<Long, ClaimFileContents> unloadedClaimContents = new HashMap<Long, ClaimFileContents>();  //only while initializing
+	
+	//when player data is packed into one file instead of a file per player, see PlayerDataSegment
+	private PlayerDataSegment playerDataSegment = null;
 	
 	static boolean hasData()
 	{
@@ -134,6 +164,7 @@ public class FlatFileDataStore extends DataStore
 				
 				//try to parse into a long value
 				this.nextClaimID = Long.parseLong(line);
+				this.reservedClaimIDs = this.nextClaimID;
 			}
 			catch(Exception e){ }
 			
@@ -199,6 +230,16 @@ public class FlatFileDataStore extends DataStore
             }
         }
 		
+		//pack player data files into the segment, or unpack the segment back into files, depending on the config
+		this.initializePlayerDataSegment(playerDataFolder);
+		
+		//a snapshot left over from when it was enabled wasn't kept up to date since, so it can't be trusted if it's ever enabled again
+		//(unless there's a journal on top of it, in which case it's where the claims are)
+		if(this.claimSnapshotFile == null && !this.claimJournalFile.exists())
+		{
+		    new File(claimSnapshotFilePath).delete();
+		}
+		
 		//load claims data into memory		
 		//get a list of all the files in the claims data folder
 		files = claimDataFolder.listFiles();
@@ -212,9 +253,68 @@ public class FlatFileDataStore extends DataStore
 		    this.loadClaimData(files);
 		}
 		
+		//if journal mode was turned off, the claim files need to catch up with the journal before it and its snapshot go away
+		if(!this.claimJournalEnabled && this.claimsFromJournal)
+		{
+		    GriefPrevention.AddLogEntry("Claim journal mode is off, writing all claims back to claim files...");
+		    
+		    //claims in worlds which aren't loaded are only in the snapshot and journal too, so they're written back with the rest
+		    //if any of them can't be written, the snapshot and journal are still the only copy, so they have to stay
+		    try
+		    {
+		        this.claimWriter.rewriteClaimFiles(this.getAllClaimSnapshots());
+		    }
+		    catch(IOException e)
+		    {
+		        throw new IOException("Unable to write the claim journal's claims back to claim files, so the journal was kept.  Fix the problem and restart, " +
+		                "or turn journal mode back on.  Details: " + e.toString(), e);
+		    }
+		    
+		    //the snapshot is the journal's base, so it's older than the claims either way
+		    this.claimsInSnapshot = -1;
+		    new File(claimSnapshotFilePath).delete();
+		    this.claimJournalFile.delete();
+		}
+		
+		//from now on, keep the claim snapshot (if enabled) matching the claim files, or the journal (if enabled) matching the claims
+		if(this.claimSnapshotFile != null)
+		{
+		    ArrayList<ClaimFileWriter.Snapshot> loadedClaims = this.getAllClaimSnapshots();
+		    
+		    //if any claims in the snapshot couldn't be loaded (like ones in worlds which are gone), it needs rewriting
+		    this.claimWriter.track(loadedClaims, this.claimsInSnapshot == loadedClaims.size(), this.claimSnapshotGeneration, this.claimJournalLength);
+		}
+		this.unloadedClaimContents = null;
+		
+		//version 4 only changed the database tables, files are the same as version 3
+		if(this.getSchemaVersion() == 3)
+		{
+		    this.setSchemaVersion(4);
+		}
+		
 		super.initialize();
 	}
 	
+	//every claim which was just loaded, including subdivisions and claims in worlds which aren't loaded.  only during initialize()
+	private ArrayList<ClaimFileWriter.Snapshot> getAllClaimSnapshots()
+	{
+	    ArrayList<ClaimFileWriter.Snapshot> snapshots = new ArrayList<ClaimFileWriter.Snapshot>();
+	    for(Claim claim : this.claims)
+	    {
+	        snapshots.add(new ClaimFileWriter.Snapshot(this, claim, claim.modifiedDate.getTime()));
+	        for(Claim child : claim.children)
+	        {
+	            snapshots.add(new ClaimFileWriter.Snapshot(this, child, child.modifiedDate.getTime()));
+	        }
+	    }
+	    
+	    for(Long claimID : this.unloadedClaimContents.keySet())
+	    {
+	        snapshots.add(new ClaimFileWriter.Snapshot(claimID, this.unloadedClaimContents.get(claimID)));
+	    }
+	    return snapshots;
+	}
+	
 	void loadClaimData_Legacy(File [] files) throws Exception
 	{
 	    List<World> validWorlds = Bukkit.getServer().getWorlds();
@@ -354,8 +454,7 @@ public class FlatFileDataStore extends DataStore
                             
                             subdivision.modifiedDate = new Date(files[i].lastModified());
                             subdivision.parent = topLevelClaim;
-                            topLevelClaim.children.add(subdivision);
-                            subdivision.inDataStore = true;
+                            this.addClaim(subdivision, false);
                         }
                         
                         //move up to the first line in the next subdivision
@@ -394,7 +493,79 @@ public class FlatFileDataStore extends DataStore
 	
 	void loadClaimData(File [] files) throws Exception
 	{
-	    ConcurrentHashMap<Claim, Long> orphans = new ConcurrentHashMap<Claim, Long>();
+	    //if there's a snapshot, it has exactly what the claim files have (see ClaimSnapshotFile), without parsing thousands of files
+	    //if there's a journal, the snapshot plus the journal is what the claims are (see ClaimJournal), whether or not journal mode is still on
+	    File snapshotFile = new File(claimSnapshotFilePath);
+	    boolean journalExists = this.claimJournalFile.exists();
+	    if((this.claimSnapshotFile != null || journalExists) && snapshotFile.exists())
+	    {
+	        long start = System.nanoTime();
+	        LinkedHashMap<Long, ClaimFileContents> snapshot = null;
+	        try
+	        {
+	            ClaimSnapshotFile.Contents contents = ClaimSnapshotFile.read(snapshotFile);
+	            if(journalExists)
+	            {
+	                ClaimJournal.Replay replay = ClaimJournal.replay(this.claimJournalFile, contents.generation, contents.claims);
+	                if(replay.damaged)
+	                {
+	                    GriefPrevention.AddLogEntry("The claim journal ends in a damaged record (probably from a crash while writing it).  Using the " + replay.records + " records before it.");
+	                }
+	                this.claimsFromJournal = true;
+	                if(replay.generation == contents.generation) this.claimJournalLength = replay.validLength;
+	            }
+	            this.claimSnapshotGeneration = contents.generation;
+	            snapshot = contents.claims;
+	        }
+	        catch(Exception e)
+	        {
+	            this.claimsFromJournal = false;
+	            this.claimJournalLength = 0;
+	            
+	            //in journal mode these may be the only copy of recent claim changes, and the claim writer is about to start a new snapshot
+	            //and journal from the claim files.  so they're kept aside for recovery, and if that's not possible, nothing is loaded at all
+	            String suffix = ".corrupt-" + System.currentTimeMillis();
+	            for(File file : new File [] { snapshotFile, this.claimJournalFile })
+	            {
+	                if(!file.exists()) continue;
+	                File aside = new File(file.getPath() + suffix);
+	                if(!file.renameTo(aside))
+	                {
+	                    throw new IOException("Unable to use the claim snapshot and journal, and unable to move \"" + file.getAbsolutePath() + "\" aside to keep it safe.  Move it somewhere else and restart, " +
+	                            "or fix it.  Details: " + e.toString(), e);
+	                }
+	            }
+	            
+	            if(journalExists)
+	            {
+	                GriefPrevention.AddLogEntry("Unable to use the claim snapshot and journal, loading claim files instead.  Claim changes since journal mode was turned on may be missing.  " +
+	                        "The snapshot and journal were kept as \"" + snapshotFile.getName() + suffix + "\" and \"" + this.claimJournalFile.getName() + suffix + "\".  Details: " + e.toString());
+	            }
+	            else
+	            {
+	                GriefPrevention.AddLogEntry("Unable to use the claim snapshot, loading claim files instead.  It was kept as \"" + snapshotFile.getName() + suffix + "\".  Details: " + e.toString());
+	            }
+	        }
+	        
+	        if(snapshot != null)
+	        {
+	            long read = System.nanoTime();
+	            ConcurrentHashMap<Claim, Long> orphans = this.buildLoadedClaims(new ArrayList<Long>(snapshot.keySet()), new ArrayList<ClaimFileContents>(snapshot.values()));
+	            long built = System.nanoTime();
+	            this.linkLoadedSubdivisions(orphans);
+	            long linked = System.nanoTime();
+	            this.claimsInSnapshot = snapshot.size();
+	            GriefPrevention.AddLogEntry("Read " + snapshot.size() + " claims from the claim " + (this.claimsFromJournal ? "snapshot and journal" : "snapshot") + " in " + millis(start, linked) + "ms (reading " + millis(start, read) +
+	                    "ms, building claims " + millis(read, built) + "ms, linking subdivisions " + millis(built, linked) + "ms).");
+	            return;
+	        }
+	    }
+	    
+	    //loading happens in phases: sort out which files are claims, parse those in parallel (the slow part with lots of claims),
+	    //then build and add the claims one by one in file order on this thread, then link subdivisions to their parents
+	    long start = System.nanoTime();
+	    ArrayList<File> claimFiles = new ArrayList<File>();
+	    ArrayList<Long> claimIDs = new ArrayList<Long>();
         for(int i = 0; i < files.length; i++)
         {           
             if(files[i].isFile())  //avoids folders
@@ -428,42 +599,263 @@ public class FlatFileDataStore extends DataStore
                     files[i] = newFile;
                 }
                 
-                try
-                {                   
-                    ArrayList<Long> out_parentID = new ArrayList<Long>();  //hacky output parameter
-                    Claim claim = this.loadClaim(files[i], out_parentID, claimID);
-                    if(out_parentID.size() == 0 || out_parentID.get(0) == -1)
-                    {                        
-                        this.addClaim(claim, false);
-                    }
-                    else
-                    {
-                        orphans.put(claim, out_parentID.get(0));
-                    }
-                }
+                claimFiles.add(files[i]);
+                claimIDs.add(claimID);
+            }
+        }
+        
+        //parse on a bounded pool.  parsing doesn't touch the server or this data store, so it's safe off the main thread
+        long listed = System.nanoTime();
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<ClaimFileContents>> parsed = new ArrayList<Future<ClaimFileContents>>(claimFiles.size());
+        try
+        {
+            for(File file : claimFiles)
+            {
+                parsed.add(pool.submit(() -> readClaimFile(file)));
+            }
+            
+            for(Future<ClaimFileContents> future : parsed)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        
+        //build claims in file order, as if each file had been parsed right here
+        long parsedAll = System.nanoTime();
+        ArrayList<ClaimFileContents> contents = new ArrayList<ClaimFileContents>(parsed.size());
+        for(Future<ClaimFileContents> future : parsed)
+        {
+            contents.add(future.get());
+        }
+        parsed = null;  //done with those
+        ConcurrentHashMap<Claim, Long> orphans = this.buildLoadedClaims(claimIDs, contents);
+        
+        long built = System.nanoTime();
+        this.linkLoadedSubdivisions(orphans);
+        
+        long linked = System.nanoTime();
+        GriefPrevention.AddLogEntry("Read " + claimFiles.size() + " claim files in " + millis(start, linked) + "ms (listing " + millis(start, listed) +
+                "ms, parsing " + millis(listed, parsedAll) + "ms on " + threads + " threads, building claims " + millis(parsedAll, built) +
+                "ms, linking subdivisions " + millis(built, linked) + "ms).");
+	}
+	
+	//builds claims from what their files say and adds the top level ones, in order.  returns the subdivisions, with their parent IDs
+	private ConcurrentHashMap<Claim, Long> buildLoadedClaims(List<Long> claimIDs, List<ClaimFileContents> contents)
+	{
+        List<World> validWorlds = Bukkit.getServer().getWorlds();
+        ConcurrentHashMap<Claim, Long> orphans = new ConcurrentHashMap<Claim, Long>();
+        for(int i = 0; i < claimIDs.size(); i++)
+        {
+            File file = new File(claimDataFolderPath + File.separator + claimIDs.get(i) + ".yml");
+            ClaimFileContents claimContents = contents.get(i);
+            contents.set(i, null);  //done with it
+            try
+            {                   
+                if(claimContents.error != null) throw claimContents.error;
                 
-                //if there's any problem with the file's content, log an error message and skip it
-                catch(Exception e)
+                ArrayList<Long> out_parentID = new ArrayList<Long>();  //hacky output parameter
+                Claim claim = this.loadClaim(claimContents, out_parentID, claimIDs.get(i), validWorlds);
+                if(out_parentID.size() == 0 || out_parentID.get(0) == -1)
+                {                        
+                    this.addClaim(claim, false);
+                }
+                else
                 {
-                    if(e.getMessage() != null && e.getMessage().contains("World not found"))
-                    {
-                        files[i].delete();
-                    }
-                    else
-                    {
-                        StringWriter errors = new StringWriter();
-                        e.printStackTrace(new PrintWriter(errors));
-                        GriefPrevention.AddLogEntry(files[i].getName() + " " + errors.toString(), CustomLogEntryTypes.Exception);
-                    }
+                    orphans.put(claim, out_parentID.get(0));
+                }
+            }
+            
+            //if there's any problem with the file's content, log an error message and skip it
+            catch(Exception e)
+            {
+                //claims in worlds which aren't loaded (yet) wait for their world
+                if(e.getMessage() != null && e.getMessage().contains("World not found"))
+                {
+                    this.addUnloadedClaim(claimContents, claimIDs.get(i));
+                }
+                else
+                {
+                    StringWriter errors = new StringWriter();
+                    e.printStackTrace(new PrintWriter(errors));
+                    GriefPrevention.AddLogEntry(file.getName() + " " + errors.toString(), CustomLogEntryTypes.Exception);
                 }
             }
         }
         
-        //link children to parents
+        return orphans;
+	}
+	
+	//parks a claim in a world which isn't loaded, until it is
+	private void addUnloadedClaim(ClaimFileContents contents, Long claimID)
+	{
+	    String worldName = contents.lesserBoundaryCorner.split(";")[0].toLowerCase();
+	    this.countUnloadedClaim(contents.lesserBoundaryCorner, contents.greaterBoundaryCorner, contents.ownerIdentifier, contents.parentID);
+	    synchronized(this.unloadedClaims)
+	    {
+	        ArrayList<Long> claimIDs = this.unloadedClaims.get(worldName);
+	        if(claimIDs == null)
+	        {
+	            claimIDs = new ArrayList<Long>();
+	            this.unloadedClaims.put(worldName, claimIDs);
+	        }
+	        claimIDs.add(claimID);
+	    }
+	    
+	    //the claim writer keeps the snapshot (and journal) whole, so it needs these too.  so does writing claims back to claim files
+	    //when journal mode is turned off, since then the snapshot and journal are the only copy of them
+	    if(this.unloadedClaimContents != null)
+	    {
+	        this.unloadedClaimContents.put(claimID, contents);
+	    }
+	}
+	
+	//how a claim which isn't in memory is stored.  null if it isn't there anymore or can't be read (after logging why)
+	private ClaimFileWriter.Snapshot getStoredClaim(Long claimID)
+	{
+	    if(this.claimSnapshotFile != null) return this.claimWriter.getTrackedClaim(claimID);
+	    
+	    File file = new File(claimDataFolderPath + File.separator + claimID + ".yml");
+	    if(!file.exists()) return null;
+	    ClaimFileContents contents = readClaimFile(file);
+	    if(contents.error != null)
+	    {
+	        StringWriter errors = new StringWriter();
+	        contents.error.printStackTrace(new PrintWriter(errors));
+	        GriefPrevention.AddLogEntry(file.getName() + " " + errors.toString(), CustomLogEntryTypes.Exception);
+	        return null;
+	    }
+	    return new ClaimFileWriter.Snapshot(claimID, contents);
+	}
+	
+	@Override
+	List<Claim> loadClaimsInWorldFromStorage(World world) throws Exception
+	{
+	    ArrayList<Long> claimIDs;
+	    synchronized(this.unloadedClaims)
+	    {
+	        claimIDs = this.unloadedClaims.remove(world.getName().toLowerCase());
+	    }
+	    if(claimIDs == null) return new ArrayList<Claim>();
+	    
+	    try
+	    {
+	        //claim files may have saves queued up
+	        if(this.claimSnapshotFile == null) this.claimWriter.flush();
+	        
+	        List<World> validWorlds = Collections.singletonList(world);
+	        HashMap<Long, Claim> topLevelClaims = new HashMap<Long, Claim>();
+	        HashMap<Claim, Long> subdivisions = new HashMap<Claim, Long>();
+	        for(Long claimID : claimIDs)
+	        {
+	            //deleted while its world was unloaded, or unreadable (which was logged).  either way, the rest of the world's claims still load
+	            ClaimFileWriter.Snapshot stored = this.getStoredClaim(claimID);
+	            if(stored == null) continue;
+	            
+	            ArrayList<Long> out_parentID = new ArrayList<Long>();
+	            Claim claim;
+	            try
+	            {
+	                claim = this.loadClaim(stored.toContents(), out_parentID, claimID, validWorlds);
+	            }
+	            
+	            //if there's any problem with the claim's content, log an error message and skip it, like when loading at startup
+	            catch(Exception e)
+	            {
+	                StringWriter errors = new StringWriter();
+	                e.printStackTrace(new PrintWriter(errors));
+	                GriefPrevention.AddLogEntry(claimID + ".yml " + errors.toString(), CustomLogEntryTypes.Exception);
+	                continue;
+	            }
+	            
+	            if(out_parentID.size() == 0 || out_parentID.get(0) == -1)
+	            {
+	                topLevelClaims.put(claimID, claim);
+	            }
+	            else
+	            {
+	                subdivisions.put(claim, out_parentID.get(0));
+	            }
+	        }
+	        
+	        //parents first, then their subdivisions
+	        List<Claim> claims = new ArrayList<Claim>(topLevelClaims.values());
+	        for(Claim child : subdivisions.keySet())
+	        {
+	            Claim parent = topLevelClaims.get(subdivisions.get(child));
+	            if(parent == null) continue;
+	            child.parent = parent;
+	            claims.add(child);
+	        }
+	        return claims;
+	    }
+	    catch(Exception e)
+	    {
+	        //leave them for next time
+	        synchronized(this.unloadedClaims)
+	        {
+	            ArrayList<Long> parked = this.unloadedClaims.get(world.getName().toLowerCase());
+	            if(parked != null) claimIDs.addAll(parked);
+	            this.unloadedClaims.put(world.getName().toLowerCase(), claimIDs);
+	        }
+	        throw e;
+	    }
+	}
+	
+	@Override
+	boolean flushClaimWrites()
+	{
+	    this.claimWriter.flush();
+	    return true;
+	}
+	
+	@Override
+	void claimsUnloaded(World world, List<Claim> claims)
+	{
+	    //any claims which were already waiting for this world (say, because loading them failed) keep waiting
+	    String worldName = world.getName().toLowerCase();
+	    synchronized(this.unloadedClaims)
+	    {
+	        ArrayList<Long> claimIDs = this.unloadedClaims.get(worldName);
+	        if(claimIDs == null)
+	        {
+	            claimIDs = new ArrayList<Long>(claims.size());
+	            this.unloadedClaims.put(worldName, claimIDs);
+	        }
+	        for(Claim claim : claims)
+	        {
+	            claimIDs.add(claim.id);
+	        }
+	    }
+	}
+	
+	@Override
+	Collection<Long> getUnloadedClaimIDs()
+	{
+	    ArrayList<Long> claimIDs = new ArrayList<Long>();
+	    synchronized(this.unloadedClaims)
+	    {
+	        for(ArrayList<Long> worldClaimIDs : this.unloadedClaims.values())
+	        {
+	            claimIDs.addAll(worldClaimIDs);
+	        }
+	    }
+	    return claimIDs;
+	}
+	
+	//link children to parents
+	//getClaim() is an ID index lookup, so this stays cheap with lots of claims.  subdivisions can't have subdivisions
+	private void linkLoadedSubdivisions(ConcurrentHashMap<Claim, Long> orphans)
+	{
         for(Claim child : orphans.keySet())
         {
             Claim parent = this.getClaim(orphans.get(child));
-            if(parent != null)
+            if(parent != null && parent.parent == null)
             {
                 child.parent = parent;
                 this.addClaim(child, false);
@@ -471,30 +863,86 @@ public class FlatFileDataStore extends DataStore
         }
 	}
 	
-	Claim loadClaim(File file, ArrayList<Long> out_parentID, long claimID) throws IOException, InvalidConfigurationException, Exception
+	private static long millis(long startNanos, long endNanos)
 	{
-	    List<String> lines = Files.readLines(file, Charset.forName("UTF-8"));
-        StringBuilder builder = new StringBuilder();
-        for(String line : lines)
-        {
-            builder.append(line).append('\n');
-        }
-        
-        return this.loadClaim(builder.toString(), out_parentID, file.lastModified(), claimID, Bukkit.getServer().getWorlds());
+	    return (endNanos - startNanos) / 1000000;
 	}
 	
-	Claim loadClaim(String input, ArrayList<Long> out_parentID, long lastModifiedDate, long claimID, List<World> validWorlds) throws InvalidConfigurationException, Exception
+	//what a claim file (or the claim snapshot) says, before it's turned into a claim.  worlds aren't looked up yet, since that needs the server
+	static class ClaimFileContents
+	{
+	    String lesserBoundaryCorner;
+	    String greaterBoundaryCorner;
+	    String ownerIdentifier;
+	    List<String> builders;
+	    List<String> containers;
+	    List<String> accessors;
+	    List<String> managers;
+	    boolean inheritNothing;
+	    long parentID;
+	    long lastModifiedDate;
+	    Exception error;  //if the file couldn't be read or parsed
+	}
+	
+	//reads and parses a claim file.  safe to call from any thread
+	private static ClaimFileContents readClaimFile(File file)
+	{
+	    ClaimFileContents contents = new ClaimFileContents();
+	    try
+	    {
+	        List<String> lines = Files.readLines(file, Charset.forName("UTF-8"));
+	        StringBuilder builder = new StringBuilder();
+	        for(String line : lines)
+	        {
+	            builder.append(line).append('\n');
+	        }
+	        
+	        parseClaimFile(builder.toString(), contents);
+	        contents.lastModifiedDate = file.lastModified();
+	    }
+	    catch(Exception e)
+	    {
+	        contents.error = e;
+	    }
+	    
+	    return contents;
+	}
+	
+	private static void parseClaimFile(String input, ClaimFileContents contents) throws InvalidConfigurationException
 	{
-	    Claim claim = null;
 	    YamlConfiguration yaml = new YamlConfiguration();
         yaml.loadFromString(input);
         
         //boundaries
-        Location lesserBoundaryCorner = this.locationFromString(yaml.getString("Lesser Boundary Corner"), validWorlds);
-        Location greaterBoundaryCorner = this.locationFromString(yaml.getString("Greater Boundary Corner"), validWorlds);
+        contents.lesserBoundaryCorner = yaml.getString("Lesser Boundary Corner");
+        contents.greaterBoundaryCorner = yaml.getString("Greater Boundary Corner");
+        
+        //owner
+        contents.ownerIdentifier = yaml.getString("Owner");
+        
+        contents.builders = yaml.getStringList("Builders");
+        
+        contents.containers = yaml.getStringList("Containers");
+        
+        contents.accessors = yaml.getStringList("Accessors");
+        
+        contents.managers = yaml.getStringList("Managers");
+        
+        contents.inheritNothing = yaml.getBoolean("inheritNothing");
+        
+        contents.parentID = yaml.getLong("Parent Claim ID", -1L);
+	}
+	
+	private Claim loadClaim(ClaimFileContents contents, ArrayList<Long> out_parentID, long claimID, List<World> validWorlds) throws Exception
+	{
+	    Claim claim = null;
+        
+        //boundaries
+        Location lesserBoundaryCorner = this.locationFromString(contents.lesserBoundaryCorner, validWorlds);
+        Location greaterBoundaryCorner = this.locationFromString(contents.greaterBoundaryCorner, validWorlds);
         
         //owner
-        String ownerIdentifier = yaml.getString("Owner");
+        String ownerIdentifier = contents.ownerIdentifier;
         UUID ownerID = null;
         if(!ownerIdentifier.isEmpty())
         {
@@ -509,116 +957,177 @@ public class FlatFileDataStore extends DataStore
             }
         }
         
-        List<String> builders = yaml.getStringList("Builders");
-        
-        List<String> containers = yaml.getStringList("Containers");
-        
-        List<String> accessors = yaml.getStringList("Accessors");
-        
-        List<String> managers = yaml.getStringList("Managers");
-        
-        boolean inheritNothing = yaml.getBoolean("inheritNothing");
-
-        out_parentID.add(yaml.getLong("Parent Claim ID", -1L));
+        out_parentID.add(contents.parentID);
         
         //instantiate
-        claim = new Claim(lesserBoundaryCorner, greaterBoundaryCorner, ownerID, builders, containers, accessors, managers, inheritNothing, claimID);
-        claim.modifiedDate = new Date(lastModifiedDate);
+        claim = new Claim(lesserBoundaryCorner, greaterBoundaryCorner, ownerID, contents.builders, contents.containers, contents.accessors, contents.managers, contents.inheritNothing, claimID);
+        claim.modifiedDate = new Date(contents.lastModifiedDate);
         claim.id = claimID;
         
         return claim;
 	}
 	
-	String getYamlForClaim(Claim claim)
+	//only snapshots the claim, the file is written in the background
+	@Override
+	void writeClaimToStorage(Claim claim)
 	{
-        YamlConfiguration yaml = new YamlConfiguration();
-        
-        //boundaries
-        yaml.set("Lesser Boundary Corner",  this.locationToString(claim.lesserBoundaryCorner));
-        yaml.set("Greater Boundary Corner",  this.locationToString(claim.greaterBoundaryCorner));
-        
-        //owner
-        String ownerID = "";
-        if(claim.ownerID != null) ownerID = claim.ownerID.toString();
-        yaml.set("Owner", ownerID);
-        
-        ArrayList<String> builders = new ArrayList<String>();
-        ArrayList<String> containers = new ArrayList<String>();
-        ArrayList<String> accessors = new ArrayList<String>();
-        ArrayList<String> managers = new ArrayList<String>();
-        claim.getPermissions(builders, containers, accessors, managers);
-        
-        yaml.set("Builders", builders);
-        yaml.set("Containers", containers);
-        yaml.set("Accessors", accessors);
-        yaml.set("Managers", managers);
-        
-        Long parentID = -1L;
-        if(claim.parent != null)
-        {
-            parentID = claim.parent.id;
-        }
-        
-        yaml.set("Parent Claim ID", parentID);
-        
-        yaml.set("inheritNothing", claim.getSubclaimRestrictions());
-
-        return yaml.saveToString();
+		//like a claim file's last modified date, which is what's used when loading from claim files
+		this.claimWriter.save(new ClaimFileWriter.Snapshot(this, claim, System.currentTimeMillis()));
 	}
 	
+	//deletes a claim from the file system
 	@Override
-	synchronized void writeClaimToStorage(Claim claim)
+	void deleteClaimFromSecondaryStorage(Claim claim)
+	{
+		//remove from disk, after any saves of the claim which haven't been written yet
+		if(claim.id != null) this.claimWriter.delete(claim.id);
+	}
+	
+	//with the segment, player data is packed into one file (see PlayerDataSegment), so there's no per player file to keep trying to read
+	//players who aren't in it yet are new
+	private void initializePlayerDataSegment(File playerDataFolder) throws IOException
 	{
-		String claimID = String.valueOf(claim.id);
+		File segmentFile = new File(playerDataSegmentFilePath);
+		if(!GriefPrevention.instance.config_advanced_packedPlayerData)
+		{
+			if(segmentFile.exists()) this.unpackPlayerDataSegment(segmentFile);
+			return;
+		}
+		
+		//player data files are packed in, then deleted once the segment is safely on disk
+		//if that's interrupted, the files which are left are picked up here next time (unless the segment already has those players)
+		ArrayList<File> playerFiles = new ArrayList<File>();
+		for(File file : playerDataFolder.listFiles())
+		{
+			if(getPlayerIDFromFile(file) != null) playerFiles.add(file);
+		}
+		
+		boolean packing = !segmentFile.exists();
+		this.playerDataSegment = packing ? PlayerDataSegment.create(segmentFile, playerFiles.size()) : PlayerDataSegment.open(segmentFile);
+		if(playerFiles.isEmpty()) return;
+		
+		long start = System.nanoTime();
+		int packed = 0;
+		for(File file : playerFiles)
+		{
+			UUID playerID = getPlayerIDFromFile(file);
+			if(this.isInPlayerDataSegment(playerID)) continue;
+			
+			PlayerData playerData = new PlayerData();
+			playerData.playerID = playerID;
+			if(!this.readPlayerDataFile(file, playerData)) continue;  //logged, and the file is kept
+			this.playerDataSegment.write(playerID, playerData.getAccruedClaimBlocks(), playerData.getBonusClaimBlocks());
+			packed++;
+		}
+		this.playerDataSegment.sync();
 		
-		String yaml = this.getYamlForClaim(claim);
+		int deleted = 0;
+		for(File file : playerFiles)
+		{
+			UUID playerID = getPlayerIDFromFile(file);
+			if(this.isInPlayerDataSegment(playerID) && file.delete()) deleted++;
+		}
 		
+		GriefPrevention.AddLogEntry((packing ? "Packed " : "Packed leftover ") + packed + " player data files into " + segmentFile.getName() + " in " + millis(start, System.nanoTime()) + "ms, deleted " + deleted + " files.");
+	}
+	
+	//writes every player in the segment back to a file of their own, then deletes the segment
+	private void unpackPlayerDataSegment(File segmentFile) throws IOException
+	{
+		long start = System.nanoTime();
+		PlayerDataSegment segment = PlayerDataSegment.open(segmentFile);
+		List<PlayerDataSegment.PlayerRecord> players;
 		try
 		{
-			//open the claim's file						
-			File claimFile = new File(claimDataFolderPath + File.separator + claimID + ".yml");
-			claimFile.createNewFile();
-			Files.write(yaml.getBytes("UTF-8"), claimFile);
-		}		
+			players = segment.readAll();
+			for(PlayerDataSegment.PlayerRecord player : players)
+			{
+				this.writePlayerDataFile(player.playerID, player.accruedBlocks, player.bonusBlocks);
+			}
+		}
+		finally
+		{
+			segment.close();
+		}
 		
-		//if any problem, log it
-		catch(Exception e)
+		//if this doesn't finish, the segment is still there and it's all done again next time
+		if(!segmentFile.delete())
 		{
-		    StringWriter errors = new StringWriter();
-            e.printStackTrace(new PrintWriter(errors));
-            GriefPrevention.AddLogEntry(claimID + " " + errors.toString(), CustomLogEntryTypes.Exception);
+			GriefPrevention.AddLogEntry("Unable to delete " + segmentFile.getAbsolutePath() + " after unpacking it.  Delete it before turning PackedPlayerData on again.");
 		}
+		GriefPrevention.AddLogEntry("Unpacked " + players.size() + " players from " + segmentFile.getName() + " into player data files in " + millis(start, System.nanoTime()) + "ms.");
 	}
 	
-	//deletes a claim from the file system
-	@Override
-	synchronized void deleteClaimFromSecondaryStorage(Claim claim)
+	//a damaged slot counts as missing, so a player data file for it is packed again rather than deleted
+	private boolean isInPlayerDataSegment(UUID playerID)
+	{
+		try
+		{
+			return this.playerDataSegment.read(playerID, new PlayerData());
+		}
+		catch(IOException e)
+		{
+			return false;
+		}
+	}
+	
+	//player data files are named after the player's UUID.  anything else in the folder (groups, special files) isn't one
+	private static UUID getPlayerIDFromFile(File file)
 	{
-		String claimID = String.valueOf(claim.id);
+		String name = file.getName();
+		if(!file.isFile() || file.isHidden()) return null;
+		if(name.startsWith("$") || name.startsWith("_") || name.endsWith(".ignore")) return null;
 		
-		//remove from disk
-		File claimFile = new File(claimDataFolderPath + File.separator + claimID + ".yml");
-		if(claimFile.exists() && !claimFile.delete())
+		try
 		{
-			GriefPrevention.AddLogEntry("Error: Unable to delete claim file \"" + claimFile.getAbsolutePath() + "\".");
-		}		
+			return UUID.fromString(name);
+		}
+		catch(IllegalArgumentException e)
+		{
+			return null;
+		}
 	}
 	
 	@Override
 	synchronized PlayerData getPlayerDataFromStorage(UUID playerID)
 	{
-		File playerFile = new File(playerDataFolderPath + File.separator + playerID.toString());
-					
 		PlayerData playerData = new PlayerData();
 		playerData.playerID = playerID;
 		
+		if(this.playerDataSegment != null)
+		{
+			try
+			{
+				this.playerDataSegment.read(playerID, playerData);
+			}
+			catch(IOException e)
+			{
+				//like a damaged player data file, the player gets the defaults
+				GriefPrevention.AddLogEntry("Failed to load PlayerData for " + playerID + " from the player data segment: " + e.getMessage(), CustomLogEntryTypes.Exception);
+			}
+			return playerData;
+		}
+		
+		File playerFile = new File(playerDataFolderPath + File.separator + playerID.toString());
+		
 		//if it exists as a file, read the file
 		if(playerFile.exists())
-		{			
-			boolean needRetry = false;
-			int retriesRemaining = 5;
-			Exception latestException = null;
-			do
+		{
+			this.readPlayerDataFile(playerFile, playerData);
+		}
+			
+		return playerData;
+	}
+	
+	//reads a player data file, returning whether that worked
+	private boolean readPlayerDataFile(File playerFile, PlayerData playerData)
+	{
+		UUID playerID = playerData.playerID;
+		
+		boolean needRetry = false;
+		int retriesRemaining = 5;
+		Exception latestException = null;
+		do
     			{
     			try
     			{					
@@ -675,19 +1184,18 @@ public class FlatFileDataStore extends DataStore
     			}
     			catch(InterruptedException exception) {}
     			
-			}while(needRetry && retriesRemaining >= 0);
-			
-			//if last attempt failed, log information about the problem
-			if(needRetry)
-			{
-			    StringWriter errors = new StringWriter();
-	            latestException.printStackTrace(new PrintWriter(errors));
-	            GriefPrevention.AddLogEntry("Failed to load PlayerData for " + playerID + ". This usually occurs when your server runs out of storage space, causing any file saves to corrupt. Fix or delete the file in GriefPrevetionData/PlayerData/" + playerID, CustomLogEntryTypes.Debug, false);
-	            GriefPrevention.AddLogEntry(playerID + " " + errors.toString(), CustomLogEntryTypes.Exception);
-			}
+		}while(needRetry && retriesRemaining >= 0);
+		
+		//if last attempt failed, log information about the problem
+		if(needRetry)
+		{
+		    StringWriter errors = new StringWriter();
+            latestException.printStackTrace(new PrintWriter(errors));
+            GriefPrevention.AddLogEntry("Failed to load PlayerData for " + playerID + ". This usually occurs when your server runs out of storage space, causing any file saves to corrupt. Fix or delete the file in GriefPrevetionData/PlayerData/" + playerID, CustomLogEntryTypes.Debug, false);
+            GriefPrevention.AddLogEntry(playerID + " " + errors.toString(), CustomLogEntryTypes.Exception);
 		}
-			
-		return playerData;
+		
+		return !needRetry;
 	}
 	
 	//saves changes to player data.  MUST be called after you're done making changes, otherwise a reload will lose them
@@ -697,30 +1205,17 @@ public class FlatFileDataStore extends DataStore
 		//never save data for the "administrative" account.  null for claim owner ID indicates administrative account
 		if(playerID == null) return;
 		
-		StringBuilder fileContent = new StringBuilder();
 		try
 		{
-			//first line is last login timestamp //RoboMWM - no longer storing/using
-			//if(playerData.getLastLogin() == null) playerData.setLastLogin(new Date());
-			//DateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss");
-			//fileContent.append(dateFormat.format(playerData.getLastLogin()));
-			fileContent.append("\n");
-			
-			//second line is accrued claim blocks
-			fileContent.append(String.valueOf(playerData.getAccruedClaimBlocks()));
-			fileContent.append("\n");			
-			
-			//third line is bonus claim blocks
-			fileContent.append(String.valueOf(playerData.getBonusClaimBlocks()));
-			fileContent.append("\n");
-			
-			//fourth line is blank
-			fileContent.append("\n");
-			
-			//write data to file
-            File playerDataFile = new File(playerDataFolderPath + File.separator + playerID.toString());
-            Files.write(fileContent.toString().getBytes("UTF-8"), playerDataFile);
-		}		
+			if(this.playerDataSegment != null)
+			{
+				this.playerDataSegment.write(playerID, playerData.getAccruedClaimBlocks(), playerData.getBonusClaimBlocks());
+			}
+			else
+			{
+				this.writePlayerDataFile(playerID, playerData.getAccruedClaimBlocks(), playerData.getBonusClaimBlocks());
+			}
+		}
 		
 		//if any problem, log it
 		catch(Exception e)
@@ -730,23 +1225,41 @@ public class FlatFileDataStore extends DataStore
 		}
 	}
 	
-	@Override
-	synchronized void incrementNextClaimID()
+	private void writePlayerDataFile(UUID playerID, int accruedBlocks, int bonusBlocks) throws IOException
 	{
-		//increment in memory
-		this.nextClaimID++;
+		StringBuilder fileContent = new StringBuilder();
 		
-		BufferedWriter outStream = null;
+		//first line is last login timestamp //RoboMWM - no longer storing/using
+		//if(playerData.getLastLogin() == null) playerData.setLastLogin(new Date());
+		//DateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss");
+		//fileContent.append(dateFormat.format(playerData.getLastLogin()));
+		fileContent.append("\n");
 		
-		try
+		//second line is accrued claim blocks
+		fileContent.append(String.valueOf(accruedBlocks));
+		fileContent.append("\n");			
+		
+		//third line is bonus claim blocks
+		fileContent.append(String.valueOf(bonusBlocks));
+		fileContent.append("\n");
+		
+		//fourth line is blank
+		fileContent.append("\n");
+		
+		//write data to file
+        File playerDataFile = new File(playerDataFolderPath + File.separator + playerID.toString());
+        Files.write(fileContent.toString().getBytes("UTF-8"), playerDataFile);
+	}
+	
+	@Override
+	void saveNextClaimID(long nextID)
+	{
+		//open the file and write the new value, making sure it's on disk before any claim gets an ID from the new block
+		try(FileOutputStream outStream = new FileOutputStream(new File(nextClaimIdFilePath)))
 		{
-			//open the file and write the new value
-			File nextClaimIdFile = new File(nextClaimIdFilePath);
-			nextClaimIdFile.createNewFile();
-			outStream = new BufferedWriter(new FileWriter(nextClaimIdFile));
-			
-			outStream.write(String.valueOf(this.nextClaimID));
-		}		
+			outStream.write(String.valueOf(nextID).getBytes("UTF-8"));
+			outStream.getFD().sync();
+		}
 		
 		//if any problem, log it
 		catch(Exception e)
@@ -754,13 +1267,6 @@ public class FlatFileDataStore extends DataStore
 			GriefPrevention.AddLogEntry("Unexpected exception saving next claim ID: " + e.getMessage());
 			e.printStackTrace();
 		}
-		
-		//close the file
-		try
-		{
-			if(outStream != null) outStream.close();
-		}
-		catch(IOException exception) {} 
 	}
 	
 	//grants a group (players with a specific permission) bonus claim blocks as long as they're still members of the group
@@ -798,17 +1304,48 @@ public class FlatFileDataStore extends DataStore
 		catch(IOException exception){}		
 	}
 	
-	synchronized void migrateData(DatabaseDataStore databaseStore)
+	//moves everything into the database in bulk, see DatabaseMigration.  if this is interrupted, the next startup picks up where it left off
+	synchronized void migrateData(DatabaseDataStore databaseStore) throws Exception
 	{
-		//migrate claims
-		for(int i = 0; i < this.claims.size(); i++)
+		//the claim folder is renamed below, so write any claims which are still waiting first
+		//this data store isn't used after migrating, so the writer thread can go too
+		this.claimWriter.close();
+		
+		DatabaseMigration migration = new DatabaseMigration(databaseStore.getMigrationTarget(), new File(dataLayerFolderPath + File.separator + "_migration.checkpoint"));
+		
+		//migrate claims.  they were already read from disk (on a worker pool) when this data store loaded
+		ArrayList<Claim> allClaims = new ArrayList<Claim>();
+		for(Claim claim : this.claims)
 		{
-			Claim claim = this.claims.get(i);
-			databaseStore.addClaim(claim, true);
-			for(Claim child : claim.children)
-			{
-			    databaseStore.addClaim(child,  true);
-			}
+			allClaims.add(claim);
+			allClaims.addAll(claim.children);
+		}
+		ArrayList<ClaimFileWriter.Snapshot> claimRows = new ArrayList<ClaimFileWriter.Snapshot>();
+		for(Claim claim : allClaims)
+		{
+			claimRows.add(new ClaimFileWriter.Snapshot(this, claim, claim.modifiedDate.getTime()));
+		}
+		
+		//claims in worlds which aren't loaded can't be built without their world, so they go in as they're stored
+		ArrayList<ClaimFileWriter.Snapshot> unloadedClaimRows = new ArrayList<ClaimFileWriter.Snapshot>();
+		for(Long claimID : this.getUnloadedClaimIDs())
+		{
+		    ClaimFileWriter.Snapshot claim = this.getStoredClaim(claimID);
+		    if(claim != null) unloadedClaimRows.add(claim);
+		}
+		claimRows.addAll(unloadedClaimRows);
+		migration.migrateClaims(claimRows);
+		
+		//the database data store leaves those for when their worlds load, like the claims it found in such worlds itself
+		for(ClaimFileWriter.Snapshot claim : unloadedClaimRows)
+		{
+		    databaseStore.addUnloadedClaim(claim);
+		}
+		
+		//the database data store has these claims in memory too, without writing them again
+		for(Claim claim : allClaims)
+		{
+			databaseStore.addClaim(claim, false);
 		}
 		
 		//migrate groups
@@ -820,24 +1357,38 @@ public class FlatFileDataStore extends DataStore
 		}
 		
 		//migrate players
-		File playerDataFolder = new File(playerDataFolderPath);
-		File [] files = playerDataFolder.listFiles();
-		for(int i = 0; i < files.length; i++)
+		if(this.playerDataSegment != null)
 		{
-			File file = files[i];
-			if(!file.isFile()) continue;  //avoids folders
-            if(file.isHidden()) continue; //avoid hidden files, which are likely not created by GriefPrevention
-			
-			//all group data files start with a dollar sign.  ignoring those, already handled above
-			if(file.getName().startsWith("$")) continue;
+			ArrayList<UUID> playerIDs = new ArrayList<UUID>();
+			for(PlayerDataSegment.PlayerRecord player : this.playerDataSegment.readAll())
+			{
+				playerIDs.add(player.playerID);
+			}
 			
-			//ignore special files
-			if(file.getName().startsWith("_")) continue;
-			if(file.getName().endsWith(".ignore")) continue;
+			migration.migratePlayers(playerIDs, playerID ->
+			{
+				PlayerData playerData = new PlayerData();
+				playerData.playerID = playerID;
+				return this.playerDataSegment.read(playerID, playerData) ? playerData : null;
+			}, playerData -> databaseStore.makePlayerRow(playerData.playerID.toString(), playerData.getAccruedClaimBlocks(), playerData.getBonusClaimBlocks()));
+			this.playerDataSegment.close();
+		}
+		else
+		{
+			ArrayList<UUID> playerIDs = new ArrayList<UUID>();
+			for(File file : new File(playerDataFolderPath).listFiles())
+			{
+				UUID playerID = getPlayerIDFromFile(file);
+				if(playerID != null) playerIDs.add(playerID);
+			}
 			
-			UUID playerID = UUID.fromString(file.getName());
-			databaseStore.savePlayerData(playerID, this.getPlayerData(playerID));
-			this.clearCachedPlayerData(playerID);
+			migration.migratePlayers(playerIDs, playerID ->
+			{
+				PlayerData playerData = new PlayerData();
+				playerData.playerID = playerID;
+				File playerFile = new File(playerDataFolderPath + File.separator + playerID.toString());
+				return this.readPlayerDataFile(playerFile, playerData) ? playerData : null;
+			}, playerData -> databaseStore.makePlayerRow(playerData.playerID.toString(), playerData.getAccruedClaimBlocks(), playerData.getBonusClaimBlocks()));
 		}
 		
 		//migrate next claim ID
@@ -846,6 +1397,8 @@ public class FlatFileDataStore extends DataStore
 			databaseStore.setNextClaimID(this.nextClaimID);
 		}
 		
+		migration.finish();
+		
 		//rename player and claim data folders so the migration won't run again
 		int i = 0;
 		File claimsBackupFolder;
@@ -874,7 +1427,32 @@ public class FlatFileDataStore extends DataStore
 	}
 
 	@Override
-	synchronized void close() { }
+	synchronized void close()
+	{
+		//write any claims which are still waiting
+		this.claimWriter.close();
+		
+		if(this.playerDataSegment != null)
+		{
+			try
+			{
+				this.playerDataSegment.close();
+			}
+			catch(IOException e)
+			{
+				GriefPrevention.AddLogEntry("Unable to close the player data segment: " + e.getMessage(), CustomLogEntryTypes.Exception);
+			}
+		}
+	}
+	
+	@Override
+	List<String> getPerformanceStats()
+	{
+		List<String> stats = super.getPerformanceStats();
+		stats.addAll(this.claimWriter.getStats());
+		if(this.playerDataSegment != null) stats.addAll(this.playerDataSegment.getStats());
+		return stats;
+	}
 
     @Override
     int getSchemaVersionFromStorage()
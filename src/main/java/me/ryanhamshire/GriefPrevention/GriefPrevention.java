@@ -53,14 +53,17 @@ public class GriefPrevention extends JavaPlugin
 	//for convenience, a reference to the instance of this plugin
 	public static GriefPrevention instance;
 	
-	//for logging to the console and log file
-	private static Logger log;
+	//for logging to the console and log file.  replaced with the plugin's logger once it's enabled
+	private static Logger log = Logger.getLogger("GriefPrevention");
 	
 	//this handles data storage, like player and region data
 	public DataStore dataStore;
 
     //log entry manager for GP's custom log files
     CustomLogger customLogger;
+
+    //what kinds of thing each material is, for event handlers and nature restoration.  rebuilt with the config
+    MaterialCategories materialCategories;
 	
 	//configuration variables, loaded/saved from a config.yml
 	
@@ -115,6 +118,7 @@ public class GriefPrevention extends JavaPlugin
 	public boolean config_claims_firedamages;						//whether fire will damage in claims
 
 	public boolean config_claims_lecternReadingRequiresAccessTrust;					//reading lecterns requires access trust
+	public boolean config_claims_cachePermissionChecks;				//whether to briefly remember permission check results, see ClaimPermissionCache
 
 	public double config_economy_claimBlocksPurchaseCost;			//cost to purchase a claim block.  set to zero to disable purchase.
 	public double config_economy_claimBlocksSellValue;				//return on a sold claim block.  set to zero to disable sale.
@@ -143,6 +147,9 @@ public class GriefPrevention extends JavaPlugin
 	public boolean config_advanced_fixNegativeClaimblockAmounts;	//whether to attempt to fix negative claim block amounts (some addons cause/assume players can go into negative amounts)
 	public int config_advanced_claim_expiration_check_rate;			//How often GP should check for expired claims, amount in seconds
 	public int config_advanced_offlineplayer_cache_days;			//Cache players who have logged in within the last x number of days
+	public boolean config_advanced_binaryClaimSnapshot;				//whether the file system data store also keeps all claims in one binary file, for faster startup
+	public boolean config_advanced_claimJournal;					//whether the file system data store appends claim changes to a journal instead of rewriting claim files
+	public boolean config_advanced_packedPlayerData;				//whether the file system data store keeps all player data in one indexed file instead of a file per player
 	
 	//custom log settings
 	public int config_logs_daysToKeep;
@@ -159,6 +166,7 @@ public class GriefPrevention extends JavaPlugin
 	private String databaseUrl;
 	private String databaseUserName;
 	private String databasePassword;
+	private int databaseMaxConnections;
 
 	
 	//reference to the economy plugin, if economy integration is enabled
@@ -173,7 +181,7 @@ public class GriefPrevention extends JavaPlugin
 	//adds a server log entry
 	public static synchronized void AddLogEntry(String entry, CustomLogEntryTypes customLogType, boolean excludeFromServerLogs)
 	{
-		if(customLogType != null && GriefPrevention.instance.customLogger != null)
+		if(customLogType != null && GriefPrevention.instance != null && GriefPrevention.instance.customLogger != null)
 		{
 		    GriefPrevention.instance.customLogger.AddEntry(entry, customLogType);
 		}
@@ -207,7 +215,7 @@ public class GriefPrevention extends JavaPlugin
 		{
 			try
 			{
-				DatabaseDataStore databaseStore = new DatabaseDataStore(this.databaseUrl, this.databaseUserName, this.databasePassword);
+				DatabaseDataStore databaseStore = new DatabaseDataStore(this.databaseUrl, this.databaseUserName, this.databasePassword, this.databaseMaxConnections);
 			
 				if(FlatFileDataStore.hasData())
 				{
@@ -285,6 +293,10 @@ public class GriefPrevention extends JavaPlugin
 		EntityEventHandler entityEventHandler = new EntityEventHandler(this.dataStore, this);
 		pluginManager.registerEvents(entityEventHandler, this);
 		
+		//world events
+		WorldEventHandler worldEventHandler = new WorldEventHandler(this.dataStore);
+		pluginManager.registerEvents(worldEventHandler, this);
+		
 		//if economy is enabled
 		if(this.config_economy_claimBlocksPurchaseCost > 0 || this.config_economy_claimBlocksSellValue > 0)
 		{
@@ -323,7 +335,7 @@ public class GriefPrevention extends JavaPlugin
 		
 		//cache offline players
 		OfflinePlayer [] offlinePlayers = this.getServer().getOfflinePlayers();
-		CacheOfflinePlayerNamesThread namesThread = new CacheOfflinePlayerNamesThread(offlinePlayers, this.playerNameToIDMap);
+		CacheOfflinePlayerNamesThread namesThread = new CacheOfflinePlayerNamesThread(offlinePlayers, this.playerNameToIDMap, this.playerIDToNameMap);
 		namesThread.setPriority(Thread.MIN_PRIORITY);
 		namesThread.start();
 		
@@ -464,6 +476,7 @@ public class GriefPrevention extends JavaPlugin
         this.config_claims_firespreads = config.getBoolean("GriefPrevention.Claims.FireSpreadsInClaims", false);
         this.config_claims_firedamages = config.getBoolean("GriefPrevention.Claims.FireDamagesInClaims", false);
 		this.config_claims_lecternReadingRequiresAccessTrust = config.getBoolean("GriefPrevention.Claims.LecternReadingRequiresAccessTrust", true);
+		this.config_claims_cachePermissionChecks = config.getBoolean("GriefPrevention.Claims.CachePermissionChecks", true);
 
         this.config_economy_claimBlocksPurchaseCost = config.getDouble("GriefPrevention.Economy.ClaimBlocksPurchaseCost", 0);
         this.config_economy_claimBlocksSellValue = config.getDouble("GriefPrevention.Economy.ClaimBlocksSellValue", 0);
@@ -519,10 +532,14 @@ public class GriefPrevention extends JavaPlugin
         this.databaseUrl = config.getString("GriefPrevention.Database.URL", "");
         this.databaseUserName = config.getString("GriefPrevention.Database.UserName", "");
         this.databasePassword = config.getString("GriefPrevention.Database.Password", "");
+        this.databaseMaxConnections = config.getInt("GriefPrevention.Database.MaxConnections", 4);
 
         this.config_advanced_fixNegativeClaimblockAmounts = config.getBoolean("GriefPrevention.Advanced.fixNegativeClaimblockAmounts", true);
         this.config_advanced_claim_expiration_check_rate = config.getInt("GriefPrevention.Advanced.ClaimExpirationCheckRate", 60);
         this.config_advanced_offlineplayer_cache_days = config.getInt("GriefPrevention.Advanced.OfflinePlayer_cache_days", 90);
+        this.config_advanced_binaryClaimSnapshot = config.getBoolean("GriefPrevention.Advanced.BinaryClaimSnapshot", false);
+        this.config_advanced_claimJournal = config.getBoolean("GriefPrevention.Advanced.ClaimJournal", false);
+        this.config_advanced_packedPlayerData = config.getBoolean("GriefPrevention.Advanced.PackedPlayerData", false);
         
         //custom logger settings
         this.config_logs_daysToKeep = config.getInt("GriefPrevention.Abridged Logs.Days To Keep", 7);
@@ -583,6 +600,7 @@ public class GriefPrevention extends JavaPlugin
         outConfig.set("GriefPrevention.Claims.FireSpreadsInClaims", config_claims_firespreads);
         outConfig.set("GriefPrevention.Claims.FireDamagesInClaims", config_claims_firedamages);
         outConfig.set("GriefPrevention.Claims.LecternReadingRequiresAccessTrust", config_claims_lecternReadingRequiresAccessTrust);
+        outConfig.set("GriefPrevention.Claims.CachePermissionChecks", config_claims_cachePermissionChecks);
 
         outConfig.set("GriefPrevention.Economy.ClaimBlocksPurchaseCost", this.config_economy_claimBlocksPurchaseCost);
         outConfig.set("GriefPrevention.Economy.ClaimBlocksSellValue", this.config_economy_claimBlocksSellValue);
@@ -607,6 +625,7 @@ public class GriefPrevention extends JavaPlugin
         outConfig.set("GriefPrevention.Database.URL", this.databaseUrl);
         outConfig.set("GriefPrevention.Database.UserName", this.databaseUserName);
         outConfig.set("GriefPrevention.Database.Password", this.databasePassword);
+        outConfig.set("GriefPrevention.Database.MaxConnections", this.databaseMaxConnections);
         
         outConfig.set("GriefPrevention.UseBanCommand", this.config_ban_useCommand);
         outConfig.set("GriefPrevention.BanCommandPattern", this.config_ban_commandFormat);
@@ -614,6 +633,9 @@ public class GriefPrevention extends JavaPlugin
         outConfig.set("GriefPrevention.Advanced.fixNegativeClaimblockAmounts", this.config_advanced_fixNegativeClaimblockAmounts);
         outConfig.set("GriefPrevention.Advanced.ClaimExpirationCheckRate", this.config_advanced_claim_expiration_check_rate);
         outConfig.set("GriefPrevention.Advanced.OfflinePlayer_cache_days", this.config_advanced_offlineplayer_cache_days);
+        outConfig.set("GriefPrevention.Advanced.BinaryClaimSnapshot", this.config_advanced_binaryClaimSnapshot);
+        outConfig.set("GriefPrevention.Advanced.ClaimJournal", this.config_advanced_claimJournal);
+        outConfig.set("GriefPrevention.Advanced.PackedPlayerData", this.config_advanced_packedPlayerData);
 
         //custom logger settings
         outConfig.set("GriefPrevention.Abridged Logs.Days To Keep", this.config_logs_daysToKeep);
@@ -642,6 +664,9 @@ public class GriefPrevention extends JavaPlugin
                 this.config_claims_commandsRequiringAccessTrust.add(commands[i].trim().toLowerCase());
             }
         }
+        
+        //some material categories (like which blocks need access trust) depend on the settings above
+        this.materialCategories = new MaterialCategories(this);
     }
 
     private ClaimsMode configStringToClaimsMode(String configSetting)
@@ -688,7 +713,7 @@ public class GriefPrevention extends JavaPlugin
             //if he's at the claim count per player limit already and doesn't have permission to bypass, display an error message
             if(GriefPrevention.instance.config_claims_maxClaimsPerPlayer > 0 &&
                !player.hasPermission("griefprevention.overrideclaimcountlimit") &&
-               playerData.getClaims().size() >= GriefPrevention.instance.config_claims_maxClaimsPerPlayer)
+               this.dataStore.getClaimCount(player.getUniqueId()) >= GriefPrevention.instance.config_claims_maxClaimsPerPlayer)
             {
                 GriefPrevention.sendMessage(player, TextMode.Err, Messages.ClaimCreationFailedOverClaimCountLimit);
                 return true;
@@ -764,7 +789,11 @@ public class GriefPrevention extends JavaPlugin
                     player.getUniqueId(), null, null, player);
             if(!result.succeeded)
             {
-                if(result.claim != null)
+                if(result.claimsLoading)
+                {
+                    GriefPrevention.sendMessage(player, TextMode.Err, Messages.ClaimsStillLoading);
+                }
+                else if(result.claim != null)
                 {
                     GriefPrevention.sendMessage(player, TextMode.Err, Messages.CreateClaimFailOverlapShort);
                     
@@ -945,6 +974,7 @@ public class GriefPrevention extends JavaPlugin
 			PlayerData playerData = this.dataStore.getPlayerData(player.getUniqueId());
 			
 			playerData.ignoreClaims = !playerData.ignoreClaims;
+			this.dataStore.permissionCache.invalidatePlayer(player.getUniqueId());
 			
 			//toggle ignore claims mode on or off
 			if(!playerData.ignoreClaims)
@@ -1210,7 +1240,7 @@ public class GriefPrevention extends JavaPlugin
 			OfflinePlayer otherPlayer = null;
 			if(args[0].equals("all"))				
 			{
-				if(claim == null || claim.allowEdit(player) == null)
+				if(claim == null || claim.checkEdit(player) == null)
 				{
 					clearPermissions = true;
 				}
@@ -1309,7 +1339,7 @@ public class GriefPrevention extends JavaPlugin
 				if(clearPermissions)
 				{
 					//requires owner
-				    if(claim.allowEdit(player) != null)
+				    if(claim.checkEdit(player) != null)
 				    {
 				        GriefPrevention.sendMessage(player, TextMode.Err, Messages.UntrustAllOwnerOnly);
 				        return true;
@@ -1336,7 +1366,7 @@ public class GriefPrevention extends JavaPlugin
                         idToDrop = otherPlayer.getUniqueId().toString(); 
                     }
 				    boolean targetIsManager = claim.managers.contains(idToDrop);
-                    if(targetIsManager && claim.allowEdit(player) != null)  //only claim owners can untrust managers
+                    if(targetIsManager && claim.checkEdit(player) != null)  //only claim owners can untrust managers
 					{
                         GriefPrevention.sendMessage(player, TextMode.Err, Messages.ManagersDontUntrustManagers, claim.getOwnerName());
                         return true;
@@ -1873,14 +1903,7 @@ public class GriefPrevention extends JavaPlugin
         else if(cmd.getName().equalsIgnoreCase("adminclaimslist"))
         {
             //find admin claims
-            Vector<Claim> claims = new Vector<Claim>();
-            for(Claim claim : this.dataStore.claims)
-            {
-                if(claim.ownerID == null)  //admin claim
-                {
-                    claims.add(claim);
-                }
-            }
+            List<Claim> claims = this.dataStore.getAdminClaims();
             if(claims.size() > 0)
             {
                 GriefPrevention.sendMessage(player, TextMode.Instr, Messages.ClaimsListHeader);
@@ -2064,7 +2087,7 @@ public class GriefPrevention extends JavaPlugin
 			}
 			
 			//if the player isn't in a claim or has permission to build, tell him to man up
-			if(claim == null || claim.allowBuild(player, Material.AIR) == null)
+			if(claim == null || claim.checkBuild(player, Material.AIR) == null)
 			{
 				GriefPrevention.sendMessage(player, TextMode.Err, Messages.NotTrappedHere);				
 				return true;
@@ -2112,6 +2135,24 @@ public class GriefPrevention extends JavaPlugin
 		    return true;
 		}
 		
+		//gpstats
+		else if(cmd.getName().equalsIgnoreCase("gpstats"))
+		{
+		    for(String line : this.dataStore.getPerformanceStats())
+		    {
+		        if(player != null)
+		        {
+		            GriefPrevention.sendMessage(player, TextMode.Info, line);
+		        }
+		        else
+		        {
+		            GriefPrevention.AddLogEntry(line);
+		        }
+		    }
+		    
+		    return true;
+		}
+		
 		//gpblockinfo
 		else if(cmd.getName().equalsIgnoreCase("gpblockinfo") && player != null)
 		{
@@ -2156,7 +2197,7 @@ public class GriefPrevention extends JavaPlugin
 		}
 		
 		//verify ownership
-		else if(claim.allowEdit(player) != null)
+		else if(claim.checkEdit(player) != null)
 		{
 			GriefPrevention.sendMessage(player, TextMode.Err, Messages.NotYourClaim);
 		}
@@ -2375,17 +2416,22 @@ public class GriefPrevention extends JavaPlugin
 
 	//helper method to resolve a player by name
 	ConcurrentHashMap<String, UUID> playerNameToIDMap = new ConcurrentHashMap<String, UUID>();
+	
+	//and the other way around, for showing names without asking the server about offline players (which may read from disk)
+	ConcurrentHashMap<UUID, String> playerIDToNameMap = new ConcurrentHashMap<UUID, String>();
 
     //thread to build the above cache
 	private class CacheOfflinePlayerNamesThread extends Thread
     {
         private OfflinePlayer [] offlinePlayers;
         private ConcurrentHashMap<String, UUID> playerNameToIDMap;
+        private ConcurrentHashMap<UUID, String> playerIDToNameMap;
         
-        CacheOfflinePlayerNamesThread(OfflinePlayer [] offlinePlayers, ConcurrentHashMap<String, UUID> playerNameToIDMap)
+        CacheOfflinePlayerNamesThread(OfflinePlayer [] offlinePlayers, ConcurrentHashMap<String, UUID> playerNameToIDMap, ConcurrentHashMap<UUID, String> playerIDToNameMap)
         {
             this.offlinePlayers = offlinePlayers;
             this.playerNameToIDMap = playerNameToIDMap;
+            this.playerIDToNameMap = playerIDToNameMap;
         }
         
         public void run()
@@ -2409,6 +2455,9 @@ public class GriefPrevention extends JavaPlugin
                         if(playerName == null) continue;
                         this.playerNameToIDMap.put(playerName, playerID);
                         this.playerNameToIDMap.put(playerName.toLowerCase(), playerID);
+                        
+                        //don't overwrite a name noted by a login while this thread was running
+                        this.playerIDToNameMap.putIfAbsent(playerID, playerName);
                     }
                 }
                 catch(Exception e)
@@ -2454,10 +2503,16 @@ public class GriefPrevention extends JavaPlugin
         if(playerID == null) return "somebody";
             
         //check the cache
+        String name = GriefPrevention.instance.playerIDToNameMap.get(playerID);
+        if(name != null) return name;
+        
+        //otherwise ask the server, and remember the answer
         OfflinePlayer player = GriefPrevention.instance.getServer().getOfflinePlayer(playerID);
         if(player.hasPlayedBefore() || player.isOnline())
         {
-            return player.getName();
+            name = player.getName();
+            if(name != null) GriefPrevention.instance.playerIDToNameMap.put(playerID, name);
+            return name;
         }
         else
         {
@@ -2471,6 +2526,7 @@ public class GriefPrevention extends JavaPlugin
         //store the reverse mapping
         GriefPrevention.instance.playerNameToIDMap.put(playerName, playerID);
         GriefPrevention.instance.playerNameToIDMap.put(playerName.toLowerCase(), playerID);
+        GriefPrevention.instance.playerIDToNameMap.put(playerID, playerName);
     }
 
     //string overload for above helper
@@ -2544,7 +2600,7 @@ public class GriefPrevention extends JavaPlugin
 			//if there's a claim here, keep looking
 			if(claim != null)
 			{
-				candidateLocation = new Location(claim.lesserBoundaryCorner.getWorld(), claim.lesserBoundaryCorner.getBlockX() - 1, claim.lesserBoundaryCorner.getBlockY(), claim.lesserBoundaryCorner.getBlockZ() - 1);
+				candidateLocation = new Location(claim.world, claim.lesserX - 1, claim.lesserY, claim.lesserZ - 1);
 				continue;
 			}
 			
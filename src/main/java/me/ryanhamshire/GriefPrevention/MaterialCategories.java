@@ -0,0 +1,259 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.util.Collection;
+
+import org.bukkit.Material;
+import org.bukkit.Tag;
+import org.bukkit.World.Environment;
+import org.bukkit.block.Biome;
+
+//what kinds of thing each material is, for the checks event handlers and nature restoration make over and over
+//one int of category bits per material, indexed by Material.ordinal(), so "is X a Y" is a single array read
+//built when the config is loaded (see GriefPrevention.loadConfig()), since some categories depend on config settings
+//never changed after it's built, so it's safe to read from any thread
+class MaterialCategories
+{
+    //blocks which need container trust to use, beyond inventory holders
+    static final int CONTAINER = 1 << 0;
+
+    //blocks which need access trust to use, as configured: wooden doors, trapdoors, fence gates, beds and lecterns
+    static final int DOOR = 1 << 1;
+
+    //buttons and levers, which need access trust to use when configured that way
+    static final int SWITCH = 1 << 2;
+
+    //blocks which need build trust to use, like note blocks, repeaters and flower pots
+    static final int BUILD_TO_USE = 1 << 3;
+
+    //crops which may be planted with only container trust
+    static final int FARMING = 1 << 4;
+
+    //items which need build trust to use on a block, like bone meal, dyes and flint and steel
+    static final int BUILD_TO_USE_ITEM = 1 << 5;
+    static final int BOAT = 1 << 6;
+    static final int MINECART = 1 << 7;
+
+    //blocks not worth warning about when they're placed outside of land claims
+    static final int TRASH = 1 << 8;
+
+    //blocks commonly found next to water and lava, which make bucket use there look less suspicious
+    static final int COMMON_NEAR_WATER = 1 << 9;
+    static final int COMMON_NEAR_LAVA = 1 << 10;
+
+    //player placed blocks, for nature restoration.  a "complete" list.  MUST BE MAINTAINED as patches introduce more
+    //why not make a list of natural blocks?
+    //answer: better to leave a few player blocks than to remove too many natural blocks.  remember we're "restoring nature"
+    //a few extra player blocks can be manually removed, but it will be impossible to guess exactly which natural materials to use in manual repair of an overzealous block removal
+    //see playerPlacedCategories() for which of these apply where
+    static final int PLAYER_PLACED = 1 << 11;
+    static final int PLAYER_PLACED_OUTSIDE_NETHER = 1 << 12;    //unnatural in the standard world, but not in the nether
+    static final int PLAYER_PLACED_OUTSIDE_END = 1 << 13;       //unnatural in the standard and nether worlds, but not in the end
+    static final int PLAYER_PLACED_IN_SANDY_BIOMES = 1 << 14;   //unnatural in sandy biomes (and outside the standard world), but not elsewhere
+    static final int PLAYER_PLACED_IF_CREATIVE = 1 << 15;       //natural blocks griefers use, treated as player placed in aggressive or creative mode
+    static final int PLAYER_PLACED_IF_AGGRESSIVE = 1 << 16;     //trees, treated as player placed in aggressive mode
+
+    //more nature restoration categories
+    static final int NOT_ALLOWED_TO_HANG = 1 << 17;             //natural blocks which don't naturally hang in the air
+    static final int NOT_ALLOWED_TO_HANG_IF_AGGRESSIVE = 1 << 18;
+    static final int NOT_SMOOTHED = 1 << 19;                    //surface plants which don't count as walls or towers
+    static final int FILLABLE = 1 << 20;                        //blocks which may be filled in when filling holes and trenches
+    static final int NOT_SUITABLE_FOR_FILL = 1 << 21;
+
+    private final int [] categories = new int[Material.values().length];
+
+    MaterialCategories(GriefPrevention plugin)
+    {
+        this.add(CONTAINER, Material.CAULDRON, Material.JUKEBOX, Material.ANVIL, Material.CHIPPED_ANVIL, Material.DAMAGED_ANVIL,
+                Material.CAKE, Material.SWEET_BERRY_BUSH);
+
+        if(plugin.config_claims_lockWoodenDoors)
+        {
+            this.add(DOOR, Material.OAK_DOOR, Material.ACACIA_DOOR, Material.BIRCH_DOOR, Material.JUNGLE_DOOR, Material.SPRUCE_DOOR,
+                    Material.DARK_OAK_DOOR);
+        }
+
+        if(plugin.config_claims_preventButtonsSwitches)
+        {
+            this.add(DOOR, Material.WHITE_BED, Material.ORANGE_BED, Material.MAGENTA_BED, Material.LIGHT_BLUE_BED, Material.YELLOW_BED,
+                    Material.LIME_BED, Material.PINK_BED, Material.GRAY_BED, Material.LIGHT_GRAY_BED, Material.CYAN_BED, Material.PURPLE_BED,
+                    Material.BLUE_BED, Material.BROWN_BED, Material.GREEN_BED, Material.RED_BED, Material.BLACK_BED);
+        }
+
+        if(plugin.config_claims_lockTrapDoors)
+        {
+            this.add(DOOR, Material.OAK_TRAPDOOR, Material.SPRUCE_TRAPDOOR, Material.BIRCH_TRAPDOOR, Material.JUNGLE_TRAPDOOR,
+                    Material.ACACIA_TRAPDOOR, Material.DARK_OAK_TRAPDOOR);
+        }
+
+        if(plugin.config_claims_lockFenceGates)
+        {
+            this.add(DOOR, Material.OAK_FENCE_GATE, Material.ACACIA_FENCE_GATE, Material.BIRCH_FENCE_GATE, Material.JUNGLE_FENCE_GATE,
+                    Material.SPRUCE_FENCE_GATE, Material.DARK_OAK_FENCE_GATE);
+        }
+
+        if(plugin.config_claims_lecternReadingRequiresAccessTrust)
+        {
+            this.add(DOOR, Material.LECTERN);
+        }
+
+        this.add(SWITCH, Material.STONE_BUTTON, Material.LEVER);
+        this.add(SWITCH, Tag.BUTTONS.getValues());
+
+        this.add(BUILD_TO_USE, Material.NOTE_BLOCK, Material.REPEATER, Material.DRAGON_EGG, Material.DAYLIGHT_DETECTOR, Material.COMPARATOR);
+        this.add(BUILD_TO_USE, Tag.FLOWER_POTS.getValues());
+
+        this.add(FARMING, Material.PUMPKIN_STEM, Material.WHEAT, Material.MELON_STEM, Material.CARROTS, Material.POTATOES,
+                Material.NETHER_WART, Material.BEETROOTS);
+
+        this.add(BUILD_TO_USE_ITEM, Material.BONE_MEAL, Material.ARMOR_STAND, Material.END_CRYSTAL, Material.FLINT_AND_STEEL);
+        for(Material material : Material.values())
+        {
+            if(!material.isLegacy() && material.name().endsWith("_DYE"))
+            {
+                this.add(BUILD_TO_USE_ITEM, material);
+            }
+        }
+
+        this.add(BOAT, Material.OAK_BOAT, Material.SPRUCE_BOAT, Material.BIRCH_BOAT, Material.JUNGLE_BOAT, Material.ACACIA_BOAT,
+                Material.DARK_OAK_BOAT);
+        this.add(MINECART, Material.MINECART, Material.FURNACE_MINECART, Material.CHEST_MINECART, Material.TNT_MINECART,
+                Material.HOPPER_MINECART);
+
+        this.add(TRASH, Material.COBBLESTONE, Material.TORCH, Material.DIRT, Material.OAK_SAPLING, Material.SPRUCE_SAPLING,
+                Material.BIRCH_SAPLING, Material.JUNGLE_SAPLING, Material.ACACIA_SAPLING, Material.DARK_OAK_SAPLING, Material.GRAVEL,
+                Material.SAND, Material.TNT, Material.CRAFTING_TABLE);
+
+        this.add(COMMON_NEAR_WATER, Material.WATER, Material.FARMLAND, Material.DIRT, Material.STONE);
+        this.add(COMMON_NEAR_LAVA, Material.LAVA, Material.DIRT, Material.STONE);
+
+        this.add(PLAYER_PLACED, Material.FIRE, Material.WHITE_BED, Material.ORANGE_BED, Material.MAGENTA_BED, Material.LIGHT_BLUE_BED,
+                Material.YELLOW_BED, Material.LIME_BED, Material.PINK_BED, Material.GRAY_BED, Material.LIGHT_GRAY_BED, Material.CYAN_BED,
+                Material.PURPLE_BED, Material.BLUE_BED, Material.BROWN_BED, Material.GREEN_BED, Material.RED_BED, Material.BLACK_BED,
+                Material.OAK_PLANKS, Material.SPRUCE_PLANKS, Material.BIRCH_PLANKS, Material.JUNGLE_PLANKS, Material.ACACIA_PLANKS,
+                Material.DARK_OAK_PLANKS, Material.BOOKSHELF, Material.BREWING_STAND, Material.BRICK, Material.COBBLESTONE, Material.GLASS,
+                Material.LAPIS_BLOCK, Material.DISPENSER, Material.NOTE_BLOCK, Material.POWERED_RAIL, Material.DETECTOR_RAIL,
+                Material.STICKY_PISTON, Material.PISTON, Material.PISTON_HEAD, Material.MOVING_PISTON, Material.WHITE_WOOL,
+                Material.ORANGE_WOOL, Material.MAGENTA_WOOL, Material.LIGHT_BLUE_WOOL, Material.YELLOW_WOOL, Material.LIME_WOOL,
+                Material.PINK_WOOL, Material.GRAY_WOOL, Material.LIGHT_GRAY_WOOL, Material.CYAN_WOOL, Material.PURPLE_WOOL,
+                Material.BLUE_WOOL, Material.BROWN_WOOL, Material.GREEN_WOOL, Material.RED_WOOL, Material.BLACK_WOOL, Material.GOLD_BLOCK,
+                Material.IRON_BLOCK, Material.OAK_SLAB, Material.SPRUCE_SLAB, Material.BIRCH_SLAB, Material.JUNGLE_SLAB,
+                Material.ACACIA_SLAB, Material.DARK_OAK_SLAB, Material.STONE_SLAB, Material.SANDSTONE_SLAB, Material.PETRIFIED_OAK_SLAB,
+                Material.COBBLESTONE_SLAB, Material.BRICK_SLAB, Material.STONE_BRICK_SLAB, Material.NETHER_BRICK_SLAB, Material.QUARTZ_SLAB,
+                Material.RED_SANDSTONE_SLAB, Material.PURPUR_SLAB, Material.PRISMARINE_SLAB, Material.PRISMARINE_BRICK_SLAB,
+                Material.DARK_PRISMARINE_SLAB, Material.WHEAT, Material.TNT, Material.MOSSY_COBBLESTONE, Material.TORCH, Material.OAK_STAIRS,
+                Material.SPRUCE_STAIRS, Material.BIRCH_STAIRS, Material.JUNGLE_STAIRS, Material.ACACIA_STAIRS, Material.DARK_OAK_STAIRS,
+                Material.CHEST, Material.REDSTONE_WIRE, Material.DIAMOND_BLOCK, Material.CRAFTING_TABLE, Material.FURNACE, Material.OAK_DOOR,
+                Material.ACACIA_SIGN, Material.LADDER, Material.RAIL, Material.COBBLESTONE_STAIRS, Material.STONE_PRESSURE_PLATE,
+                Material.LEVER, Material.IRON_DOOR, Material.OAK_PRESSURE_PLATE, Material.SPRUCE_PRESSURE_PLATE,
+                Material.BIRCH_PRESSURE_PLATE, Material.JUNGLE_PRESSURE_PLATE, Material.ACACIA_PRESSURE_PLATE,
+                Material.DARK_OAK_PRESSURE_PLATE, Material.REDSTONE_TORCH, Material.STONE_BUTTON, Material.SNOW_BLOCK, Material.JUKEBOX,
+                Material.OAK_FENCE, Material.SPRUCE_FENCE, Material.BIRCH_FENCE, Material.JUNGLE_FENCE, Material.ACACIA_FENCE,
+                Material.DARK_OAK_FENCE, Material.NETHER_PORTAL, Material.JACK_O_LANTERN, Material.CAKE, Material.REPEATER,
+                Material.OAK_TRAPDOOR, Material.SPRUCE_TRAPDOOR, Material.BIRCH_TRAPDOOR, Material.JUNGLE_TRAPDOOR, Material.ACACIA_TRAPDOOR,
+                Material.DARK_OAK_TRAPDOOR, Material.STONE_BRICKS, Material.MOSSY_STONE_BRICKS, Material.CRACKED_STONE_BRICKS,
+                Material.CHISELED_STONE_BRICKS, Material.MUSHROOM_STEM, Material.RED_MUSHROOM_BLOCK, Material.BROWN_MUSHROOM_BLOCK,
+                Material.IRON_BARS, Material.GLASS_PANE, Material.MELON_STEM, Material.OAK_FENCE_GATE, Material.SPRUCE_FENCE_GATE,
+                Material.BIRCH_FENCE_GATE, Material.JUNGLE_FENCE_GATE, Material.ACACIA_FENCE_GATE, Material.DARK_OAK_FENCE_GATE,
+                Material.BRICK_STAIRS, Material.ENCHANTING_TABLE, Material.CAULDRON, Material.COBWEB, Material.SPONGE, Material.GRAVEL,
+                Material.EMERALD_BLOCK, Material.SANDSTONE, Material.ENDER_CHEST, Material.SANDSTONE_STAIRS, Material.COMMAND_BLOCK,
+                Material.REPEATING_COMMAND_BLOCK, Material.CHAIN_COMMAND_BLOCK, Material.BEACON, Material.COBBLESTONE_WALL,
+                Material.MOSSY_COBBLESTONE_WALL, Material.FLOWER_POT, Material.CARROT, Material.POTATO, Material.OAK_BUTTON,
+                Material.SPRUCE_BUTTON, Material.BIRCH_BUTTON, Material.JUNGLE_BUTTON, Material.ACACIA_BUTTON, Material.DARK_OAK_BUTTON,
+                Material.SKELETON_SKULL, Material.WITHER_SKELETON_SKULL, Material.CREEPER_HEAD, Material.ZOMBIE_HEAD, Material.PLAYER_HEAD,
+                Material.DRAGON_HEAD, Material.ANVIL, Material.WHITE_STAINED_GLASS, Material.ORANGE_STAINED_GLASS,
+                Material.MAGENTA_STAINED_GLASS, Material.LIGHT_BLUE_STAINED_GLASS, Material.YELLOW_STAINED_GLASS,
+                Material.LIME_STAINED_GLASS, Material.PINK_STAINED_GLASS, Material.GRAY_STAINED_GLASS, Material.LIGHT_GRAY_STAINED_GLASS,
+                Material.CYAN_STAINED_GLASS, Material.PURPLE_STAINED_GLASS, Material.BLUE_STAINED_GLASS, Material.BROWN_STAINED_GLASS,
+                Material.GREEN_STAINED_GLASS, Material.RED_STAINED_GLASS, Material.BLACK_STAINED_GLASS, Material.WHITE_STAINED_GLASS_PANE,
+                Material.ORANGE_STAINED_GLASS_PANE, Material.MAGENTA_STAINED_GLASS_PANE, Material.LIGHT_BLUE_STAINED_GLASS_PANE,
+                Material.YELLOW_STAINED_GLASS_PANE, Material.LIME_STAINED_GLASS_PANE, Material.PINK_STAINED_GLASS_PANE,
+                Material.GRAY_STAINED_GLASS_PANE, Material.LIGHT_GRAY_STAINED_GLASS_PANE, Material.CYAN_STAINED_GLASS_PANE,
+                Material.PURPLE_STAINED_GLASS_PANE, Material.BLUE_STAINED_GLASS_PANE, Material.BROWN_STAINED_GLASS_PANE,
+                Material.GREEN_STAINED_GLASS_PANE, Material.RED_STAINED_GLASS_PANE, Material.BLACK_STAINED_GLASS_PANE, Material.WHITE_BANNER,
+                Material.ORANGE_BANNER, Material.MAGENTA_BANNER, Material.LIGHT_BLUE_BANNER, Material.YELLOW_BANNER, Material.LIME_BANNER,
+                Material.PINK_BANNER, Material.GRAY_BANNER, Material.LIGHT_GRAY_BANNER, Material.CYAN_BANNER, Material.PURPLE_BANNER,
+                Material.BLUE_BANNER, Material.BROWN_BANNER, Material.GREEN_BANNER, Material.RED_BANNER, Material.BLACK_BANNER,
+                Material.TRAPPED_CHEST, Material.LIGHT_WEIGHTED_PRESSURE_PLATE, Material.HEAVY_WEIGHTED_PRESSURE_PLATE, Material.COMPARATOR,
+                Material.DAYLIGHT_DETECTOR, Material.REDSTONE_BLOCK, Material.HOPPER, Material.QUARTZ_BLOCK, Material.QUARTZ_STAIRS,
+                Material.DROPPER, Material.SLIME_BLOCK, Material.IRON_TRAPDOOR, Material.PRISMARINE, Material.HAY_BLOCK,
+                Material.WHITE_CARPET, Material.ORANGE_CARPET, Material.MAGENTA_CARPET, Material.LIGHT_BLUE_CARPET, Material.YELLOW_CARPET,
+                Material.LIME_CARPET, Material.PINK_CARPET, Material.GRAY_CARPET, Material.LIGHT_GRAY_CARPET, Material.CYAN_CARPET,
+                Material.PURPLE_CARPET, Material.BLUE_CARPET, Material.BROWN_CARPET, Material.GREEN_CARPET, Material.RED_CARPET,
+                Material.BLACK_CARPET, Material.SEA_LANTERN, Material.RED_SANDSTONE_STAIRS, Material.ACACIA_DOOR, Material.SPRUCE_DOOR,
+                Material.DARK_OAK_DOOR, Material.JUNGLE_DOOR, Material.BIRCH_DOOR, Material.COAL_BLOCK, Material.REDSTONE_LAMP,
+                Material.PURPUR_BLOCK, Material.PURPUR_PILLAR, Material.PURPUR_STAIRS, Material.NETHER_WART_BLOCK,
+                Material.RED_NETHER_BRICKS, Material.BONE_BLOCK);
+        this.add(PLAYER_PLACED_OUTSIDE_NETHER, Material.NETHERRACK, Material.SOUL_SAND, Material.GLOWSTONE, Material.NETHER_BRICK,
+                Material.NETHER_BRICK_FENCE, Material.NETHER_BRICK_STAIRS, Material.MAGMA_BLOCK);
+        this.add(PLAYER_PLACED_OUTSIDE_END, Material.OBSIDIAN, Material.END_STONE, Material.END_PORTAL_FRAME, Material.CHORUS_PLANT,
+                Material.CHORUS_FLOWER);
+        this.add(PLAYER_PLACED_IN_SANDY_BIOMES, Material.OAK_LEAVES, Material.SPRUCE_LEAVES, Material.BIRCH_LEAVES, Material.JUNGLE_LEAVES,
+                Material.ACACIA_LEAVES, Material.DARK_OAK_LEAVES, Material.OAK_LOG, Material.SPRUCE_LOG, Material.BIRCH_LOG,
+                Material.JUNGLE_LOG, Material.ACACIA_LOG, Material.DARK_OAK_LOG);
+        this.add(PLAYER_PLACED, Tag.SIGNS.getValues());
+        this.add(PLAYER_PLACED, Tag.WALL_SIGNS.getValues());
+
+        this.add(PLAYER_PLACED_IF_CREATIVE, Material.IRON_ORE, Material.GOLD_ORE, Material.DIAMOND_ORE, Material.MELON, Material.MELON_STEM,
+                Material.BEDROCK, Material.COAL_ORE, Material.PUMPKIN, Material.PUMPKIN_STEM);
+        this.add(PLAYER_PLACED_IF_AGGRESSIVE, Material.OAK_LEAVES, Material.SPRUCE_LEAVES, Material.BIRCH_LEAVES, Material.JUNGLE_LEAVES,
+                Material.ACACIA_LEAVES, Material.DARK_OAK_LEAVES, Material.OAK_LOG, Material.SPRUCE_LOG, Material.BIRCH_LOG,
+                Material.JUNGLE_LOG, Material.ACACIA_LOG, Material.DARK_OAK_LOG, Material.VINE);
+
+        this.add(NOT_ALLOWED_TO_HANG, Material.DIRT, Material.GRASS, Material.SNOW, Material.OAK_LOG, Material.SPRUCE_LOG,
+                Material.BIRCH_LOG, Material.JUNGLE_LOG, Material.ACACIA_LOG, Material.DARK_OAK_LOG);
+        this.add(NOT_ALLOWED_TO_HANG_IF_AGGRESSIVE, Material.STONE);
+
+        this.add(NOT_SMOOTHED, Material.CACTUS, Material.GRASS, Material.RED_MUSHROOM, Material.BROWN_MUSHROOM, Material.DEAD_BUSH,
+                Material.DANDELION, Material.POPPY, Material.ALLIUM, Material.BLUE_ORCHID, Material.AZURE_BLUET, Material.RED_TULIP,
+                Material.ORANGE_TULIP, Material.WHITE_TULIP, Material.PINK_TULIP, Material.OXEYE_DAISY, Material.SUGAR_CANE,
+                Material.VINE, Material.PUMPKIN, Material.LILY_PAD);
+        this.add(NOT_SMOOTHED, Tag.SAPLINGS.getValues());
+        this.add(NOT_SMOOTHED, Tag.LEAVES.getValues());
+
+        this.add(FILLABLE, Material.AIR, Material.WATER, Material.LAVA, Material.GRASS);
+        this.add(NOT_SUITABLE_FOR_FILL, Material.GRASS, Material.CACTUS, Material.WATER, Material.LAVA);
+        this.add(NOT_SUITABLE_FOR_FILL, Tag.LOGS.getValues());
+    }
+
+    private void add(int category, Material... materials)
+    {
+        for(Material material : materials)
+        {
+            this.categories[material.ordinal()] |= category;
+        }
+    }
+
+    private void add(int category, Collection<Material> materials)
+    {
+        for(Material material : materials)
+        {
+            this.categories[material.ordinal()] |= category;
+        }
+    }
+
+    //whether a material is in any of the given categories (combined with |).  null is in none of them
+    boolean is(Material material, int categories)
+    {
+        return material != null && (this.categories[material.ordinal()] & categories) != 0;
+    }
+
+    //which player placed categories count as player placed in a particular place, see PLAYER_PLACED
+    static int playerPlacedCategories(Environment environment, Biome biome, boolean aggressiveMode, boolean creativeMode)
+    {
+        int categories = PLAYER_PLACED;
+        if(environment != Environment.NETHER) categories |= PLAYER_PLACED_OUTSIDE_NETHER;
+        if(environment != Environment.THE_END) categories |= PLAYER_PLACED_OUTSIDE_END;
+        if(biome == Biome.DESERT || biome == Biome.DESERT_HILLS || biome == Biome.BEACH || environment != Environment.NORMAL)
+        {
+            categories |= PLAYER_PLACED_IN_SANDY_BIOMES;
+        }
+
+        //in aggressive or creative world mode, also treat some natural blocks as user placed, to be removed
+        //this is helpful in the few cases where griefers intentionally use natural blocks to grief,
+        //like a single-block tower of iron ore or a giant penis constructed with melons
+        if(aggressiveMode || creativeMode) categories |= PLAYER_PLACED_IF_CREATIVE;
+        if(aggressiveMode) categories |= PLAYER_PLACED_IF_AGGRESSIVE;
+
+        return categories;
+    }
+}
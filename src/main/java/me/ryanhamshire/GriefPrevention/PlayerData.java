@@ -30,8 +30,8 @@ public class PlayerData
 	//the player's ID
 	public UUID playerID;
 	
-	//the player's claims
-	private Vector<Claim> claims = null;
+	//whether the player's claim blocks have been checked against their claims yet, see getClaims()
+	private boolean claimsChecked = false;
 	
 	//how many claim blocks the player has earned via play time
 	private Integer accruedClaimBlocks = null;
@@ -92,11 +92,10 @@ public class PlayerData
 	public int getRemainingClaimBlocks()
 	{
 		int remainingBlocks = this.getAccruedClaimBlocks() + this.getBonusClaimBlocks() + GriefPrevention.instance.dataStore.getGroupBonusBlocks(this.playerID);
-		for(int i = 0; i < this.getClaims().size(); i++)
-		{
-			Claim claim = this.getClaims().get(i);
-			remainingBlocks -= claim.getArea();
-		}
+		
+		//claimed area is kept up to date by the data store.  getClaims() makes sure any negative balance was fixed first
+		this.getClaims();
+		remainingBlocks -= GriefPrevention.instance.dataStore.getClaimedArea(this.playerID);
 		
 		return remainingBlocks;
 	}
@@ -184,27 +183,13 @@ public class PlayerData
     
     public Vector<Claim> getClaims()
     {
-        if(this.claims == null)
+        //the data store keeps an up to date list of each player's claims, along with their total area
+        DataStore dataStore = GriefPrevention.instance.dataStore;
+        Vector<Claim> claims = dataStore.getClaimsOwnedBy(this.playerID);
+        if(!this.claimsChecked)
         {
-            this.claims = new Vector<Claim>();
-            
-            //find all the claims belonging to this player and note them for future reference
-            DataStore dataStore = GriefPrevention.instance.dataStore;
-            int totalClaimsArea = 0;
-            for(int i = 0; i < dataStore.claims.size(); i++)
-            {
-                Claim claim = dataStore.claims.get(i);
-                if(!claim.inDataStore)
-                {
-                    dataStore.claims.remove(i--);
-                    continue;
-                }
-                if(playerID.equals(claim.ownerID))
-                {
-                    this.claims.add(claim);
-                    totalClaimsArea += claim.getArea();
-                }
-            }
+            this.claimsChecked = true;
+            int totalClaimsArea = dataStore.getClaimedArea(this.playerID);
             
             //ensure player has claim blocks for his claims, and at least the minimum accrued
             this.loadDataFromSecondaryStorage();
@@ -217,7 +202,7 @@ public class PlayerData
                 GriefPrevention.AddLogEntry(player.getName() + " has more claimed land than blocks available.  Adding blocks to fix.", CustomLogEntryTypes.Debug, true);
                 GriefPrevention.AddLogEntry(player.getName() + " Accrued blocks: " + this.getAccruedClaimBlocks() + " Bonus blocks: " + this.getBonusClaimBlocks(), CustomLogEntryTypes.Debug, true);
                 GriefPrevention.AddLogEntry("Total blocks: " + totalBlocks + " Total claimed area: " + totalClaimsArea, CustomLogEntryTypes.Debug, true);
-                for(Claim claim : this.claims)
+                for(Claim claim : claims)
                 {
                     if(!claim.inDataStore) continue;
                     GriefPrevention.AddLogEntry(
@@ -252,14 +237,6 @@ public class PlayerData
             }
         }
         
-        for(int i = 0; i < this.claims.size(); i++)
-        {
-            if(!claims.get(i).inDataStore)
-            {
-                claims.remove(i--);
-            }
-        }
-        
         return claims;
     }
     
@@ -0,0 +1,314 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+//every player's data in one file, for the file system data store (see GriefPrevention.Advanced.PackedPlayerData)
+//instead of a file per player (hundreds of thousands of them on a big server), players are fixed size slots in an on-disk hash table
+//keyed by UUID, so looking a player up or saving them is one or two positional reads and one positional write, with nothing held in memory
+//layout: a header (magic, format version, slot size, slot count, players), then the slots.  a player goes in the slot their UUID hashes to,
+//or the next free one after it.  the table is rebuilt twice as big before it gets three quarters full
+//each slot is: in use, accrued blocks, bonus blocks, a CRC32 of the slot, then the UUID
+class PlayerDataSegment
+{
+    private static final int MAGIC = 0x47505044;  //"GPPD"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int MIN_SLOTS = 1024;
+
+    private final File file;
+    private FileChannel channel;
+    private int slots;
+    private int players;
+
+    //metrics, for /gpstats
+    private volatile long reads = 0;
+    private volatile long writes = 0;
+    private volatile long probes = 0;
+    private volatile long rebuilds = 0;
+
+    private PlayerDataSegment(File file, FileChannel channel, int slots, int players)
+    {
+        this.file = file;
+        this.channel = channel;
+        this.slots = slots;
+        this.players = players;
+    }
+
+    //opens an existing segment.  throws if it isn't one
+    static PlayerDataSegment open(File file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if(header.getInt() != MAGIC) throw new IOException("Not a player data segment.");
+            int version = header.getInt();
+            if(version != VERSION) throw new IOException("Unknown player data segment version " + version + ".");
+            if(header.getInt() != SLOT_SIZE) throw new IOException("Unexpected player data segment slot size.");
+            int slots = header.getInt();
+            int players = header.getInt();
+            if(Integer.bitCount(slots) != 1 || channel.size() != HEADER_SIZE + (long)slots * SLOT_SIZE)
+            {
+                throw new IOException("Unexpected player data segment size: " + channel.size());
+            }
+
+            return new PlayerDataSegment(file, channel, slots, players);
+        }
+        catch(IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    //creates an empty segment with room for about this many players, replacing any file there was
+    static PlayerDataSegment create(File file, int expectedPlayers) throws IOException
+    {
+        int slots = MIN_SLOTS;
+        while(slots < expectedPlayers * 2L && slots < (1 << 29)) slots <<= 1;
+
+        FileChannel channel = createFile(file, slots);
+        return new PlayerDataSegment(file, channel, slots, 0);
+    }
+
+    private static FileChannel createFile(File file, int slots) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(SLOT_SIZE);
+        header.putInt(slots);
+        header.putInt(0);
+        header.clear();
+        writeFully(channel, header, 0);
+
+        //the slots start out as zeroes (not in use)
+        writeFully(channel, ByteBuffer.allocate(1), HEADER_SIZE + (long)slots * SLOT_SIZE - 1);
+        return channel;
+    }
+
+    //reads a player's accrued and bonus blocks into playerData.  returns false if the player isn't in the segment
+    synchronized boolean read(UUID playerID, PlayerData playerData) throws IOException
+    {
+        this.reads = this.reads + 1;
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        long position = this.find(playerID, slot);
+        if(slot.get(0) == 0) return false;
+
+        checkSlot(slot, position);
+        playerData.setAccruedClaimBlocks(slot.getInt(4));
+        playerData.setBonusClaimBlocks(slot.getInt(8));
+        return true;
+    }
+
+    //saves a player's accrued and bonus blocks, adding them if they're new
+    synchronized void write(UUID playerID, int accruedBlocks, int bonusBlocks) throws IOException
+    {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        long position = this.find(playerID, slot);
+        boolean isNew = slot.get(0) == 0;
+        if(isNew && (this.players + 1) * 4L > this.slots * 3L)
+        {
+            this.rebuild(this.slots * 2);
+            position = this.find(playerID, slot);
+        }
+
+        writeFully(this.channel, makeSlot(playerID, accruedBlocks, bonusBlocks), position);
+        if(isNew)
+        {
+            this.players++;
+            ByteBuffer count = ByteBuffer.allocate(4);
+            count.putInt(0, this.players);
+            writeFully(this.channel, count, 16);
+        }
+        this.writes = this.writes + 1;
+    }
+
+    //finds the player's slot, or the free slot they'd go in.  leaves the slot's contents in the buffer
+    private long find(UUID playerID, ByteBuffer slot) throws IOException
+    {
+        int mask = this.slots - 1;
+        int index = hash(playerID) & mask;
+        while(true)
+        {
+            long position = HEADER_SIZE + (long)index * SLOT_SIZE;
+            slot.clear();
+            readFully(this.channel, slot, position);
+            this.probes = this.probes + 1;
+            if(slot.get(0) == 0) return position;
+            if(slot.getLong(16) == playerID.getMostSignificantBits() && slot.getLong(24) == playerID.getLeastSignificantBits()) return position;
+            index = (index + 1) & mask;
+        }
+    }
+
+    //moves every player to a new table with more slots.  written next to the old one and swapped in, so a crash leaves one or the other
+    private void rebuild(int newSlots) throws IOException
+    {
+        File tempFile = new File(this.file.getPath() + ".tmp");
+        PlayerDataSegment rebuilt = new PlayerDataSegment(tempFile, createFile(tempFile, newSlots), newSlots, 0);
+        try
+        {
+            for(PlayerRecord player : this.readAll())
+            {
+                rebuilt.write(player.playerID, player.accruedBlocks, player.bonusBlocks);
+            }
+            rebuilt.channel.force(true);
+        }
+        finally
+        {
+            rebuilt.channel.close();
+        }
+
+        //if the new table can't be swapped in, this carries on with the old one
+        this.channel.close();
+        try
+        {
+            Files.move(tempFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally
+        {
+            this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        this.slots = newSlots;
+        this.players = rebuilt.players;  //less any damaged slots
+        this.rebuilds = this.rebuilds + 1;
+    }
+
+    //one player's data, for moving everything somewhere else
+    static class PlayerRecord
+    {
+        UUID playerID;
+        int accruedBlocks;
+        int bonusBlocks;
+    }
+
+    //reads every player, in slot order.  damaged slots are logged and skipped
+    synchronized List<PlayerRecord> readAll() throws IOException
+    {
+        List<PlayerRecord> players = new ArrayList<PlayerRecord>(this.players);
+        ByteBuffer chunk = ByteBuffer.allocate(SLOT_SIZE * 2048);
+        long end = HEADER_SIZE + (long)this.slots * SLOT_SIZE;
+        for(long position = HEADER_SIZE; position < end; position += chunk.capacity())
+        {
+            chunk.clear();
+            chunk.limit((int)Math.min(chunk.capacity(), end - position));
+            readFully(this.channel, chunk, position);
+            for(int offset = 0; offset < chunk.limit(); offset += SLOT_SIZE)
+            {
+                if(chunk.get(offset) == 0) continue;
+
+                ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+                slot.put(chunk.array(), offset, SLOT_SIZE);
+                try
+                {
+                    checkSlot(slot, position + offset);
+                }
+                catch(IOException e)
+                {
+                    GriefPrevention.AddLogEntry(e.getMessage(), CustomLogEntryTypes.Exception);
+                    continue;
+                }
+
+                PlayerRecord player = new PlayerRecord();
+                player.playerID = new UUID(slot.getLong(16), slot.getLong(24));
+                player.accruedBlocks = slot.getInt(4);
+                player.bonusBlocks = slot.getInt(8);
+                players.add(player);
+            }
+        }
+
+        return players;
+    }
+
+    synchronized void sync() throws IOException
+    {
+        this.channel.force(true);
+    }
+
+    synchronized void close() throws IOException
+    {
+        if(!this.channel.isOpen()) return;
+
+        this.channel.force(true);
+        this.channel.close();
+    }
+
+    List<String> getStats()
+    {
+        List<String> stats = new ArrayList<String>();
+        long lookups = this.reads + this.writes;
+        stats.add(String.format("Player data segment: %d players in %d slots, %d reads, %d writes, %.2f slots checked per lookup, rebuilt %d times",
+                this.players, this.slots, this.reads, this.writes, lookups == 0 ? 0.0 : (double)this.probes / lookups, this.rebuilds));
+        return stats;
+    }
+
+    private static ByteBuffer makeSlot(UUID playerID, int accruedBlocks, int bonusBlocks)
+    {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        slot.put(0, (byte)1);
+        slot.putInt(4, accruedBlocks);
+        slot.putInt(8, bonusBlocks);
+        slot.putLong(16, playerID.getMostSignificantBits());
+        slot.putLong(24, playerID.getLeastSignificantBits());
+        slot.putInt(12, checksum(slot));
+        return slot;
+    }
+
+    private static void checkSlot(ByteBuffer slot, long position) throws IOException
+    {
+        if(slot.getInt(12) != checksum(slot))
+        {
+            throw new IOException("Player data segment slot at " + position + " is damaged (checksum mismatch).");
+        }
+    }
+
+    //covers everything in the slot except the checksum itself
+    private static int checksum(ByteBuffer slot)
+    {
+        CRC32 checksum = new CRC32();
+        checksum.update(slot.array(), 0, 12);
+        checksum.update(slot.array(), 16, SLOT_SIZE - 16);
+        return (int)checksum.getValue();
+    }
+
+    //UUIDs are mostly random already, this just mixes the halves together
+    private static int hash(UUID playerID)
+    {
+        long bits = playerID.getMostSignificantBits() ^ playerID.getLeastSignificantBits();
+        bits ^= bits >>> 33;
+        bits *= 0xff51afd7ed558ccdL;
+        bits ^= bits >>> 33;
+        return (int)bits;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position + buffer.position());
+            if(read < 0) throw new IOException("Unexpected end of the player data segment.");
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
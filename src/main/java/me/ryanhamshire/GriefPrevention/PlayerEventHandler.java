@@ -18,6 +18,7 @@
 
 package me.ryanhamshire.GriefPrevention;
 
+import me.ryanhamshire.GriefPrevention.events.TrustChangedEvent;
 import me.ryanhamshire.GriefPrevention.events.VisualizationEvent;
 import org.bukkit.*;
 import org.bukkit.World.Environment;
@@ -187,6 +188,20 @@ class PlayerEventHandler implements Listener
         //drop data about this player
         this.dataStore.clearCachedPlayerData(playerID);
 	}
+	
+	//when a player changes worlds, permission plugins may give them different permissions
+	@EventHandler(priority = EventPriority.MONITOR)
+	void onPlayerChangedWorld(PlayerChangedWorldEvent event)
+	{
+	    this.dataStore.permissionCache.invalidatePlayer(event.getPlayer().getUniqueId());
+	}
+	
+	//when trust changes (including through other plugins), forget any cached permission check results
+	@EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+	void onTrustChanged(TrustChangedEvent event)
+	{
+	    this.dataStore.permissionCache.invalidateAll();
+	}
 
 	//when a player teleports
 	@EventHandler(priority = EventPriority.LOWEST)
@@ -286,7 +301,7 @@ class PlayerEventHandler implements Listener
             Claim claim = this.dataStore.getClaimAt(entity.getLocation(), false, null);
             if(claim != null)
             {
-                if(claim.allowContainers(player) != null)
+                if(claim.checkContainers(player) != null)
                 {
                     String message = instance.dataStore.getMessage(Messages.NoDamageClaimedEntity, claim.getOwnerName());
                     if(player.hasPermission("griefprevention.ignoreclaims"))
@@ -363,8 +378,6 @@ class PlayerEventHandler implements Listener
 	}
 	
 	//block use of buckets within other players' claims
-	private HashSet<Material> commonAdjacentBlocks_water = new HashSet<Material>(Arrays.asList(Material.WATER, Material.FARMLAND, Material.DIRT, Material.STONE));
-	private HashSet<Material> commonAdjacentBlocks_lava = new HashSet<Material>(Arrays.asList(Material.LAVA, Material.DIRT, Material.STONE));
 	@EventHandler(ignoreCancelled = true, priority = EventPriority.LOWEST)
 	public void onPlayerBucketEmpty (PlayerBucketEmptyEvent bucketEvent)
 	{
@@ -385,7 +398,7 @@ class PlayerEventHandler implements Listener
 		
 		//if the bucket is being used in a claim, allow for dumping lava closer to other players
 		PlayerData playerData = this.dataStore.getPlayerData(player.getUniqueId());
-		Claim claim = this.dataStore.getClaimAt(block.getLocation(), false, playerData.lastClaim);
+		Claim claim = this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), false, playerData.lastClaim);
 		if(claim != null)
 		{
 			minLavaDistance = 3;
@@ -395,18 +408,18 @@ class PlayerEventHandler implements Listener
 		if(block.getY() >= instance.getSeaLevel(block.getWorld()) - 5 && !player.hasPermission("griefprevention.lava") && block.getWorld().getEnvironment() != Environment.NETHER)
 		{
 		    //if certain blocks are nearby, it's less suspicious and not worth logging
-		    HashSet<Material> exclusionAdjacentTypes;
+		    int exclusionAdjacentTypes;
 		    if(bucketEvent.getBucket() == Material.WATER_BUCKET)
-		        exclusionAdjacentTypes = this.commonAdjacentBlocks_water;
+		        exclusionAdjacentTypes = MaterialCategories.COMMON_NEAR_WATER;
 		    else
-		        exclusionAdjacentTypes = this.commonAdjacentBlocks_lava;
+		        exclusionAdjacentTypes = MaterialCategories.COMMON_NEAR_LAVA;
 		    
 		    boolean makeLogEntry = true;
 		    BlockFace [] adjacentDirections = new BlockFace[] {BlockFace.EAST, BlockFace.WEST, BlockFace.NORTH, BlockFace.SOUTH, BlockFace.DOWN};
 		    for(BlockFace direction : adjacentDirections)
 		    {
 		        Material adjacentBlockType = block.getRelative(direction).getType();
-		        if(exclusionAdjacentTypes.contains(adjacentBlockType))
+		        if(instance.materialCategories.is(adjacentBlockType, exclusionAdjacentTypes))
 	            {
 		            makeLogEntry = false;
 		            break;
@@ -470,6 +483,7 @@ class PlayerEventHandler implements Listener
 		{
 		    clickedBlockType = Material.AIR;
 		}
+		MaterialCategories materials = instance.materialCategories;
 
 		PlayerData playerData = null;
 
@@ -479,7 +493,7 @@ class PlayerEventHandler implements Listener
 			if (clickedBlockType != Material.TURTLE_EGG)
 				return;
 			playerData = this.dataStore.getPlayerData(player.getUniqueId());
-			Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false, playerData.lastClaim);
+			Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false, playerData.lastClaim);
 			if(claim != null)
 			{
 				playerData.lastClaim = claim;
@@ -504,7 +518,7 @@ class PlayerEventHandler implements Listener
                             if(lightLevel == 15 && adjacentBlock.getType() == Material.FIRE)
                             {
                                 if(playerData == null) playerData = this.dataStore.getPlayerData(player.getUniqueId());
-                                Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false, playerData.lastClaim);
+                                Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false, playerData.lastClaim);
                                 if(claim != null)
                                 {
                                     playerData.lastClaim = claim;
@@ -532,18 +546,12 @@ class PlayerEventHandler implements Listener
 		if(	clickedBlock != null && instance.config_claims_preventTheft && (
 						event.getAction() == Action.RIGHT_CLICK_BLOCK && (
 						(this.isInventoryHolder(clickedBlock) && clickedBlock.getType() != Material.LECTERN) ||
-						clickedBlockType == Material.CAULDRON ||
-						clickedBlockType == Material.JUKEBOX ||
-						clickedBlockType == Material.ANVIL ||
-						clickedBlockType == Material.CHIPPED_ANVIL ||
-						clickedBlockType == Material.DAMAGED_ANVIL ||
-						clickedBlockType == Material.CAKE ||
-						clickedBlockType == Material.SWEET_BERRY_BUSH)))
+						materials.is(clickedBlockType, MaterialCategories.CONTAINER))))
 		{			
 			if(playerData == null) playerData = this.dataStore.getPlayerData(player.getUniqueId());
 
 			// check permissions for the claim the player is in
-			Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false, playerData.lastClaim);
+			Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false, playerData.lastClaim);
 			if(claim != null)
 			{
 				playerData.lastClaim = claim;
@@ -558,53 +566,11 @@ class PlayerEventHandler implements Listener
 			}
 		}
 		
-		//otherwise apply rules for doors and beds, if configured that way
-		else if( clickedBlock != null && 
-		        
-		(instance.config_claims_lockWoodenDoors && (
-				clickedBlockType == Material.OAK_DOOR   ||
-				clickedBlockType == Material.ACACIA_DOOR   || 
-				clickedBlockType == Material.BIRCH_DOOR    ||
-				clickedBlockType == Material.JUNGLE_DOOR   ||
-				clickedBlockType == Material.SPRUCE_DOOR   ||
-				clickedBlockType == Material.DARK_OAK_DOOR)) ||
-		        
-                (instance.config_claims_preventButtonsSwitches && (	clickedBlockType == Material.WHITE_BED		||
-									clickedBlockType == Material.ORANGE_BED		||
-									clickedBlockType == Material.MAGENTA_BED	||
-									clickedBlockType == Material.LIGHT_BLUE_BED	||
-									clickedBlockType == Material.YELLOW_BED		||
-									clickedBlockType == Material.LIME_BED		||
-									clickedBlockType == Material.PINK_BED		||
-									clickedBlockType == Material.GRAY_BED		||
-									clickedBlockType == Material.LIGHT_GRAY_BED	||
-									clickedBlockType == Material.CYAN_BED		||
-									clickedBlockType == Material.PURPLE_BED		||
-									clickedBlockType == Material.BLUE_BED		||
-									clickedBlockType == Material.BROWN_BED		||
-									clickedBlockType == Material.GREEN_BED		||
-									clickedBlockType == Material.RED_BED		||
-									clickedBlockType == Material.BLACK_BED)) ||
-		        
-                (instance.config_claims_lockTrapDoors && (
-					clickedBlockType == Material.OAK_TRAPDOOR ||
-					clickedBlockType == Material.SPRUCE_TRAPDOOR ||
-					clickedBlockType == Material.BIRCH_TRAPDOOR ||
-					clickedBlockType == Material.JUNGLE_TRAPDOOR ||
-					clickedBlockType == Material.ACACIA_TRAPDOOR ||
-					clickedBlockType == Material.DARK_OAK_TRAPDOOR)) ||
-				
-                (instance.config_claims_lockFenceGates && (
-				clickedBlockType == Material.OAK_FENCE_GATE      ||
-				clickedBlockType == Material.ACACIA_FENCE_GATE   || 
-				clickedBlockType == Material.BIRCH_FENCE_GATE    ||
-				clickedBlockType == Material.JUNGLE_FENCE_GATE   ||
-				clickedBlockType == Material.SPRUCE_FENCE_GATE   ||
-				clickedBlockType == Material.DARK_OAK_FENCE_GATE)) ||
-				(instance.config_claims_lecternReadingRequiresAccessTrust && clickedBlockType == Material.LECTERN))
+		//otherwise apply rules for doors and beds, if configured that way (the material table only lists the ones which are)
+		else if(clickedBlock != null && materials.is(clickedBlockType, MaterialCategories.DOOR))
 		{
 		    if(playerData == null) playerData = this.dataStore.getPlayerData(player.getUniqueId());
-		    Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false, playerData.lastClaim);
+		    Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false, playerData.lastClaim);
 			if(claim != null)
 			{
 				playerData.lastClaim = claim;
@@ -620,10 +586,10 @@ class PlayerEventHandler implements Listener
 		}
 		
 		//otherwise apply rules for buttons and switches
-		else if(clickedBlock != null && instance.config_claims_preventButtonsSwitches && (clickedBlockType == null || clickedBlockType == Material.STONE_BUTTON || Tag.BUTTONS.isTagged(clickedBlockType) || clickedBlockType == Material.LEVER))
+		else if(clickedBlock != null && instance.config_claims_preventButtonsSwitches && (clickedBlockType == null || materials.is(clickedBlockType, MaterialCategories.SWITCH)))
 		{
 		    if(playerData == null) playerData = this.dataStore.getPlayerData(player.getUniqueId());
-		    Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false, playerData.lastClaim);
+		    Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false, playerData.lastClaim);
 			if(claim != null)
 			{
 			    playerData.lastClaim = claim;
@@ -642,7 +608,7 @@ class PlayerEventHandler implements Listener
         else if(clickedBlock != null && instance.config_claims_preventTheft && clickedBlockType == Material.CAKE)
         {
             if(playerData == null) playerData = this.dataStore.getPlayerData(player.getUniqueId());
-            Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false, playerData.lastClaim);
+            Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false, playerData.lastClaim);
             if(claim != null)
             {
                 playerData.lastClaim = claim;
@@ -658,18 +624,10 @@ class PlayerEventHandler implements Listener
         }
 		
 		//apply rule for note blocks and repeaters and daylight sensors //RoboMWM: Include flower pots
-		else if(clickedBlock != null && 
-			(
-		                clickedBlockType == Material.NOTE_BLOCK || 
-		                clickedBlockType == Material.REPEATER || 
-		                clickedBlockType == Material.DRAGON_EGG ||
-		                clickedBlockType == Material.DAYLIGHT_DETECTOR ||
-		                clickedBlockType == Material.COMPARATOR ||
-						Tag.FLOWER_POTS.isTagged(clickedBlockType)
-		        ))
+		else if(clickedBlock != null && materials.is(clickedBlockType, MaterialCategories.BUILD_TO_USE))
 		{
 		    if(playerData == null) playerData = this.dataStore.getPlayerData(player.getUniqueId());
-		    Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false, playerData.lastClaim);
+		    Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false, playerData.lastClaim);
 			if(claim != null)
 			{
 				String noBuildReason = claim.allowBuild(player, clickedBlockType);
@@ -693,21 +651,8 @@ class PlayerEventHandler implements Listener
 			ItemStack itemInHand = instance.getItemInHand(player, hand);
 			Material materialInHand = itemInHand.getType();	
 			
-			Set<Material> dyes = new HashSet<>();
-			
-			for (Material material : Material.values())
-			{
-				if (!material.isLegacy() && material.name().endsWith("_DYE"))
-					dyes.add(material);
-			}
-
-			
 			//if it's bonemeal, armor stand, spawn egg, etc - check for build permission //RoboMWM: also check flint and steel to stop TNT ignition
-			if(clickedBlock != null && (materialInHand == Material.BONE_MEAL
-					|| materialInHand == Material.ARMOR_STAND
-					|| materialInHand == Material.END_CRYSTAL
-					|| materialInHand == Material.FLINT_AND_STEEL
-					|| dyes.contains(materialInHand)))
+			if(clickedBlock != null && materials.is(materialInHand, MaterialCategories.BUILD_TO_USE_ITEM))
 			{
 				String noBuildReason = instance
 						.allowBuild(player, clickedBlock
@@ -722,16 +667,10 @@ class PlayerEventHandler implements Listener
 				return;
 			}
 			
-			else if(clickedBlock != null && (
-			        materialInHand == Material.OAK_BOAT		|| 
-			        materialInHand == Material.SPRUCE_BOAT		|| 
-			        materialInHand == Material.BIRCH_BOAT		|| 
-			        materialInHand == Material.JUNGLE_BOAT		|| 
-			        materialInHand == Material.ACACIA_BOAT		||
-			        materialInHand == Material.DARK_OAK_BOAT))
+			else if(clickedBlock != null && materials.is(materialInHand, MaterialCategories.BOAT))
 			{
 			    if(playerData == null) playerData = this.dataStore.getPlayerData(player.getUniqueId());
-			    Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false, playerData.lastClaim);
+			    Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false, playerData.lastClaim);
 				if(claim != null)
 				{
 					String noBuildReason = claim.allowBuild(player, Material.OAK_BOAT); // Though only checks OAK_BOAT, permission should be same for all boats. Plus it being a boat doesn't seem to make a difference currently.
@@ -746,15 +685,10 @@ class PlayerEventHandler implements Listener
 			}
 			
 			//survival world minecart placement requires container trust, which is the permission required to remove the minecart later
-			else if(clickedBlock != null &&
-				(materialInHand == Material.MINECART				|| 
-				materialInHand == Material.FURNACE_MINECART			|| 
-				materialInHand == Material.CHEST_MINECART			|| 
-				materialInHand == Material.TNT_MINECART				|| 
-				materialInHand == Material.HOPPER_MINECART))
+			else if(clickedBlock != null && materials.is(materialInHand, MaterialCategories.MINECART))
 			{
 				if(playerData == null) playerData = this.dataStore.getPlayerData(player.getUniqueId());
-				Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false, playerData.lastClaim);
+				Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false, playerData.lastClaim);
 				if(claim != null)
 				{
 					String reason = claim.allowContainers(player);
@@ -819,7 +753,7 @@ class PlayerEventHandler implements Listener
 				}
 
 				if(playerData == null) playerData = this.dataStore.getPlayerData(player.getUniqueId());
-				Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false /*ignore height*/, playerData.lastClaim);
+				Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false /*ignore height*/, playerData.lastClaim);
 
 				//no claim case
 				if(claim == null)
@@ -907,7 +841,7 @@ class PlayerEventHandler implements Listener
 			if(playerData.shovelMode == ShovelMode.RestoreNature || playerData.shovelMode == ShovelMode.RestoreNatureAggressive)
 			{
 				//if the clicked block is in a claim, visualize that claim and deliver an error message
-				Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), false, playerData.lastClaim);
+				Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), false, playerData.lastClaim);
 				if(claim != null)
 				{
 					instance.sendMessage(player, TextMode.Err, Messages.BlockClaimed, claim.getOwnerName());
@@ -1013,7 +947,7 @@ class PlayerEventHandler implements Listener
 							Block block = centerBlock.getWorld().getBlockAt(x, y, z);
 
 							//respect claims
-							Claim claim = this.dataStore.getClaimAt(block.getLocation(), false, cachedClaim);
+							Claim claim = this.dataStore.getClaimAt(block.getWorld(), block.getX(), block.getY(), block.getZ(), false, cachedClaim);
 							if(claim != null)
 							{
 								cachedClaim = claim;
@@ -1083,43 +1017,43 @@ class PlayerEventHandler implements Listener
 
 				//figure out what the coords of his new claim would be
 				int newx1, newx2, newz1, newz2, newy1, newy2;
-				if(playerData.lastShovelLocation.getBlockX() == playerData.claimResizing.getLesserBoundaryCorner().getBlockX())
+				if(playerData.lastShovelLocation.getBlockX() == playerData.claimResizing.lesserX)
 				{
 					newx1 = clickedBlock.getX();
 				}
 				else
 				{
-					newx1 = playerData.claimResizing.getLesserBoundaryCorner().getBlockX();
+					newx1 = playerData.claimResizing.lesserX;
 				}
 
-				if(playerData.lastShovelLocation.getBlockX() == playerData.claimResizing.getGreaterBoundaryCorner().getBlockX())
+				if(playerData.lastShovelLocation.getBlockX() == playerData.claimResizing.greaterX)
 				{
 					newx2 = clickedBlock.getX();
 				}
 				else
 				{
-					newx2 = playerData.claimResizing.getGreaterBoundaryCorner().getBlockX();
+					newx2 = playerData.claimResizing.greaterX;
 				}
 
-				if(playerData.lastShovelLocation.getBlockZ() == playerData.claimResizing.getLesserBoundaryCorner().getBlockZ())
+				if(playerData.lastShovelLocation.getBlockZ() == playerData.claimResizing.lesserZ)
 				{
 					newz1 = clickedBlock.getZ();
 				}
 				else
 				{
-					newz1 = playerData.claimResizing.getLesserBoundaryCorner().getBlockZ();
+					newz1 = playerData.claimResizing.lesserZ;
 				}
 
-				if(playerData.lastShovelLocation.getBlockZ() == playerData.claimResizing.getGreaterBoundaryCorner().getBlockZ())
+				if(playerData.lastShovelLocation.getBlockZ() == playerData.claimResizing.greaterZ)
 				{
 					newz2 = clickedBlock.getZ();
 				}
 				else
 				{
-					newz2 = playerData.claimResizing.getGreaterBoundaryCorner().getBlockZ();
+					newz2 = playerData.claimResizing.greaterZ;
 				}
 
-				newy1 = playerData.claimResizing.getLesserBoundaryCorner().getBlockY();
+				newy1 = playerData.claimResizing.lesserY;
 				newy2 = clickedBlock.getY() - instance.config_claims_claimsExtendIntoGroundDistance;
 
 				this.dataStore.resizeClaimWithChecks(player, playerData, newx1, newx2, newy1, newy2, newz1, newz2);
@@ -1128,7 +1062,7 @@ class PlayerEventHandler implements Listener
 			}
 
 			//otherwise, since not currently resizing a claim, must be starting a resize, creating a new claim, or creating a subdivision
-			Claim claim = this.dataStore.getClaimAt(clickedBlock.getLocation(), true /*ignore height*/, playerData.lastClaim);
+			Claim claim = this.dataStore.getClaimAt(clickedBlock.getWorld(), clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), true /*ignore height*/, playerData.lastClaim);
 
 			//if within an existing claim, he's not creating a new one
 			if(claim != null)
@@ -1138,7 +1072,7 @@ class PlayerEventHandler implements Listener
 				if(noEditReason == null)
 				{
 					//if he clicked on a corner, start resizing it
-					if((clickedBlock.getX() == claim.getLesserBoundaryCorner().getBlockX() || clickedBlock.getX() == claim.getGreaterBoundaryCorner().getBlockX()) && (clickedBlock.getZ() == claim.getLesserBoundaryCorner().getBlockZ() || clickedBlock.getZ() == claim.getGreaterBoundaryCorner().getBlockZ()))
+					if((clickedBlock.getX() == claim.lesserX || clickedBlock.getX() == claim.greaterX) && (clickedBlock.getZ() == claim.lesserZ || clickedBlock.getZ() == claim.greaterZ))
 					{
 						playerData.claimResizing = claim;
 						playerData.lastShovelLocation = clickedBlock.getLocation();
@@ -1190,6 +1124,12 @@ class PlayerEventHandler implements Listener
 							//if it didn't succeed, tell the player why
 							if(!result.succeeded)
 							{
+								if(result.claimsLoading)
+								{
+									instance.sendMessage(player, TextMode.Err, Messages.ClaimsStillLoading);
+									return;
+								}
+								
 								instance.sendMessage(player, TextMode.Err, Messages.CreateSubdivisionOverlap);
 
 								Visualization visualization = Visualization.FromClaim(result.claim, clickedBlock.getY(), VisualizationType.ErrorClaim, player.getLocation());
@@ -1263,7 +1203,7 @@ class PlayerEventHandler implements Listener
 				//if he's at the claim count per player limit already and doesn't have permission to bypass, display an error message
 				if(instance.config_claims_maxClaimsPerPlayer > 0 &&
 				   !player.hasPermission("griefprevention.overrideclaimcountlimit") &&
-				   playerData.getClaims().size() >= instance.config_claims_maxClaimsPerPlayer)
+				   this.dataStore.getClaimCount(player.getUniqueId()) >= instance.config_claims_maxClaimsPerPlayer)
 				{
 				    instance.sendMessage(player, TextMode.Err, Messages.ClaimCreationFailedOverClaimCountLimit);
 				    return;
@@ -1352,7 +1292,11 @@ class PlayerEventHandler implements Listener
 				//if it didn't succeed, tell the player why
 				if(!result.succeeded)
 				{
-					if(result.claim != null)
+					if(result.claimsLoading)
+					{
+					    instance.sendMessage(player, TextMode.Err, Messages.ClaimsStillLoading);
+					}
+					else if(result.claim != null)
 					{
     				    instance.sendMessage(player, TextMode.Err, Messages.CreateClaimFailOverlapShort);
 
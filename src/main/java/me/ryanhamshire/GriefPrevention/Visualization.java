@@ -132,15 +132,13 @@ public class Visualization
 	@SuppressWarnings("deprecation")
 	private void addClaimElements(Claim claim, int height, VisualizationType visualizationType, Location locality)
 	{
-		Location smallXsmallZ = claim.getLesserBoundaryCorner();
-		Location bigXbigZ = claim.getGreaterBoundaryCorner();
-		World world = smallXsmallZ.getWorld();
+		World world = claim.world;
 		boolean waterIsTransparent = locality.getBlock().getType() == Material.WATER;
 		
-		int smallx = smallXsmallZ.getBlockX();
-		int smallz = smallXsmallZ.getBlockZ();
-		int bigx = bigXbigZ.getBlockX();
-		int bigz = bigXbigZ.getBlockZ();
+		int smallx = claim.lesserX;
+		int smallz = claim.lesserZ;
+		int bigx = claim.greaterX;
+		int bigz = claim.greaterZ;
 		
 		BlockData cornerBlockData;
 		BlockData accentBlockData;
@@ -0,0 +1,32 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+//keeps claims in memory only for worlds which are loaded
+//claims in worlds which load after startup (say, from a world management plugin) are loaded with their world, and unloaded with it
+class WorldEventHandler implements Listener
+{
+    private final DataStore dataStore;
+
+    WorldEventHandler(DataStore dataStore)
+    {
+        this.dataStore = dataStore;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event)
+    {
+        this.dataStore.loadClaimsInWorld(event.getWorld());
+    }
+
+    //only once it's certain the world is going away
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event)
+    {
+        this.dataStore.unloadClaimsInWorld(event.getWorld());
+    }
+}
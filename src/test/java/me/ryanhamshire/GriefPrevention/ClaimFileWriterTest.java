@@ -0,0 +1,143 @@
+package me.ryanhamshire.GriefPrevention;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+//writes claims with ClaimFileWriter in journal mode, then reads them back the way FlatFileDataStore.loadClaimData() does
+public class ClaimFileWriterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File claimFolder;
+    private File snapshotFile;
+    private File journalFile;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.claimFolder = this.folder.newFolder("ClaimData");
+        this.snapshotFile = new File(this.claimFolder, "_claims.snapshot");
+        this.journalFile = new File(this.claimFolder, "_claims.journal");
+    }
+
+    @Test
+    public void turningTheJournalOffKeepsClaimsInUnloadedWorlds() throws Exception
+    {
+        //claim files from before journal mode was turned on, one of them for a claim deleted since
+        ClaimFileWriter.Snapshot unloaded = claim(2, "unloaded_world");
+        writeFile(new File(this.claimFolder, "2.yml"), unloaded.toYaml());
+        writeFile(new File(this.claimFolder, "3.yml"), claim(3, "world").toYaml());
+
+        ClaimFileWriter writer = new ClaimFileWriter(this.claimFolder, this.snapshotFile, this.journalFile);
+        writer.track(Arrays.asList(unloaded, claim(3, "world")), false, 0, 0);
+        writer.save(claim(1, "world"));
+        ClaimFileWriter.Snapshot trusted = claim(2, "unloaded_world");
+        trusted.builders.add("builder1");
+        writer.save(trusted);
+        writer.delete(3L);
+        writer.close();
+
+        //journal mode is off now, and no worlds are loaded, so every claim comes from the snapshot and journal and none is built
+        List<ClaimFileWriter.Snapshot> claims = this.readSnapshotAndJournal();
+        new ClaimFileWriter(this.claimFolder, null, (File)null).rewriteClaimFiles(claims);
+
+        assertTrue(new File(this.claimFolder, "1.yml").exists());
+        assertFalse(new File(this.claimFolder, "3.yml").exists());
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(new File(this.claimFolder, "2.yml"));
+        assertEquals("unloaded_world;0;0;0", yaml.getString("Lesser Boundary Corner"));
+        assertEquals(Collections.singletonList("builder1"), yaml.getStringList("Builders"));
+    }
+
+    @Test
+    public void changeWhichCouldNotBeAppendedIsCompactedLater() throws Exception
+    {
+        FailingJournal journal = new FailingJournal(this.journalFile);
+        ClaimFileWriter writer = new ClaimFileWriter(this.claimFolder, this.snapshotFile, journal);
+        writer.track(Collections.<ClaimFileWriter.Snapshot>emptyList(), false, 0, 0);
+
+        //the first claim's record can't be appended (the journal cuts it off again), the second one's can
+        journal.failNext = true;
+        writer.save(claim(1, "world"));
+        writer.flush();
+        writer.save(claim(2, "world"));
+        writer.flush();
+        writer.close();
+
+        List<Long> claimIDs = new ArrayList<Long>();
+        for(ClaimFileWriter.Snapshot claim : this.readSnapshotAndJournal())
+        {
+            claimIDs.add(claim.id);
+        }
+        Collections.sort(claimIDs);
+        assertEquals(Arrays.asList(1L, 2L), claimIDs);
+    }
+
+    //fails to append a record when asked to, like a full disk would
+    private static class FailingJournal extends ClaimJournal
+    {
+        volatile boolean failNext = false;
+
+        FailingJournal(File file)
+        {
+            super(file);
+        }
+
+        @Override
+        void end() throws IOException
+        {
+            if(this.failNext)
+            {
+                this.failNext = false;
+                throw new IOException("No space left on device");
+            }
+            super.end();
+        }
+    }
+
+    private List<ClaimFileWriter.Snapshot> readSnapshotAndJournal() throws IOException
+    {
+        ClaimSnapshotFile.Contents contents = ClaimSnapshotFile.read(this.snapshotFile);
+        ClaimJournal.replay(this.journalFile, contents.generation, contents.claims);
+        List<ClaimFileWriter.Snapshot> claims = new ArrayList<ClaimFileWriter.Snapshot>();
+        for(Long claimID : contents.claims.keySet())
+        {
+            claims.add(new ClaimFileWriter.Snapshot(claimID, contents.claims.get(claimID)));
+        }
+        return claims;
+    }
+
+    private static ClaimFileWriter.Snapshot claim(long id, String world)
+    {
+        FlatFileDataStore.ClaimFileContents contents = new FlatFileDataStore.ClaimFileContents();
+        contents.lesserBoundaryCorner = world + ";0;0;0";
+        contents.greaterBoundaryCorner = world + ";9;255;9";
+        contents.ownerIdentifier = "";
+        contents.builders = new ArrayList<String>();
+        contents.containers = new ArrayList<String>();
+        contents.accessors = new ArrayList<String>();
+        contents.managers = new ArrayList<String>();
+        contents.parentID = -1;
+        return new ClaimFileWriter.Snapshot(id, contents);
+    }
+
+    private static void writeFile(File file, String content) throws IOException
+    {
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+    }
+}
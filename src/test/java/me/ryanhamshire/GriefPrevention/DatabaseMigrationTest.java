@@ -0,0 +1,291 @@
+package me.ryanhamshire.GriefPrevention;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+//runs DatabaseMigration against an in-memory H2 database, with tables shaped like DatabaseDataStore's
+public class DatabaseMigrationTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final AtomicInteger databaseCount = new AtomicInteger();
+
+    private final List<String> log = new ArrayList<String>();
+    private final List<Connection> keepAlive = new ArrayList<Connection>();
+    private File checkpointFile;
+
+    //claims and players the binders have been asked to write, to see what a resumed migration skips
+    private final AtomicInteger claimsBound = new AtomicInteger();
+    private final AtomicInteger playersBound = new AtomicInteger();
+
+    //throws (like a crash would interrupt it) when a claim with a higher ID is written
+    private long failAfterClaimID = Long.MAX_VALUE;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.checkpointFile = new File(this.folder.getRoot(), "_migration.checkpoint");
+    }
+
+    @After
+    public void tearDown() throws SQLException
+    {
+        for(Connection connection : this.keepAlive)
+        {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void migratesClaimsTrustAndPlayers() throws Exception
+    {
+        DatabaseMigration.Target target = this.newDatabase();
+        DatabaseMigration migration = new DatabaseMigration(target, this.checkpointFile);
+
+        ClaimFileWriter.Snapshot claim = claim(1, "owner");
+        claim.builders.add("builder1");
+        claim.managers.add("manager1");
+        migration.migrateClaims(Arrays.asList(claim, claim(2, "owner")));
+
+        UUID first = new UUID(0, 1);
+        UUID second = new UUID(0, 2);
+        UUID unreadable = new UUID(0, 3);
+        migration.migratePlayers(Arrays.asList(first, second, unreadable), playerID -> playerID.equals(unreadable) ? null : player(playerID, 10), row -> row);
+        migration.finish();
+
+        assertEquals(2, count(target, "SELECT COUNT(*) FROM claims"));
+        assertEquals(1, count(target, "SELECT COUNT(*) FROM permissions WHERE claimid=1 AND subject='builder1' AND level='builder'"));
+        assertEquals(1, count(target, "SELECT COUNT(*) FROM permissions WHERE claimid=1 AND subject='manager1' AND level='manager'"));
+        assertEquals(2, count(target, "SELECT COUNT(*) FROM players"));
+        assertEquals(10, count(target, "SELECT accruedblocks FROM players WHERE name='" + second + "'"));
+        assertFalse(this.checkpointFile.exists());
+    }
+
+    @Test
+    public void failedBatchIsRetriedOneRowAtATime() throws Exception
+    {
+        DatabaseMigration.Target target = this.newDatabase();
+        DatabaseMigration migration = new DatabaseMigration(target, this.checkpointFile);
+
+        //the owner column holds 50 characters, so this claim can't be written, which fails its whole batch
+        char [] longOwner = new char[60];
+        Arrays.fill(longOwner, 'x');
+        List<ClaimFileWriter.Snapshot> claims = new ArrayList<ClaimFileWriter.Snapshot>();
+        for(long id = 1; id <= 10; id++)
+        {
+            claims.add(claim(id, id == 5 ? new String(longOwner) : "owner"));
+        }
+        migration.migrateClaims(claims);
+
+        assertEquals(9, count(target, "SELECT COUNT(*) FROM claims"));
+        assertEquals(0, count(target, "SELECT COUNT(*) FROM claims WHERE id=5"));
+        assertTrue(this.logged("A migration batch failed"));
+        assertTrue(this.logged("Unable to migrate claim 5"));
+    }
+
+    @Test
+    public void resumesAfterInterruption() throws Exception
+    {
+        DatabaseMigration.Target target = this.newDatabase();
+        List<ClaimFileWriter.Snapshot> claims = claims(7000);
+
+        //the first transaction (5000 claims) is committed and checkpointed, the second is lost
+        this.failAfterClaimID = 6000;
+        try
+        {
+            new DatabaseMigration(target, this.checkpointFile).migrateClaims(claims);
+        }
+        catch(IllegalStateException expected) { }
+        assertEquals(5000, count(target, "SELECT COUNT(*) FROM claims"));
+
+        this.failAfterClaimID = Long.MAX_VALUE;
+        this.claimsBound.set(0);
+        DatabaseMigration migration = new DatabaseMigration(target, this.checkpointFile);
+        migration.migrateClaims(claims);
+
+        assertEquals(2000, this.claimsBound.get());
+        assertEquals(7000, count(target, "SELECT COUNT(*) FROM claims"));
+        assertTrue(this.logged("Resuming an interrupted migration"));
+
+        //players pick up after the last one checkpointed too
+        List<UUID> playerIDs = players(3);
+        migration.migratePlayers(playerIDs.subList(0, 2), playerID -> player(playerID, 0), row -> row);
+        this.playersBound.set(0);
+        new DatabaseMigration(target, this.checkpointFile).migratePlayers(playerIDs, playerID -> player(playerID, 0), row -> row);
+        assertEquals(1, this.playersBound.get());
+        assertEquals(3, count(target, "SELECT COUNT(*) FROM players"));
+    }
+
+    @Test
+    public void checkpointForAnotherDatabaseIsIgnored() throws Exception
+    {
+        List<ClaimFileWriter.Snapshot> claims = claims(10);
+        new DatabaseMigration(this.newDatabase(), this.checkpointFile).migrateClaims(claims);
+
+        DatabaseMigration.Target other = this.newDatabase();
+        this.claimsBound.set(0);
+        new DatabaseMigration(other, this.checkpointFile).migrateClaims(claims);
+
+        assertEquals(10, this.claimsBound.get());
+        assertEquals(10, count(other, "SELECT COUNT(*) FROM claims"));
+        assertTrue(this.logged("for another database"));
+    }
+
+    @Test
+    public void checkpointIsIgnoredWhenTheDatabaseLacksItsRows() throws Exception
+    {
+        DatabaseMigration.Target target = this.newDatabase();
+        List<ClaimFileWriter.Snapshot> claims = claims(10);
+        new DatabaseMigration(target, this.checkpointFile).migrateClaims(claims);
+
+        //say the database was emptied and the config still points at it
+        execute(target, "DELETE FROM claims");
+        this.claimsBound.set(0);
+        new DatabaseMigration(target, this.checkpointFile).migrateClaims(claims);
+
+        assertEquals(10, this.claimsBound.get());
+        assertEquals(10, count(target, "SELECT COUNT(*) FROM claims"));
+        assertTrue(this.logged("doesn't have what the migration checkpoint says"));
+    }
+
+    //a new, empty database
+    private DatabaseMigration.Target newDatabase() throws SQLException
+    {
+        String url = "jdbc:h2:mem:migration" + databaseCount.incrementAndGet() + ";MODE=MySQL";
+
+        //an in-memory database lasts as long as a connection to it is open
+        this.keepAlive.add(DriverManager.getConnection(url));
+
+        DatabaseMigration.Target target = new DatabaseMigration.Target();
+        target.url = url;
+        target.connections = () -> DriverManager.getConnection(url);
+        target.log = this.log::add;
+
+        target.deleteClaimSQL = "DELETE FROM claims WHERE id=?;";
+        target.insertClaimSQL = "INSERT INTO claims (id, owner, lessercorner, greatercorner, inheritnothing, parentid) VALUES(?,?,?,?,?,?);";
+        target.selectClaimSQL = "SELECT id FROM claims WHERE id=?;";
+        target.claimBinder = (claim, statement) ->
+        {
+            if(claim.id > this.failAfterClaimID) throw new IllegalStateException("interrupted");
+            this.claimsBound.incrementAndGet();
+            statement.setLong(1, claim.id);
+            statement.setString(2, claim.ownerID);
+            statement.setString(3, claim.lesserBoundaryCorner);
+            statement.setString(4, claim.greaterBoundaryCorner);
+            statement.setBoolean(5, claim.inheritNothing);
+            statement.setLong(6, claim.parentID);
+        };
+
+        target.deleteClaimPermissionSQL = "DELETE FROM permissions WHERE claimid=? AND subject=? AND level=?;";
+        target.insertClaimPermissionSQL = "INSERT INTO permissions (claimid, subject, level) VALUES (?,?,?);";
+        target.permissionLevels = DatabaseDataStore.PERMISSION_LEVELS;
+
+        target.deletePlayerSQL = "DELETE FROM players WHERE name=?;";
+        target.insertPlayerSQL = "INSERT INTO players (name, lastlogin, accruedblocks, bonusblocks) VALUES (?,?,?,?);";
+        target.selectPlayerSQL = "SELECT * FROM players WHERE name=?;";
+        target.playerBinder = (player, statement) ->
+        {
+            this.playersBound.incrementAndGet();
+            statement.setString(1, player.name);
+            statement.setString(2, player.lastLogin);
+            statement.setInt(3, player.accruedBlocks);
+            statement.setInt(4, player.bonusBlocks);
+        };
+
+        execute(target, "CREATE TABLE claims (id BIGINT PRIMARY KEY, owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner VARCHAR(100), inheritnothing BOOLEAN, parentid BIGINT)");
+        execute(target, "CREATE TABLE permissions (claimid BIGINT, subject VARCHAR(50), level VARCHAR(20), PRIMARY KEY (claimid, subject, level))");
+        execute(target, "CREATE TABLE players (name VARCHAR(50) PRIMARY KEY, lastlogin VARCHAR(30), accruedblocks INT, bonusblocks INT)");
+        return target;
+    }
+
+    private boolean logged(String text)
+    {
+        for(String entry : this.log)
+        {
+            if(entry.contains(text)) return true;
+        }
+        return false;
+    }
+
+    private static ClaimFileWriter.Snapshot claim(long id, String owner)
+    {
+        FlatFileDataStore.ClaimFileContents contents = new FlatFileDataStore.ClaimFileContents();
+        contents.lesserBoundaryCorner = "world;0;0;0";
+        contents.greaterBoundaryCorner = "world;9;255;9";
+        contents.ownerIdentifier = owner;
+        contents.builders = new ArrayList<String>();
+        contents.containers = new ArrayList<String>();
+        contents.accessors = new ArrayList<String>();
+        contents.managers = new ArrayList<String>();
+        contents.parentID = -1;
+        return new ClaimFileWriter.Snapshot(id, contents);
+    }
+
+    private static List<ClaimFileWriter.Snapshot> claims(int count)
+    {
+        List<ClaimFileWriter.Snapshot> claims = new ArrayList<ClaimFileWriter.Snapshot>();
+        for(long id = 1; id <= count; id++)
+        {
+            claims.add(claim(id, "owner"));
+        }
+        return claims;
+    }
+
+    private static DatabaseWriter.PlayerRow player(UUID playerID, int accruedBlocks)
+    {
+        return new DatabaseWriter.PlayerRow(playerID.toString(), "2020-01-01 00:00:00", accruedBlocks, 0);
+    }
+
+    //in the order they're migrated in
+    private static List<UUID> players(int count)
+    {
+        List<UUID> playerIDs = new ArrayList<UUID>();
+        for(int i = 0; i < count; i++)
+        {
+            playerIDs.add(UUID.randomUUID());
+        }
+        Collections.sort(playerIDs, (a, b) -> a.toString().compareTo(b.toString()));
+        return playerIDs;
+    }
+
+    private static void execute(DatabaseMigration.Target target, String sql) throws SQLException
+    {
+        try(Connection connection = target.connections.getConnection();
+            Statement statement = connection.createStatement())
+        {
+            statement.execute(sql);
+        }
+    }
+
+    private static long count(DatabaseMigration.Target target, String sql) throws SQLException
+    {
+        try(Connection connection = target.connections.getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet results = statement.executeQuery(sql))
+        {
+            results.next();
+            return results.getLong(1);
+        }
+    }
+}